@@ -0,0 +1,103 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for {@link OAuth2LocalCacheHelper}.
+ */
+public class OAuth2LocalCacheHelperTest {
+
+    /**
+     * Class under test.
+     */
+    protected OAuth2LocalCacheHelper helper;
+
+    /**
+     * Test value.
+     */
+    protected final String value = "test-value";
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        helper = new OAuth2LocalCacheHelper(3);
+    }
+
+    /**
+     * Test method for {@link OAuth2LocalCacheHelper#get}<br>
+     * Validates that stored entries are served and counted.
+     */
+    @Test
+    public void testPutGet() {
+        helper.put("a", value);
+        helper.put("b", value, 60L);
+
+        assertEquals(value, helper.get("a"));
+        assertEquals(value, helper.get("b"));
+        assertNull(helper.get("c"));
+        assertEquals(2, helper.getHitCount());
+        assertEquals(1, helper.getMissCount());
+    }
+
+    /**
+     * Test method for {@link OAuth2LocalCacheHelper#put}<br>
+     * Validates that entries with no remaining expiry are not stored.
+     */
+    @Test
+    public void testPutExpired() {
+        helper.put("a", value);
+        helper.put("a", value, 0L);
+
+        assertNull(helper.get("a"));
+        assertEquals(0, helper.size());
+    }
+
+    /**
+     * Test method for {@link OAuth2LocalCacheHelper#remove}<br>
+     * Validates that removed entries are no longer served.
+     */
+    @Test
+    public void testRemove() {
+        helper.put("a", value);
+        helper.remove("a");
+
+        assertNull(helper.get("a"));
+    }
+
+    /**
+     * Test method for {@link OAuth2LocalCacheHelper#put}<br>
+     * Validates that the cache is bounded and keeps frequently used entries.
+     */
+    @Test
+    public void testEvictsLeastFrequentlyUsed() {
+        helper.put("a", value);
+        helper.put("b", value);
+        helper.put("c", value);
+        // a and c are used often, b is the least frequently used
+        for (int i = 0; i < 5; i++) {
+            helper.get("a");
+            helper.get("c");
+        }
+
+        helper.put("d", value);
+
+        assertEquals(3, helper.size());
+        assertEquals(1, helper.getEvictionCount());
+        assertNotNull(helper.get("a"));
+        assertNull(helper.get("b"));
+        assertNotNull(helper.get("c"));
+        assertNotNull(helper.get("d"));
+    }
+}
@@ -0,0 +1,213 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Test class for {@link OAuth2NearCacheHelper}.
+ */
+public class OAuth2NearCacheHelperTest {
+
+    /**
+     * Class under test.
+     */
+    protected OAuth2NearCacheHelper helper;
+
+    /**
+     * Mock backing cache helper.
+     */
+    protected IOAuth2CacheHelper mockDelegate;
+
+    /**
+     * Test key.
+     */
+    protected final String key = "test-key";
+
+    /**
+     * Test value.
+     */
+    protected final String value = "test-value";
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        mockDelegate = EasyMock.createMock(IOAuth2CacheHelper.class);
+        helper = new OAuth2NearCacheHelper(mockDelegate, 2, 60);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#get}<br>
+     * Validates that a backend read with a known expiry is served locally
+     * afterwards.
+     */
+    @Test
+    public void testGetCachesLocally() {
+        final long expiresAt = System.currentTimeMillis() / 1000L + 30L;
+        expect(mockDelegate.getEntry(key)).andReturn(new OAuth2CacheEntry(value, expiresAt))
+            .once();
+
+        replay(mockDelegate);
+
+        assertEquals(value, helper.get(key));
+        assertEquals(value, helper.get(key));
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#get}<br>
+     * Validates that a backend read with an unknown expiry, or an expiry
+     * that has passed, is not served locally.
+     */
+    @Test
+    public void testGetUnknownExpiryNotCached() {
+        final long expired = System.currentTimeMillis() / 1000L - 1L;
+        expect(mockDelegate.getEntry(key))
+            .andReturn(new OAuth2CacheEntry(value, OAuth2CacheEntry.EXPIRY_UNKNOWN)).times(2);
+        expect(mockDelegate.getEntry("other-key"))
+            .andReturn(new OAuth2CacheEntry(value, expired)).times(2);
+
+        replay(mockDelegate);
+
+        assertEquals(value, helper.get(key));
+        assertEquals(value, helper.get(key));
+        assertEquals(value, helper.get("other-key"));
+        assertEquals(value, helper.get("other-key"));
+        assertEquals(0, helper.size());
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#put}<br>
+     * Validates that writes go through and are served locally.
+     */
+    @Test
+    public void testPutWritesThrough() {
+        expect(mockDelegate.put(key, value, 30L)).andReturn(value);
+
+        replay(mockDelegate);
+
+        helper.put(key, value, 30L);
+        assertEquals(value, helper.get(key));
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#put}<br>
+     * Validates that a write with no remaining expiry is not served locally.
+     */
+    @Test
+    public void testPutExpiredNotCached() {
+        expect(mockDelegate.put(key, value, 0L)).andReturn(value);
+        expect(mockDelegate.getEntry(key)).andReturn(null);
+
+        replay(mockDelegate);
+
+        helper.put(key, value, 0L);
+        assertNull(helper.get(key));
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#remove}<br>
+     * Validates that removal invalidates the local entry.
+     */
+    @Test
+    public void testRemoveInvalidates() {
+        expect(mockDelegate.put(key, value)).andReturn(value);
+        mockDelegate.remove(key);
+        EasyMock.expectLastCall().once();
+        expect(mockDelegate.getEntry(key)).andReturn(null);
+
+        replay(mockDelegate);
+
+        helper.put(key, value);
+        helper.remove(key);
+        assertNull(helper.get(key));
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#put}<br>
+     * Validates that the local cache is bounded.
+     */
+    @Test
+    public void testBounded() {
+        expect(mockDelegate.put(EasyMock.anyObject(String.class), EasyMock.eq(value)))
+            .andReturn(value).times(3);
+
+        replay(mockDelegate);
+
+        helper.put("a", value);
+        helper.put("b", value);
+        helper.put("c", value);
+        assertEquals(2, helper.size());
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#getAll}<br>
+     * Validates that local hits are served locally and misses are
+     * fetched from the backend in one call.
+     */
+    @Test
+    public void testGetAll() {
+        expect(mockDelegate.put(key, value)).andReturn(value);
+        expect(mockDelegate.getAll(Arrays.asList("other-key", "missing-key")))
+            .andReturn(ImmutableMap.of("other-key", value));
+
+        replay(mockDelegate);
+
+        helper.put(key, value);
+        final Map<String, String> values = helper
+            .getAll(Arrays.asList(key, "other-key", "missing-key"));
+        assertEquals(ImmutableMap.of(key, value, "other-key", value), values);
+
+        verify(mockDelegate);
+    }
+
+    /**
+     * Test method for {@link OAuth2NearCacheHelper#removeAll}<br>
+     * Validates that bulk removal goes through and invalidates local entries.
+     */
+    @Test
+    public void testRemoveAll() {
+        expect(mockDelegate.put(key, value)).andReturn(value);
+        mockDelegate.removeAll(Collections.singletonList(key));
+        EasyMock.expectLastCall().once();
+        expect(mockDelegate.getEntry(key)).andReturn(null);
+
+        replay(mockDelegate);
+
+        helper.put(key, value);
+        helper.removeAll(Collections.singletonList(key));
+        assertNull(helper.get(key));
+
+        verify(mockDelegate);
+    }
+}
@@ -0,0 +1,124 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache.ephemeral;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.zimbra.cs.ephemeral.EphemeralInput;
+import com.zimbra.cs.ephemeral.EphemeralInput.RelativeExpiration;
+import com.zimbra.cs.ephemeral.EphemeralKey;
+import com.zimbra.cs.ephemeral.EphemeralLocation;
+import com.zimbra.oauth.utilities.OAuth2CacheUtilities;
+import com.zimbra.oauth.utilities.OAuth2DataSource.DataSourceMetaData;
+
+/**
+ * Compares the stored size and encoding cost of plain and compact oauth
+ * cache entries.<br>
+ * Not a unit test, run manually:<br>
+ * <code>java com.zimbra.oauth.cache.ephemeral.OAuth2EncodingBenchmark [entries] [rounds]</code><br>
+ * Sizes are the UTF-8 bytes of the encoded key and value, backend
+ * per-entry overhead is the same for both formats.
+ */
+public class OAuth2EncodingBenchmark {
+
+    public static void main(String[] args) {
+        final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        final List<EphemeralInput> inputs = buildInputs(entries);
+        final OAuth2KeyEncoder keyEncoder = new OAuth2KeyEncoder();
+        final OAuth2ValueEncoder valueEncoder = new OAuth2ValueEncoder();
+        final EphemeralLocation plain = new OAuth2EphemeralLocation(false);
+        final EphemeralLocation compact = new OAuth2EphemeralLocation(true);
+
+        final long plainBytes = measureBytes(inputs, keyEncoder, valueEncoder, plain);
+        final long compactBytes = measureBytes(inputs, keyEncoder, valueEncoder, compact);
+        System.out.printf("entries: %d%n", inputs.size());
+        System.out.printf("plain:   %.1f bytes/entry%n", (double) plainBytes / inputs.size());
+        System.out.printf("compact: %.1f bytes/entry%n", (double) compactBytes / inputs.size());
+        System.out.printf("saved:   %.1f bytes/entry (%.1f%%)%n",
+            (double) (plainBytes - compactBytes) / inputs.size(),
+            100.0 * (plainBytes - compactBytes) / plainBytes);
+
+        for (int round = 1; round <= rounds; round++) {
+            final long plainNanos = measureNanos(inputs, keyEncoder, valueEncoder, plain);
+            final long compactNanos = measureNanos(inputs, keyEncoder, valueEncoder, compact);
+            System.out.printf("round %d: plain %d ns/entry, compact %d ns/entry%n", round,
+                plainNanos / inputs.size(), compactNanos / inputs.size());
+        }
+    }
+
+    /**
+     * Builds a mix of account mapping, token, and token denied entries in
+     * the formats used by the handlers.
+     *
+     * @param entries The number of entries
+     * @return The inputs
+     */
+    protected static List<EphemeralInput> buildInputs(int entries) {
+        final List<EphemeralInput> inputs = new ArrayList<EphemeralInput>(entries);
+        final StringBuilder token = new StringBuilder();
+        while (token.length() < 600) {
+            token.append(UUID.randomUUID().toString().replace("-", ""));
+        }
+        for (int i = 0; i < entries; i++) {
+            final String accountId = UUID.randomUUID().toString();
+            final String identifier = "zoom-account-" + i + "-user-" + i;
+            final String key;
+            final String value;
+            switch (i % 3) {
+            case 0:
+                key = DataSourceMetaData.buildRootCacheKey("zoom", identifier);
+                value = accountId;
+                break;
+            case 1:
+                key = DataSourceMetaData.buildTokenCacheKey(accountId, "zoom", identifier);
+                value = token.toString();
+                break;
+            default:
+                key = OAuth2CacheUtilities.buildAccountKey(accountId,
+                    DataSourceMetaData.buildRootCacheKey("zoom", identifier) + "_token_denied");
+                value = "zoom";
+                break;
+            }
+            inputs.add(new EphemeralInput(new EphemeralKey(key), value,
+                new RelativeExpiration(1800L, TimeUnit.SECONDS)));
+        }
+        return inputs;
+    }
+
+    protected static long measureBytes(List<EphemeralInput> inputs, OAuth2KeyEncoder keyEncoder,
+        OAuth2ValueEncoder valueEncoder, EphemeralLocation location) {
+        long bytes = 0;
+        for (final EphemeralInput input : inputs) {
+            bytes += keyEncoder.encodeKey(input.getEphemeralKey(), location)
+                .getBytes(StandardCharsets.UTF_8).length;
+            bytes += valueEncoder.encodeValue(input, location)
+                .getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    protected static long measureNanos(List<EphemeralInput> inputs, OAuth2KeyEncoder keyEncoder,
+        OAuth2ValueEncoder valueEncoder, EphemeralLocation location) {
+        long sink = 0;
+        final long start = System.nanoTime();
+        for (final EphemeralInput input : inputs) {
+            sink += keyEncoder.encodeKey(input.getEphemeralKey(), location).length();
+            sink += OAuth2ValueEncoder
+                .decodeValue(valueEncoder.encodeValue(input, location)).length();
+        }
+        final long elapsed = System.nanoTime() - start;
+        if (sink == 0) {
+            System.out.println();
+        }
+        return elapsed;
+    }
+}
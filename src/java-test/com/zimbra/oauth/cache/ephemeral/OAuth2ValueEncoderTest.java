@@ -0,0 +1,91 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache.ephemeral;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.zimbra.oauth.cache.OAuth2CacheEntry;
+
+/**
+ * Test class for {@link OAuth2ValueEncoder}.
+ */
+public class OAuth2ValueEncoderTest {
+
+    /**
+     * Test value.
+     */
+    protected final String value = "test-value:with-separator";
+
+    /**
+     * Test method for {@link OAuth2ValueEncoder#decodeValue}<br>
+     * Validates that plain values are read as is.
+     */
+    @Test
+    public void testDecodePlainValue() {
+        assertEquals(value, OAuth2ValueEncoder.decodeValue(value));
+        assertEquals("", OAuth2ValueEncoder.decodeValue(""));
+        assertNull(OAuth2ValueEncoder.decodeValue(null));
+    }
+
+    /**
+     * Test method for {@link OAuth2ValueEncoder#decodeValue}<br>
+     * Validates that envelopes are unwrapped, and ignored once expired.
+     */
+    @Test
+    public void testDecodeEnvelope() {
+        final long now = System.currentTimeMillis() / 1000L;
+
+        assertEquals(value,
+            OAuth2ValueEncoder.decodeValue(OAuth2ValueEncoder.encodeEnvelope(value, 0L)));
+        assertEquals(value,
+            OAuth2ValueEncoder.decodeValue(OAuth2ValueEncoder.encodeEnvelope(value, now + 60L)));
+        assertNull(
+            OAuth2ValueEncoder.decodeValue(OAuth2ValueEncoder.encodeEnvelope(value, now - 1L)));
+    }
+
+    /**
+     * Test method for {@link OAuth2ValueEncoder#decodeExpiresAt}<br>
+     * Validates that the expiry is read from envelopes, and is unknown for
+     * plain values and expired envelopes.
+     */
+    @Test
+    public void testDecodeExpiresAt() {
+        final long now = System.currentTimeMillis() / 1000L;
+
+        assertEquals(now + 60L, OAuth2ValueEncoder
+            .decodeExpiresAt(OAuth2ValueEncoder.encodeEnvelope(value, now + 60L)));
+        assertEquals(OAuth2CacheEntry.EXPIRY_NONE,
+            OAuth2ValueEncoder.decodeExpiresAt(OAuth2ValueEncoder.encodeEnvelope(value, 0L)));
+        assertEquals(OAuth2CacheEntry.EXPIRY_UNKNOWN, OAuth2ValueEncoder.decodeExpiresAt(value));
+        assertEquals(OAuth2CacheEntry.EXPIRY_UNKNOWN, OAuth2ValueEncoder
+            .decodeExpiresAt(OAuth2ValueEncoder.encodeEnvelope(value, now - 1L)));
+    }
+
+    /**
+     * Test method for {@link OAuth2ValueEncoder#decodeValue}<br>
+     * Validates that envelopes of unknown versions are ignored.
+     */
+    @Test
+    public void testDecodeUnknownVersion() {
+        assertNull(OAuth2ValueEncoder.decodeValue("\u00020:" + value));
+    }
+
+    /**
+     * Test method for {@link OAuth2KeyEncoder#compactKey}<br>
+     * Validates that compact keys are stable and of fixed length.
+     */
+    @Test
+    public void testCompactKey() {
+        final String key = OAuth2KeyEncoder.compactKey("{account-id}-zm_oauth_social_zoom_id");
+
+        assertEquals(key, OAuth2KeyEncoder.compactKey("{account-id}-zm_oauth_social_zoom_id"));
+        assertEquals(24, key.length());
+        assertEquals(24, OAuth2KeyEncoder.compactKey("").length());
+    }
+}
@@ -12,6 +12,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -32,6 +33,7 @@ import com.zimbra.oauth.handlers.impl.GoogleContactsImport.GoogleContactsUtil;
 import com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler.GoogleContactConstants;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.OAuth2JsonUtilities;
+import com.zimbra.oauth.utilities.OAuth2JsonUtilities.JsonRecordConsumer;
 
 /**
  * Test class for {@link GoogleContactsImport}.
@@ -102,8 +104,12 @@ public class GoogleContactsImportTest {
         expect(importer.buildContactsUrl(anyObject(), anyObject(), anyObject()))
             .andReturn(GoogleContactConstants.CONTACTS_URI.getValue());
         final String jsonData = "{\"connections\":[{\"biographies\":[{\"contentType\":\"TEXT_PLAIN\",\"value\":\"lionnsss!\"}],\"emailAddresses\":[{\"value\":\"lionel@example.com\"}],\"etag\":\"fake-etag\",\"names\":[{\"displayName\":\"Lionel Ronkerts\",\"displayNameLastFirst\":\"Ronkerts, Lionel\",\"familyName\":\"Ronkerts\",\"givenName\":\"Lionel\",\"metadata\":{\"primary\":true,\"source\":{\"id\":\"fake-id\",\"type\":\"CONTACT\"}}}],\"organizations\":[{\"name\":\"Synacor\",\"title\":\"Tester\"}],\"photos\":[{\"default\":true,\"metadata\":{\"primary\":true,\"source\":{\"id\":\"fake-id\",\"type\":\"CONTACT\"}},\"url\":\"https://example.com/photo.jpg\"}],\"resourceName\":\"people/fake-people-id\"}],\"totalItems\":9,\"totalPeople\":9}";
-        final JsonNode jsonResponse = OAuth2JsonUtilities.stringToJson(jsonData);
-        expect(importer.getContactsRequest(anyObject(), anyObject())).andReturn(jsonResponse);
+        // expect the contacts to be streamed to the consumer
+        expect(importer.getContactsRequest(anyObject(), anyObject(),
+            anyObject(JsonRecordConsumer.class)))
+            .andAnswer(() -> OAuth2JsonUtilities.streamRecords(
+                new ByteArrayInputStream(jsonData.getBytes()), "connections",
+                (JsonRecordConsumer) EasyMock.getCurrentArguments()[2]));
         // expect parse new contacts to be called
         importer.parseNewContacts(anyObject(Set.class), anyObject(JsonNode.class),
             anyObject(List.class));
@@ -13,6 +13,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -36,6 +37,7 @@ import com.zimbra.cs.mime.ParsedContact;
 import com.zimbra.oauth.handlers.impl.OutlookContactsImport.OutlookContactsUtil;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.OAuth2JsonUtilities;
+import com.zimbra.oauth.utilities.OAuth2JsonUtilities.JsonRecordConsumer;
 import com.zimbra.oauth.utilities.OAuth2Utilities;
 
 /**
@@ -121,9 +123,14 @@ public class OutlookContactsImportTest {
         expect(importer.getExistingContacts(anyObject(), eq(childFolderId)))
             .andReturn(new HashSet<String>());
         final String jsonData = "{\"@odata.context\":\"https://outlook.office.com/api/v2.0/$metadata#Me/Contacts(EmailAddresses,GivenName,Surname)\",\"@odata.deltaLink\":\"https://outlook.office.com/api/v2.0/me/contacts/?%24select=EmailAddresses%2cGivenName%2cSurname&%24deltatoken=b_o5fakeToken\",\"value\":[{\"@odata.etag\":\"W/\\\"fake-tag\\\"\",\"@odata.id\":\"https://outlook.office.com/api/v2.0/Users('fake-id')/Contacts('fake-id')\",\"EmailAddresses\":[{\"Address\":\"test2@synacor.net\",\"Name\":\"test2@synacor.net\"},{\"Address\":\"test3@synacor.net\",\"Name\":\"test3@synacor.net\"}],\"GivenName\":\"Test\",\"Id\":\"fake-user-id=\",\"Surname\":\"User\"}]}";
-        final JsonNode jsonResponse = OAuth2JsonUtilities.stringToJson(jsonData);
-        // expect getContactsRequest to be called 4 times (twice for each folder)
-        expect(importer.getContactsRequest(anyObject(), anyObject())).andReturn(jsonResponse).times(4);
+        // expect getContactsRequest to be called 4 times (twice for each folder),
+        // streaming the contacts to the consumer
+        expect(importer.getContactsRequest(anyObject(), anyObject(),
+            anyObject(JsonRecordConsumer.class)))
+            .andAnswer(() -> OAuth2JsonUtilities.streamRecords(
+                new ByteArrayInputStream(jsonData.getBytes()), "value",
+                (JsonRecordConsumer) EasyMock.getCurrentArguments()[2]))
+            .times(4);
         // expect parse new contacts to be called 4 times (twice for each folder)
         importer.parseNewContacts(anyObject(Set.class), anyObject(JsonNode.class),
             anyObject(List.class));
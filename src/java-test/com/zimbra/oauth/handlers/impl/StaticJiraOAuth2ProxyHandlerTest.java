@@ -7,12 +7,14 @@ package com.zimbra.oauth.handlers.impl;
 
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.matches;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -375,7 +377,10 @@ public class StaticJiraOAuth2ProxyHandlerTest {
         expect(OAuth2ProxyUtilities.isAllowedTargetHost(matches(host), anyObject(Account.class)))
             .andReturn(true);
         expect(mockResponseWrapper.getResponse()).andReturn(mockHttpResponse);
-        expect(mockResponseWrapper.getEntityBytes()).andReturn(jsonBody.getBytes());
+        expect(mockResponseWrapper.getEntityStream())
+            .andReturn(new ByteArrayInputStream(jsonBody.getBytes()));
+        mockResponseWrapper.close();
+        expectLastCall();
         expect(mockHttpResponse.getFirstHeader(contentHeaderName))
             .andReturn(new BasicHeader(contentHeaderName, MediaType.APPLICATION_JSON));
         expect(OAuth2Utilities.executeRequestRaw(anyObject(HttpRequestBase.class)))
@@ -432,6 +437,26 @@ public class StaticJiraOAuth2ProxyHandlerTest {
         PowerMock.verify(LdapConfiguration.class);
     }
 
+    /**
+     * Test method for {@link StaticJiraOAuth2ProxyHandler#isProxyBodyRequired}<br>
+     * Validates that the isProxyBodyRequired method returns true only when
+     * creating an issue, so other request bodies are streamed.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testIsProxyBodyRequired() throws Exception {
+        final String host = "zimbra.test";
+        final String issueTarget = String.format("https://%s/rest/api/3/issue/", host);
+        final String attachmentTarget = String.format("https://%s/rest/api/3/issue/%s/attachments",
+            host, "5555");
+
+        assertTrue(handler.isProxyBodyRequired(client, HttpMethod.POST, issueTarget));
+        assertFalse(handler.isProxyBodyRequired(client, HttpMethod.POST, attachmentTarget));
+        assertFalse(handler.isProxyBodyRequired(client, HttpMethod.GET, issueTarget));
+        assertFalse(handler.isProxyBodyRequired(client, HttpMethod.POST, null));
+    }
+
     protected String buildRequestBodyJson(String projectId) throws ServiceException {
         final Map<String, Object> project = new HashMap<String, Object>();
         project.put("id", projectId);
@@ -352,6 +352,10 @@ public class WebexOAuth2HandlerTest {
             .andReturn(mockCredentials);
         handler.validateRefreshTokenResponse(anyObject());
         EasyMock.expectLastCall().once();
+        // expect to record the access token lifetime
+        expect(handler.getTokenExpiresIn(mockCredentials)).andReturn(3600L);
+        mockOAuthInfo.setExpiresIn(3600L);
+        EasyMock.expectLastCall().once();
         expect(handler.getStorableToken(mockCredentials)).andReturn(refreshToken);
 
         mockOAuthInfo.setTokenUrl(matches(WebexOAuth2Constants.AUTHENTICATE_URI.getValue()));
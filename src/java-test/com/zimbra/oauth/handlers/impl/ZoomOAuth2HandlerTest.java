@@ -15,6 +15,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.net.URLEncoder;
 import java.util.Collections;
@@ -48,6 +49,7 @@ import com.zimbra.oauth.utilities.OAuth2Constants;
 import com.zimbra.oauth.utilities.OAuth2DataSource;
 import com.zimbra.oauth.utilities.OAuth2DataSource.DataSourceMetaData;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
+import com.zimbra.oauth.utilities.OAuth2IdentifierIndex;
 import com.zimbra.oauth.utilities.OAuth2JsonUtilities;
 import com.zimbra.oauth.utilities.OAuth2ProxyUtilities;
 
@@ -74,6 +76,11 @@ public class ZoomOAuth2HandlerTest {
      */
     protected OAuth2DataSource mockDataSource = EasyMock.createMock(OAuth2DataSource.class);
 
+    /**
+     * Mock identifier index.
+     */
+    protected OAuth2IdentifierIndex mockIdentifierIndex = EasyMock.createMock(OAuth2IdentifierIndex.class);
+
     /**
      * ClientId for testing.
      */
@@ -97,7 +104,8 @@ public class ZoomOAuth2HandlerTest {
     @Before
     public void setUp() throws Exception {
         handler = setupHandler("authorize", "authenticate", "refresh", "event", "deauthorize", "headers",
-            "findStoredAccessToken", "findAndCacheStoredRefreshableAccessToken");
+            "findStoredAccessToken", "findAndCacheStoredRefreshableAccessToken",
+            "getTokenCacheLifetime", "refreshAndCacheAccessToken");
 
         PowerMock.mockStatic(OAuth2CacheUtilities.class);
         PowerMock.mockStatic(OAuth2ProxyUtilities.class);
@@ -117,6 +125,7 @@ public class ZoomOAuth2HandlerTest {
             ZoomOAuth2Constants.AUTHORIZE_URI_TEMPLATE.getValue());
         Whitebox.setInternalState(handler, "client", ZoomOAuth2Constants.CLIENT_NAME.getValue());
         Whitebox.setInternalState(handler, "dataSource", mockDataSource);
+        Whitebox.setInternalState(handler, "identifierIndex", mockIdentifierIndex);
         Whitebox.setInternalState(handler, "tokenCacheLifetime",
             Long.valueOf(OAuth2Constants.TOKEN_CACHE_LIFETIME.getValue()));
         return handler;
@@ -278,6 +287,10 @@ public class ZoomOAuth2HandlerTest {
             .andReturn(mockCredentials);
         handler.validateRefreshTokenResponse(anyObject());
         EasyMock.expectLastCall().once();
+        // expect to record the access token lifetime
+        expect(handler.getTokenExpiresIn(mockCredentials)).andReturn(3600L);
+        mockOAuthInfo.setExpiresIn(3600L);
+        EasyMock.expectLastCall().once();
         expect(handler.getStorableToken(mockCredentials)).andReturn(refreshToken);
 
         mockOAuthInfo.setTokenUrl(matches(ZoomOAuth2Constants.AUTHENTICATE_URI.getValue()));
@@ -313,6 +326,29 @@ public class ZoomOAuth2HandlerTest {
         verify(mockDataSource);
     }
 
+    /**
+     * Test method for {@link ZoomOAuth2Handler#getTokenCacheLifetime}<br>
+     * Validates that the provider reported lifetime less the margin is used when present,
+     * and the implementation token lifetime otherwise.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testGetTokenCacheLifetime() throws Exception {
+        final OAuthInfo oauthInfo = new OAuthInfo(Collections.emptyMap());
+
+        // expect to fetch the configured margin once
+        expect(handler.getTokenExpiryMargin()).andReturn(60L).once();
+
+        replay(handler);
+
+        assertEquals(handler.tokenCacheLifetime, handler.getTokenCacheLifetime(oauthInfo));
+        oauthInfo.setExpiresIn(3600L);
+        assertEquals(3540L, handler.getTokenCacheLifetime(oauthInfo));
+
+        verify(handler);
+    }
+
     /**
      * Test method for {@link ZoomOAuth2Handler#event}<br>
      * Validates that the event method calls deauthorize.
@@ -354,7 +390,6 @@ public class ZoomOAuth2HandlerTest {
         final String accountId = "account-id";
         final String userId = "user-id";
         final String identifier = accountId + "-" + userId;
-        final String cacheKey = "prefix_" + identifier;
         final Map<String, String> headers = new HashMap<String, String>();
         headers.put(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(), verificationToken);
         final Map<String, String> payload = new HashMap<String, String>();
@@ -378,10 +413,8 @@ public class ZoomOAuth2HandlerTest {
             .andReturn(true);
         // expect to send a compliance request
         expect(handler.sendDataCompliance(eq(payload), anyObject(OAuthInfo.class))).andReturn(true);
-        // expect to build a cache key
-        expect(DataSourceMetaData.buildRootCacheKey(handler.client, identifier)).andReturn(cacheKey);
-        // expect to remove the cache value
-        OAuth2CacheUtilities.remove(cacheKey);
+        // expect to remove the indexed mapping
+        mockIdentifierIndex.remove(identifier);
         EasyMock.expectLastCall().once();
 
         replay(handler);
@@ -390,6 +423,7 @@ public class ZoomOAuth2HandlerTest {
         PowerMock.replay(DataSourceMetaData.class);
         replay(mockOAuthInfo);
         replay(mockDataSource);
+        replay(mockIdentifierIndex);
 
         assertEquals(true, handler.deauthorize(headers, payload));
 
@@ -399,6 +433,7 @@ public class ZoomOAuth2HandlerTest {
         PowerMock.verify(DataSourceMetaData.class);
         verify(mockOAuthInfo);
         verify(mockDataSource);
+        verify(mockIdentifierIndex);
     }
 
     /**
@@ -416,7 +451,6 @@ public class ZoomOAuth2HandlerTest {
         final String accountId = "account-id";
         final String userId = "user-id";
         final String identifier = accountId + "-" + userId;
-        final String cacheKey = "prefix_" + identifier;
         final Map<String, String> headers = new HashMap<String, String>();
         headers.put(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(), verificationToken);
         headers.put(OAuth2HttpConstants.HEADER_DISABLE_EXTERNAL_REQUESTS.getValue(), "true");
@@ -439,10 +473,8 @@ public class ZoomOAuth2HandlerTest {
         // expect to remove relevant datasources
         expect(mockDataSource.removeDataSources(anyObject(Account.class), matches(identifier)))
             .andReturn(true);
-        // expect to build a cache key
-        expect(DataSourceMetaData.buildRootCacheKey(handler.client, identifier)).andReturn(cacheKey);
-        // expect to remove the cache value
-        OAuth2CacheUtilities.remove(cacheKey);
+        // expect to remove the indexed mapping
+        mockIdentifierIndex.remove(identifier);
         EasyMock.expectLastCall().once();
 
         replay(handler);
@@ -451,6 +483,7 @@ public class ZoomOAuth2HandlerTest {
         PowerMock.replay(DataSourceMetaData.class);
         replay(mockOAuthInfo);
         replay(mockDataSource);
+        replay(mockIdentifierIndex);
 
         assertEquals(true, handler.deauthorize(headers, payload));
 
@@ -460,6 +493,7 @@ public class ZoomOAuth2HandlerTest {
         PowerMock.verify(DataSourceMetaData.class);
         verify(mockOAuthInfo);
         verify(mockDataSource);
+        verify(mockIdentifierIndex);
     }
 
     /**
@@ -652,13 +686,18 @@ public class ZoomOAuth2HandlerTest {
         oauthInfo.setClientSecret(clientSecret);
         oauthInfo.setZmAuthToken(mockZmAuthToken);
         final String cacheKey = "cache-key";
+        final String deniedCacheKey = "denied-cache-key";
 
         // expect to fetch refresh tokens
         expect(mockDataSource.getRefreshTokens(null, null, type)).andReturn(tokens);
         // expect to check if the client is refreshable
         expect(handler.isRefreshable()).andReturn(true);
         // expect to fetch the account id
-        expect(mockZmAuthToken.getAccountId()).andReturn(accountId);
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId).times(2);
+        // expect to check for recently denied tokens
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, null))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(null);
         // expect to build a cache key
         expect(DataSourceMetaData.buildTokenCacheKey(accountId, handler.client, identifier)).andReturn(cacheKey);
         // expect to fetch the access token from cache
@@ -712,20 +751,26 @@ public class ZoomOAuth2HandlerTest {
         oauthInfo.setZmAuthToken(mockZmAuthToken);
         oauthInfo.setAccessToken(accessToken);
         final String cacheKey = "cache-key";
+        final String deniedCacheKey = "denied-cache-key";
         final ZoomOAuth2Handler handler = setupHandler("headers", "findStoredAccessToken",
-            "findAndCacheStoredRefreshableAccessToken");
+            "findAndCacheStoredRefreshableAccessToken", "getTokenCacheLifetime",
+            "refreshAndCacheAccessToken");
 
         // expect to fetch refresh tokens
         expect(mockDataSource.getRefreshTokens(null, null, type)).andReturn(tokens);
         // expect to check if the client is refreshable
         expect(handler.isRefreshable()).andReturn(true);
         // expect to fetch the account id
-        expect(mockZmAuthToken.getAccountId()).andReturn(accountId);
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId).times(2);
+        // expect to check for recently denied tokens
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, null))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(null);
         // expect to build a cache key
         expect(DataSourceMetaData.buildTokenCacheKey(accountId, handler.client, identifier))
             .andReturn(cacheKey);
-        // expect to fail to fetch the access token from cache
-        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null);
+        // expect to fail to fetch the access token from cache before and during refresh
+        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null).times(2);
         // expect to call refresh
         expect(handler.refresh(anyObject(OAuthInfo.class))).andReturn(true);
         // expect to cache the access token
@@ -777,18 +822,24 @@ public class ZoomOAuth2HandlerTest {
         oauthInfo.setZmAuthToken(mockZmAuthToken);
         oauthInfo.setAccessToken(accessToken);
         final String cacheKey = "cache-key";
+        final String deniedCacheKey = "denied-cache-key";
         final ZoomOAuth2Handler handler = setupHandler("headers", "findStoredAccessToken",
-            "findAndCacheStoredRefreshableAccessToken");
+            "findAndCacheStoredRefreshableAccessToken", "getTokenCacheLifetime",
+            "refreshAndCacheAccessToken");
 
         // expect to check if the client is refreshable
         expect(handler.isRefreshable()).andReturn(true);
         // expect to fetch the account id
-        expect(mockZmAuthToken.getAccountId()).andReturn(accountId);
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId).times(2);
+        // expect to check for recently denied tokens
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, identifier))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(null);
         // expect to build a cache key
         expect(DataSourceMetaData.buildTokenCacheKey(accountId, handler.client, identifier))
             .andReturn(cacheKey);
-        // expect to fail to fetch the access token from cache
-        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null);
+        // expect to fail to fetch the access token from cache before and during refresh
+        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null).times(2);
         // expect to call refresh
         expect(handler.refresh(anyObject(OAuthInfo.class))).andReturn(true);
         // expect to cache the access token
@@ -840,13 +891,19 @@ public class ZoomOAuth2HandlerTest {
         oauthInfo.setZmAuthToken(mockZmAuthToken);
         oauthInfo.setAccessToken(accessToken);
         final String cacheKey = "cache-key";
+        final String deniedCacheKey = "denied-cache-key";
         final ZoomOAuth2Handler handler = setupHandler("headers", "findStoredAccessToken",
-            "findAndCacheStoredRefreshableAccessToken");
+            "findAndCacheStoredRefreshableAccessToken", "getTokenCacheLifetime",
+            "refreshAndCacheAccessToken");
 
         // expect to check if the client is refreshable
         expect(handler.isRefreshable()).andReturn(true);
         // expect to fetch the account id
-        expect(mockZmAuthToken.getAccountId()).andReturn(accountId);
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId).times(2);
+        // expect to check for recently denied tokens
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, identifier))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(null);
         // expect to build a cache key
         expect(DataSourceMetaData.buildTokenCacheKey(accountId, handler.client, identifier))
             .andReturn(cacheKey);
@@ -927,20 +984,26 @@ public class ZoomOAuth2HandlerTest {
         oauthInfo.setZmAuthToken(mockZmAuthToken);
         final String accountId = "account-id";
         final String cacheKey = "cache-key";
+        final String deniedCacheKey = "denied-cache-key";
         final ZoomOAuth2Handler handler = setupHandler("headers", "findStoredAccessToken",
-            "findAndCacheStoredRefreshableAccessToken");
+            "findAndCacheStoredRefreshableAccessToken", "getTokenCacheLifetime",
+            "refreshAndCacheAccessToken");
 
         // expect to fetch refresh tokens
         expect(mockDataSource.getRefreshTokens(null, null, type)).andReturn(tokens);
         // expect to check if the client is refreshable
         expect(handler.isRefreshable()).andReturn(true);
         // expect to fetch the account id
-        expect(mockZmAuthToken.getAccountId()).andReturn(accountId);
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId).times(2);
+        // expect to check for recently denied tokens
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, null))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(null);
         // expect to build a cache key
         expect(DataSourceMetaData.buildTokenCacheKey(accountId, handler.client, identifier))
             .andReturn(cacheKey);
-        // expect to fail to fetch the access token from cache
-        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null);
+        // expect to fail to fetch the access token from cache before and during refresh
+        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null).times(2);
         // expect to call refresh
         expect(handler.refresh(anyObject(OAuthInfo.class)))
             .andThrow(ServiceException.INVALID_REQUEST("no datasource found", null));
@@ -961,4 +1024,112 @@ public class ZoomOAuth2HandlerTest {
         verify(mockDataSource);
         verify(mockZmAuthToken);
     }
+
+    /**
+     * Test method for {@link ZoomOAuth2Handler#headers}<br>
+     * Validates that the headers method fails fast without searching
+     * datasources when the identifier was recently denied.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testHeadersRecentlyDenied() throws Exception {
+        final String identifier = "test-user@localhost";
+        final String accountId = "account-id";
+        final AuthToken mockZmAuthToken = EasyMock.createMock(AuthToken.class);
+        final OAuthInfo oauthInfo = new OAuthInfo(ImmutableMap.of("identifier", identifier));
+        oauthInfo.setZmAuthToken(mockZmAuthToken);
+        final String deniedCacheKey = "denied-cache-key";
+
+        // expect to fetch the account id
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId);
+        // expect to find a recent denial
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, identifier))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(handler.client);
+
+        PowerMock.replay(DataSourceMetaData.class);
+        PowerMock.replay(OAuth2CacheUtilities.class);
+        replay(handler);
+        replay(mockConfig);
+        replay(mockDataSource);
+        replay(mockZmAuthToken);
+
+        try {
+            handler.headers(oauthInfo);
+            fail("Expected exception to be thrown for a recently denied identifier.");
+        } catch (final ServiceException e) {
+            assertEquals(ServiceException.PERM_DENIED, e.getCode());
+        }
+
+        PowerMock.verify(DataSourceMetaData.class);
+        PowerMock.verify(OAuth2CacheUtilities.class);
+        verify(handler);
+        verify(mockConfig);
+        verify(mockDataSource);
+        verify(mockZmAuthToken);
+    }
+
+    /**
+     * Test method for {@link ZoomOAuth2Handler#headers}<br>
+     * Validates that the headers method remembers a denied refresh.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testHeadersDeniedRefreshIsCached() throws Exception {
+        final String identifier = "test-user@localhost";
+        final String accountId = "account-id";
+        final AuthToken mockZmAuthToken = EasyMock.createMock(AuthToken.class);
+        final OAuthInfo oauthInfo = new OAuthInfo(ImmutableMap.of("identifier", identifier));
+        oauthInfo.setClientId(clientId);
+        oauthInfo.setClientSecret(clientSecret);
+        oauthInfo.setZmAuthToken(mockZmAuthToken);
+        final String cacheKey = "cache-key";
+        final String deniedCacheKey = "denied-cache-key";
+        final ZoomOAuth2Handler handler = setupHandler("headers", "findStoredAccessToken",
+            "findAndCacheStoredRefreshableAccessToken", "getTokenCacheLifetime",
+            "refreshAndCacheAccessToken");
+
+        // expect to check if the client is refreshable
+        expect(handler.isRefreshable()).andReturn(true);
+        // expect to fetch the account id
+        expect(mockZmAuthToken.getAccountId()).andReturn(accountId).times(2);
+        // expect to check for recently denied tokens
+        expect(DataSourceMetaData.buildTokenDeniedCacheKey(accountId, handler.client, identifier))
+            .andReturn(deniedCacheKey);
+        expect(OAuth2CacheUtilities.get(deniedCacheKey)).andReturn(null);
+        // expect to build a cache key
+        expect(DataSourceMetaData.buildTokenCacheKey(accountId, handler.client, identifier))
+            .andReturn(cacheKey);
+        // expect to fail to fetch the access token from cache before and during refresh
+        expect(OAuth2CacheUtilities.get(cacheKey)).andReturn(null).times(2);
+        // expect refresh to be denied
+        expect(handler.refresh(anyObject(OAuthInfo.class)))
+            .andThrow(ServiceException.PERM_DENIED("revoked"));
+        // expect to remember the denial
+        expect(OAuth2CacheUtilities.put(deniedCacheKey, handler.client,
+            OAuth2Handler.tokenDeniedCacheLifetime)).andReturn(handler.client);
+
+        PowerMock.replay(DataSourceMetaData.class);
+        PowerMock.replay(OAuth2CacheUtilities.class);
+        replay(handler);
+        replay(mockConfig);
+        replay(mockDataSource);
+        replay(mockZmAuthToken);
+
+        try {
+            handler.headers(oauthInfo);
+            fail("Expected exception to be thrown for a denied refresh.");
+        } catch (final ServiceException e) {
+            assertEquals(ServiceException.PERM_DENIED, e.getCode());
+        }
+
+        PowerMock.verify(DataSourceMetaData.class);
+        PowerMock.verify(OAuth2CacheUtilities.class);
+        verify(handler);
+        verify(mockConfig);
+        verify(mockDataSource);
+        verify(mockZmAuthToken);
+    }
 }
@@ -12,6 +12,8 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.HashMap;
@@ -28,6 +30,7 @@ import org.powermock.reflect.Whitebox;
 
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.oauth.handlers.IOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.LdapConfiguration;
 import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
@@ -94,6 +97,52 @@ public class ClassManagerTest {
         assertNotNull(handlerCacheMap.get(client));
     }
 
+    /**
+     * Test method for {@link ClassManager#getHandler}<br>
+     * Validates that a cached client handler is reused.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testGetHandlerCached() throws Exception {
+        LdapConfiguration.buildConfiguration(anyObject(String.class));
+        PowerMock.expectLastCall().andReturn(mockConfig).once();
+        expect(mockConfig.getString(matches(OAuth2ConfigConstants.LC_HANDLER_CLASS_PREFIX.getValue() + client)))
+            .andReturn("com.zimbra.oauth.handlers.impl.YahooOAuth2Handler").once();
+
+        PowerMock.replay(LdapConfiguration.class);
+        replay(mockConfig);
+
+        final IOAuth2Handler handler = ClassManager.getHandler(client);
+
+        assertSame(handler, ClassManager.getHandler(client));
+        PowerMock.verify(LdapConfiguration.class);
+        verify(mockConfig);
+    }
+
+    /**
+     * Test method for {@link ClassManager#getHandler}<br>
+     * Validates that a localconfig handler class override is honored.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testGetHandlerClassOverride() throws Exception {
+        LdapConfiguration.buildConfiguration(anyObject(String.class));
+        PowerMock.expectLastCall().andReturn(mockConfig);
+        expect(mockConfig.getString(matches(OAuth2ConfigConstants.LC_HANDLER_CLASS_PREFIX.getValue() + client)))
+            .andReturn("com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler");
+
+        PowerMock.replay(LdapConfiguration.class);
+        replay(mockConfig);
+
+        final IOAuth2Handler handler = ClassManager.getHandler(client);
+
+        PowerMock.verify(LdapConfiguration.class);
+        verify(mockConfig);
+        assertTrue(handler instanceof GoogleOAuth2Handler);
+    }
+
     /**
      * Test method for {@link ClassManager#getHandler}<br>
      * Validates that creating a handler for a bad client fails as expected.
@@ -0,0 +1,65 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.managers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.zimbra.oauth.handlers.impl.StaticJiraOAuth2ProxyHandler;
+import com.zimbra.oauth.handlers.impl.YahooOAuth2Handler;
+
+/**
+ * Test class for {@link OAuth2HandlerRegistry}.
+ */
+public class OAuth2HandlerRegistryTest {
+
+    /**
+     * Test method for {@link OAuth2HandlerRegistry#getInstance}<br>
+     * Validates that the built-in dynamic and static providers are
+     * registered by client and by handler class.
+     */
+    @Test
+    public void testBuiltInProviders() {
+        final OAuth2HandlerRegistry registry = OAuth2HandlerRegistry.getInstance();
+
+        final IOAuth2HandlerProvider<?> yahoo = registry.getProvider("yahoo");
+        assertSame(YahooOAuth2Handler.class, yahoo.getHandlerClass());
+        assertFalse(yahoo.isStatic());
+        assertSame(yahoo, registry.getProviderByClass(YahooOAuth2Handler.class.getName()));
+        assertTrue(registry.getProvider("static-basic-jira").isStatic());
+        assertNull(registry.getProvider("not-a-client"));
+    }
+
+    /**
+     * Test method for {@link OAuth2HandlerRegistry#getClients}<br>
+     * Validates that only dynamic clients are listed, and that later
+     * providers replace earlier ones with the same client name.
+     */
+    @Test
+    public void testGetClients() {
+        final List<IOAuth2HandlerProvider<?>> providers = new ArrayList<IOAuth2HandlerProvider<?>>(
+            OAuth2HandlerRegistry.getBuiltInProviders());
+        final IOAuth2HandlerProvider<YahooOAuth2Handler> plugin = new OAuth2HandlerProvider<YahooOAuth2Handler>(
+            "yahoo", YahooOAuth2Handler.class, false, YahooOAuth2Handler::new);
+        providers.add(plugin);
+        providers.add(new OAuth2HandlerProvider<StaticJiraOAuth2ProxyHandler>("static-basic-other",
+            StaticJiraOAuth2ProxyHandler.class, true, (config) -> new StaticJiraOAuth2ProxyHandler()));
+
+        final OAuth2HandlerRegistry registry = new OAuth2HandlerRegistry(providers);
+
+        assertSame(plugin, registry.getProvider("yahoo"));
+        assertEquals(10, registry.getClients().size());
+        assertFalse(registry.getClients().contains("static-basic-jira"));
+    }
+}
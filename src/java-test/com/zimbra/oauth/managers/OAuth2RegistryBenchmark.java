@@ -0,0 +1,151 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.managers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.powermock.reflect.Whitebox;
+
+import com.zimbra.oauth.handlers.IOAuth2Handler;
+import com.zimbra.oauth.utilities.Configuration;
+
+/**
+ * Compares handler and configuration resolution through the registries with
+ * the previous synchronized map access, at increasing thread counts.<br>
+ * Not a unit test, run manually:<br>
+ * <code>java com.zimbra.oauth.managers.OAuth2RegistryBenchmark [ops per thread] [thread counts...]</code><br>
+ * Reports throughput and the number of times worker threads blocked on a
+ * monitor (thread contention monitoring).
+ */
+public class OAuth2RegistryBenchmark {
+
+    /**
+     * Clients resolved by the workers.
+     */
+    protected static final String[] CLIENTS = { "dropbox", "facebook", "google", "nextcloud",
+        "outlook", "slack", "twitter", "webex", "yahoo", "zoom" };
+
+    public static void main(String[] args) throws Exception {
+        final int ops = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        final List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++) {
+            threadCounts.add(Integer.parseInt(args[i]));
+        }
+        if (threadCounts.isEmpty()) {
+            threadCounts.addAll(Arrays.asList(1, 4, 16, 64));
+        }
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean.isThreadContentionMonitoringSupported()) {
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+
+        // resolve every client from the registries without loading handlers
+        final Map<String, Configuration> configCache = Whitebox
+            .getInternalState(Configuration.class, "configCache");
+        final Map<String, IOAuth2Handler> synchronizedHandlers = Collections
+            .synchronizedMap(new HashMap<String, IOAuth2Handler>());
+        final Map<String, Configuration> synchronizedConfigs = Collections
+            .synchronizedMap(new HashMap<String, Configuration>());
+        for (final String client : CLIENTS) {
+            final IOAuth2Handler handler = (IOAuth2Handler) Proxy.newProxyInstance(
+                IOAuth2Handler.class.getClassLoader(), new Class<?>[] { IOAuth2Handler.class },
+                (proxy, method, methodArgs) -> null);
+            final Configuration config = Configuration.getDefaultConfiguration();
+            ClassManager.handlersCache.put(client, handler);
+            configCache.put(client, config);
+            synchronizedHandlers.put(client, handler);
+            synchronizedConfigs.put(client, config);
+        }
+
+        for (final int threads : threadCounts) {
+            run("synchronized", threads, ops, threadBean, (client) -> {
+                // previous access pattern: synchronized get, then put on hit
+                final Configuration config = synchronizedConfigs.get(client);
+                synchronizedConfigs.put(client, config);
+                return synchronizedHandlers.get(client) != null && config != null;
+            });
+            run("registry", threads, ops, threadBean, (client) -> Configuration
+                .buildConfiguration(client) != null && ClassManager.getHandler(client) != null);
+        }
+    }
+
+    protected static void run(String name, int threads, int ops, ThreadMXBean threadBean,
+        Resolver resolver) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        // workers stay alive until their contention stats are read
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<Thread>();
+        // first worker failure, rethrown once the workers are done
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            final Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ops; i++) {
+                        if (!resolver.resolve(CLIENTS[(i + offset) % CLIENTS.length])) {
+                            throw new IllegalStateException("Unresolved client.");
+                        }
+                    }
+                } catch (final Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        final long elapsed = System.nanoTime() - begin;
+        long blocked = 0;
+        long blockedMillis = 0;
+        for (final Thread worker : workers) {
+            final ThreadInfo info = threadBean.getThreadInfo(worker.getId());
+            if (info != null) {
+                blocked += info.getBlockedCount();
+                blockedMillis += Math.max(0, info.getBlockedTime());
+            }
+        }
+        release.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException(String.format("%s benchmark failed.", name),
+                failure.get());
+        }
+        System.out.printf("%-12s threads: %3d  ops/s: %,12.0f  blocked: %,9d (%,d ms)%n", name,
+            threads, (double) threads * ops / elapsed * 1e9, blocked, blockedMillis);
+    }
+
+    /**
+     * Resolves a client.
+     */
+    protected interface Resolver {
+
+        boolean resolve(String client) throws Exception;
+    }
+}
@@ -0,0 +1,112 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.oauth.cache.OAuth2LocalCacheHelper;
+
+/**
+ * Test class for {@link OAuth2CacheMetrics}.
+ */
+public class OAuth2CacheMetricsTest {
+
+    /**
+     * Class under test.
+     */
+    protected OAuth2CacheMetrics metrics;
+
+    /**
+     * Test token cache key.
+     */
+    protected final String tokenKey = "{account-id}-zm_oauth_social_zoom_user@localhost_access_token";
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        metrics = new OAuth2CacheMetrics();
+    }
+
+    /**
+     * Test method for {@link OAuth2CacheMetrics#getClient}<br>
+     * Validates that the client is derived from known key formats.
+     */
+    @Test
+    public void testGetClient() {
+        assertEquals("zoom", OAuth2CacheMetrics.getClient(tokenKey));
+        assertEquals("webex", OAuth2CacheMetrics.getClient("zm_oauth_social_webex_user-id"));
+        assertEquals("other", OAuth2CacheMetrics.getClient("unknown-key"));
+    }
+
+    /**
+     * Test method for {@link OAuth2CacheMetrics#recordGet}<br>
+     * Validates that gets are counted per layer, client, and operation.
+     */
+    @Test
+    public void testRecordGet() {
+        metrics.recordGet(OAuth2CacheMetrics.LAYER_CACHE, tokenKey, true, 1000L);
+        metrics.recordGet(OAuth2CacheMetrics.LAYER_CACHE, tokenKey, false, 1000L);
+        metrics.recordError(tokenKey, OAuth2CacheMetrics.OPERATION_GET);
+
+        final Map<String, Long> counters = metrics.getCounters();
+        assertEquals(Long.valueOf(2), counters.get("cache.zoom.get.count"));
+        assertEquals(Long.valueOf(1), counters.get("cache.zoom.get.hits"));
+        assertEquals(Long.valueOf(1), counters.get("cache.zoom.get.misses"));
+        assertEquals(Long.valueOf(1), counters.get("backend.zoom.get.errors"));
+        assertEquals(0.5, metrics.getHitRatio(), 0.001);
+    }
+
+    /**
+     * Test method for {@link OAuth2CacheMetrics#registerLocalCache}<br>
+     * Validates that local cache counters are published and reset.
+     */
+    @Test
+    public void testRegisterLocalCache() {
+        final OAuth2LocalCacheHelper cache = new OAuth2LocalCacheHelper(1);
+        metrics.registerLocalCache("test", cache);
+        cache.put("key", "value");
+        cache.get("key");
+        cache.get("missing");
+        cache.put("other", "value");
+
+        Map<String, Long> counters = metrics.getCounters();
+        assertEquals(Long.valueOf(1), counters.get("local.test.hits"));
+        assertEquals(Long.valueOf(1), counters.get("local.test.misses"));
+        assertEquals(Long.valueOf(2), counters.get("local.test.puts"));
+        assertEquals(Long.valueOf(1), counters.get("local.test.evictions"));
+        assertEquals(Long.valueOf(0), counters.get("local.test.expirations"));
+
+        metrics.reset();
+        counters = metrics.getCounters();
+        assertEquals(Long.valueOf(0), counters.get("local.test.hits"));
+        assertEquals(Long.valueOf(0), counters.get("local.test.evictions"));
+    }
+
+    /**
+     * Test method for {@link OAuth2CacheMetrics#record}<br>
+     * Validates that latencies are placed in the matching bucket.
+     */
+    @Test
+    public void testRecordLatency() {
+        metrics.record(OAuth2CacheMetrics.LAYER_BACKEND, tokenKey,
+            OAuth2CacheMetrics.OPERATION_PUT, TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.record(OAuth2CacheMetrics.LAYER_BACKEND, tokenKey,
+            OAuth2CacheMetrics.OPERATION_PUT, TimeUnit.SECONDS.toNanos(5));
+
+        final Map<String, Long> histograms = metrics.getLatencyHistograms();
+        assertEquals(Long.valueOf(1), histograms.get("backend.zoom.put.latency.04_le_5ms"));
+        assertEquals(Long.valueOf(1), histograms.get("backend.zoom.put.latency.12_inf"));
+        assertEquals(Long.valueOf(0), histograms.get("backend.zoom.put.latency.00_le_250us"));
+    }
+}
@@ -0,0 +1,135 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Test class for {@link HttpEntityBuffer}.
+ */
+public class HttpEntityBufferTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    /**
+     * Test method for {@link HttpEntityBuffer#read}<br>
+     * Validates that a body within the memory limit is kept in memory.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testReadInMemory() throws Exception {
+        final byte[] body = buildBody(1000);
+
+        try (final HttpEntityBuffer buffer = HttpEntityBuffer
+            .read(new ByteArrayInputStream(body), -1, 1024, 4096, tmpDir.getRoot())) {
+            assertFalse(buffer.isSpilled());
+            assertEquals(1000, buffer.getLength());
+            assertArrayEquals(body, buffer.getBytes());
+            assertEquals(0, tmpDir.getRoot().list().length);
+        }
+    }
+
+    /**
+     * Test method for {@link HttpEntityBuffer#read}<br>
+     * Validates that a body past the memory limit is spilled to disk, and
+     * that the file is deleted on close.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testReadSpilled() throws Exception {
+        final byte[] body = buildBody(20000);
+
+        final HttpEntityBuffer buffer = HttpEntityBuffer
+            .read(new ByteArrayInputStream(body), -1, 1024, 32768, tmpDir.getRoot());
+        assertTrue(buffer.isSpilled());
+        assertEquals(20000, buffer.getLength());
+        assertArrayEquals(body, ByteStreams.toByteArray(buffer.getInputStream()));
+        assertEquals(1, tmpDir.getRoot().list().length);
+
+        buffer.close();
+        assertEquals(0, tmpDir.getRoot().list().length);
+    }
+
+    /**
+     * Test method for {@link HttpEntityBuffer#read}<br>
+     * Validates that bodies larger than the maximum are rejected, by
+     * declared length and while reading, without leaving files behind.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testReadTooLarge() throws Exception {
+        final byte[] body = buildBody(20000);
+        final File root = tmpDir.getRoot();
+
+        try {
+            HttpEntityBuffer.read(new ByteArrayInputStream(body), body.length, 1024, 16384, root);
+            fail("Expected exception for declared length.");
+        } catch (final IOException e) {
+            // expected
+        }
+        try {
+            HttpEntityBuffer.read(new ByteArrayInputStream(body), -1, 1024, 16384, root);
+            fail("Expected exception for read length.");
+        } catch (final IOException e) {
+            // expected
+        }
+        assertEquals(0, root.list().length);
+    }
+
+    /**
+     * Test method for {@link HttpEntityBuffer#limit}<br>
+     * Validates that a limited stream reads bodies up to the maximum, and
+     * fails for larger bodies by declared length and while reading.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testLimit() throws Exception {
+        final byte[] body = buildBody(20000);
+
+        assertArrayEquals(body, ByteStreams.toByteArray(
+            HttpEntityBuffer.limit(new ByteArrayInputStream(body), -1, body.length)));
+        try {
+            HttpEntityBuffer.limit(new ByteArrayInputStream(body), body.length, 16384);
+            fail("Expected exception for declared length.");
+        } catch (final IOException e) {
+            // expected
+        }
+        try {
+            ByteStreams.toByteArray(
+                HttpEntityBuffer.limit(new ByteArrayInputStream(body), -1, 16384));
+            fail("Expected exception for read length.");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    protected byte[] buildBody(int length) {
+        final byte[] body = new byte[length];
+        Arrays.fill(body, (byte) 'a');
+        body[length - 1] = 'z';
+        return body;
+    }
+}
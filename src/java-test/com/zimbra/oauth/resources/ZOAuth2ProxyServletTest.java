@@ -8,16 +8,17 @@ package com.zimbra.oauth.resources;
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.matches;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 
 import java.io.PrintWriter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import javax.servlet.ServletInputStream;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -34,11 +35,13 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.google.common.collect.ImmutableMap;
-import com.zimbra.common.util.ByteUtil;
+import com.zimbra.oauth.handlers.IOAuth2ProxyHandler;
+import com.zimbra.oauth.managers.ClassManager;
 import com.zimbra.oauth.models.ErrorMessage;
 import com.zimbra.oauth.models.HttpProxyServletRequest;
 import com.zimbra.oauth.models.ResponseMeta;
 import com.zimbra.oauth.models.ResponseObject;
+import com.zimbra.oauth.utilities.OAuth2Bulkhead;
 import com.zimbra.oauth.utilities.OAuth2Constants;
 import com.zimbra.oauth.utilities.OAuth2ErrorConstants;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
@@ -50,7 +53,7 @@ import com.zimbra.oauth.utilities.OAuth2ResourceUtilities;
  * Test class for {@link ZOAuth2Servlet}.
  */
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({ ByteUtil.class, OAuth2JsonUtilities.class, OAuth2ProxyUtilities.class, OAuth2ResourceUtilities.class, ZOAuth2ProxyServlet.class })
+@PrepareForTest({ ClassManager.class, OAuth2JsonUtilities.class, OAuth2ProxyUtilities.class, OAuth2ResourceUtilities.class, ZOAuth2ProxyServlet.class })
 public class ZOAuth2ProxyServletTest {
 
     /**
@@ -69,9 +72,9 @@ public class ZOAuth2ProxyServletTest {
     protected HttpServletResponse mockResponse = EasyMock.createMock(HttpServletResponse.class);
 
     /**
-     * Mock input stream for testing.
+     * Mock proxy handler for testing.
      */
-    protected ServletInputStream mockStream = EasyMock.createMock(ServletInputStream.class);
+    protected IOAuth2ProxyHandler mockProxyHandler = EasyMock.createMock(IOAuth2ProxyHandler.class);
 
     /**
      * Setup for tests.
@@ -80,7 +83,7 @@ public class ZOAuth2ProxyServletTest {
      */
     @Before
     public void setUp() throws Exception {
-        PowerMock.mockStatic(ByteUtil.class);
+        PowerMock.mockStatic(ClassManager.class);
         PowerMock.mockStatic(OAuth2JsonUtilities.class);
         PowerMock.mockStatic(OAuth2ProxyUtilities.class);
         PowerMock.mockStatic(OAuth2ResourceUtilities.class);
@@ -88,7 +91,8 @@ public class ZOAuth2ProxyServletTest {
 
     /**
      * Test method for {@link ZOAuth2ProxyServlet#doProxy}<br>
-     * Validates that the headers handler, and proxy servlet service are called.
+     * Validates that the headers handler, and proxy servlet service are called,
+     * and that the bulkhead permit is released before proxying.
      *
      * @throws Exception If there are issues testing
      */
@@ -120,20 +124,30 @@ public class ZOAuth2ProxyServletTest {
         // expect to fetch the query params
         expect(mockRequest.getParameterMap()).andReturn(params);
         // expect to fetch the method
-        expect(mockRequest.getMethod()).andReturn(method);
-        // expect to fetch the body
-        expect(mockRequest.getInputStream()).andReturn(mockStream);
+        expect(mockRequest.getMethod()).andReturn(method).times(2);
+        // expect to fetch the target
+        expect(mockRequest.getParameter("target")).andReturn(null);
+        // expect to check if the body is needed, and stream it otherwise
+        expect(ClassManager.getProxyHandler(matches(client))).andReturn(mockProxyHandler);
+        expect(mockProxyHandler.isProxyBodyRequired(client, method, null)).andReturn(false);
+        // expect to acquire the client's bulkhead, and check it while proxying
+        expect(ClassManager.getClientName(matches(client))).andReturn(client).times(2);
         // expect to call event handler
         OAuth2ResourceUtilities.headers(matches(method), matches(client), eq(cookies),
-            eq(headers), eq(params), anyObject(byte[].class));
+            eq(headers), eq(params), isNull(byte[].class));
         PowerMock.expectLastCall().andReturn(new ResponseObject<Map<String, String>>(extraHeaders,
             new ResponseMeta(Status.OK.getStatusCode())));
-        // expect to proxy service the request
+        // expect to proxy service the request without holding the permit
         OAuth2ProxyUtilities.doProxy(anyObject(HttpProxyServletRequest.class), eq(mockResponse),
-            anyObject(byte[].class));
-        EasyMock.expectLastCall();
+            isNull(byte[].class));
+        EasyMock.expectLastCall().andAnswer(() -> {
+            assertEquals(0, OAuth2Bulkhead.getBulkhead(client).getInFlight());
+            return null;
+        });
 
         replay(mockRequest);
+        replay(mockProxyHandler);
+        PowerMock.replay(ClassManager.class);
         PowerMock.replay(OAuth2JsonUtilities.class);
         PowerMock.replay(OAuth2ResourceUtilities.class);
         PowerMock.replay(mockResponse);
@@ -141,6 +155,8 @@ public class ZOAuth2ProxyServletTest {
         servlet.doProxy(mockRequest, mockResponse);
 
         verify(mockRequest);
+        verify(mockProxyHandler);
+        PowerMock.verify(ClassManager.class);
         PowerMock.verify(OAuth2JsonUtilities.class);
         PowerMock.verify(OAuth2ResourceUtilities.class);
         PowerMock.verify(mockResponse);
@@ -180,12 +196,17 @@ public class ZOAuth2ProxyServletTest {
         // expect to fetch the query params
         expect(mockRequest.getParameterMap()).andReturn(params);
         // expect to fetch the method
-        expect(mockRequest.getMethod()).andReturn(method);
-        // expect to fetch the body
-        expect(mockRequest.getInputStream()).andReturn(mockStream);
+        expect(mockRequest.getMethod()).andReturn(method).times(2);
+        // expect to fetch the target
+        expect(mockRequest.getParameter("target")).andReturn(null);
+        // expect to check if the body is needed, and stream it otherwise
+        expect(ClassManager.getProxyHandler(matches(client))).andReturn(mockProxyHandler);
+        expect(mockProxyHandler.isProxyBodyRequired(client, method, null)).andReturn(false);
+        // expect to acquire the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         // expect to call event handler
         OAuth2ResourceUtilities.headers(matches(method), matches(client), eq(cookies),
-            eq(headers), eq(params), anyObject(byte[].class));
+            eq(headers), eq(params), isNull(byte[].class));
         PowerMock.expectLastCall().andReturn(expectedResponse);
         // expect to send an error
         mockResponse.setStatus(Status.UNAUTHORIZED.getStatusCode());
@@ -200,6 +221,8 @@ public class ZOAuth2ProxyServletTest {
         PowerMock.expectLastCall().once();
 
         replay(mockRequest);
+        replay(mockProxyHandler);
+        PowerMock.replay(ClassManager.class);
         PowerMock.replay(OAuth2JsonUtilities.class);
         PowerMock.replay(OAuth2ResourceUtilities.class);
         PowerMock.replay(mockResponse);
@@ -207,6 +230,8 @@ public class ZOAuth2ProxyServletTest {
         servlet.doProxy(mockRequest, mockResponse);
 
         verify(mockRequest);
+        verify(mockProxyHandler);
+        PowerMock.verify(ClassManager.class);
         PowerMock.verify(OAuth2JsonUtilities.class);
         PowerMock.verify(OAuth2ResourceUtilities.class);
         PowerMock.verify(mockResponse);
@@ -245,12 +270,17 @@ public class ZOAuth2ProxyServletTest {
         // expect to fetch the query params
         expect(mockRequest.getParameterMap()).andReturn(params);
         // expect to fetch the method
-        expect(mockRequest.getMethod()).andReturn(method);
-        // expect to fetch the body
-        expect(mockRequest.getInputStream()).andReturn(mockStream);
+        expect(mockRequest.getMethod()).andReturn(method).times(2);
+        // expect to fetch the target
+        expect(mockRequest.getParameter("target")).andReturn(null);
+        // expect to check if the body is needed, and stream it otherwise
+        expect(ClassManager.getProxyHandler(matches(client))).andReturn(mockProxyHandler);
+        expect(mockProxyHandler.isProxyBodyRequired(client, method, null)).andReturn(false);
+        // expect to acquire the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         // expect to call event handler
         OAuth2ResourceUtilities.headers(matches(method), matches(client), eq(cookies),
-            eq(headers), eq(params), anyObject(byte[].class));
+            eq(headers), eq(params), isNull(byte[].class));
         PowerMock.expectLastCall().andReturn(expectedResponse);
         // expect to send an error
         mockResponse.setStatus(Status.UNAUTHORIZED.getStatusCode());
@@ -265,6 +295,8 @@ public class ZOAuth2ProxyServletTest {
         PowerMock.expectLastCall().once();
 
         replay(mockRequest);
+        replay(mockProxyHandler);
+        PowerMock.replay(ClassManager.class);
         PowerMock.replay(OAuth2JsonUtilities.class);
         PowerMock.replay(OAuth2ResourceUtilities.class);
         PowerMock.replay(mockResponse);
@@ -272,6 +304,8 @@ public class ZOAuth2ProxyServletTest {
         servlet.doProxy(mockRequest, mockResponse);
 
         verify(mockRequest);
+        verify(mockProxyHandler);
+        PowerMock.verify(ClassManager.class);
         PowerMock.verify(OAuth2JsonUtilities.class);
         PowerMock.verify(OAuth2ResourceUtilities.class);
         PowerMock.verify(mockResponse);
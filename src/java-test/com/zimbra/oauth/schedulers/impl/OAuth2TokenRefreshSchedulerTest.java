@@ -0,0 +1,176 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.schedulers.impl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.cs.account.AuthToken;
+import com.zimbra.oauth.handlers.impl.OAuth2Handler;
+import com.zimbra.oauth.models.OAuthInfo;
+import com.zimbra.oauth.utilities.Configuration;
+
+/**
+ * Test class for {@link OAuth2TokenRefreshScheduler}.
+ */
+public class OAuth2TokenRefreshSchedulerTest {
+
+    /**
+     * Class under test.
+     */
+    protected OAuth2TokenRefreshScheduler scheduler;
+
+    /**
+     * Mock configuration handle for testing.
+     */
+    protected Configuration mockConfig;
+
+    /**
+     * Mock handler for testing.
+     */
+    protected OAuth2Handler mockHandler;
+
+    /**
+     * Mock auth token for testing.
+     */
+    protected AuthToken mockZmAuthToken;
+
+    /**
+     * OAuthInfo for testing.
+     */
+    protected OAuthInfo oauthInfo;
+
+    /**
+     * Test client.
+     */
+    protected final String client = "test-client";
+
+    /**
+     * Test cache key.
+     */
+    protected final String cacheKey = "cache-key";
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        mockConfig = EasyMock.createMock(Configuration.class);
+        mockHandler = EasyMock.createMock(OAuth2Handler.class);
+        mockZmAuthToken = EasyMock.createMock(AuthToken.class);
+        oauthInfo = new OAuthInfo(Collections.emptyMap());
+        oauthInfo.setZmAuthToken(mockZmAuthToken);
+        oauthInfo.setUsername("test-user@localhost");
+    }
+
+    /**
+     * Cleanup after tests.
+     */
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Test method for {@link OAuth2TokenRefreshScheduler#schedule}<br>
+     * Validates that a refresh is scheduled when enabled for the client.
+     */
+    @Test
+    public void testSchedule() {
+        setUpScheduler(null, 900);
+
+        scheduler.schedule(mockHandler, client, oauthInfo, cacheKey, 3600L);
+
+        assertTrue(scheduler.getScheduled().containsKey(cacheKey));
+    }
+
+    /**
+     * Test method for {@link OAuth2TokenRefreshScheduler#schedule}<br>
+     * Validates that nothing is scheduled when disabled for the client.
+     */
+    @Test
+    public void testScheduleDisabledForClient() {
+        setUpScheduler("false", 900);
+
+        scheduler.schedule(mockHandler, client, oauthInfo, cacheKey, 3600L);
+
+        assertFalse(scheduler.getScheduled().containsKey(cacheKey));
+    }
+
+    /**
+     * Test method for {@link OAuth2TokenRefreshScheduler#run}<br>
+     * Validates that an in use token is refreshed through the handler.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testRun() throws Exception {
+        setUpScheduler(null, 900);
+        expect(mockZmAuthToken.isExpired()).andReturn(false);
+        expect(mockHandler.prefetchAccessToken(anyObject(OAuthInfo.class)))
+            .andReturn("access-token");
+        replay(mockZmAuthToken);
+        replay(mockHandler);
+
+        scheduler.schedule(mockHandler, client, oauthInfo, cacheKey, 3600L);
+        scheduler.run(cacheKey, scheduler.getScheduled().get(cacheKey));
+
+        verify(mockZmAuthToken);
+        verify(mockHandler);
+        // the mock handler did not reschedule
+        assertFalse(scheduler.getScheduled().containsKey(cacheKey));
+    }
+
+    /**
+     * Test method for {@link OAuth2TokenRefreshScheduler#run}<br>
+     * Validates that a token not used within the idle window is not refreshed.
+     */
+    @Test
+    public void testRunIdle() {
+        setUpScheduler(null, -1);
+        replay(mockZmAuthToken);
+        replay(mockHandler);
+
+        scheduler.schedule(mockHandler, client, oauthInfo, cacheKey, 3600L);
+        scheduler.run(cacheKey, scheduler.getScheduled().get(cacheKey));
+
+        verify(mockZmAuthToken);
+        verify(mockHandler);
+        assertFalse(scheduler.getScheduled().containsKey(cacheKey));
+    }
+
+    /**
+     * Sets up the scheduler with a mock configuration returning defaults.
+     *
+     * @param clientEnabled The per client enabled value
+     * @param idle The idle window (seconds)
+     */
+    protected void setUpScheduler(String clientEnabled, int idle) {
+        expect(mockConfig.getString("zm_oauth_test-client_token_prerefresh_enabled"))
+            .andReturn(clientEnabled).anyTimes();
+        expect(mockConfig.getInt(EasyMock.eq("zm_oauth_token_prerefresh_idle"),
+            anyObject(Integer.class))).andReturn(idle).anyTimes();
+        expect(mockConfig.getInt(anyString(), anyObject(Integer.class)))
+            .andAnswer(() -> (Integer) EasyMock.getCurrentArguments()[1]).anyTimes();
+        expect(mockConfig.getString(anyString(), anyString()))
+            .andAnswer(() -> (String) EasyMock.getCurrentArguments()[1]).anyTimes();
+        replay(mockConfig);
+
+        scheduler = new OAuth2TokenRefreshScheduler(mockConfig);
+    }
+}
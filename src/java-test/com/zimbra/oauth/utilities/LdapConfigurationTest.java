@@ -0,0 +1,141 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Config;
+import com.zimbra.cs.account.Domain;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.oauth.utilities.LdapConfiguration.ConsumerConfig;
+import com.zimbra.oauth.utilities.LdapConfiguration.ConsumerConfigSnapshot;
+
+/**
+ * Test class for {@link LdapConfiguration}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Provisioning.class })
+public class LdapConfigurationTest {
+
+    /**
+     * Teardown for tests.
+     */
+    @After
+    public void tearDown() {
+        LdapConfiguration.snapshots.clear();
+    }
+
+    /**
+     * Test method for {@link ConsumerConfig#parse}<br>
+     * Validates that each value comes from the first entry of the client
+     * that has it.
+     */
+    @Test
+    public void testParse() {
+        final ConsumerConfig config = ConsumerConfig.parse("zoom",
+            new String[] { "other-id:other-secret:other", "bad:zoom", "id:secret:zoom",
+                "id2:secret2:token:zoom" },
+            new String[] { "https://other/redirect:other", "https://zoom/redirect:zoom" },
+            new String[] { "user:read:zoom" });
+
+        assertEquals("id", config.getClientId());
+        assertEquals("secret", config.getClientSecret());
+        assertEquals("token", config.getVerificationToken());
+        assertEquals("https://zoom/redirect", config.getRedirectUri());
+        assertEquals("user:read", config.getScope());
+    }
+
+    /**
+     * Test method for {@link ConsumerConfig#parse}<br>
+     * Validates that missing values are null.
+     */
+    @Test
+    public void testParseNotConfigured() {
+        final ConsumerConfig config = ConsumerConfig.parse("zoom", null,
+            new String[] { "https://other/redirect:other" }, new String[0]);
+
+        assertNull(config.getClientId());
+        assertNull(config.getVerificationToken());
+        assertNull(config.getRedirectUri());
+        assertNull(config.getScope());
+    }
+
+    /**
+     * Test method for {@link ConsumerConfigSnapshot#get}<br>
+     * Validates that domain values are used only if they mention the client,
+     * and that parsed configs are reused while the values and configuration
+     * version are unchanged.
+     */
+    @Test
+    public void testSnapshot() {
+        final String[][] domainValues = { { "domain-id:domain-secret:zoom" }, null, null };
+        final String[][] globalValues = { { "global-id:global-secret:zoom",
+            "global-id:global-secret:slack" }, { "https://global/redirect:zoom" }, null };
+        final ConsumerConfigSnapshot snapshot = new ConsumerConfigSnapshot(1L, domainValues,
+            globalValues);
+
+        assertEquals("domain-id", snapshot.get("zoom").getClientId());
+        assertEquals("https://global/redirect", snapshot.get("zoom").getRedirectUri());
+        assertEquals("global-id", snapshot.get("slack").getClientId());
+        assertSame(snapshot.get("zoom"), snapshot.get("zoom"));
+        assertTrue(snapshot.isCurrent(1L, new String[][] { { "domain-id:domain-secret:zoom" },
+            null, null }, globalValues));
+        assertFalse(snapshot.isCurrent(1L, new String[][] { { "new-id:new-secret:zoom" }, null,
+            null }, globalValues));
+        assertFalse(snapshot.isCurrent(2L, domainValues, globalValues));
+    }
+
+    /**
+     * Test method for {@link LdapConfiguration#getConsumerConfig}<br>
+     * Validates that a change to the domain's consumer credentials is used
+     * on the next lookup.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testGetConsumerConfigDomainChange() throws Exception {
+        final Provisioning mockProv = EasyMock.createMock(Provisioning.class);
+        final Account mockAccount = EasyMock.createMock(Account.class);
+        final Domain mockDomain = EasyMock.createMock(Domain.class);
+        final Config mockConfig = EasyMock.createMock(Config.class);
+        PowerMock.mockStaticPartial(Provisioning.class, "getInstance");
+
+        expect(Provisioning.getInstance()).andReturn(mockProv).anyTimes();
+        expect(mockProv.getDomain(mockAccount)).andReturn(mockDomain).anyTimes();
+        expect(mockProv.getConfig()).andReturn(mockConfig).anyTimes();
+        expect(mockDomain.getId()).andReturn("domain-id").anyTimes();
+        // expect the credentials to change after three lookups
+        expect(mockDomain.getMultiAttr(Provisioning.A_zimbraOAuthConsumerCredentials))
+            .andReturn(new String[] { "old-id:old-secret:zoom" }).times(3)
+            .andReturn(new String[] { "new-id:new-secret:zoom" });
+        expect(mockDomain.getMultiAttr(EasyMock.anyString())).andReturn(null).anyTimes();
+        expect(mockConfig.getMultiAttr(EasyMock.anyString())).andReturn(null).anyTimes();
+
+        PowerMock.replay(Provisioning.class);
+        EasyMock.replay(mockProv, mockAccount, mockDomain, mockConfig);
+
+        assertEquals("old-id", LdapConfiguration.getConsumerConfig(mockAccount, "zoom")
+            .getClientId());
+        assertSame(LdapConfiguration.getConsumerConfig(mockAccount, "zoom"),
+            LdapConfiguration.getConsumerConfig(mockAccount, "zoom"));
+        assertEquals("new-id", LdapConfiguration.getConsumerConfig(mockAccount, "zoom")
+            .getClientId());
+    }
+}
@@ -0,0 +1,158 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+import com.zimbra.oauth.models.HttpResponseWrapper;
+
+/**
+ * Test class for {@link OAuth2AsyncHttpClient}.
+ */
+public class OAuth2AsyncHttpClientTest {
+
+    protected final String host = "provider.test";
+    protected final String target = "https://provider.test/api";
+    protected CloseableHttpAsyncClient mockClient;
+    protected Capture<FutureCallback<HttpResponse>> callback;
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        mockClient = EasyMock.createMock(CloseableHttpAsyncClient.class);
+        callback = Capture.newInstance();
+        OAuth2AsyncHttpClient.client = mockClient;
+        OAuth2CircuitBreaker.breakers.put(host, new OAuth2CircuitBreaker(host, true, 50, 50,
+            1000, 1, 1, 30000, 1, new OAuth2HttpMetrics()));
+    }
+
+    /**
+     * Teardown for tests.
+     */
+    @After
+    public void tearDown() {
+        OAuth2AsyncHttpClient.client = null;
+        OAuth2CircuitBreaker.reset();
+    }
+
+    /**
+     * Test method for {@link OAuth2AsyncHttpClient#execute}<br>
+     * Validates that a received response completes the future with the
+     * response and its body.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testExecute() throws Exception {
+        final byte[] body = "{\"ok\":true}".getBytes();
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(body));
+
+        expectExecute();
+        replay(mockClient);
+
+        final CompletableFuture<HttpResponseWrapper> future = OAuth2AsyncHttpClient
+            .execute(new HttpGet(target));
+        assertFalse(future.isDone());
+        callback.getValue().completed(response);
+
+        verify(mockClient);
+        try (final HttpResponseWrapper wrapper = future.get()) {
+            assertEquals(response, wrapper.getResponse());
+            assertArrayEquals(body, wrapper.getEntityBytes());
+        }
+    }
+
+    /**
+     * Test method for {@link OAuth2AsyncHttpClient#execute}<br>
+     * Validates that requests are rejected without being sent while the
+     * provider's circuit is open.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testExecuteCircuitOpen() throws Exception {
+        final OAuth2CircuitBreaker breaker = OAuth2CircuitBreaker.breakers.get(host);
+        breaker.acquire();
+        breaker.onError(new ConnectException(), System.nanoTime());
+
+        replay(mockClient);
+
+        final CompletableFuture<HttpResponseWrapper> future = OAuth2AsyncHttpClient
+            .execute(new HttpGet(target));
+
+        verify(mockClient);
+        try {
+            future.get();
+            fail("Expected the request to be rejected.");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceException);
+            assertEquals(ServiceException.TEMPORARILY_UNAVAILABLE,
+                ((ServiceException) e.getCause()).getCode());
+        }
+    }
+
+    /**
+     * Test method for {@link OAuth2AsyncHttpClient#execute}<br>
+     * Validates that cancelling the future aborts the request.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testExecuteCancelled() throws Exception {
+        final HttpGet request = new HttpGet(target);
+
+        expectExecute();
+        replay(mockClient);
+
+        final CompletableFuture<HttpResponseWrapper> future = OAuth2AsyncHttpClient
+            .execute(request);
+        future.cancel(true);
+
+        verify(mockClient);
+        assertTrue(request.isAborted());
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void expectExecute() {
+        expect(mockClient.execute(anyObject(HttpAsyncRequestProducer.class),
+            anyObject(HttpAsyncResponseConsumer.class), anyObject(HttpContext.class),
+            capture(callback))).andReturn(null);
+    }
+}
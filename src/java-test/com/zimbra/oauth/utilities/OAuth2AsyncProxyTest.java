@@ -0,0 +1,135 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.nio.IOControl;
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+import com.zimbra.oauth.utilities.OAuth2AsyncProxy.ProxyExchange;
+
+/**
+ * Test class for {@link OAuth2AsyncProxy}.
+ */
+public class OAuth2AsyncProxyTest {
+
+    protected AsyncContext mockAsyncContext;
+    protected HttpServletResponse mockResponse;
+    protected ServletOutputStream mockOutput;
+    protected IOControl mockIOControl;
+    protected AtomicBoolean released;
+    protected ProxyExchange exchange;
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        mockAsyncContext = EasyMock.createMock(AsyncContext.class);
+        mockResponse = EasyMock.createNiceMock(HttpServletResponse.class);
+        mockOutput = EasyMock.createMock(ServletOutputStream.class);
+        mockIOControl = EasyMock.createMock(IOControl.class);
+        released = new AtomicBoolean();
+        final OAuth2CircuitBreaker breaker = new OAuth2CircuitBreaker("provider.test", false, 50,
+            50, 1000, 4, 4, 30000, 2, new OAuth2HttpMetrics());
+        exchange = new ProxyExchange(mockAsyncContext, mockResponse, "https://provider.test/",
+            breaker, () -> released.set(true));
+    }
+
+    /**
+     * Test method for {@link ProxyExchange#onByteReceived}<br>
+     * Validates that the target's input is suspended while the client cannot
+     * take more data, resumed once the pending data is written, and that the
+     * request completes once the whole response is written.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testBackPressure() throws Exception {
+        final byte[] chunk = "chunk".getBytes();
+        exchange.out = mockOutput;
+
+        // expect the client to be busy
+        expect(mockOutput.isReady()).andReturn(false);
+        mockIOControl.suspendInput();
+        expectLastCall();
+        // expect the pending chunk to be written once possible
+        expect(mockOutput.isReady()).andReturn(true);
+        mockOutput.write(aryEq(chunk));
+        expectLastCall();
+        mockIOControl.requestInput();
+        expectLastCall();
+        // expect to complete once the response is received
+        expect(mockOutput.isReady()).andReturn(true);
+        mockAsyncContext.complete();
+        expectLastCall();
+
+        replay(mockOutput);
+        replay(mockIOControl);
+        replay(mockAsyncContext);
+
+        exchange.onByteReceived(ByteBuffer.wrap(chunk), mockIOControl);
+        exchange.onWritePossible();
+        exchange.buildResult(null);
+
+        verify(mockOutput);
+        verify(mockIOControl);
+        verify(mockAsyncContext);
+        assertTrue(released.get());
+    }
+
+    /**
+     * Test method for {@link ProxyExchange#onTimeout}<br>
+     * Validates that a timeout before the target responds aborts the target
+     * request, sends an error, and completes the request.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTimeout() throws Exception {
+        final Future<Void> mockFuture = EasyMock.createMock(Future.class);
+        final StringWriter output = new StringWriter();
+
+        expect(mockFuture.isDone()).andReturn(false);
+        expect(mockFuture.cancel(true)).andReturn(true);
+        expect(mockResponse.getWriter()).andReturn(new PrintWriter(output));
+        mockAsyncContext.complete();
+        expectLastCall();
+
+        replay(mockFuture);
+        replay(mockResponse);
+        replay(mockAsyncContext);
+
+        exchange.start(mockFuture);
+        exchange.onTimeout(null);
+
+        verify(mockFuture);
+        verify(mockAsyncContext);
+        assertTrue(output.toString()
+            .contains(OAuth2ErrorConstants.ERROR_PROXY_TIMEOUT.getValue()));
+        assertTrue(released.get());
+    }
+}
@@ -0,0 +1,100 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+
+/**
+ * Test class for {@link OAuth2Bulkhead}.
+ */
+public class OAuth2BulkheadTest {
+
+    protected final String client = "test-client";
+    protected OAuth2HttpMetrics metrics;
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        metrics = new OAuth2HttpMetrics();
+    }
+
+    /**
+     * Test method for {@link OAuth2Bulkhead#acquire}<br>
+     * Validates that requests are rejected without waiting once the permits
+     * are taken and queueing is disabled, and that released permits are
+     * reused.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testRejectWhenFull() throws Exception {
+        final OAuth2Bulkhead bulkhead = new OAuth2Bulkhead(client, 2, 0, 1000, metrics);
+        bulkhead.acquire();
+        bulkhead.acquire();
+        assertEquals(2, bulkhead.getInFlight());
+
+        final long start = System.currentTimeMillis();
+        try {
+            bulkhead.acquire();
+            fail("Expected the request to be rejected.");
+        } catch (final ServiceException e) {
+            assertEquals(ServiceException.TEMPORARILY_UNAVAILABLE, e.getCode());
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1L,
+            metrics.getCounters().get(client + ".bulkhead_rejections").longValue());
+
+        bulkhead.release();
+        bulkhead.acquire();
+        assertEquals(2, bulkhead.getInFlight());
+    }
+
+    /**
+     * Test method for {@link OAuth2Bulkhead#acquire}<br>
+     * Validates that a queued request gets a permit released while it waits,
+     * and that the queue depth is reported while waiting.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testQueue() throws Exception {
+        final OAuth2Bulkhead bulkhead = new OAuth2Bulkhead(client, 1, 1, 5000, metrics);
+        bulkhead.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                bulkhead.acquire();
+                acquired.countDown();
+            } catch (final ServiceException e) {
+                // counted as not acquired
+            }
+        });
+        waiter.start();
+        while (bulkhead.getQueueDepth() == 0) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, bulkhead.getQueueDepth());
+
+        bulkhead.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(0, bulkhead.getQueueDepth());
+        assertEquals(1L, metrics.getCounters().get(client + ".bulkhead_queued").longValue());
+    }
+}
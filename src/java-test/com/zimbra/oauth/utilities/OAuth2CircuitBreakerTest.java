@@ -0,0 +1,195 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+import com.zimbra.oauth.utilities.OAuth2CircuitBreaker.State;
+
+/**
+ * Test class for {@link OAuth2CircuitBreaker}.
+ */
+public class OAuth2CircuitBreakerTest {
+
+    protected final String host = "provider.test";
+    protected OAuth2HttpMetrics metrics;
+    protected TestBreaker breaker;
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        metrics = new OAuth2HttpMetrics();
+        // open at 50% failures or slow calls of the last 4 calls
+        breaker = new TestBreaker(host, 50, 50, 1000, 4, 4, 30000, 2, metrics);
+    }
+
+    /**
+     * Teardown for tests.
+     */
+    @After
+    public void tearDown() {
+        OAuth2CircuitBreaker.breakers.clear();
+    }
+
+    /**
+     * Test method for {@link OAuth2CircuitBreaker#acquire}<br>
+     * Validates that the circuit opens once the failure rate is reached and
+     * rejects calls while open.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testOpenOnFailureRate() throws Exception {
+        call(200);
+        call(503);
+        call(200);
+        assertEquals(State.CLOSED, breaker.getState());
+        breaker.acquire();
+        breaker.onError(new ConnectException(), System.nanoTime());
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertRejected();
+        assertEquals(1L, metrics.getCounters().get(host + ".circuit_opened").longValue());
+        assertEquals(1L, metrics.getCounters().get(host + ".circuit_rejections").longValue());
+    }
+
+    /**
+     * Test method for {@link OAuth2CircuitBreaker#acquire}<br>
+     * Validates that slow successful calls open the circuit.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testOpenOnSlowCalls() throws Exception {
+        final long slowStart = System.nanoTime() - TimeUnit.SECONDS.toNanos(2);
+        call(200);
+        call(200);
+        breaker.acquire();
+        breaker.onResponse(buildResponse(200), slowStart);
+        assertEquals(State.CLOSED, breaker.getState());
+        breaker.acquire();
+        breaker.onResponse(buildResponse(200), slowStart);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Test method for {@link OAuth2CircuitBreaker#acquire}<br>
+     * Validates that after the open duration a limited number of trial calls
+     * is let through, closing the circuit if they succeed and opening it
+     * again if one fails.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testHalfOpen() throws Exception {
+        breaker.transition(State.OPEN);
+        breaker.time += 30000;
+
+        breaker.acquire();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.acquire();
+        assertRejected();
+        breaker.onResponse(buildResponse(200), System.nanoTime());
+        breaker.onResponse(buildResponse(200), System.nanoTime());
+        assertEquals(State.CLOSED, breaker.getState());
+
+        breaker.transition(State.OPEN);
+        breaker.time += 30000;
+        breaker.acquire();
+        breaker.onResponse(buildResponse(500), System.nanoTime());
+        assertEquals(State.OPEN, breaker.getState());
+        assertRejected();
+        assertEquals(1L, metrics.getCounters().get(host + ".circuit_closed").longValue());
+        assertEquals(2L, metrics.getCounters().get(host + ".circuit_half_opened").longValue());
+    }
+
+    /**
+     * Test method for {@link OAuth2CircuitBreaker#evictIdle}<br>
+     * Validates that closed breakers without calls are evicted with their
+     * gauges, and that open breakers are kept.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testEvictIdle() throws Exception {
+        final TestBreaker open = new TestBreaker("open.test", 50, 50, 1000, 4, 4, 30000, 2,
+            metrics);
+        for (final TestBreaker tracked : new TestBreaker[] { breaker, open }) {
+            tracked.acquire();
+            tracked.gauge = () -> tracked.getState().getValue();
+            metrics.registerGauge(tracked.getGaugeName(), tracked.gauge);
+            OAuth2CircuitBreaker.breakers.put(tracked.getHost(), tracked);
+        }
+        open.transition(State.OPEN);
+
+        OAuth2CircuitBreaker.evictIdle();
+        assertEquals(2, OAuth2CircuitBreaker.breakers.size());
+
+        breaker.time += OAuth2CircuitBreaker.IDLE_TIMEOUT;
+        open.time += OAuth2CircuitBreaker.IDLE_TIMEOUT;
+        OAuth2CircuitBreaker.evictIdle();
+        assertFalse(OAuth2CircuitBreaker.breakers.containsKey(host));
+        assertTrue(OAuth2CircuitBreaker.breakers.containsKey("open.test"));
+        assertFalse(metrics.getGauges().containsKey(breaker.getGaugeName()));
+        assertTrue(metrics.getGauges().containsKey(open.getGaugeName()));
+    }
+
+    protected void call(int status) throws ServiceException {
+        breaker.acquire();
+        breaker.onResponse(buildResponse(status), System.nanoTime());
+    }
+
+    protected void assertRejected() {
+        try {
+            breaker.acquire();
+            fail("Expected the call to be rejected.");
+        } catch (final ServiceException e) {
+            assertEquals(ServiceException.TEMPORARILY_UNAVAILABLE, e.getCode());
+        }
+    }
+
+    protected HttpResponse buildResponse(int status) {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+    }
+
+    /**
+     * Breaker with a controllable clock.
+     */
+    protected static class TestBreaker extends OAuth2CircuitBreaker {
+
+        protected long time = 1000000;
+
+        public TestBreaker(String host, int failureRateThreshold, int slowCallRateThreshold,
+            long slowCallDuration, int windowSize, int minimumCalls, long openDuration,
+            int halfOpenCalls, OAuth2HttpMetrics metrics) {
+            super(host, true, failureRateThreshold, slowCallRateThreshold, slowCallDuration,
+                windowSize, minimumCalls, openDuration, halfOpenCalls, metrics);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+}
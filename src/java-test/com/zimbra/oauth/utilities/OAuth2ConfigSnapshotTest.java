@@ -0,0 +1,57 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link OAuth2ConfigSnapshot}.
+ */
+public class OAuth2ConfigSnapshotTest {
+
+    /**
+     * Test method for {@link OAuth2ConfigSnapshot#get}<br>
+     * Validates that values, including missing ones, are read once.
+     */
+    @Test
+    public void testGet() {
+        final AtomicInteger reads = new AtomicInteger();
+        final OAuth2ConfigSnapshot snapshot = new OAuth2ConfigSnapshot(1L, (key) -> {
+            reads.incrementAndGet();
+            return "present".equals(key) ? "value" : null;
+        }, 0L);
+
+        assertEquals("value", snapshot.get("present"));
+        assertEquals("value", snapshot.get("present"));
+        assertNull(snapshot.get("missing"));
+        assertNull(snapshot.get("missing"));
+        assertEquals(2, reads.get());
+        assertEquals(2, snapshot.size());
+    }
+
+    /**
+     * Test method for {@link OAuth2ConfigSnapshot#isExpired}<br>
+     * Validates that snapshots expire after their max age only if set.
+     *
+     * @throws Exception If there are issues waiting
+     */
+    @Test
+    public void testIsExpired() throws Exception {
+        final OAuth2ConfigSnapshot noMaxAge = new OAuth2ConfigSnapshot(1L, (key) -> null, 0L);
+        final OAuth2ConfigSnapshot maxAge = new OAuth2ConfigSnapshot(1L, (key) -> null, 1L);
+        Thread.sleep(1L);
+
+        assertFalse(noMaxAge.isExpired());
+        assertTrue(maxAge.isExpired());
+    }
+}
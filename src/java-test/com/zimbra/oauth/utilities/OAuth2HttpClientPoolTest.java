@@ -0,0 +1,141 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import com.zimbra.common.net.SocketFactories;
+import com.zimbra.cs.httpclient.HttpProxyUtil;
+
+/**
+ * Test class for {@link OAuth2HttpClientPool}.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ HttpProxyUtil.class, OAuth2CacheUtilities.class, SocketFactories.class })
+public class OAuth2HttpClientPoolTest {
+
+    protected final String host = "provider.test";
+
+    /**
+     * Configured localconfig values.
+     */
+    protected final Map<String, String> localConfig = new HashMap<String, String>();
+
+    /**
+     * Setup for tests.
+     *
+     * @throws Exception If there are issues mocking
+     */
+    @Before
+    public void setUp() throws Exception {
+        PowerMock.mockStaticPartial(OAuth2CacheUtilities.class, "getLCString");
+        PowerMock.mockStaticPartial(HttpProxyUtil.class, "configureProxy");
+        PowerMock.mockStaticPartial(SocketFactories.class, "getRegistry");
+
+        // expect localconfig reads to be served from the test values
+        expect(OAuth2CacheUtilities.getLCString(anyString(), anyString())).andAnswer(() -> {
+            final Object[] args = EasyMock.getCurrentArguments();
+            return StringUtils.defaultIfEmpty(localConfig.get(args[0]), (String) args[1]);
+        }).anyTimes();
+    }
+
+    /**
+     * Teardown for tests.
+     */
+    @After
+    public void tearDown() {
+        OAuth2HttpClientPool.shutdown();
+    }
+
+    /**
+     * Test method for {@link OAuth2HttpClientPool#getSetting}<br>
+     * Validates that a provider value is used when set, then the global
+     * value, then the default.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testGetSetting() throws Exception {
+        PowerMock.replay(OAuth2CacheUtilities.class);
+
+        assertEquals(Integer.parseInt(OAuth2Constants.HTTP_MAX_CONNECTIONS.getValue()),
+            getMaxConnections(host));
+
+        localConfig.put(OAuth2ConfigConstants.LC_HTTP_MAX_CONNECTIONS.getValue(), "40");
+        assertEquals(40, getMaxConnections(host));
+
+        localConfig.put(String.format(
+            OAuth2ConfigConstants.LC_OAUTH_HTTP_MAX_CONNECTIONS_TEMPLATE.getValue(), host), "5");
+        assertEquals(5, getMaxConnections(host));
+        assertEquals(40, getMaxConnections("other.test"));
+
+        // expect an invalid provider value to fall back to the global value
+        localConfig.put(String.format(
+            OAuth2ConfigConstants.LC_OAUTH_HTTP_MAX_CONNECTIONS_TEMPLATE.getValue(), host), "x");
+        assertEquals(40, getMaxConnections(host));
+    }
+
+    /**
+     * Test method for {@link OAuth2HttpClientPool#getHttpClient}<br>
+     * Validates that a provider's client is created once with Zimbra's
+     * socket factories and reused, and that each provider has its own.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testGetHttpClientReuse() throws Exception {
+        // expect one client per provider, each with zimbra's socket factories
+        expect(SocketFactories.getRegistry()).andReturn(RegistryBuilder
+            .<ConnectionSocketFactory> create()
+            .register("http", PlainConnectionSocketFactory.getSocketFactory())
+            .register("https", SSLConnectionSocketFactory.getSocketFactory())
+            .build()).times(2);
+        HttpProxyUtil.configureProxy(anyObject(HttpClientBuilder.class));
+        PowerMock.expectLastCall().times(2);
+
+        PowerMock.replay(OAuth2CacheUtilities.class);
+        PowerMock.replay(HttpProxyUtil.class);
+        PowerMock.replay(SocketFactories.class);
+
+        final HttpClient client = OAuth2HttpClientPool.getHttpClient(host);
+        assertSame(client, OAuth2HttpClientPool.getHttpClient(host));
+        assertNotSame(client, OAuth2HttpClientPool.getHttpClient("other.test"));
+
+        PowerMock.verify(HttpProxyUtil.class);
+        PowerMock.verify(SocketFactories.class);
+    }
+
+    protected int getMaxConnections(String host) {
+        return OAuth2HttpClientPool.getSetting(host,
+            OAuth2ConfigConstants.LC_HTTP_MAX_CONNECTIONS,
+            OAuth2ConfigConstants.LC_OAUTH_HTTP_MAX_CONNECTIONS_TEMPLATE,
+            OAuth2Constants.HTTP_MAX_CONNECTIONS);
+    }
+}
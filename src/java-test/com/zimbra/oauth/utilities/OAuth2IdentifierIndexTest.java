@@ -0,0 +1,108 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.oauth.cache.OAuth2LocalCacheHelper;
+
+/**
+ * Test class for {@link OAuth2IdentifierIndex}.
+ */
+public class OAuth2IdentifierIndexTest {
+
+    /**
+     * Account ids by identifier, as held by the client's datasources.
+     */
+    protected Map<String, String> dataSources;
+
+    /**
+     * Number of datasource searches.
+     */
+    protected int searches;
+
+    /**
+     * Index under test, searching the test datasources.
+     */
+    protected OAuth2IdentifierIndex index;
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        dataSources = new HashMap<String, String>();
+        searches = 0;
+        index = new OAuth2IdentifierIndex("zoom", new OAuth2LocalCacheHelper(100), 60) {
+            @Override
+            protected String find(String identifier) {
+                searches++;
+                return dataSources.get(identifier);
+            }
+        };
+    }
+
+    /**
+     * Test method for {@link OAuth2IdentifierIndex#get}<br>
+     * Validates that identifiers are resolved from the datasources once and
+     * then served from memory, including identifiers without a datasource.
+     */
+    @Test
+    public void testGet() {
+        dataSources.put("account-user", "zimbra-id");
+
+        assertEquals("zimbra-id", index.get("account-user"));
+        assertEquals("zimbra-id", index.get("account-user"));
+        assertNull(index.get("other"));
+        assertNull(index.get("other"));
+        assertNull(index.get(null));
+        assertEquals(2, searches);
+    }
+
+    /**
+     * Test method for {@link OAuth2IdentifierIndex#put}<br>
+     * Validates that identifiers authorized on this node are served without
+     * searching, and removed identifiers are searched again.
+     */
+    @Test
+    public void testPutRemove() {
+        assertNull(index.get("account-user"));
+        index.put("account-user", "zimbra-id");
+
+        assertEquals("zimbra-id", index.get("account-user"));
+        assertEquals(1, searches);
+
+        index.remove("account-user");
+        assertNull(index.get("account-user"));
+        assertEquals(2, searches);
+    }
+
+    /**
+     * Test method for {@link OAuth2IdentifierIndex#merge}<br>
+     * Validates that only identifiers that are not indexed yet are added, so
+     * entries written during a rebuild are kept.
+     */
+    @Test
+    public void testMerge() {
+        index.put("account-user", "new-zimbra-id");
+        assertNull(index.get("account-other"));
+
+        assertFalse(index.merge("account-user", "old-zimbra-id"));
+        assertTrue(index.merge("account-other", "other-zimbra-id"));
+        assertEquals("new-zimbra-id", index.get("account-user"));
+        assertEquals("other-zimbra-id", index.get("account-other"));
+        assertEquals(1, searches);
+    }
+}
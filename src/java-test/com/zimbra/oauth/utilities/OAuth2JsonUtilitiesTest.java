@@ -0,0 +1,70 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Test class for {@link OAuth2JsonUtilities}.
+ */
+public class OAuth2JsonUtilitiesTest {
+
+    /**
+     * Test method for {@link OAuth2JsonUtilities#streamToJson}<br>
+     * Validates that a stream is parsed, and that an empty stream is null.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testStreamToJson() throws Exception {
+        final JsonNode json = OAuth2JsonUtilities
+            .streamToJson(toStream("{\"access_token\":\"token\",\"expires_in\":3600}"));
+
+        assertEquals("token", json.get("access_token").asText());
+        assertEquals(3600, json.get("expires_in").asInt());
+        assertNull(OAuth2JsonUtilities.streamToJson(toStream("")));
+    }
+
+    /**
+     * Test method for {@link OAuth2JsonUtilities#streamRecords}<br>
+     * Validates that each element of the array field is passed to the
+     * consumer, and that the other fields are returned.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testStreamRecords() throws Exception {
+        final List<String> records = new ArrayList<String>();
+        final ObjectNode envelope = OAuth2JsonUtilities.streamRecords(
+            toStream("{\"connections\":[{\"id\":\"1\"},{\"id\":\"2\"}],"
+                + "\"nextPageToken\":\"page-2\",\"totalItems\":2}"),
+            "connections", (record) -> records.add(record.get("id").asText()));
+
+        assertEquals(2, records.size());
+        assertEquals("1", records.get(0));
+        assertEquals("2", records.get(1));
+        assertFalse(envelope.has("connections"));
+        assertEquals("page-2", envelope.get("nextPageToken").asText());
+        assertEquals(2, envelope.get("totalItems").asInt());
+    }
+
+    protected InputStream toStream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,171 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the per-request overhead of proxying with a client built for
+ * every request (the previous OAuth2ProxyUtilities.doProxy) and with one
+ * shared client and a per-request HttpClientContext, at increasing thread
+ * counts.<br>
+ * Both variants share one connection manager, as the external Zimbra
+ * connection manager is shared, and send basic auth credentials with every
+ * request.<br>
+ * Not a unit test, run manually:<br>
+ * <code>java com.zimbra.oauth.utilities.OAuth2ProxyClientBenchmark [ops per thread] [thread counts...]</code><br>
+ * Reports throughput, mean latency, and bytes allocated per request against
+ * a local http server.
+ */
+public class OAuth2ProxyClientBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final int ops = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final List<Integer> threadCounts = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++) {
+            threadCounts.add(Integer.parseInt(args[i]));
+        }
+        if (threadCounts.isEmpty()) {
+            threadCounts.addAll(Arrays.asList(1, 4, 16));
+        }
+
+        // avoid delayed acks dominating the latency
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        final byte[] body = "{\"ok\":true}".getBytes();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(32));
+        server.start();
+        final String target = String.format("http://127.0.0.1:%d/",
+            server.getAddress().getPort());
+
+        final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(100);
+        manager.setDefaultMaxPerRoute(100);
+        final HttpClient sharedClient = HttpClientBuilder.create()
+            .setConnectionManager(manager)
+            .setConnectionManagerShared(true)
+            .setRedirectStrategy(new DefaultRedirectStrategy())
+            .build();
+
+        // previous pattern: new builder and client for every request
+        final Executor perRequest = (request) -> {
+            final HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(manager)
+                .setConnectionManagerShared(true);
+            builder.setDefaultCredentialsProvider(buildCredentials());
+            builder.setRedirectStrategy(new DefaultRedirectStrategy());
+            return builder.build().execute(request);
+        };
+        final Executor shared = (request) -> {
+            final HttpClientContext context = HttpClientContext.create();
+            context.setCredentialsProvider(buildCredentials());
+            return sharedClient.execute(request, context);
+        };
+
+        try {
+            for (final int threads : threadCounts) {
+                // warm up both variants before measuring
+                run("warm-up", threads, ops / 10, target, false, perRequest);
+                run("warm-up", threads, ops / 10, target, false, shared);
+                run("per-request", threads, ops, target, true, perRequest);
+                run("shared", threads, ops, target, true, shared);
+            }
+        } finally {
+            manager.close();
+            server.stop(0);
+            System.exit(0);
+        }
+    }
+
+    protected static CredentialsProvider buildCredentials() {
+        final CredentialsProvider provider = new BasicCredentialsProvider();
+        provider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials("user", "pass"));
+        return provider;
+    }
+
+    protected static void run(String name, int threads, int ops, String target, boolean report,
+        Executor executor) throws InterruptedException {
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong allocated = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                final long threadId = Thread.currentThread().getId();
+                try {
+                    start.await();
+                    final long before = threadBean.getThreadAllocatedBytes(threadId);
+                    for (int i = 0; i < ops; i++) {
+                        final HttpGet request = new HttpGet(target);
+                        try {
+                            final HttpResponse response = executor.execute(request);
+                            EntityUtils.consume(response.getEntity());
+                        } catch (final Exception e) {
+                            failures.incrementAndGet();
+                        } finally {
+                            request.releaseConnection();
+                        }
+                    }
+                    allocated.addAndGet(threadBean.getThreadAllocatedBytes(threadId) - before);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        final long elapsed = System.nanoTime() - begin;
+        if (report) {
+            final double requests = (double) threads * ops;
+            System.out.printf(
+                "%-12s threads: %3d  req/s: %,10.0f  mean: %,8.1f us  alloc/req: %,8.0f B  failures: %d%n",
+                name, threads, requests / elapsed * 1e9, elapsed / 1e3 / ops,
+                allocated.get() / requests, failures.get());
+        }
+    }
+
+    /**
+     * Executes a proxied request.
+     */
+    protected interface Executor {
+
+        HttpResponse execute(HttpGet request) throws Exception;
+    }
+}
@@ -0,0 +1,152 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Test class for {@link OAuth2ProxyUtilities}.
+ */
+public class OAuth2ProxyUtilitiesTest {
+
+    protected final String target = "https://provider.test/";
+
+    /**
+     * Test method for {@link OAuth2ProxyUtilities#buildContext}<br>
+     * Validates that the credentials of a request are held in its own
+     * context, so a following request without credentials on the shared
+     * client does not send them.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testBuildContextCredentialsPerRequest() throws Exception {
+        final HttpServletRequest withAuth = mockRequest("basic", "user", "pass");
+        final HttpServletRequest withoutAuth = mockRequest(null, null, null);
+        replay(withAuth);
+        replay(withoutAuth);
+
+        final HttpClientContext first = OAuth2ProxyUtilities
+            .buildContext(withAuth, new HttpGet(target), RequestConfig.DEFAULT);
+        final HttpClientContext second = OAuth2ProxyUtilities
+            .buildContext(withoutAuth, new HttpGet(target), RequestConfig.DEFAULT);
+
+        verify(withAuth);
+        verify(withoutAuth);
+        assertNotSame(first, second);
+        final Credentials credentials = first.getCredentialsProvider()
+            .getCredentials(AuthScope.ANY);
+        assertEquals("user", credentials.getUserPrincipal().getName());
+        assertEquals("pass", credentials.getPassword());
+        assertNull(second.getCredentialsProvider());
+    }
+
+    /**
+     * Test method for {@link OAuth2ProxyUtilities#buildContext}<br>
+     * Validates that redirects are disabled for requests with a body, and
+     * that the client's other defaults are kept.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testBuildContextRedirects() throws Exception {
+        final HttpServletRequest request = mockRequest(null, null, null);
+        final HttpServletRequest bodyRequest = mockRequest(null, null, null);
+        replay(request);
+        replay(bodyRequest);
+        final RequestConfig config = RequestConfig.custom().setSocketTimeout(1234).build();
+
+        final HttpClientContext get = OAuth2ProxyUtilities
+            .buildContext(request, new HttpGet(target), config);
+        final HttpClientContext post = OAuth2ProxyUtilities
+            .buildContext(bodyRequest, new HttpPost(target), config);
+
+        assertTrue(get.getRequestConfig().isRedirectsEnabled());
+        assertFalse(post.getRequestConfig().isRedirectsEnabled());
+        assertEquals(1234, post.getRequestConfig().getSocketTimeout());
+    }
+
+    /**
+     * Test method for {@link OAuth2ProxyUtilities#buildContext}<br>
+     * Validates that a cookie set by the target for one request is not sent
+     * on a following request on the shared client.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testBuildContextCookiesPerRequest() throws Exception {
+        final AtomicReference<String> cookie = new AtomicReference<String>();
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            cookie.set(exchange.getRequestHeaders().getFirst("Cookie"));
+            exchange.getResponseHeaders().add("Set-Cookie", "JSESSIONID=user-a; Path=/");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write("ok".getBytes());
+            }
+        });
+        server.start();
+        final String url = String.format("http://127.0.0.1:%d/",
+            server.getAddress().getPort());
+        final HttpServletRequest first = mockRequest(null, null, null);
+        final HttpServletRequest second = mockRequest(null, null, null);
+        replay(first);
+        replay(second);
+
+        try (CloseableHttpClient client = HttpClientBuilder.create().build()) {
+            final HttpGet firstGet = new HttpGet(url);
+            try (CloseableHttpResponse response = client.execute(firstGet,
+                OAuth2ProxyUtilities.buildContext(first, firstGet, RequestConfig.DEFAULT))) {
+                EntityUtils.consume(response.getEntity());
+            }
+            final HttpGet secondGet = new HttpGet(url);
+            try (CloseableHttpResponse response = client.execute(secondGet,
+                OAuth2ProxyUtilities.buildContext(second, secondGet, RequestConfig.DEFAULT))) {
+                EntityUtils.consume(response.getEntity());
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        assertNull(cookie.get());
+    }
+
+    protected HttpServletRequest mockRequest(String auth, String user, String pass) {
+        final HttpServletRequest request = EasyMock.createMock(HttpServletRequest.class);
+        expect(request.getParameter("auth")).andReturn(auth);
+        expect(request.getParameter("user")).andReturn(user);
+        expect(request.getParameter("pass")).andReturn(pass);
+        return request;
+    }
+}
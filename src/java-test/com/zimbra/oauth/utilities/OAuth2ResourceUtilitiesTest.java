@@ -194,6 +194,8 @@ public class OAuth2ResourceUtilitiesTest {
             .andReturn(Arrays.asList("code", "error", "state"));
         mockHandler.verifyAndSplitAuthenticateParams(anyObject());
         EasyMock.expectLastCall();
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.authenticate(anyObject(OAuthInfo.class))).andReturn(true);
         expect(mockHandler.getRelay(anyObject())).andReturn(state);
 
@@ -242,6 +244,8 @@ public class OAuth2ResourceUtilitiesTest {
             .andReturn(Arrays.asList("code", "error", "state"));
         mockHandler.verifyAndSplitAuthenticateParams(anyObject());
         EasyMock.expectLastCall();
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.authenticate(anyObject(OAuthInfo.class))).andReturn(true);
         expect(mockHandler.getRelay(anyObject())).andReturn(state);
 
@@ -330,6 +334,8 @@ public class OAuth2ResourceUtilitiesTest {
         mockHandler.verifyAndSplitAuthenticateParams(anyObject());
         EasyMock.expectLastCall();
         expect(mockHandler.getRelay(anyObject())).andReturn(state);
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.authenticate(anyObject(OAuthInfo.class)))
             .andThrow(ServiceException.PERM_DENIED("Access was denied during get_token!"));
 
@@ -371,6 +377,8 @@ public class OAuth2ResourceUtilitiesTest {
         expect(ClassManager.getHandler(matches(client))).andReturn(mockHandler);
         expect(mockHandler.getAuthorizeParamKeys())
             .andReturn(Arrays.asList("state", "type"));
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.refresh(anyObject(OAuthInfo.class))).andReturn(true);
 
         PowerMock.replay(ClassManager.class);
@@ -413,6 +421,8 @@ public class OAuth2ResourceUtilitiesTest {
         expect(ClassManager.getHandler(matches(client))).andReturn(mockHandler);
         expect(mockHandler.getAuthorizeParamKeys())
             .andReturn(Arrays.asList("state", "type"));
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.refresh(anyObject(OAuthInfo.class)))
             .andThrow(ServiceException.UNSUPPORTED());
 
@@ -450,6 +460,8 @@ public class OAuth2ResourceUtilitiesTest {
         OAuth2ResourceUtilities.getAccount(anyObject(AuthToken.class));
         PowerMock.expectLastCall().andReturn(null);
         expect(ClassManager.getHandler(matches(client))).andReturn(mockHandler);
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.info(anyObject(OAuthInfo.class))).andReturn(true);
 
         PowerMock.replay(ClassManager.class);
@@ -486,6 +498,8 @@ public class OAuth2ResourceUtilitiesTest {
         OAuth2ResourceUtilities.getAccount(anyObject(AuthToken.class));
         PowerMock.expectLastCall().andReturn(null);
         expect(ClassManager.getHandler(matches(client))).andReturn(mockHandler);
+        // expect to resolve the client's bulkhead
+        expect(ClassManager.getClientName(matches(client))).andReturn(client);
         expect(mockHandler.info(anyObject(OAuthInfo.class)))
             .andThrow(ServiceException.NOT_FOUND("config not found"));
 
@@ -0,0 +1,118 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+
+/**
+ * Test class for {@link OAuth2RetryPolicy}.
+ */
+public class OAuth2RetryPolicyTest {
+
+    protected final String host = "provider.test";
+    protected final HttpGet get = new HttpGet("https://provider.test/contacts");
+    protected final HttpPost post = new HttpPost("https://provider.test/token");
+    protected OAuth2HttpMetrics metrics;
+    protected OAuth2RetryPolicy policy;
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        metrics = new OAuth2HttpMetrics();
+        policy = new OAuth2RetryPolicy(host, 3, 100, 1000, 10, 2, metrics);
+    }
+
+    /**
+     * Test method for {@link OAuth2RetryPolicy#getRetryDelay}<br>
+     * Validates that throttled requests wait as long as the provider asks,
+     * and are not retried if that is longer than the max delay.
+     */
+    @Test
+    public void testRetryAfter() {
+        assertEquals(1000, policy.getRetryDelay(get, buildResponse(429, "1"), 1));
+        assertEquals(OAuth2RetryPolicy.NO_RETRY,
+            policy.getRetryDelay(get, buildResponse(429, "120"), 1));
+    }
+
+    /**
+     * Test method for {@link OAuth2RetryPolicy#getRetryDelay}<br>
+     * Validates that backoff delays are within the exponential bounds.
+     */
+    @Test
+    public void testBackoff() {
+        final long first = policy.getRetryDelay(get, buildResponse(503, null), 1);
+        final long second = policy.getRetryDelay(get, buildResponse(503, null), 2);
+
+        assertTrue(first >= 0 && first <= 100);
+        assertTrue(second >= 0 && second <= 200);
+        assertEquals(OAuth2RetryPolicy.NO_RETRY,
+            policy.getRetryDelay(get, buildResponse(503, null), 3));
+        assertEquals(1L, metrics.getCounters().get(host + ".retries_exhausted").longValue());
+    }
+
+    /**
+     * Test method for {@link OAuth2RetryPolicy#getRetryDelay}<br>
+     * Validates that token posts are only retried when the provider did not
+     * process them.
+     */
+    @Test
+    public void testNonIdempotent() {
+        policy = new OAuth2RetryPolicy(host, 3, 100, 1000, 10, 10, metrics);
+
+        assertTrue(policy.getRetryDelay(post, buildResponse(503, null), 1) >= 0);
+        assertTrue(policy.getRetryDelay(post, new ConnectException(), 1) >= 0);
+        assertEquals(OAuth2RetryPolicy.NO_RETRY,
+            policy.getRetryDelay(post, buildResponse(502, null), 1));
+        assertEquals(OAuth2RetryPolicy.NO_RETRY,
+            policy.getRetryDelay(post, new SocketTimeoutException(), 1));
+        assertEquals(OAuth2RetryPolicy.NO_RETRY,
+            policy.getRetryDelay(post, buildResponse(500, null), 1));
+    }
+
+    /**
+     * Test method for {@link OAuth2RetryPolicy#getRetryDelay}<br>
+     * Validates that retries stop once the budget is spent, and resume once
+     * enough requests were made.
+     */
+    @Test
+    public void testBudget() {
+        assertTrue(policy.getRetryDelay(get, new SocketTimeoutException(), 1) >= 0);
+        assertTrue(policy.getRetryDelay(get, new SocketTimeoutException(), 1) >= 0);
+        assertEquals(OAuth2RetryPolicy.NO_RETRY,
+            policy.getRetryDelay(get, new SocketTimeoutException(), 1));
+        assertEquals(1L, metrics.getCounters().get(host + ".retry_budget_exhausted").longValue());
+
+        for (int i = 0; i < 10; i++) {
+            policy.onRequest();
+        }
+        assertTrue(policy.getRetryDelay(get, new SocketTimeoutException(), 1) >= 0);
+        assertEquals(3L, metrics.getCounters().get(host + ".retries").longValue());
+    }
+
+    protected HttpResponse buildResponse(int status, String retryAfter) {
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+        if (retryAfter != null) {
+            response.addHeader(OAuth2HttpConstants.HEADER_RETRY_AFTER.getValue(), retryAfter);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,138 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.zimbra.common.service.ServiceException;
+
+/**
+ * Test class for {@link OAuth2SingleFlight}.
+ */
+public class OAuth2SingleFlightTest {
+
+    /**
+     * Class under test.
+     */
+    protected OAuth2SingleFlight<String> singleFlight;
+
+    /**
+     * Test key.
+     */
+    protected final String key = "test-key";
+
+    /**
+     * Setup for tests.
+     */
+    @Before
+    public void setUp() {
+        singleFlight = new OAuth2SingleFlight<String>(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Test method for {@link OAuth2SingleFlight#execute}<br>
+     * Validates that concurrent callers for the same key share a single load.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testExecuteCoalescesConcurrentLoads() throws Exception {
+        final int waiters = 4;
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Map<Thread, String> results = new ConcurrentHashMap<Thread, String>();
+
+        // start the leader and wait for it to begin loading
+        final Thread leader = new Thread(() -> results.put(Thread.currentThread(), load(() -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return "token";
+        })));
+        leader.start();
+        loading.await();
+
+        // the rest should wait on the leader's result
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < waiters; i++) {
+            final Thread waiter = new Thread(() -> results.put(Thread.currentThread(), load(() -> {
+                loads.incrementAndGet();
+                return "other-token";
+            })));
+            threads.add(waiter);
+            waiter.start();
+        }
+        for (final Thread waiter : threads) {
+            while (waiter.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(5);
+            }
+        }
+        release.countDown();
+        threads.add(leader);
+        for (final Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            assertEquals("token", results.get(thread));
+        }
+        assertEquals(1, loads.get());
+        assertFalse(singleFlight.isInFlight(key));
+    }
+
+    /**
+     * Test method for {@link OAuth2SingleFlight#execute}<br>
+     * Validates that a failed load is rethrown and the key is released.
+     *
+     * @throws Exception If there are issues testing
+     */
+    @Test
+    public void testExecuteFailureReleasesKey() throws Exception {
+        try {
+            singleFlight.execute(key, () -> {
+                throw ServiceException.PERM_DENIED("revoked");
+            });
+            fail("Expected exception to be thrown by the loader.");
+        } catch (final ServiceException e) {
+            assertEquals(ServiceException.PERM_DENIED, e.getCode());
+        }
+        assertFalse(singleFlight.isInFlight(key));
+        // next caller loads again
+        assertEquals("token", singleFlight.execute(key, () -> "token"));
+    }
+
+    /**
+     * Executes a load for the test key, wrapping checked exceptions.
+     *
+     * @param loader The loader to execute
+     * @return The loaded value
+     */
+    protected String load(Callable<String> loader) {
+        try {
+            return singleFlight.execute(key, () -> {
+                try {
+                    return loader.call();
+                } catch (final Exception e) {
+                    throw ServiceException.FAILURE("load failed", e);
+                }
+            });
+        } catch (final ServiceException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Test;
+
+import com.zimbra.common.service.ServiceException;
+
+/**
+ * Test class for {@link OAuth2Utilities}.
+ */
+public class OAuth2UtilitiesTest {
+
+    /**
+     * Test method for {@link OAuth2Utilities#toServiceException}<br>
+     * Validates that connection issues from the blocking and async clients
+     * are mapped, and that other issues are not.
+     */
+    @Test
+    public void testToServiceException() {
+        final HttpGet request = new HttpGet("https://localhost/token");
+
+        assertEquals(ServiceException.RESOURCE_UNREACHABLE, OAuth2Utilities
+            .toServiceException(request, new UnknownHostException()).getCode());
+        assertEquals(ServiceException.RESOURCE_UNREACHABLE, OAuth2Utilities
+            .toServiceException(request, new SocketTimeoutException()).getCode());
+        assertEquals(ServiceException.TEMPORARILY_UNAVAILABLE, OAuth2Utilities
+            .toServiceException(request, new TimeoutException()).getCode());
+        assertNull(OAuth2Utilities.toServiceException(request, new IOException()));
+    }
+}
@@ -0,0 +1,51 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link OAuth2WarmUp}.
+ */
+public class OAuth2WarmUpTest {
+
+    /**
+     * Test method for {@link OAuth2WarmUp#run}<br>
+     * Validates that each step is timed in order, and that connections are
+     * skipped when disabled.
+     */
+    @Test
+    public void testRun() {
+        final OAuth2WarmUp warmUp = new OAuth2WarmUp(Collections.<String>emptyList(), false);
+
+        warmUp.run();
+
+        assertEquals(Arrays.asList("config", "handlers", "json", "state"),
+            new ArrayList<String>(warmUp.getTimings().keySet()));
+    }
+
+    /**
+     * Test method for {@link OAuth2WarmUp#step}<br>
+     * Validates that a failing step is timed and does not throw.
+     */
+    @Test
+    public void testStepFailure() {
+        final OAuth2WarmUp warmUp = new OAuth2WarmUp(Collections.<String>emptyList(), false);
+
+        warmUp.step("failing", () -> {
+            throw new IllegalStateException("warm-up failure");
+        });
+
+        assertTrue(warmUp.getTimings().containsKey("failing"));
+    }
+}
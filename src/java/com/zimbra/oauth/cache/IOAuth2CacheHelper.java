@@ -5,6 +5,10 @@
 
 package com.zimbra.oauth.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * The IOAuth2CacheHelper interface.
  *
@@ -24,4 +28,71 @@ public interface IOAuth2CacheHelper {
 
     public String get(String key);
 
+    /**
+     * Fetches a key with its expiry.<br>
+     * Implementations that know when stored values expire should override.
+     *
+     * @param key The key to fetch
+     * @return The entry, or null if not found
+     */
+    public default OAuth2CacheEntry getEntry(String key) {
+        final String value = get(key);
+        return value == null ? null : new OAuth2CacheEntry(value, OAuth2CacheEntry.EXPIRY_UNKNOWN);
+    }
+
+    /**
+     * Stores multiple entries without expiry.<br>
+     * Implementations should batch where the backend supports it.
+     *
+     * @param entries The entries to store
+     */
+    public default void putAll(Map<String, String> entries) {
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Stores multiple entries with the same expiry.<br>
+     * Implementations should batch where the backend supports it.
+     *
+     * @param entries The entries to store
+     * @param expiry The expiry of each entry (seconds)
+     */
+    public default void putAll(Map<String, String> entries, long expiry) {
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue(), expiry);
+        }
+    }
+
+    /**
+     * Removes multiple keys.<br>
+     * Implementations should batch where the backend supports it.
+     *
+     * @param keys The keys to remove
+     */
+    public default void removeAll(Collection<String> keys) {
+        for (final String key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Fetches multiple keys.<br>
+     * Implementations should batch where the backend supports it.
+     *
+     * @param keys The keys to fetch
+     * @return Map of values by key, missing keys are omitted
+     */
+    public default Map<String, String> getAll(Collection<String> keys) {
+        final Map<String, String> values = new HashMap<String, String>();
+        for (final String key : keys) {
+            final String value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
 }
@@ -0,0 +1,61 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache;
+
+/**
+ * The OAuth2CacheEntry class.<br>
+ * A cached value with its expiry, if the backend knows it.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.cache
+ * @copyright Copyright © 2022
+ */
+public class OAuth2CacheEntry {
+
+    /**
+     * Expiry of an entry that does not expire.
+     */
+    public static final long EXPIRY_NONE = 0L;
+
+    /**
+     * Expiry of an entry whose expiry is not known.
+     */
+    public static final long EXPIRY_UNKNOWN = -1L;
+
+    /**
+     * The cached value.
+     */
+    protected final String value;
+
+    /**
+     * The expiry as epoch seconds, or one of the expiry constants.
+     */
+    protected final long expiresAt;
+
+    /**
+     * @param value The cached value
+     * @param expiresAt The expiry as epoch seconds, or one of the expiry
+     *            constants
+     */
+    public OAuth2CacheEntry(String value, long expiresAt) {
+        this.value = value;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return The cached value
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return The expiry as epoch seconds, or one of the expiry constants
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,174 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.zimbra.oauth.metrics.OAuth2CacheMetrics;
+
+/**
+ * The OAuth2InstrumentedCacheHelper class.<br>
+ * Counts and times the operations of another cache helper.<br>
+ * Bulk operations are recorded per key with an even share of the latency.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.cache
+ * @copyright Copyright © 2022
+ */
+public class OAuth2InstrumentedCacheHelper implements IOAuth2CacheHelper {
+
+    /**
+     * The measured cache helper.
+     */
+    protected final IOAuth2CacheHelper delegate;
+
+    /**
+     * The metrics to record to.
+     */
+    protected final OAuth2CacheMetrics metrics;
+
+    /**
+     * The cache layer name.
+     */
+    protected final String layer;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate The measured cache helper
+     * @param metrics The metrics to record to
+     * @param layer The cache layer name
+     */
+    public OAuth2InstrumentedCacheHelper(IOAuth2CacheHelper delegate, OAuth2CacheMetrics metrics,
+        String layer) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.layer = layer;
+    }
+
+    @Override
+    public boolean isValidStorageType() {
+        return delegate.isValidStorageType();
+    }
+
+    @Override
+    public String put(String key, String value) {
+        final long start = System.nanoTime();
+        try {
+            return delegate.put(key, value);
+        } finally {
+            metrics.record(layer, key, OAuth2CacheMetrics.OPERATION_PUT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String put(String key, String value, long expiry) {
+        final long start = System.nanoTime();
+        try {
+            return delegate.put(key, value, expiry);
+        } finally {
+            metrics.record(layer, key, OAuth2CacheMetrics.OPERATION_PUT, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        final long start = System.nanoTime();
+        try {
+            delegate.remove(key);
+        } finally {
+            metrics.record(layer, key, OAuth2CacheMetrics.OPERATION_REMOVE,
+                System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        final long start = System.nanoTime();
+        String value = null;
+        try {
+            value = delegate.get(key);
+            return value;
+        } finally {
+            metrics.recordGet(layer, key, value != null, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public OAuth2CacheEntry getEntry(String key) {
+        final long start = System.nanoTime();
+        OAuth2CacheEntry entry = null;
+        try {
+            entry = delegate.getEntry(key);
+            return entry;
+        } finally {
+            metrics.recordGet(layer, key, entry != null, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries) {
+        final long start = System.nanoTime();
+        try {
+            delegate.putAll(entries);
+        } finally {
+            recordAll(entries.keySet(), OAuth2CacheMetrics.OPERATION_PUT, start);
+        }
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries, long expiry) {
+        final long start = System.nanoTime();
+        try {
+            delegate.putAll(entries, expiry);
+        } finally {
+            recordAll(entries.keySet(), OAuth2CacheMetrics.OPERATION_PUT, start);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        final long start = System.nanoTime();
+        try {
+            delegate.removeAll(keys);
+        } finally {
+            recordAll(keys, OAuth2CacheMetrics.OPERATION_REMOVE, start);
+        }
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        final long start = System.nanoTime();
+        Map<String, String> values = null;
+        try {
+            values = delegate.getAll(keys);
+            return values;
+        } finally {
+            final long share = keys.isEmpty() ? 0 : (System.nanoTime() - start) / keys.size();
+            for (final String key : keys) {
+                metrics.recordGet(layer, key, values != null && values.containsKey(key), share);
+            }
+        }
+    }
+
+    /**
+     * Records a bulk operation per key.
+     *
+     * @param keys The keys of the operation
+     * @param operation The operation
+     * @param start The start System.nanoTime value
+     */
+    protected void recordAll(Collection<String> keys, String operation, long start) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        final long share = (System.nanoTime() - start) / keys.size();
+        for (final String key : keys) {
+            metrics.record(layer, key, operation, share);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The OAuth2LocalCacheHelper class.<br>
+ * Bounded in-process cache for single mailbox node installs where no
+ * shared ephemeral backend is available.<br>
+ * Entries expire individually, and when full the least frequently used of
+ * the least recently used entries is evicted (expired entries first).
+ * Usage frequency is estimated with a small aging count-min sketch so that
+ * evicted keys keep their history.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.cache
+ * @copyright Copyright © 2022
+ */
+public class OAuth2LocalCacheHelper implements IOAuth2CacheHelper {
+
+    /**
+     * Number of least recently used entries considered for eviction.
+     */
+    protected static final int EVICTION_SAMPLE_SIZE = 8;
+
+    /**
+     * Max number of entries.
+     */
+    protected final int maxEntries;
+
+    /**
+     * Entries by key, least recently used first. Guarded by this.
+     */
+    protected final Map<String, LocalCacheEntry> entries = new LinkedHashMap<String, LocalCacheEntry>(
+        16, 0.75f, true);
+
+    /**
+     * Usage frequency estimates. Guarded by this.
+     */
+    protected final FrequencySketch sketch;
+
+    /**
+     * Reads that found a live entry.
+     */
+    protected final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Reads that found no live entry.
+     */
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Writes.
+     */
+    protected final AtomicLong puts = new AtomicLong();
+
+    /**
+     * Live entries evicted to make room.
+     */
+    protected final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Expired entries dropped.
+     */
+    protected final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxEntries Max number of entries
+     */
+    public OAuth2LocalCacheHelper(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.sketch = new FrequencySketch(this.maxEntries);
+    }
+
+    @Override
+    public boolean isValidStorageType() {
+        return true;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        store(key, value, 0);
+        return value;
+    }
+
+    @Override
+    public String put(String key, String value, long expiry) {
+        if (expiry <= 0) {
+            // already expired
+            remove(key);
+            return value;
+        }
+        // zero is reserved for no expiry
+        store(key, value, (System.nanoTime() + TimeUnit.SECONDS.toNanos(expiry)) | 1L);
+        return value;
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized String get(String key) {
+        recordAccess(key);
+        final LocalCacheEntry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * @return The number of entries (may include expired entries)
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of reads that found a live entry
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of reads that found no live entry
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of writes
+     */
+    public long getPutCount() {
+        return puts.get();
+    }
+
+    /**
+     * @return The number of live entries evicted to make room
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return The number of expired entries dropped
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Clears the counters.
+     */
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        puts.set(0);
+        evictions.set(0);
+        expirations.set(0);
+    }
+
+    /**
+     * Stores an entry, evicting another if the cache is full.
+     *
+     * @param key The key to store
+     * @param value The value to store
+     * @param expiresAt Expiry as System.nanoTime value, zero for none
+     */
+    protected synchronized void store(String key, String value, long expiresAt) {
+        recordAccess(key);
+        puts.incrementAndGet();
+        if (!entries.containsKey(key) && entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(key, new LocalCacheEntry(value, expiresAt));
+    }
+
+    /**
+     * Evicts one entry: the first expired or least frequently used entry
+     * among the least recently used ones.
+     */
+    protected void evict() {
+        final long now = System.nanoTime();
+        final Iterator<Map.Entry<String, LocalCacheEntry>> iterator = entries.entrySet().iterator();
+        String victim = null;
+        int victimFrequency = Integer.MAX_VALUE;
+        for (int i = 0; i < EVICTION_SAMPLE_SIZE && iterator.hasNext(); i++) {
+            final Map.Entry<String, LocalCacheEntry> candidate = iterator.next();
+            if (candidate.getValue().isExpired(now)) {
+                iterator.remove();
+                expirations.incrementAndGet();
+                return;
+            }
+            final int frequency = sketch.frequency(candidate.getKey());
+            if (frequency < victimFrequency) {
+                victim = candidate.getKey();
+                victimFrequency = frequency;
+            }
+        }
+        if (victim != null) {
+            entries.remove(victim);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a key access, purging expired entries whenever the
+     * frequency sketch ages.
+     *
+     * @param key The accessed key
+     */
+    protected void recordAccess(String key) {
+        if (sketch.increment(key)) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Drops all expired entries.
+     */
+    protected void purgeExpired() {
+        final long now = System.nanoTime();
+        final Iterator<LocalCacheEntry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * A value with its expiry.
+     */
+    protected static class LocalCacheEntry {
+
+        /**
+         * The cached value.
+         */
+        protected final String value;
+
+        /**
+         * Expiry as System.nanoTime value, zero for none.
+         */
+        protected final long expiresAt;
+
+        /**
+         * @param value The cached value
+         * @param expiresAt Expiry as System.nanoTime value, zero for none
+         */
+        protected LocalCacheEntry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @param now The current System.nanoTime value
+         * @return True if the entry should no longer be served
+         */
+        protected boolean isExpired(long now) {
+            return expiresAt != 0 && now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Count-min sketch of key access frequencies.<br>
+     * Counters saturate at 15 and are halved after every ten accesses per
+     * cache entry, so that old popularity fades.
+     */
+    protected static class FrequencySketch {
+
+        /**
+         * Hash seeds, one per counter row.
+         */
+        protected static final int[] SEEDS = { 0x97cb3127, 0xb492b66f, 0x9ae16a3b, 0xc949d7c7 };
+
+        /**
+         * Max counter value.
+         */
+        protected static final int MAX_FREQUENCY = 15;
+
+        /**
+         * Counters, all rows share the table.
+         */
+        protected final int[] table;
+
+        /**
+         * Number of accesses before aging.
+         */
+        protected final int sampleSize;
+
+        /**
+         * Accesses since the last aging.
+         */
+        protected int additions;
+
+        /**
+         * @param maxEntries Max number of cache entries
+         */
+        protected FrequencySketch(int maxEntries) {
+            final int capacity = Math.min(1 << 24, Math.max(16, maxEntries));
+            this.table = new int[Integer.highestOneBit(capacity - 1) << 1];
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maxEntries);
+        }
+
+        /**
+         * Records an access.
+         *
+         * @param key The accessed key
+         * @return True if the counters were aged
+         */
+        protected boolean increment(String key) {
+            final int hash = spread(key.hashCode());
+            for (final int seed : SEEDS) {
+                final int index = indexOf(hash, seed);
+                if (table[index] < MAX_FREQUENCY) {
+                    table[index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] >>>= 1;
+                }
+                additions >>>= 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @param key The key to estimate
+         * @return The estimated access frequency
+         */
+        protected int frequency(String key) {
+            final int hash = spread(key.hashCode());
+            int frequency = MAX_FREQUENCY;
+            for (final int seed : SEEDS) {
+                frequency = Math.min(frequency, table[indexOf(hash, seed)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * @param hash The spread key hash
+         * @param seed The row seed
+         * @return The counter index for the row
+         */
+        protected int indexOf(int hash, int seed) {
+            int index = hash * seed;
+            index ^= index >>> 16;
+            return index & (table.length - 1);
+        }
+
+        /**
+         * @param hash The key hash
+         * @return The hash with its bits mixed
+         */
+        protected static int spread(int hash) {
+            hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+            return (hash >>> 16) ^ hash;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The OAuth2NearCacheHelper class.<br>
+ * Bounded in-process cache layered over another cache helper.<br>
+ * Writes and removals go through to the backing helper, reads are served
+ * locally while the local entry is fresh. Local entries live at most the
+ * configured lifetime, and never longer than the backend entry's expiry.<br>
+ * Values read from the backend are only cached locally if the backend
+ * reports their expiry (compact encoding), bulk reads are not cached.<br>
+ * The cache is per mailbox node: writes and removals on other nodes are not
+ * seen, so a node may serve a replaced or removed value for up to the
+ * lifetime.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.cache
+ * @copyright Copyright © 2022
+ */
+public class OAuth2NearCacheHelper implements IOAuth2CacheHelper {
+
+    /**
+     * The backing cache helper.
+     */
+    protected final IOAuth2CacheHelper delegate;
+
+    /**
+     * Max lifetime of a local entry (nanoseconds).
+     */
+    protected final long lifetime;
+
+    /**
+     * Local entries by key, least recently used first.
+     */
+    protected final Map<String, NearCacheEntry> entries;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate The backing cache helper
+     * @param maxEntries Max number of local entries
+     * @param lifetime Max lifetime of a local entry (seconds)
+     */
+    public OAuth2NearCacheHelper(IOAuth2CacheHelper delegate, int maxEntries, long lifetime) {
+        this.delegate = delegate;
+        this.lifetime = TimeUnit.SECONDS.toNanos(lifetime);
+        this.entries = Collections.synchronizedMap(
+            new LinkedHashMap<String, NearCacheEntry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, NearCacheEntry> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+    }
+
+    @Override
+    public boolean isValidStorageType() {
+        return delegate.isValidStorageType();
+    }
+
+    @Override
+    public String put(String key, String value) {
+        final String result = delegate.put(key, value);
+        cacheLocally(key, value, lifetime);
+        return result;
+    }
+
+    @Override
+    public String put(String key, String value, long expiry) {
+        final String result = delegate.put(key, value, expiry);
+        // never hold the local entry longer than the backend does
+        cacheLocally(key, value, Math.min(TimeUnit.SECONDS.toNanos(expiry), lifetime));
+        return result;
+    }
+
+    @Override
+    public void remove(String key) {
+        entries.remove(key);
+        delegate.remove(key);
+        // drop anything a concurrent read cached before the backend removal
+        entries.remove(key);
+    }
+
+    @Override
+    public String get(String key) {
+        final NearCacheEntry entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.isExpired()) {
+                return entry.value;
+            }
+            entries.remove(key, entry);
+        }
+        final OAuth2CacheEntry fetched = delegate.getEntry(key);
+        if (fetched == null) {
+            entries.remove(key);
+            return null;
+        }
+        cacheLocally(key, fetched.getValue(), getLifetime(fetched));
+        return fetched.getValue();
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries) {
+        delegate.putAll(entries);
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            cacheLocally(entry.getKey(), entry.getValue(), lifetime);
+        }
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries, long expiry) {
+        delegate.putAll(entries, expiry);
+        final long entryLifetime = Math.min(TimeUnit.SECONDS.toNanos(expiry), lifetime);
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            cacheLocally(entry.getKey(), entry.getValue(), entryLifetime);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        entries.keySet().removeAll(keys);
+        delegate.removeAll(keys);
+        entries.keySet().removeAll(keys);
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        final Map<String, String> values = new HashMap<String, String>();
+        final List<String> misses = new ArrayList<String>();
+        for (final String key : keys) {
+            final NearCacheEntry entry = entries.get(key);
+            if (entry != null && !entry.isExpired()) {
+                values.put(key, entry.value);
+            } else {
+                misses.add(key);
+            }
+        }
+        // fetch the rest from the backend in one call, without their expiry
+        if (!misses.isEmpty()) {
+            entries.keySet().removeAll(misses);
+            values.putAll(delegate.getAll(misses));
+        }
+        return values;
+    }
+
+    /**
+     * @return The number of local entries (may include expired entries)
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @param fetched An entry read from the backend
+     * @return The local lifetime of the entry (nanoseconds), zero if its
+     *         expiry is unknown
+     */
+    protected long getLifetime(OAuth2CacheEntry fetched) {
+        final long expiresAt = fetched.getExpiresAt();
+        if (expiresAt == OAuth2CacheEntry.EXPIRY_UNKNOWN) {
+            return 0L;
+        }
+        if (expiresAt == OAuth2CacheEntry.EXPIRY_NONE) {
+            return lifetime;
+        }
+        final long remaining = TimeUnit.SECONDS.toMillis(expiresAt) - System.currentTimeMillis();
+        return Math.min(TimeUnit.MILLISECONDS.toNanos(remaining), lifetime);
+    }
+
+    /**
+     * Stores a local entry if the value and lifetime are usable.
+     *
+     * @param key The key to store
+     * @param value The value to store
+     * @param entryLifetime The entry lifetime (nanoseconds)
+     */
+    protected void cacheLocally(String key, String value, long entryLifetime) {
+        if (value == null || entryLifetime <= 0) {
+            entries.remove(key);
+            return;
+        }
+        entries.put(key, new NearCacheEntry(value, System.nanoTime() + entryLifetime));
+    }
+
+    /**
+     * A local value with its expiry.
+     */
+    protected static class NearCacheEntry {
+
+        /**
+         * The cached value.
+         */
+        protected final String value;
+
+        /**
+         * Expiry as System.nanoTime value.
+         */
+        protected final long expiresAt;
+
+        /**
+         * @param value The cached value
+         * @param expiresAt Expiry as System.nanoTime value
+         */
+        protected NearCacheEntry(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return True if the entry should no longer be served
+         */
+        protected boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
@@ -5,6 +5,10 @@
 
 package com.zimbra.oauth.cache;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * The OAuth2NoopCacheHelper class.
  *
@@ -39,4 +43,24 @@ public class OAuth2NoopCacheHelper implements IOAuth2CacheHelper {
         return null;
     }
 
+    @Override
+    public void putAll(Map<String, String> entries) {
+
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries, long expiry) {
+
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        return Collections.emptyMap();
+    }
+
 }
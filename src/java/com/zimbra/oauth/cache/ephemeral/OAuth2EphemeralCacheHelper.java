@@ -5,6 +5,9 @@
 
 package com.zimbra.oauth.cache.ephemeral;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
@@ -16,12 +19,20 @@ import com.zimbra.cs.account.Provisioning;
 import com.zimbra.cs.ephemeral.EphemeralInput;
 import com.zimbra.cs.ephemeral.EphemeralInput.RelativeExpiration;
 import com.zimbra.cs.ephemeral.EphemeralKey;
+import com.zimbra.cs.ephemeral.EphemeralLocation;
 import com.zimbra.cs.ephemeral.EphemeralStore;
 import com.zimbra.oauth.cache.IOAuth2CacheHelper;
+import com.zimbra.oauth.cache.OAuth2CacheEntry;
+import com.zimbra.oauth.metrics.OAuth2CacheMetrics;
 import com.zimbra.oauth.utilities.OAuth2Constants;
 
 /**
- * The OAuth2CacheUtilities class.
+ * The OAuth2EphemeralCacheHelper class.<br>
+ * EphemeralStore has no multi-key operations, bulk methods share one
+ * location and keep going past individual failures.<br>
+ * With compact encoding, entries are written with hashed keys and value
+ * envelopes. Reads fall back to, and removals also clear, the plain key so
+ * that entries written before switching stay usable until they expire.
  *
  * @author Zimbra API Team
  * @package com.zimbra.oauth.cache.ephemeral
@@ -34,7 +45,36 @@ public class OAuth2EphemeralCacheHelper implements IOAuth2CacheHelper {
      */
     protected EphemeralStore client;
 
+    /**
+     * Metrics to report failures to.
+     */
+    protected final OAuth2CacheMetrics metrics = OAuth2CacheMetrics.getInstance();
+
+    /**
+     * True if entries are written in compact form.
+     */
+    protected final boolean compact;
+
+    /**
+     * Location entries are written to.
+     */
+    protected final EphemeralLocation location;
+
+    /**
+     * Location of entries written in plain form.
+     */
+    protected final EphemeralLocation plainLocation = new OAuth2EphemeralLocation(false);
+
     public OAuth2EphemeralCacheHelper() {
+        this(false);
+    }
+
+    /**
+     * @param compact True if entries are written in compact form
+     */
+    public OAuth2EphemeralCacheHelper(boolean compact) {
+        this.compact = compact;
+        this.location = new OAuth2EphemeralLocation(compact);
         try {
             client = EphemeralStore.getFactory().getNewStore();
             if (client != null) {
@@ -69,8 +109,9 @@ public class OAuth2EphemeralCacheHelper implements IOAuth2CacheHelper {
     public String put(String key, String value) {
         final EphemeralInput input = new EphemeralInput(new EphemeralKey(key), value);
         try {
-            client.set(input, new OAuth2EphemeralLocation());
+            client.set(input, location);
         } catch (final ServiceException e) {
+            metrics.recordError(key, OAuth2CacheMetrics.OPERATION_PUT);
             ZimbraLog.extensions.errorQuietly("Failed write to ephemeral store.", e);
         }
         return value;
@@ -81,8 +122,9 @@ public class OAuth2EphemeralCacheHelper implements IOAuth2CacheHelper {
         final EphemeralInput input = new EphemeralInput(new EphemeralKey(key), value,
             new RelativeExpiration(expiry, TimeUnit.SECONDS));
         try {
-            client.set(input, new OAuth2EphemeralLocation());
+            client.set(input, location);
         } catch (final ServiceException e) {
+            metrics.recordError(key, OAuth2CacheMetrics.OPERATION_PUT);
             ZimbraLog.extensions.errorQuietly("Failed write to ephemeral store.", e);
         }
         return value;
@@ -91,8 +133,9 @@ public class OAuth2EphemeralCacheHelper implements IOAuth2CacheHelper {
     @Override
     public void remove(String key) {
         try {
-            client.delete(new EphemeralKey(key), null, new OAuth2EphemeralLocation());
+            delete(key);
         } catch (final ServiceException e) {
+            metrics.recordError(key, OAuth2CacheMetrics.OPERATION_REMOVE);
             ZimbraLog.extensions.errorQuietly("Failed removal from ephemeral store.", e);
         }
     }
@@ -101,11 +144,149 @@ public class OAuth2EphemeralCacheHelper implements IOAuth2CacheHelper {
     public String get(String key) {
         String result = null;
         try {
-            result = client.get(new EphemeralKey(key), new OAuth2EphemeralLocation()).getValue();
+            result = read(key);
         } catch (final ServiceException e) {
+            metrics.recordError(key, OAuth2CacheMetrics.OPERATION_GET);
             ZimbraLog.extensions.errorQuietly("Failed to read from ephemeral store.", e);
         }
         return result;
     }
 
+    @Override
+    public OAuth2CacheEntry getEntry(String key) {
+        try {
+            final EphemeralKey ephemeralKey = new EphemeralKey(key);
+            final String stored = client.get(ephemeralKey, location).getValue();
+            final String value = OAuth2ValueEncoder.decodeValue(stored);
+            if (value != null) {
+                return new OAuth2CacheEntry(value, OAuth2ValueEncoder.decodeExpiresAt(stored));
+            }
+            if (compact) {
+                // written before compact encoding was enabled, expiry unknown
+                final String plain = OAuth2ValueEncoder
+                    .decodeValue(client.get(ephemeralKey, plainLocation).getValue());
+                return plain == null ? null
+                    : new OAuth2CacheEntry(plain, OAuth2CacheEntry.EXPIRY_UNKNOWN);
+            }
+        } catch (final ServiceException e) {
+            metrics.recordError(key, OAuth2CacheMetrics.OPERATION_GET);
+            ZimbraLog.extensions.errorQuietly("Failed to read from ephemeral store.", e);
+        }
+        return null;
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries) {
+        int failures = 0;
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            try {
+                client.set(new EphemeralInput(new EphemeralKey(entry.getKey()), entry.getValue()),
+                    location);
+            } catch (final ServiceException e) {
+                metrics.recordError(entry.getKey(), OAuth2CacheMetrics.OPERATION_PUT);
+                failures++;
+                ZimbraLog.extensions.debug(e);
+            }
+        }
+        logBulkFailures("write to", failures, entries.size());
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries, long expiry) {
+        final RelativeExpiration expiration = new RelativeExpiration(expiry, TimeUnit.SECONDS);
+        int failures = 0;
+        for (final Map.Entry<String, String> entry : entries.entrySet()) {
+            try {
+                client.set(new EphemeralInput(new EphemeralKey(entry.getKey()), entry.getValue(),
+                    expiration), location);
+            } catch (final ServiceException e) {
+                metrics.recordError(entry.getKey(), OAuth2CacheMetrics.OPERATION_PUT);
+                failures++;
+                ZimbraLog.extensions.debug(e);
+            }
+        }
+        logBulkFailures("write to", failures, entries.size());
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        int failures = 0;
+        for (final String key : keys) {
+            try {
+                delete(key);
+            } catch (final ServiceException e) {
+                metrics.recordError(key, OAuth2CacheMetrics.OPERATION_REMOVE);
+                failures++;
+                ZimbraLog.extensions.debug(e);
+            }
+        }
+        logBulkFailures("remove from", failures, keys.size());
+    }
+
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        final Map<String, String> values = new HashMap<String, String>();
+        int failures = 0;
+        for (final String key : keys) {
+            try {
+                final String value = read(key);
+                if (value != null) {
+                    values.put(key, value);
+                }
+            } catch (final ServiceException e) {
+                metrics.recordError(key, OAuth2CacheMetrics.OPERATION_GET);
+                failures++;
+                ZimbraLog.extensions.debug(e);
+            }
+        }
+        logBulkFailures("read from", failures, keys.size());
+        return values;
+    }
+
+    /**
+     * Reads an entry in either form.
+     *
+     * @param key The key to read
+     * @return The value, or null if not found
+     * @throws ServiceException If there are issues reading from the store
+     */
+    protected String read(String key) throws ServiceException {
+        final EphemeralKey ephemeralKey = new EphemeralKey(key);
+        final String value = OAuth2ValueEncoder
+            .decodeValue(client.get(ephemeralKey, location).getValue());
+        if (value != null || !compact) {
+            return value;
+        }
+        // written before compact encoding was enabled
+        return OAuth2ValueEncoder.decodeValue(client.get(ephemeralKey, plainLocation).getValue());
+    }
+
+    /**
+     * Deletes an entry in either form.
+     *
+     * @param key The key to delete
+     * @throws ServiceException If there are issues deleting from the store
+     */
+    protected void delete(String key) throws ServiceException {
+        final EphemeralKey ephemeralKey = new EphemeralKey(key);
+        client.delete(ephemeralKey, null, location);
+        if (compact) {
+            client.delete(ephemeralKey, null, plainLocation);
+        }
+    }
+
+    /**
+     * Logs a single warning for the failed keys of a bulk operation.
+     *
+     * @param operation The operation description
+     * @param failures The number of failed keys
+     * @param total The number of keys
+     */
+    protected void logBulkFailures(String operation, int failures, int total) {
+        if (failures > 0) {
+            ZimbraLog.extensions.warn("Failed bulk %s ephemeral store for %d of %d keys.",
+                operation, failures, total);
+        }
+    }
+
 }
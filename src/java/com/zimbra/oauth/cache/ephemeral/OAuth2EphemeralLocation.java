@@ -8,7 +8,10 @@ package com.zimbra.oauth.cache.ephemeral;
 import com.zimbra.cs.ephemeral.EphemeralLocation;
 
 /**
- * The OAuth2EphemeralLocation class.
+ * The OAuth2EphemeralLocation class.<br>
+ * Compact locations have the oauth key and value encoders store hashed keys
+ * and versioned value envelopes, see {@link OAuth2KeyEncoder} and
+ * {@link OAuth2ValueEncoder}.
  *
  * @author Zimbra API Team
  * @package com.zimbra.oauth.cache.ephemeral
@@ -16,6 +19,29 @@ import com.zimbra.cs.ephemeral.EphemeralLocation;
  */
 public class OAuth2EphemeralLocation extends EphemeralLocation {
 
+    /**
+     * True if keys and values are stored in compact form.
+     */
+    protected final boolean compact;
+
+    public OAuth2EphemeralLocation() {
+        this(false);
+    }
+
+    /**
+     * @param compact True if keys and values are stored in compact form
+     */
+    public OAuth2EphemeralLocation(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * @return True if keys and values are stored in compact form
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
     @Override
     public String[] getLocation() {
         return new String[0];
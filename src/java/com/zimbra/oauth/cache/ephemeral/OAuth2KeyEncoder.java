@@ -5,12 +5,20 @@
 
 package com.zimbra.oauth.cache.ephemeral;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
 import com.zimbra.cs.ephemeral.EphemeralKey;
 import com.zimbra.cs.ephemeral.EphemeralLocation;
 import com.zimbra.cs.ephemeral.KeyEncoder;
 
 /**
- * The OAuth2KeyEncoder class.
+ * The OAuth2KeyEncoder class.<br>
+ * Stores keys as is, or for compact locations as a prefixed, truncated
+ * SHA-256 hash of the key (24 characters regardless of key length).
  *
  * @author Zimbra API Team
  * @package com.zimbra.oauth.cache.ephemeral
@@ -18,9 +26,44 @@ import com.zimbra.cs.ephemeral.KeyEncoder;
  */
 public class OAuth2KeyEncoder extends KeyEncoder {
 
+    /**
+     * Namespace and version prefix of compact keys.
+     */
+    public static final String COMPACT_KEY_PREFIX = "zo1:";
+
+    /**
+     * Number of hash bytes kept in compact keys (120 bits).
+     */
+    protected static final int COMPACT_HASH_LENGTH = 15;
+
+    /**
+     * Digest per thread, MessageDigest is not thread safe.
+     */
+    protected static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    });
+
     @Override
     public String encodeKey(EphemeralKey key, EphemeralLocation target) {
+        if (target instanceof OAuth2EphemeralLocation
+            && ((OAuth2EphemeralLocation) target).isCompact()) {
+            return compactKey(key.getKey());
+        }
         return key.getKey();
     }
 
+    /**
+     * @param key The key to compact
+     * @return The compact form of the key
+     */
+    public static String compactKey(String key) {
+        final byte[] hash = digests.get().digest(key.getBytes(StandardCharsets.UTF_8));
+        return COMPACT_KEY_PREFIX + Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(Arrays.copyOf(hash, COMPACT_HASH_LENGTH));
+    }
+
 }
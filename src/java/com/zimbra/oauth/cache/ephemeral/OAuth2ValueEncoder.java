@@ -5,12 +5,19 @@
 
 package com.zimbra.oauth.cache.ephemeral;
 
+import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.ephemeral.EphemeralInput;
 import com.zimbra.cs.ephemeral.EphemeralLocation;
 import com.zimbra.cs.ephemeral.ValueEncoder;
+import com.zimbra.oauth.cache.OAuth2CacheEntry;
 
 /**
- * The OAuth2ValueEncoder class.
+ * The OAuth2ValueEncoder class.<br>
+ * Stores values as is, or for compact locations in an envelope:
+ * a version character, the expiry in base 36 epoch seconds (0 for none),
+ * a separator, and the value.<br>
+ * Plain values never start with a control character, so
+ * {@link #decodeValue(String)} reads both formats.
  *
  * @author Zimbra API Team
  * @package com.zimbra.oauth.cache.ephemeral
@@ -19,13 +26,90 @@ import com.zimbra.cs.ephemeral.ValueEncoder;
  */
 public class OAuth2ValueEncoder extends ValueEncoder {
 
+    /**
+     * Version character of the current envelope format.
+     */
+    protected static final char ENVELOPE_VERSION = '\u0001';
+
+    /**
+     * Separates the envelope metadata from the value.
+     */
+    protected static final char ENVELOPE_SEPARATOR = ':';
+
     @Override
     public String encodeValue(EphemeralInput input, EphemeralLocation target) {
         if(input == null || input.getValue() == null) {
             return null;
         }
+        if (target instanceof OAuth2EphemeralLocation
+            && ((OAuth2EphemeralLocation) target).isCompact()) {
+            final Long expiration = input.getExpiration();
+            return encodeEnvelope(input.getValue().toString(),
+                expiration == null ? 0L : expiration / 1000L);
+        }
         return input.getValue().toString();
     }
 
-}
+    /**
+     * @param value The value to wrap
+     * @param expiresAt The expiry as epoch seconds, zero for none
+     * @return The value envelope
+     */
+    protected static String encodeEnvelope(String value, long expiresAt) {
+        return new StringBuilder(value.length() + 10).append(ENVELOPE_VERSION)
+            .append(Long.toString(expiresAt, Character.MAX_RADIX)).append(ENVELOPE_SEPARATOR)
+            .append(value).toString();
+    }
+
+    /**
+     * Reads a stored value in either format.
+     *
+     * @param stored The stored value
+     * @return The value, or null if missing, expired, or of an unknown format version
+     */
+    public static String decodeValue(String stored) {
+        if (stored == null || stored.isEmpty() || stored.charAt(0) >= ' ') {
+            // plain value
+            return stored;
+        }
+        if (decodeExpiresAt(stored) == OAuth2CacheEntry.EXPIRY_UNKNOWN) {
+            return null;
+        }
+        return stored.substring(stored.indexOf(ENVELOPE_SEPARATOR) + 1);
+    }
+
+    /**
+     * Reads the expiry of a stored value.
+     *
+     * @param stored The stored value
+     * @return The expiry as epoch seconds, {@link OAuth2CacheEntry#EXPIRY_NONE}
+     *         if the value does not expire, or
+     *         {@link OAuth2CacheEntry#EXPIRY_UNKNOWN} for plain values and
+     *         envelopes that are expired or unreadable
+     */
+    public static long decodeExpiresAt(String stored) {
+        if (stored == null || stored.isEmpty() || stored.charAt(0) >= ' ') {
+            // plain values carry no expiry
+            return OAuth2CacheEntry.EXPIRY_UNKNOWN;
+        }
+        final int separator = stored.indexOf(ENVELOPE_SEPARATOR);
+        if (stored.charAt(0) != ENVELOPE_VERSION || separator < 0) {
+            ZimbraLog.extensions.debug("Ignoring cached value of unknown format version: %d",
+                (int) stored.charAt(0));
+            return OAuth2CacheEntry.EXPIRY_UNKNOWN;
+        }
+        try {
+            final long expiresAt = Long.parseLong(stored.substring(1, separator),
+                Character.MAX_RADIX);
+            // the backend may keep values a little past their expiry
+            if (expiresAt > 0 && expiresAt * 1000L <= System.currentTimeMillis()) {
+                return OAuth2CacheEntry.EXPIRY_UNKNOWN;
+            }
+            return expiresAt;
+        } catch (final NumberFormatException e) {
+            ZimbraLog.extensions.debug("Ignoring cached value with invalid expiry.");
+            return OAuth2CacheEntry.EXPIRY_UNKNOWN;
+        }
+    }
 
+}
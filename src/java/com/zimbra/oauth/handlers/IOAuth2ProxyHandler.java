@@ -31,12 +31,23 @@ public interface IOAuth2ProxyHandler {
      */
     public Map<String, String> headers(OAuthInfo oauthInfo) throws ServiceException;
 
+    /**
+     * Determines if isProxyRequestAllowed inspects the body of a request.
+     * Other request bodies are streamed to the target without buffering.
+     *
+     * @param client The request client
+     * @param method The request method
+     * @param target The proxy target
+     * @return True if the request body is needed to validate the request
+     */
+    public boolean isProxyBodyRequired(String client, String method, String target);
+
     /**
      * @param client The request client (may contain relevant data for path comparison)
      * @param method The request method
      * @param extraHeaders Contains authorization header
      * @param target The target to check
-     * @param body The request body
+     * @param body The request body, null unless required by isProxyBodyRequired
      * @param account The account to acquire configuration by access level
      * @return True if the specified request is allowed
      */
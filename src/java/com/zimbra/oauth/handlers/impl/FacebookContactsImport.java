@@ -371,8 +371,7 @@ public class FacebookContactsImport implements DataImport {
         String matchField, List<ParsedContact> createList) {
         for (final JsonNode contactElement : jsonContacts) {
             try {
-                ZimbraLog.extensions.trace("Verifying if new contact for: %s",
-                    jsonContacts.toString());
+                ZimbraLog.extensions.trace("Verifying if new contact for: %s", contactElement);
                 String resourceName = null;
                 if (contactElement.has(matchField)) {
                     resourceName = contactElement.get(matchField).asText();
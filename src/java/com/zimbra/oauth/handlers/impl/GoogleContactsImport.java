@@ -77,6 +77,8 @@ import org.apache.http.client.utils.URIBuilder;
 import org.xml.sax.SAXException;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.HtmlBodyTextExtractor;
 import com.zimbra.common.util.ZimbraLog;
@@ -92,13 +94,13 @@ import com.zimbra.cs.service.mail.CreateContact;
 import com.zimbra.cs.service.util.ItemId;
 import com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler.GoogleContactConstants;
 import com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler.GoogleOAuth2Constants;
-import com.zimbra.oauth.models.HttpResponseWrapper;
 import com.zimbra.oauth.models.OAuthInfo;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.LdapConfiguration;
 import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
 import com.zimbra.oauth.utilities.OAuth2DataSource;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
+import com.zimbra.oauth.utilities.OAuth2JsonUtilities.JsonRecordConsumer;
 import com.zimbra.oauth.utilities.OAuth2Utilities;
 
 /**
@@ -246,6 +248,25 @@ public class GoogleContactsImport implements DataImport {
         return OAuth2Handler.executeRequestForJson(get);
     }
 
+    /**
+     * Requests contacts for the given credentials, passing each contact to
+     * the consumer as it is parsed.
+     *
+     * @param url The contacts url
+     * @param authorizationHeader The credentials header
+     * @param consumer Receives each contact of the response
+     * @return Json contacts response without the contacts
+     * @throws ServiceException If there are issues retrieving the data
+     * @throws IOException If there are issues executing the request
+     */
+    protected JsonNode getContactsRequest(String url, String authorizationHeader,
+        JsonRecordConsumer consumer) throws ServiceException, IOException {
+        final HttpGet get = new HttpGet(url);
+        get.addHeader(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(), authorizationHeader);
+        ZimbraLog.extensions.debug("Fetching contacts for import.");
+        return OAuth2Handler.executeRequestForRecords(get, "connections", consumer);
+    }
+
     /**
      * Retrieves a set of the contacts identifiers that exist in a specified
      * folder.
@@ -295,8 +316,7 @@ public class GoogleContactsImport implements DataImport {
         List<ParsedContact> createList) {
         for (final JsonNode contactElement : jsonContacts) {
             try {
-                ZimbraLog.extensions.trace("Verifying if new contact for: %s",
-                    jsonContacts.toString());
+                ZimbraLog.extensions.trace("Verifying if new contact for: %s", contactElement);
                 String resourceName = null;
                 if (contactElement.has("resourceName")) {
                     resourceName = contactElement.get("resourceName").asText();
@@ -364,7 +384,6 @@ public class GoogleContactsImport implements DataImport {
         if (attrs.length > 0) {
             syncToken = attrs[0];
         }
-        String respContent = "";
         String pageToken = null;
         try {
             // loop to handle pagination
@@ -376,26 +395,25 @@ public class GoogleContactsImport implements DataImport {
                 // always set an empty page token during pagination
                 pageToken = null;
                 ZimbraLog.extensions.debug("Attempting to sync Google contacts.");
-                // fetch contacts
-                final JsonNode jsonResponse = getContactsRequest(url, authorizationHeader);
+                // fetch contacts, collecting the page's contacts as they are parsed
+                final ArrayNode jsonContacts = JsonNodeFactory.instance.arrayNode();
+                final JsonNode jsonResponse = getContactsRequest(url, authorizationHeader,
+                    jsonContacts::add);
                 if (jsonResponse != null && jsonResponse.isContainerNode()) {
-                    respContent = jsonResponse.toString();
                     // log only at most verbose level, this contains privileged info
-                    ZimbraLog.extensions.trace("Contacts sync response from Google %s", respContent);
+                    ZimbraLog.extensions.trace("Contacts sync response from Google %s", jsonResponse);
                     // check for error
                     if (jsonResponse.has("error")) {
                         throw ServiceException.FAILURE(
                             String.format("Data source sync failed. Failed to fetch contacts"
                                 + " from Google Contacts API. The error was:%s", jsonResponse.findValue("error")),
                                 new Exception("Contact import returned error.")) ;
-                    } else if (jsonResponse.has("connections")
-                        && jsonResponse.get("connections").isArray()) {
-                        final JsonNode jsonContacts = jsonResponse.get("connections");
+                    } else if (jsonContacts.size() > 0) {
                         createNewContacts(existingContacts, jsonContacts);
                     } else {
                         ZimbraLog.extensions.debug(
                             "Did not find 'connections' element in JSON response object. Response body: %s",
-                            respContent);
+                            jsonResponse);
                     }
                     // update the sync token if available
                     if (jsonResponse.has("nextSyncToken")) {
@@ -780,7 +798,6 @@ public class GoogleContactsImport implements DataImport {
                         try {
                             // fetch the image
                             final HttpGet get = new HttpGet(imageUrl);
-                            final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(get);
                             String imageNum = "";
                             if (i > 1) {
                                 imageNum = String.valueOf(i++);
@@ -789,7 +806,7 @@ public class GoogleContactsImport implements DataImport {
                                 GoogleContactConstants.CONTACTS_IMAGE_NAME_TEMPLATE.getValue(), imageNum);
                             // add to attachments
                             final Attachment attachment = OAuth2Utilities
-                                .createAttachmentFromResponse(response, key + imageNum, filename);
+                                .executeRequestForAttachment(get, key + imageNum, filename);
                             if (attachment != null) {
                                 attachments.add(attachment);
                             }
@@ -16,6 +16,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang.StringUtils;
@@ -29,7 +31,6 @@ import org.apache.http.message.BasicNameValuePair;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -45,6 +46,7 @@ import com.zimbra.oauth.handlers.IOAuth2Handler;
 import com.zimbra.oauth.handlers.IOAuth2ProxyHandler;
 import com.zimbra.oauth.models.GuestRequest;
 import com.zimbra.oauth.models.OAuthInfo;
+import com.zimbra.oauth.schedulers.impl.OAuth2TokenRefreshScheduler;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.OAuth2CacheUtilities;
 import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
@@ -54,7 +56,9 @@ import com.zimbra.oauth.utilities.OAuth2DataSource.DataSourceMetaData;
 import com.zimbra.oauth.utilities.OAuth2ErrorConstants;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
 import com.zimbra.oauth.utilities.OAuth2JsonUtilities;
+import com.zimbra.oauth.utilities.OAuth2JsonUtilities.JsonRecordConsumer;
 import com.zimbra.oauth.utilities.OAuth2ProxyUtilities;
+import com.zimbra.oauth.utilities.OAuth2SingleFlight;
 import com.zimbra.oauth.utilities.OAuth2Utilities;
 
 /**
@@ -68,6 +72,23 @@ import com.zimbra.oauth.utilities.OAuth2Utilities;
 public abstract class OAuth2Handler {
 
     public static final String RELAY_DELIMETER = ";";
+
+    /**
+     * Coalesces concurrent access token refreshes by token cache key.
+     */
+    protected static final OAuth2SingleFlight<String> tokenRefreshes = new OAuth2SingleFlight<String>(
+        TimeUnit.SECONDS.toMillis(Configuration.getDefaultConfiguration().getInt(
+            OAuth2ConfigConstants.LC_TOKEN_REFRESH_WAIT_TIMEOUT.getValue(),
+            Integer.valueOf(OAuth2Constants.TOKEN_REFRESH_WAIT_TIMEOUT.getValue()))));
+
+    /**
+     * How long an identifier stays denied after no tokens were found or
+     * refresh was denied (seconds). Zero disables negative caching.
+     */
+    protected static final long tokenDeniedCacheLifetime = Configuration.getDefaultConfiguration()
+        .getInt(OAuth2ConfigConstants.LC_TOKEN_DENIED_CACHE_LIFETIME.getValue(),
+            Integer.valueOf(OAuth2Constants.TOKEN_DENIED_CACHE_LIFETIME.getValue()));
+
     /**
      * Social app name
      */
@@ -114,7 +135,8 @@ public abstract class OAuth2Handler {
     protected final Configuration config;
 
     /**
-     * Implementation token lifetime in cache (seconds).
+     * Implementation token lifetime in cache (seconds).<br>
+     * Used when the provider does not report the access token lifetime.
      */
     protected long tokenCacheLifetime;
 
@@ -365,6 +387,8 @@ public abstract class OAuth2Handler {
         // ensure the response contains the necessary credentials
         validateRefreshTokenResponse(credentials);
         ZimbraLog.extensions.trace("Refresh performed for: %s", identifier);
+        // record the provider reported access token lifetime
+        oauthInfo.setExpiresIn(getTokenExpiresIn(credentials));
 
         // update the refresh token if it has changed (some of them change on every use)
         if (isStorableTokenRefreshed(refreshToken, credentials)) {
@@ -414,6 +438,13 @@ public abstract class OAuth2Handler {
             OAuth2HttpConstants.PROXY_USER_AGENT.getValue());
     }
 
+    /**
+     * @see IOAuth2ProxyHandler#isProxyBodyRequired(String, String, String)
+     */
+    public boolean isProxyBodyRequired(String client, String method, String target) {
+        return false;
+    }
+
     /**
      * @see IOAuth2ProxyHandler#isProxyRequestAllowed(String, String, Map, String, byte[], Account)
      */
@@ -445,35 +476,59 @@ public abstract class OAuth2Handler {
         String identifier = oauthInfo.getParam("identifier");
         final String type = OAuth2Constants.DEFAULT_PROXY_TYPE.getValue();
 
-        // find the identifier if none specified or find the access token if non refreshable
-        if (StringUtils.isEmpty(identifier) || !isRefreshable()) {
-            final Map<String, String> tokens = dataSource.getRefreshTokens(account, identifier, type);
-            // ensure there is only one if no identifier was specified
-            final int tokensFound = tokens.size();
-            if (tokensFound != 1) {
+        // fail fast if this identifier was recently denied
+        final AuthToken zmAuthToken = oauthInfo.getZmAuthToken();
+        String deniedCacheKey = null;
+        if (zmAuthToken != null && tokenDeniedCacheLifetime > 0) {
+            deniedCacheKey = DataSourceMetaData.buildTokenDeniedCacheKey(
+                zmAuthToken.getAccountId(), client, identifier);
+            if (OAuth2CacheUtilities.get(deniedCacheKey) != null) {
                 final String message = String.format(
-                    "%d tokens found for identifier: %s type: %s client: %s", tokensFound,
-                    identifier, type, client);
+                    "Recently denied tokens for identifier: %s client: %s", identifier, client);
                 ZimbraLog.extensions.debug(message);
-                if (tokensFound < 1) {
-                    throw ServiceException.PERM_DENIED(message);
+                throw ServiceException.PERM_DENIED(message);
+            }
+        }
+
+        try {
+            // find the identifier if none specified or find the access token if non refreshable
+            if (StringUtils.isEmpty(identifier) || !isRefreshable()) {
+                final Map<String, String> tokens = dataSource.getRefreshTokens(account, identifier,
+                    type);
+                // ensure there is only one if no identifier was specified
+                final int tokensFound = tokens.size();
+                if (tokensFound != 1) {
+                    final String message = String.format(
+                        "%d tokens found for identifier: %s type: %s client: %s", tokensFound,
+                        identifier, type, client);
+                    ZimbraLog.extensions.debug(message);
+                    if (tokensFound < 1) {
+                        throw ServiceException.PERM_DENIED(message);
+                    }
+                    throw ServiceException.INVALID_REQUEST(message, null);
+                }
+                identifier = tokens.keySet().iterator().next();
+                // we're done if the token is not refreshable
+                if (!isRefreshable()) {
+                    return tokens.get(identifier);
                 }
-                throw ServiceException.INVALID_REQUEST(message, null);
+                oauthInfo.setRefreshToken(tokens.get(identifier));
             }
-            identifier = tokens.keySet().iterator().next();
-            // we're done if the token is not refreshable
-            if (!isRefreshable()) {
-                return tokens.get(identifier);
+            // identifier was found or specified, client is non refreshable
+            oauthInfo.setUsername(identifier);
+            return findAndCacheStoredRefreshableAccessToken(oauthInfo);
+        } catch (final ServiceException e) {
+            // remember missing or revoked tokens until the datasource is synced again
+            if (deniedCacheKey != null && ServiceException.PERM_DENIED.equals(e.getCode())) {
+                OAuth2CacheUtilities.put(deniedCacheKey, client, tokenDeniedCacheLifetime);
             }
-            oauthInfo.setRefreshToken(tokens.get(identifier));
+            throw e;
         }
-        // identifier was found or specified, client is non refreshable
-        oauthInfo.setUsername(identifier);
-        return findAndCacheStoredRefreshableAccessToken(oauthInfo);
     }
 
     /**
-     * Fetches access token from cache, refreshes/caches if it's missing.
+     * Fetches access token from cache, refreshes/caches if it's missing.<br>
+     * Only one refresh runs per token cache key, concurrent callers wait on its result.
      *
      * @param oauthInfo Must contain zm auth token, zimbra account, username (identifier)
      * @return An access token either newly refreshed, or from cache
@@ -484,22 +539,97 @@ public abstract class OAuth2Handler {
         throws ServiceException {
         final String accountId = oauthInfo.getZmAuthToken().getAccountId();
         final String identifier = oauthInfo.getUsername();
-        final String type = OAuth2Constants.DEFAULT_PROXY_TYPE.getValue();
         final String cacheKey = DataSourceMetaData.buildTokenCacheKey(accountId, client,
             identifier);
+        // keep background pre-refresh going while the token is in use
+        OAuth2TokenRefreshScheduler.getInstance().touch(cacheKey);
         // check cache
-        String accessToken = OAuth2CacheUtilities.get(cacheKey);
+        final String accessToken = OAuth2CacheUtilities.get(cacheKey);
         if (!StringUtils.isEmpty(accessToken)) {
             ZimbraLog.extensions.debug("Using cached access token for oauth proxy.");
             return accessToken;
         }
 
-        oauthInfo.setParams(ImmutableMap.of(typeKey, type));
+        // only one caller refreshes per cache key, the rest wait on its result
+        return tokenRefreshes.execute(cacheKey, () -> {
+            // another refresh may have completed since the cache was checked
+            final String refreshedToken = OAuth2CacheUtilities.get(cacheKey);
+            if (!StringUtils.isEmpty(refreshedToken)) {
+                ZimbraLog.extensions.debug("Using recently refreshed access token for oauth proxy.");
+                return refreshedToken;
+            }
+            return refreshAndCacheAccessToken(oauthInfo, cacheKey);
+        });
+    }
+
+    /**
+     * Refreshes and caches the access token regardless of the cached token.<br>
+     * Used to pre-refresh tokens in the background before they expire,
+     * shares in-flight refreshes with proxy requests.
+     *
+     * @param oauthInfo Must contain zm auth token, zimbra account, username (identifier)
+     * @return The refreshed access token
+     * @throws ServiceException If there are issues
+     * @see OAuth2TokenRefreshScheduler
+     */
+    public String prefetchAccessToken(OAuthInfo oauthInfo) throws ServiceException {
+        final String cacheKey = DataSourceMetaData.buildTokenCacheKey(
+            oauthInfo.getZmAuthToken().getAccountId(), client, oauthInfo.getUsername());
+        return tokenRefreshes.execute(cacheKey,
+            () -> refreshAndCacheAccessToken(oauthInfo, cacheKey));
+    }
+
+    /**
+     * Refreshes the access token, caches it, and schedules its pre-refresh.
+     *
+     * @param oauthInfo Must contain zm auth token, zimbra account, username (identifier)
+     * @param cacheKey The token cache key
+     * @return The refreshed access token
+     * @throws ServiceException If there are issues
+     */
+    protected String refreshAndCacheAccessToken(OAuthInfo oauthInfo, String cacheKey)
+        throws ServiceException {
+        oauthInfo.setParams(ImmutableMap.of(typeKey, OAuth2Constants.DEFAULT_PROXY_TYPE.getValue()));
         refresh(oauthInfo);
-        accessToken = oauthInfo.getAccessToken();
+        final String accessToken = oauthInfo.getAccessToken();
+        final long lifetime = getTokenCacheLifetime(oauthInfo);
+        if (lifetime <= 0) {
+            ZimbraLog.extensions.debug("Access token expires too soon to cache for client: %s",
+                client);
+            return accessToken;
+        }
+        OAuth2TokenRefreshScheduler.getInstance()
+            .schedule(this, client, oauthInfo, cacheKey, lifetime);
+        // cache the access token
+        return OAuth2CacheUtilities.put(cacheKey, accessToken, lifetime);
+    }
 
-        // cache the access token (this may clobber if many requests are refreshing)
-        return OAuth2CacheUtilities.put(cacheKey, accessToken, tokenCacheLifetime);
+    /**
+     * Determines how long a refreshed access token may be cached.<br>
+     * Uses the provider reported lifetime less the configured safety margin
+     * if available, or the implementation token lifetime otherwise.
+     *
+     * @param oauthInfo Contains the refreshed access token lifetime if reported
+     * @return The token cache lifetime (seconds)
+     */
+    protected long getTokenCacheLifetime(OAuthInfo oauthInfo) {
+        final Long expiresIn = oauthInfo.getExpiresIn();
+        if (expiresIn == null) {
+            return tokenCacheLifetime;
+        }
+        return expiresIn - getTokenExpiryMargin();
+    }
+
+    /**
+     * @return The configured token expiry safety margin for this client (seconds)
+     */
+    protected long getTokenExpiryMargin() {
+        final Integer defaultMargin = config.getInt(
+            OAuth2ConfigConstants.LC_TOKEN_EXPIRY_MARGIN.getValue(),
+            Integer.valueOf(OAuth2Constants.TOKEN_EXPIRY_MARGIN.getValue()));
+        return config.getInt(
+            String.format(OAuth2ConfigConstants.LC_OAUTH_TOKEN_EXPIRY_MARGIN_TEMPLATE.getValue(), client),
+            defaultMargin);
     }
 
     /**
@@ -553,6 +683,21 @@ public abstract class OAuth2Handler {
             : null;
     }
 
+    /**
+     * Retrieves the access token lifetime from the token response.<br>
+     * This method should be overridden if the implementing client uses a different parameter.
+     *
+     * @param credentials The validated getToken response to retrieve lifetime from
+     * @return The access token lifetime in seconds, null if not reported
+     */
+    protected Long getTokenExpiresIn(JsonNode credentials) {
+        if (credentials == null || !credentials.hasNonNull("expires_in")) {
+            return null;
+        }
+        final long expiresIn = credentials.get("expires_in").asLong();
+        return expiresIn > 0 ? expiresIn : null;
+    }
+
     /**
      * This method should be overridden if the implementing client uses a different auth header.
      *
@@ -825,6 +970,31 @@ public abstract class OAuth2Handler {
         }
     }
 
+    /**
+     * Builds and splits a sample state string.<br>
+     * Used on startup to load and exercise the state handling before the
+     * first authorize request.
+     *
+     * @throws ServiceException If the state string cannot be built or split
+     */
+    public void warmUpStateString() throws ServiceException {
+        final Map<String, String> params = new HashMap<String, String>();
+        final String state = buildStateString("?", "/", "warmup", "");
+        try {
+            splitStateString(URLDecoder.decode(StringUtils.substringAfter(state, "="),
+                OAuth2Constants.ENCODING.getValue()), params);
+        } catch (final UnsupportedEncodingException e) {
+            throw ServiceException.INVALID_REQUEST("Unable to decode state parameter.", e);
+        }
+    }
+
+    /**
+     * @return The token endpoint of the client
+     */
+    public String getAuthenticateUri() {
+        return authenticateUri;
+    }
+
     /**
      * Returns the relay state param for the client.<br>
      * This method should be overridden if the implementing client uses a
@@ -846,21 +1016,38 @@ public abstract class OAuth2Handler {
      */
     public static JsonNode executeRequestForJson(HttpRequestBase request)
         throws ServiceException, IOException {
-        JsonNode json = null;
-        final String responseBody = OAuth2Utilities.executeRequest(request);
+        return OAuth2Utilities.executeRequestForJson(request);
+    }
 
-        // try to parse json
-        // throw if the upstream response
-        // is not what we previously expected
-        try {
-            json = stringToJson(responseBody);
-        } catch (final JsonParseException e) {
-            ZimbraLog.extensions.warn("The destination server responded with unexpected data.");
-            throw ServiceException
-                .PROXY_ERROR("The destination server responded with unexpected data.", null);
-        }
+    /**
+     * Executes an Http Request and streams the elements of a top level json
+     * array field to the consumer as they are parsed.
+     *
+     * @param request Request to execute
+     * @param arrayField The name of the top level array field to stream
+     * @param consumer Receives each element of the array field
+     * @return The other top level fields of the response
+     * @throws ServiceException If there are issues with the connection
+     * @throws IOException If there are non connection related issues
+     * @see OAuth2Utilities#executeRequestForRecords(HttpRequestBase, String,
+     *      JsonRecordConsumer)
+     */
+    public static JsonNode executeRequestForRecords(HttpRequestBase request, String arrayField,
+        JsonRecordConsumer consumer) throws ServiceException, IOException {
+        return OAuth2Utilities.executeRequestForRecords(request, arrayField, consumer);
+    }
 
-        return json;
+    /**
+     * Executes an Http Request without blocking the calling thread and
+     * parses for json.
+     *
+     * @param request Request to execute
+     * @return The future json response
+     * @see OAuth2Utilities#executeRequestForJsonAsync(HttpRequestBase)
+     */
+    public static CompletableFuture<JsonNode> executeRequestForJsonAsync(
+        HttpRequestBase request) {
+        return OAuth2Utilities.executeRequestForJsonAsync(request);
     }
 
     /**
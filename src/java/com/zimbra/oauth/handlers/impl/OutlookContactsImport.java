@@ -57,6 +57,8 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.Pair;
 import com.zimbra.common.util.ZimbraLog;
@@ -77,13 +79,13 @@ import com.zimbra.cs.service.util.ItemId;
 import com.zimbra.oauth.handlers.impl.OutlookContactsImport.OutlookContactsUtil.OContactFieldType;
 import com.zimbra.oauth.handlers.impl.OutlookOAuth2Handler.OutlookContactConstants;
 import com.zimbra.oauth.handlers.impl.OutlookOAuth2Handler.OutlookOAuth2Constants;
-import com.zimbra.oauth.models.HttpResponseWrapper;
 import com.zimbra.oauth.models.OAuthInfo;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.LdapConfiguration;
 import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
 import com.zimbra.oauth.utilities.OAuth2DataSource;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
+import com.zimbra.oauth.utilities.OAuth2JsonUtilities.JsonRecordConsumer;
 import com.zimbra.oauth.utilities.OAuth2Utilities;
 
 /**
@@ -228,14 +230,42 @@ public class OutlookContactsImport implements DataImport {
      */
     protected JsonNode getContactsRequest(String url, String authorizationHeader)
         throws ServiceException, IOException {
+        final HttpGet get = buildContactsRequest(url, authorizationHeader);
+        ZimbraLog.extensions.debug("Fetching contacts for import.");
+        return OAuth2Handler.executeRequestForJson(get);
+    }
+
+    /**
+     * Requests contacts for the given credentials, passing each contact to
+     * the consumer as it is parsed.
+     *
+     * @param url The contacts url
+     * @param authorizationHeader The credentials header
+     * @param consumer Receives each contact of the response
+     * @return Json contacts response without the contacts
+     * @throws ServiceException If there are issues retrieving the data
+     * @throws IOException If there are issues executing the request
+     */
+    protected JsonNode getContactsRequest(String url, String authorizationHeader,
+        JsonRecordConsumer consumer) throws ServiceException, IOException {
+        final HttpGet get = buildContactsRequest(url, authorizationHeader);
+        ZimbraLog.extensions.debug("Fetching contacts for import.");
+        return OAuth2Handler.executeRequestForRecords(get, "value", consumer);
+    }
+
+    /**
+     * @param url The contacts url
+     * @param authorizationHeader The credentials header
+     * @return The contacts request
+     */
+    protected HttpGet buildContactsRequest(String url, String authorizationHeader) {
         final HttpGet get = new HttpGet(url);
         get.addHeader(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(),
             authorizationHeader);
         get.addHeader("Prefer", "odata.track-changes");
         get.addHeader("Prefer",
             "odata.maxpagesize=" + OutlookContactConstants.CONTACTS_PAGE_SIZE.getValue());
-        ZimbraLog.extensions.debug("Fetching contacts for import.");
-        return OAuth2Handler.executeRequestForJson(get);
+        return get;
     }
 
     /**
@@ -418,12 +448,14 @@ public class OutlookContactsImport implements DataImport {
                     // empty the create list
                     createList.clear();
                     ZimbraLog.extensions.trace("Attempting to sync Outlook contacts. URL: %s", url);
-                    // fetch contacts
-                    final JsonNode jsonResponse = getContactsRequest(url, authorizationHeader);
+                    // fetch contacts, collecting the page's contacts as they are parsed
+                    final ArrayNode jsonContacts = JsonNodeFactory.instance.arrayNode();
+                    final JsonNode jsonResponse = getContactsRequest(url, authorizationHeader,
+                        jsonContacts::add);
                     if (jsonResponse != null && jsonResponse.isContainerNode()) {
-                        final String respContent = jsonResponse.toString();
-                        ZimbraLog.extensions.info("Contacts sync response from Outlook %s",
-                            respContent);
+                        // log only at most verbose level, this contains privileged info
+                        ZimbraLog.extensions.trace("Contacts sync response from Outlook %s",
+                            jsonResponse);
                         // check for error
                         if (jsonResponse.has("error")) {
                             throw ServiceException.FAILURE(
@@ -432,9 +464,7 @@ public class OutlookContactsImport implements DataImport {
                                         + " from Outlook Contacts API. The error was:%s",
                                     jsonResponse.get("error").asText()),
                                 new Exception("Contact import returned error."));
-                        } else if (jsonResponse.has("value")
-                            && jsonResponse.get("value").isArray()) {
-                            final JsonNode jsonContacts = jsonResponse.get("value");
+                        } else if (jsonContacts.size() > 0) {
                             parseNewContacts(existingContacts, jsonContacts, createList);
                             if (!createList.isEmpty()) {
                                 // create the contacts that need to be added
@@ -681,10 +711,10 @@ public class OutlookContactsImport implements DataImport {
                 // use authorization
                 get.addHeader(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(),
                     authorizationHeader);
-                final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(client, get);
                 // add to attachments
-                final Attachment attachment = OAuth2Utilities.createAttachmentFromResponse(
-                    response,
+                final Attachment attachment = OAuth2Utilities.executeRequestForAttachment(
+                    client,
+                    get,
                     key,
                     OutlookContactConstants.CONTACTS_IMAGE_NAME.getValue());
                 if (attachment != null) {
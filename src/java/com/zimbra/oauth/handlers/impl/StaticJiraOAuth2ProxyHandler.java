@@ -79,6 +79,26 @@ public class StaticJiraOAuth2ProxyHandler extends StaticOAuth2ProxyHandler imple
         "POST", Pattern.compile("^(/rest/api/3/issue)/?(?:([^/]+)/attachments)??$")
     );
 
+    /**
+     * Create issue requests are validated with the project in their body.
+     */
+    @Override
+    public boolean isProxyBodyRequired(String client, String method, String target) {
+        if (StringUtils.isEmpty(target) || !allowedTargetPaths.containsKey(method)) {
+            return false;
+        }
+        try {
+            final String requestPath = new URIBuilder(target).getPath();
+            if (requestPath == null) {
+                return false;
+            }
+            final Matcher issueMatcher = allowedTargetPaths.get(method).matcher(requestPath);
+            return issueMatcher.matches() && issueMatcher.group(2) == null;
+        } catch (final URISyntaxException e) {
+            return false;
+        }
+    }
+
     @Override
     public boolean isProxyRequestAllowed(String client, String method,
         Map<String, String> extraHeaders, String target, byte[] body, Account account) {
@@ -167,8 +187,7 @@ public class StaticJiraOAuth2ProxyHandler extends StaticOAuth2ProxyHandler imple
     protected String getProjectIdFromIssue(String issueApi, String issueId, String authHeader) {
         final HttpGet request = new HttpGet(issueApi + "/" + issueId);
         request.setHeader(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(), authHeader);
-        try {
-            final HttpResponseWrapper res = OAuth2Utilities.executeRequestRaw(request);
+        try (final HttpResponseWrapper res = OAuth2Utilities.executeRequestRaw(request)) {
             // return nothing if not a json response
             final String contentType = res.getResponse()
                 .getFirstHeader(OAuth2HttpConstants.HEADER_CONTENT_TYPE.getValue()).getValue();
@@ -177,8 +196,7 @@ public class StaticJiraOAuth2ProxyHandler extends StaticOAuth2ProxyHandler imple
                     .warn("Invalid response type when fetching issue project id: %s", contentType);
                 return null;
             }
-            return getProjectIdFromBody(
-                OAuth2JsonUtilities.stringToMap(new String(res.getEntityBytes())));
+            return getProjectIdFromBody(OAuth2JsonUtilities.streamToMap(res.getEntityStream()));
         } catch (ServiceException | IOException e) {
             ZimbraLog.extensions.errorQuietly(String.format(
                 "Failed to determine project id from issue: %s via API: %s", issueId, issueApi), e);
@@ -60,6 +60,10 @@ public abstract class StaticOAuth2ProxyHandler {
         return ImmutableList.of("target");
     }
 
+    public boolean isProxyBodyRequired(String client, String method, String target) {
+        return false;
+    }
+
     /**
      * @param credentials The credentials to build auth header from
      * @param client The client (may contain details on the type of token)
@@ -301,7 +301,6 @@ public class TwitterContactsImport implements DataImport {
         final Set<String> existingContacts = getExistingContacts(mailbox, folderId);
         // get an authorization builder for signing the requests
         final TwitterAuthorizationBuilder authBuilder = getAuthorizationBuilder();
-        String respContent = "";
         String pageCursor = null;
         try {
             // loop to handle pagination
@@ -316,9 +315,8 @@ public class TwitterContactsImport implements DataImport {
                 // fetch contacts
                 final JsonNode jsonResponse = getContactsRequest(url, authBuilder.build());
                 if (jsonResponse != null && jsonResponse.isContainerNode()) {
-                    respContent = jsonResponse.toString();
                     // log only at most verbose level, this contains privileged info
-                    ZimbraLog.extensions.trace("Contacts sync response from Twitter %s", respContent);
+                    ZimbraLog.extensions.trace("Contacts sync response from Twitter %s", jsonResponse);
                     // check for errors
                     if (jsonResponse.has("errors")) {
                         throw ServiceException.FAILURE(
@@ -342,7 +340,7 @@ public class TwitterContactsImport implements DataImport {
                     } else {
                         ZimbraLog.extensions.debug(
                             "Did not find 'users' element in JSON response object. Response body: %s",
-                            respContent);
+                            jsonResponse);
                     }
                     // check for next page
                     pageCursor = getNextPageCursor(jsonResponse);
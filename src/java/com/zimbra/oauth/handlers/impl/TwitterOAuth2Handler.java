@@ -381,8 +381,7 @@ public class TwitterOAuth2Handler extends OAuth2Handler implements IOAuth2Handle
         request.setHeader(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(),
             authorizationHeader);
         String responseParams = null;
-        try {
-            final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(request);
+        try (final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(request)) {
             responseParams = validateTwitterResponse(response);
         } catch (final IOException e) {
             ZimbraLog.extensions
@@ -411,8 +410,7 @@ public class TwitterOAuth2Handler extends OAuth2Handler implements IOAuth2Handle
         request.setHeader(OAuth2HttpConstants.HEADER_AUTHORIZATION.getValue(),
             authorizationHeader);
         String rawResponse = null;
-        try {
-            final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(request);
+        try (final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(request)) {
             rawResponse = validateTwitterResponse(response);
             ZimbraLog.extensions.debug("Request for auth token completed.");
         } catch (final IOException e) {
@@ -75,7 +75,6 @@ import com.zimbra.cs.service.mail.CreateContact;
 import com.zimbra.cs.service.util.ItemId;
 import com.zimbra.oauth.handlers.impl.YahooOAuth2Handler.YahooContactConstants;
 import com.zimbra.oauth.handlers.impl.YahooOAuth2Handler.YahooOAuth2Constants;
-import com.zimbra.oauth.models.HttpResponseWrapper;
 import com.zimbra.oauth.models.OAuthInfo;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.LdapConfiguration;
@@ -577,11 +576,9 @@ public class YahooContactsImport implements DataImport {
                         try {
                             // fetch the image
                             final HttpGet get = new HttpGet(imageUrl);
-                            final HttpResponseWrapper response = OAuth2Utilities
-                                .executeRequestRaw(get);
                             // add to attachments
                             final Attachment attachment = OAuth2Utilities
-                                .createAttachmentFromResponse(response, key,
+                                .executeRequestForAttachment(get, key,
                                     YahooContactConstants.CONTACTS_IMAGE_NAME.getValue());
                             if (attachment != null) {
                                 attachments.add(attachment);
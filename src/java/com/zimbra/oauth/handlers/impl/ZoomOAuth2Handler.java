@@ -33,8 +33,8 @@ import com.zimbra.oauth.models.OAuthInfo;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.OAuth2CacheUtilities;
 import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
-import com.zimbra.oauth.utilities.OAuth2DataSource.DataSourceMetaData;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
+import com.zimbra.oauth.utilities.OAuth2IdentifierIndex;
 import com.zimbra.oauth.utilities.OAuth2JsonUtilities;
 import com.zimbra.oauth.utilities.OAuth2Utilities;
 
@@ -177,6 +177,11 @@ public class ZoomOAuth2Handler extends OAuth2Handler implements IOAuth2Handler,
 
     }
 
+    /**
+     * Zoom identifier to Zimbra account id index.
+     */
+    protected OAuth2IdentifierIndex identifierIndex;
+
     /**
      * Constructs a ZoomOAuth2Handler object.
      *
@@ -189,6 +194,7 @@ public class ZoomOAuth2Handler extends OAuth2Handler implements IOAuth2Handler,
         requiredScopes = ZoomOAuth2Constants.REQUIRED_SCOPES.getValue();
         scopeDelimiter = ZoomOAuth2Constants.SCOPE_DELIMITER.getValue();
         relayKey = ZoomOAuth2Constants.RELAY_KEY.getValue();
+        identifierIndex = OAuth2IdentifierIndex.getInstance(client);
     }
 
     @Override
@@ -296,9 +302,8 @@ public class ZoomOAuth2Handler extends OAuth2Handler implements IOAuth2Handler,
                 ZimbraLog.extensions.debug(
                     "caching data for accountId: %s userId: %s zimbraAccountId: %s", zoomAccountId,
                     zoomUserId, zimbraAccountId);
-                // cache Zoom -> Zimbra account mapping
-                final String cacheKey = DataSourceMetaData.buildRootCacheKey(client, identifier);
-                OAuth2CacheUtilities.put(cacheKey, zimbraAccountId);
+                // index Zoom -> Zimbra account mapping
+                identifierIndex.put(identifier, zimbraAccountId);
                 return identifier;
             }
         }
@@ -359,9 +364,8 @@ public class ZoomOAuth2Handler extends OAuth2Handler implements IOAuth2Handler,
             return false;
         }
 
-        // remove the account mapping from cache
-        final String cacheKey = DataSourceMetaData.buildRootCacheKey(client, identifier);
-        OAuth2CacheUtilities.remove(cacheKey);
+        // remove the account mapping from the index
+        identifierIndex.remove(identifier);
 
         return true;
     }
@@ -378,15 +382,14 @@ public class ZoomOAuth2Handler extends OAuth2Handler implements IOAuth2Handler,
     protected boolean loadZimbraAccount(String accountId, String userId, OAuthInfo oauthInfo)
         throws ServiceException {
         final String identifier = buildPrimaryIdentifier(accountId, userId);
-        final String cacheKey = DataSourceMetaData.buildRootCacheKey(client, identifier);
-        final String zimbraAccountId = OAuth2CacheUtilities.get(cacheKey);
+        final String zimbraAccountId = identifierIndex.get(identifier);
         final Account account = Provisioning.getInstance().getAccountById(zimbraAccountId);
 
         if (account == null) {
             // no account mapping found. do nothing since we can't validate the request.
             // this may happen if:
             //   * the request is not from zoom
-            //   * the cache instance drops the data for this account
+            //   * the account has no datasource for the zoom user
             ZimbraLog.extensions.warn(
                 "unable to determine zimbra id for oauth deauthorization request. accountId: %s userId: %s",
                 accountId, userId);
@@ -469,8 +472,10 @@ public class ZoomOAuth2Handler extends OAuth2Handler implements IOAuth2Handler,
         try {
             final String json = OAuth2JsonUtilities.objectToJson(params);
             request.setEntity(new StringEntity(json, ContentType.APPLICATION_JSON));
-            final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(request);
-            return Status.OK.getStatusCode() == response.getResponse().getStatusLine().getStatusCode();
+            try (final HttpResponseWrapper response = OAuth2Utilities.executeRequestRaw(request)) {
+                return Status.OK.getStatusCode() == response.getResponse().getStatusLine()
+                    .getStatusCode();
+            }
         } catch (final ServiceException | IOException e) {
             ZimbraLog.extensions
                 .errorQuietly("There was an issue sending a compliance request to Zoom.", e);
@@ -6,19 +6,18 @@
 package com.zimbra.oauth.managers;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang.StringUtils;
+
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.oauth.handlers.IOAuth2CacheHandler;
 import com.zimbra.oauth.handlers.IOAuth2Handler;
 import com.zimbra.oauth.handlers.IOAuth2ProxyHandler;
-import com.zimbra.oauth.handlers.impl.StaticJiraOAuth2ProxyHandler;
 import com.zimbra.oauth.utilities.Configuration;
 import com.zimbra.oauth.utilities.LdapConfiguration;
 import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
@@ -34,18 +33,15 @@ import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
 public class ClassManager {
 
     /**
-     * Cache of handler instances by client name.
+     * Cache of handler instances by client name.<br>
+     * Reads do not lock, a missing handler is created once per client.
      */
-    protected static final Map<String, IOAuth2Handler> handlersCache = Collections
-        .synchronizedMap(new HashMap<String, IOAuth2Handler>());
+    protected static final Map<String, IOAuth2Handler> handlersCache = new ConcurrentHashMap<String, IOAuth2Handler>();
 
     /**
-     * Map of predefined proxy handler instances by client name.<br>
-     * This may eventually need to be loaded by configuration.
+     * Cache of static proxy handler instances by client prefix.
      */
-    protected static final Map<String, IOAuth2ProxyHandler> staticProxyHandlersMap = ImmutableMap.of(
-        "static-basic-jira", new StaticJiraOAuth2ProxyHandler()
-    );
+    protected static final Map<String, IOAuth2ProxyHandler> staticProxyHandlersCache = new ConcurrentHashMap<String, IOAuth2ProxyHandler>();
 
     /**
      * Client pattern for static proxy handlers.<br>
@@ -69,6 +65,17 @@ public class ClassManager {
         return client;
     }
 
+    /**
+     * Returns the name a client's handler is resolved by, without project
+     * specific data for static clients.
+     *
+     * @param client The client
+     * @return The client name
+     */
+    public static String getClientName(String client) {
+        return client == null ? "" : getPrefix(client);
+    }
+
     /**
      * Retrieves a IOAuth2ProxyHandler for a given client.<br>
      * Loads a full handler and tests for compatibility if non-static.
@@ -79,7 +86,7 @@ public class ClassManager {
      */
     public static IOAuth2ProxyHandler getProxyHandler(String client) throws ServiceException {
         // use static handler if static client
-        final IOAuth2ProxyHandler staticHandler = staticProxyHandlersMap.get(getPrefix(client));
+        final IOAuth2ProxyHandler staticHandler = getStaticProxyHandler(getPrefix(client));
         if (staticHandler != null) {
             return staticHandler;
         }
@@ -113,45 +120,13 @@ public class ClassManager {
         // check the cache for a matching handler
         IOAuth2Handler handler = handlersCache.get(client);
 
-        // if no cached handler, try to build then cache one
+        // if no cached handler, build one outside the cache lock, then keep
+        // whichever was cached first by concurrent lookups
         if (handler == null) {
-            // synchronize and re-fetch from cache to prevent duplicates
-            synchronized (handlersCache) {
-                handler = handlersCache.get(client);
-                if (handler == null) {
-                    try {
-                        // load a config file
-                        final Configuration config = LdapConfiguration.buildConfiguration(client);
-
-                        // load the handler class
-                        final Class<?> daoClass = Class.forName(
-                            config.getString(OAuth2ConfigConstants.LC_HANDLER_CLASS_PREFIX.getValue() + client));
-                        handler = (IOAuth2Handler) daoClass.getConstructor(Configuration.class)
-                            .newInstance(config);
-
-                        // cache the new handler
-                        handlersCache.put(client, handler);
-                    } catch (final ServiceException e) {
-                        ZimbraLog.extensions.debug(
-                            "There was an issue loading the configuration for the client.", e);
-                        throw e;
-                    } catch (final ClassNotFoundException e) {
-                        ZimbraLog.extensions
-                            .warnQuietly("The specified client is not supported: " + client, e);
-                        throw ServiceException.UNSUPPORTED();
-                    } catch (InstantiationException | IllegalAccessException
-                        | IllegalArgumentException | InvocationTargetException
-                        | NoSuchMethodException | SecurityException e) {
-                        ZimbraLog.extensions.errorQuietly(
-                            "There was an issue instantiating the oauth2 handler class for client: "
-                                + client,
-                            e);
-                        throw ServiceException.FAILURE(
-                            "There was an issue instantiating the oauth2 handler class for client: "
-                                + client,
-                            e);
-                    }
-                }
+            final IOAuth2Handler loaded = loadHandler(client);
+            handler = handlersCache.putIfAbsent(client, loaded);
+            if (handler == null) {
+                handler = loaded;
             }
         }
         // make sure the handler can be used with available caching system
@@ -164,4 +139,122 @@ public class ClassManager {
         }
         return handler;
     }
+
+    /**
+     * Retrieves the static proxy handler registered for a client prefix.<br>
+     * Checks for cached instance before instantiating.
+     *
+     * @param prefix The client prefix (static-basic-jira, etc)
+     * @return The static proxy handler, or null if the prefix is not a
+     *         static client
+     * @throws ServiceException If there are issues creating the handler
+     */
+    protected static IOAuth2ProxyHandler getStaticProxyHandler(String prefix)
+        throws ServiceException {
+        IOAuth2ProxyHandler handler = staticProxyHandlersCache.get(prefix);
+        if (handler == null) {
+            final IOAuth2HandlerProvider<?> provider = OAuth2HandlerRegistry.getInstance()
+                .getProvider(prefix);
+            if (provider == null || !provider.isStatic()) {
+                return null;
+            }
+            final IOAuth2ProxyHandler loaded = castHandler(prefix, provider.newHandler(null),
+                IOAuth2ProxyHandler.class);
+            handler = staticProxyHandlersCache.putIfAbsent(prefix, loaded);
+            if (handler == null) {
+                handler = loaded;
+            }
+        }
+        return handler;
+    }
+
+    /**
+     * Instantiates the IOAuth2Handler for a given client.<br>
+     * Uses the registered provider of the configured handler class, and
+     * falls back to reflection for handler classes without a provider.
+     *
+     * @param client The client to create a handler for (yahoo, google, etc)
+     * @return An IOAuth2Handler instance
+     * @throws ServiceException If there are issues
+     */
+    protected static IOAuth2Handler loadHandler(String client) throws ServiceException {
+        final Configuration config;
+        try {
+            // load a config file
+            config = LdapConfiguration.buildConfiguration(client);
+        } catch (final ServiceException e) {
+            ZimbraLog.extensions.debug(
+                "There was an issue loading the configuration for the client.", e);
+            throw e;
+        }
+        // find the provider of the handler class, localconfig may override it
+        final String className = config
+            .getString(OAuth2ConfigConstants.LC_HANDLER_CLASS_PREFIX.getValue() + client);
+        final OAuth2HandlerRegistry registry = OAuth2HandlerRegistry.getInstance();
+        IOAuth2HandlerProvider<?> provider = registry.getProvider(client);
+        if (provider == null || !provider.getHandlerClass().getName().equals(className)) {
+            provider = registry.getProviderByClass(className);
+        }
+        if (provider != null && !provider.isStatic()) {
+            return castHandler(client, provider.newHandler(config), IOAuth2Handler.class);
+        }
+        return loadHandlerClass(client, className, config);
+    }
+
+    /**
+     * Instantiates a handler class that has no registered provider.
+     *
+     * @param client The client to create a handler for
+     * @param className The handler class name
+     * @param config The client configuration
+     * @return An IOAuth2Handler instance
+     * @throws ServiceException If there are issues
+     */
+    protected static IOAuth2Handler loadHandlerClass(String client, String className,
+        Configuration config) throws ServiceException {
+        if (StringUtils.isEmpty(className)) {
+            ZimbraLog.extensions.warn("The specified client is not supported: " + client);
+            throw ServiceException.UNSUPPORTED();
+        }
+        ZimbraLog.extensions.debug("No oauth2 handler provider for client: %s, loading class: %s",
+            client, className);
+        try {
+            // load the handler class
+            final Class<?> daoClass = Class.forName(className);
+            return (IOAuth2Handler) daoClass.getConstructor(Configuration.class)
+                .newInstance(config);
+        } catch (final ClassNotFoundException e) {
+            ZimbraLog.extensions
+                .warnQuietly("The specified client is not supported: " + client, e);
+            throw ServiceException.UNSUPPORTED();
+        } catch (InstantiationException | IllegalAccessException
+            | IllegalArgumentException | InvocationTargetException
+            | NoSuchMethodException | SecurityException | ClassCastException e) {
+            ZimbraLog.extensions.errorQuietly(
+                "There was an issue instantiating the oauth2 handler class for client: "
+                    + client,
+                e);
+            throw ServiceException.FAILURE(
+                "There was an issue instantiating the oauth2 handler class for client: "
+                    + client,
+                e);
+        }
+    }
+
+    /**
+     * @param client The client the handler was created for
+     * @param handler The handler
+     * @param type The expected handler type
+     * @return The handler as the expected type
+     * @throws ServiceException If the handler is not of the expected type
+     */
+    protected static <T> T castHandler(String client, Object handler, Class<T> type)
+        throws ServiceException {
+        if (!type.isInstance(handler)) {
+            ZimbraLog.extensions.warn("The handler provided for client: %s is not an %s", client,
+                type.getSimpleName());
+            throw ServiceException.UNSUPPORTED();
+        }
+        return type.cast(handler);
+    }
 }
@@ -0,0 +1,52 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.managers;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.oauth.utilities.Configuration;
+
+/**
+ * The IOAuth2HandlerProvider interface.<br>
+ * Creates the handler of one client. Additional providers are discovered
+ * with {@link java.util.ServiceLoader} by listing their class names in
+ * <code>META-INF/services/com.zimbra.oauth.managers.IOAuth2HandlerProvider</code>.
+ * Providers must have a no-arg constructor and must not read configuration
+ * when constructed.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.managers
+ * @copyright Copyright © 2022
+ * @param <T> The handler type
+ */
+public interface IOAuth2HandlerProvider<T> {
+
+    /**
+     * @return The client name (yahoo, google, static-basic-jira, etc)
+     */
+    String getClient();
+
+    /**
+     * @return The handler class, matched against localconfig handler class
+     *         overrides
+     */
+    Class<T> getHandlerClass();
+
+    /**
+     * Static handlers are proxy handlers shared by every client with the
+     * provider's client name as prefix, and are created without
+     * configuration.
+     *
+     * @return True if the handler is a static proxy handler
+     */
+    boolean isStatic();
+
+    /**
+     * @param config The client configuration, null for static handlers
+     * @return A new handler instance
+     * @throws ServiceException If there are issues creating the handler
+     */
+    T newHandler(Configuration config) throws ServiceException;
+}
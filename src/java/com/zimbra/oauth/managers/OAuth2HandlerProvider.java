@@ -0,0 +1,87 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.managers;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.oauth.utilities.Configuration;
+
+/**
+ * The OAuth2HandlerProvider class.<br>
+ * Provider backed by a constructor reference. Plugins may extend it with a
+ * no-arg constructor to publish a handler through the service loader.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.managers
+ * @copyright Copyright © 2022
+ * @param <T> The handler type
+ */
+public class OAuth2HandlerProvider<T> implements IOAuth2HandlerProvider<T> {
+
+    /**
+     * The client name.
+     */
+    protected final String client;
+
+    /**
+     * The handler class.
+     */
+    protected final Class<T> handlerClass;
+
+    /**
+     * Whether the handler is a static proxy handler.
+     */
+    protected final boolean isStatic;
+
+    /**
+     * Creates the handler.
+     */
+    protected final Factory<T> factory;
+
+    /**
+     * @param client The client name
+     * @param handlerClass The handler class
+     * @param isStatic Whether the handler is a static proxy handler
+     * @param factory Creates the handler
+     */
+    public OAuth2HandlerProvider(String client, Class<T> handlerClass, boolean isStatic,
+        Factory<T> factory) {
+        this.client = client;
+        this.handlerClass = handlerClass;
+        this.isStatic = isStatic;
+        this.factory = factory;
+    }
+
+    @Override
+    public String getClient() {
+        return client;
+    }
+
+    @Override
+    public Class<T> getHandlerClass() {
+        return handlerClass;
+    }
+
+    @Override
+    public boolean isStatic() {
+        return isStatic;
+    }
+
+    @Override
+    public T newHandler(Configuration config) throws ServiceException {
+        return factory.create(config);
+    }
+
+    /**
+     * Creates a handler, usually a constructor reference.
+     *
+     * @param <T> The handler type
+     */
+    @FunctionalInterface
+    public interface Factory<T> {
+
+        T create(Configuration config) throws ServiceException;
+    }
+}
@@ -0,0 +1,178 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.managers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.handlers.impl.DropboxOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.FacebookOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.NextcloudOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.OutlookOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.SlackOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.StaticJiraOAuth2ProxyHandler;
+import com.zimbra.oauth.handlers.impl.TwitterOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.WebexOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.YahooOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.ZoomOAuth2Handler;
+
+/**
+ * The OAuth2HandlerRegistry class.<br>
+ * Providers of every dynamic and static proxy handler by client name.
+ * Built-in providers are registered first, providers discovered with the
+ * service loader are added or replace built-ins with the same client name.
+ * The registry does not change once loaded.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.managers
+ * @copyright Copyright © 2022
+ */
+public class OAuth2HandlerRegistry {
+
+    /**
+     * Providers by client name.
+     */
+    protected final Map<String, IOAuth2HandlerProvider<?>> providers;
+
+    /**
+     * Providers by handler class name, for localconfig overrides.
+     */
+    protected final Map<String, IOAuth2HandlerProvider<?>> providersByClass;
+
+    /**
+     * @param providers Providers in registration order, later ones replace
+     *            earlier ones with the same client name
+     */
+    protected OAuth2HandlerRegistry(Collection<IOAuth2HandlerProvider<?>> providers) {
+        final Map<String, IOAuth2HandlerProvider<?>> byClient = new LinkedHashMap<String, IOAuth2HandlerProvider<?>>();
+        final Map<String, IOAuth2HandlerProvider<?>> byClass = new LinkedHashMap<String, IOAuth2HandlerProvider<?>>();
+        for (final IOAuth2HandlerProvider<?> provider : providers) {
+            byClient.put(provider.getClient(), provider);
+            byClass.put(provider.getHandlerClass().getName(), provider);
+        }
+        this.providers = Collections.unmodifiableMap(byClient);
+        this.providersByClass = Collections.unmodifiableMap(byClass);
+    }
+
+    /**
+     * @return The registry, loaded on first use
+     */
+    public static OAuth2HandlerRegistry getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * @param client The client name
+     * @return The client's provider, or null if none
+     */
+    public IOAuth2HandlerProvider<?> getProvider(String client) {
+        return providers.get(client);
+    }
+
+    /**
+     * @param className A handler class name
+     * @return The provider of the handler class, or null if none
+     */
+    public IOAuth2HandlerProvider<?> getProviderByClass(String className) {
+        return providersByClass.get(className);
+    }
+
+    /**
+     * @return Every provider in registration order
+     */
+    public Collection<IOAuth2HandlerProvider<?>> getProviders() {
+        return providers.values();
+    }
+
+    /**
+     * @return The dynamic (non-static) client names, sorted
+     */
+    public List<String> getClients() {
+        return providers.values().stream()
+            .filter((provider) -> !provider.isStatic())
+            .map(IOAuth2HandlerProvider::getClient)
+            .sorted()
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return The providers shipped with this project
+     */
+    protected static List<IOAuth2HandlerProvider<?>> getBuiltInProviders() {
+        return Arrays.<IOAuth2HandlerProvider<?>>asList(
+            new OAuth2HandlerProvider<DropboxOAuth2Handler>("dropbox",
+                DropboxOAuth2Handler.class, false, DropboxOAuth2Handler::new),
+            new OAuth2HandlerProvider<FacebookOAuth2Handler>("facebook",
+                FacebookOAuth2Handler.class, false, FacebookOAuth2Handler::new),
+            new OAuth2HandlerProvider<GoogleOAuth2Handler>("google",
+                GoogleOAuth2Handler.class, false, GoogleOAuth2Handler::new),
+            new OAuth2HandlerProvider<NextcloudOAuth2Handler>("nextcloud",
+                NextcloudOAuth2Handler.class, false, NextcloudOAuth2Handler::new),
+            new OAuth2HandlerProvider<OutlookOAuth2Handler>("outlook",
+                OutlookOAuth2Handler.class, false, OutlookOAuth2Handler::new),
+            new OAuth2HandlerProvider<SlackOAuth2Handler>("slack",
+                SlackOAuth2Handler.class, false, SlackOAuth2Handler::new),
+            new OAuth2HandlerProvider<TwitterOAuth2Handler>("twitter",
+                TwitterOAuth2Handler.class, false, TwitterOAuth2Handler::new),
+            new OAuth2HandlerProvider<WebexOAuth2Handler>("webex",
+                WebexOAuth2Handler.class, false, WebexOAuth2Handler::new),
+            new OAuth2HandlerProvider<YahooOAuth2Handler>("yahoo",
+                YahooOAuth2Handler.class, false, YahooOAuth2Handler::new),
+            new OAuth2HandlerProvider<ZoomOAuth2Handler>("zoom",
+                ZoomOAuth2Handler.class, false, ZoomOAuth2Handler::new),
+            new OAuth2HandlerProvider<StaticJiraOAuth2ProxyHandler>("static-basic-jira",
+                StaticJiraOAuth2ProxyHandler.class, true,
+                (config) -> new StaticJiraOAuth2ProxyHandler()));
+    }
+
+    /**
+     * Loads the built-in providers, then the providers discovered with the
+     * service loader. Providers that fail to load are logged and skipped.
+     *
+     * @return The registry
+     */
+    @SuppressWarnings("rawtypes")
+    protected static OAuth2HandlerRegistry load() {
+        final List<IOAuth2HandlerProvider<?>> providers = new ArrayList<IOAuth2HandlerProvider<?>>(
+            getBuiltInProviders());
+        final Iterator<IOAuth2HandlerProvider> discovered = ServiceLoader
+            .load(IOAuth2HandlerProvider.class, OAuth2HandlerRegistry.class.getClassLoader())
+            .iterator();
+        while (true) {
+            try {
+                if (!discovered.hasNext()) {
+                    break;
+                }
+                final IOAuth2HandlerProvider<?> provider = discovered.next();
+                ZimbraLog.extensions.info("Registering oauth2 handler provider for client: %s",
+                    provider.getClient());
+                providers.add(provider);
+            } catch (final ServiceConfigurationError e) {
+                ZimbraLog.extensions.errorQuietly("Unable to load an oauth2 handler provider.", e);
+            }
+        }
+        return new OAuth2HandlerRegistry(providers);
+    }
+
+    /**
+     * Loads the registry on first access.
+     */
+    private static class InstanceHolder {
+
+        private static final OAuth2HandlerRegistry INSTANCE = load();
+    }
+}
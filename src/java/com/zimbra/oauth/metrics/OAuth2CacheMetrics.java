@@ -0,0 +1,345 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.cache.OAuth2LocalCacheHelper;
+import com.zimbra.oauth.utilities.OAuth2Constants;
+
+/**
+ * The OAuth2CacheMetrics class.<br>
+ * Counts and times oauth cache operations per cache layer, client, and
+ * operation. The client is derived from the cache key formats built by
+ * DataSourceMetaData (token, token denied, and root keys).<br>
+ * Also publishes the counters of registered local caches (hits, misses,
+ * puts, evictions and expirations).<br>
+ * Registered with the platform MBean server as
+ * `com.zimbra.oauth:type=CacheMetrics`.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.metrics
+ * @copyright Copyright © 2022
+ */
+public class OAuth2CacheMetrics implements OAuth2CacheMetricsMXBean {
+
+    /**
+     * The outermost cache layer, as seen by callers.
+     */
+    public static final String LAYER_CACHE = "cache";
+
+    /**
+     * The backend cache layer, behind the near-cache.
+     */
+    public static final String LAYER_BACKEND = "backend";
+
+    /**
+     * Prefix of local cache counters.
+     */
+    public static final String LAYER_LOCAL = "local";
+
+    /**
+     * Operation names.
+     */
+    public static final String OPERATION_GET = "get";
+    public static final String OPERATION_PUT = "put";
+    public static final String OPERATION_REMOVE = "remove";
+
+    /**
+     * Client name for keys that do not match a known format.
+     */
+    protected static final String CLIENT_OTHER = "other";
+
+    /**
+     * Max number of tracked layer/client/operation combinations.
+     */
+    protected static final int MAX_STATS = 256;
+
+    /**
+     * Latency bucket upper bounds (microseconds), the last bucket is unbounded.
+     */
+    protected static final long[] LATENCY_BUCKETS = { 250, 500, 1000, 2500, 5000, 10000, 25000,
+        50000, 100000, 250000, 500000, 1000000 };
+
+    /**
+     * The JMX object name.
+     */
+    protected static final String OBJECT_NAME = "com.zimbra.oauth:type=CacheMetrics";
+
+    /**
+     * Singleton instance.
+     */
+    protected static final OAuth2CacheMetrics instance = register(new OAuth2CacheMetrics());
+
+    /**
+     * Stats by {layer}.{client}.{operation}.
+     */
+    protected final Map<String, OperationStats> stats = new ConcurrentHashMap<String, OperationStats>();
+
+    /**
+     * Local caches by name.
+     */
+    protected final Map<String, OAuth2LocalCacheHelper> localCaches = new ConcurrentHashMap<String, OAuth2LocalCacheHelper>();
+
+    /**
+     * @return The metrics instance
+     */
+    public static OAuth2CacheMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records a get.
+     *
+     * @param layer The cache layer
+     * @param key The cache key
+     * @param hit True if a value was found
+     * @param nanos The elapsed time (nanoseconds)
+     */
+    public void recordGet(String layer, String key, boolean hit, long nanos) {
+        final OperationStats operationStats = getStats(layer, key, OPERATION_GET);
+        operationStats.record(nanos);
+        (hit ? operationStats.hits : operationStats.misses).increment();
+    }
+
+    /**
+     * Records a put or remove.
+     *
+     * @param layer The cache layer
+     * @param key The cache key
+     * @param operation The operation
+     * @param nanos The elapsed time (nanoseconds)
+     */
+    public void record(String layer, String key, String operation, long nanos) {
+        getStats(layer, key, operation).record(nanos);
+    }
+
+    /**
+     * Records a failed backend operation.
+     *
+     * @param key The cache key
+     * @param operation The operation
+     */
+    public void recordError(String key, String operation) {
+        getStats(LAYER_BACKEND, key, operation).errors.increment();
+    }
+
+    /**
+     * Publishes the counters of a local cache as local.{name}.{counter},
+     * replacing any cache with the same name.
+     *
+     * @param name The cache name
+     * @param cache The local cache
+     */
+    public void registerLocalCache(String name, OAuth2LocalCacheHelper cache) {
+        if (localCaches.size() < MAX_STATS || localCaches.containsKey(name)) {
+            localCaches.put(name, cache);
+        }
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> counters = new TreeMap<String, Long>();
+        for (final Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            final String name = entry.getKey();
+            final OperationStats operationStats = entry.getValue();
+            counters.put(name + ".count", operationStats.count.sum());
+            counters.put(name + ".errors", operationStats.errors.sum());
+            counters.put(name + ".total_us",
+                TimeUnit.NANOSECONDS.toMicros(operationStats.totalNanos.sum()));
+            if (name.endsWith("." + OPERATION_GET)) {
+                counters.put(name + ".hits", operationStats.hits.sum());
+                counters.put(name + ".misses", operationStats.misses.sum());
+            }
+        }
+        for (final Map.Entry<String, OAuth2LocalCacheHelper> entry : localCaches.entrySet()) {
+            final String name = String.format("%s.%s", LAYER_LOCAL, entry.getKey());
+            final OAuth2LocalCacheHelper cache = entry.getValue();
+            counters.put(name + ".hits", cache.getHitCount());
+            counters.put(name + ".misses", cache.getMissCount());
+            counters.put(name + ".puts", cache.getPutCount());
+            counters.put(name + ".evictions", cache.getEvictionCount());
+            counters.put(name + ".expirations", cache.getExpirationCount());
+        }
+        return counters;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyHistograms() {
+        final Map<String, Long> histograms = new TreeMap<String, Long>();
+        for (final Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            final LongAdder[] buckets = entry.getValue().buckets;
+            for (int i = 0; i < buckets.length; i++) {
+                histograms.put(String.format("%s.latency.%02d_%s", entry.getKey(), i,
+                    getBucketName(i)), buckets[i].sum());
+            }
+        }
+        return histograms;
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = 0;
+        long gets = 0;
+        for (final Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            if (entry.getKey().startsWith(LAYER_CACHE + ".")
+                && entry.getKey().endsWith("." + OPERATION_GET)) {
+                hits += entry.getValue().hits.sum();
+                gets += entry.getValue().count.sum();
+            }
+        }
+        return gets == 0 ? 0.0 : (double) hits / gets;
+    }
+
+    @Override
+    public void reset() {
+        stats.clear();
+        for (final OAuth2LocalCacheHelper cache : localCaches.values()) {
+            cache.resetCounters();
+        }
+    }
+
+    /**
+     * Derives the client from a cache key.<br>
+     * Handles {account_prefix}zm_oauth_social_{client}_{identifier}_... and
+     * zm_oauth_social_{client}_{identifier} keys.
+     *
+     * @param key The cache key
+     * @return The client, or `other` for unknown formats
+     */
+    public static String getClient(String key) {
+        final String prefix = OAuth2Constants.CACHE_KEY_PREFIX.getValue() + "_";
+        // account keys have format: {accountId}-key
+        String rootKey = key;
+        if (StringUtils.startsWith(key, "{")) {
+            rootKey = StringUtils.substringAfter(key, "}-");
+        }
+        if (!StringUtils.startsWith(rootKey, prefix)) {
+            return CLIENT_OTHER;
+        }
+        final String client = StringUtils.substringBefore(rootKey.substring(prefix.length()), "_");
+        return StringUtils.isEmpty(client) ? CLIENT_OTHER : client;
+    }
+
+    /**
+     * @param layer The cache layer
+     * @param key The cache key
+     * @param operation The operation
+     * @return The stats for the layer, client of the key, and operation
+     */
+    protected OperationStats getStats(String layer, String key, String operation) {
+        final String name = String.format("%s.%s.%s", layer, getClient(key), operation);
+        final OperationStats operationStats = stats.get(name);
+        if (operationStats != null) {
+            return operationStats;
+        }
+        // bound the number of tracked names in case of unexpected key formats
+        if (stats.size() >= MAX_STATS) {
+            return stats.computeIfAbsent(String.format("%s.%s.%s", layer, CLIENT_OTHER, operation),
+                k -> new OperationStats());
+        }
+        return stats.computeIfAbsent(name, k -> new OperationStats());
+    }
+
+    /**
+     * @param index The bucket index
+     * @return The bucket name, i.e. le_250us, le_1ms, inf
+     */
+    protected static String getBucketName(int index) {
+        if (index >= LATENCY_BUCKETS.length) {
+            return "inf";
+        }
+        final long bound = LATENCY_BUCKETS[index];
+        return bound < 1000 ? String.format("le_%dus", bound)
+            : bound % 1000 == 0 ? String.format("le_%dms", bound / 1000)
+            : String.format("le_%.1fms", bound / 1000.0);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param metrics The metrics to register
+     * @return The metrics
+     */
+    protected static OAuth2CacheMetrics register(OAuth2CacheMetrics metrics) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (final JMException | RuntimeException e) {
+            ZimbraLog.extensions.warn("Unable to register oauth cache metrics with JMX.");
+            ZimbraLog.extensions.debug(e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     */
+    public static void unregister() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final JMException | RuntimeException e) {
+            ZimbraLog.extensions.debug(e);
+        }
+    }
+
+    /**
+     * Stats of one layer/client/operation combination.
+     */
+    protected static class OperationStats {
+
+        /**
+         * Counters, latency sum, and latency buckets.
+         */
+        protected final LongAdder count = new LongAdder();
+        protected final LongAdder hits = new LongAdder();
+        protected final LongAdder misses = new LongAdder();
+        protected final LongAdder errors = new LongAdder();
+        protected final LongAdder totalNanos = new LongAdder();
+        protected final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+
+        protected OperationStats() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Counts an operation and its latency.
+         *
+         * @param nanos The elapsed time (nanoseconds)
+         */
+        protected void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            int index = 0;
+            while (index < LATENCY_BUCKETS.length && micros > LATENCY_BUCKETS[index]) {
+                index++;
+            }
+            buckets[index].increment();
+        }
+    }
+}
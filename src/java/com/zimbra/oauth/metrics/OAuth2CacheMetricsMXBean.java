@@ -0,0 +1,43 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.metrics;
+
+import java.util.Map;
+
+/**
+ * The OAuth2CacheMetricsMXBean interface.<br>
+ * JMX view of the oauth cache metrics.<br>
+ * Metric names have format: {layer}.{client}.{operation}.{stat}
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.metrics
+ * @copyright Copyright © 2022
+ */
+public interface OAuth2CacheMetricsMXBean {
+
+    /**
+     * @return Counters (count, hits, misses, errors, total_us) by metric
+     *         name, and local cache counters (hits, misses, puts, evictions,
+     *         expirations) by cache name
+     */
+    public Map<String, Long> getCounters();
+
+    /**
+     * @return Latency bucket counts by metric name (not cumulative)
+     */
+    public Map<String, Long> getLatencyHistograms();
+
+    /**
+     * @return Ratio of get hits to gets for the outermost cache layer
+     */
+    public double getHitRatio();
+
+    /**
+     * Clears all metrics.
+     */
+    public void reset();
+
+}
@@ -0,0 +1,216 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * The OAuth2HttpMetrics class.<br>
+ * Counts provider request events (attempts, retries, rejections) per
+ * provider host, and bulkhead events per client.<br>
+ * Gauges report current values (i.e. bulkhead queue depth, circuit state)
+ * when read.<br>
+ * Registered with the platform MBean server as
+ * `com.zimbra.oauth:type=HttpMetrics`.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.metrics
+ * @copyright Copyright © 2022
+ */
+public class OAuth2HttpMetrics implements OAuth2HttpMetricsMXBean {
+
+    /**
+     * Event names.
+     */
+    public static final String EVENT_REQUEST = "requests";
+    public static final String EVENT_RETRY = "retries";
+    public static final String EVENT_RETRY_SUCCESS = "retry_successes";
+    public static final String EVENT_RETRY_EXHAUSTED = "retries_exhausted";
+    public static final String EVENT_RETRY_BUDGET_EXHAUSTED = "retry_budget_exhausted";
+    public static final String EVENT_RETRY_DELAY_MS = "retry_delay_ms";
+    public static final String EVENT_BULKHEAD_QUEUED = "bulkhead_queued";
+    public static final String EVENT_BULKHEAD_REJECTED = "bulkhead_rejections";
+    public static final String EVENT_CIRCUIT_OPENED = "circuit_opened";
+    public static final String EVENT_CIRCUIT_HALF_OPENED = "circuit_half_opened";
+    public static final String EVENT_CIRCUIT_CLOSED = "circuit_closed";
+    public static final String EVENT_CIRCUIT_REJECTED = "circuit_rejections";
+
+    /**
+     * Gauge names.
+     */
+    public static final String GAUGE_BULKHEAD_IN_FLIGHT = "bulkhead_in_flight";
+    public static final String GAUGE_BULKHEAD_QUEUE_DEPTH = "bulkhead_queue_depth";
+    public static final String GAUGE_CIRCUIT_STATE = "circuit_state";
+    public static final String GAUGE_PROXY_ASYNC_IN_FLIGHT = "proxy_async_in_flight";
+
+    /**
+     * Host name used once the max number of hosts is tracked.
+     */
+    protected static final String HOST_OTHER = "other";
+
+    /**
+     * Max number of tracked host/event combinations.
+     */
+    protected static final int MAX_STATS = 512;
+
+    /**
+     * The JMX object name.
+     */
+    protected static final String OBJECT_NAME = "com.zimbra.oauth:type=HttpMetrics";
+
+    /**
+     * Singleton instance.
+     */
+    protected static final OAuth2HttpMetrics instance = register(new OAuth2HttpMetrics());
+
+    /**
+     * Counters by {host}.{event}.
+     */
+    protected final Map<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+
+    /**
+     * Gauges by {client or host}.{gauge}.
+     */
+    protected final Map<String, LongSupplier> gauges = new ConcurrentHashMap<String, LongSupplier>();
+
+    /**
+     * @return The metrics instance
+     */
+    public static OAuth2HttpMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Counts an event.
+     *
+     * @param host The provider host
+     * @param event The event
+     */
+    public void increment(String host, String event) {
+        add(host, event, 1);
+    }
+
+    /**
+     * Adds to an event counter.
+     *
+     * @param host The provider host
+     * @param event The event
+     * @param value The value to add
+     */
+    public void add(String host, String event, long value) {
+        getCounter(host, event).add(value);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        final Map<String, Long> values = new TreeMap<String, Long>();
+        for (final Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     *
+     * @param name The metric name
+     * @param gauge Supplies the current value
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        if (gauges.size() < MAX_STATS || gauges.containsKey(name)) {
+            gauges.put(name, gauge);
+        }
+    }
+
+    /**
+     * Unregisters a gauge, if it is still the one registered with the name.
+     *
+     * @param name The gauge name
+     * @param gauge The registered gauge
+     */
+    public void unregisterGauge(String name, LongSupplier gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        final Map<String, Long> values = new TreeMap<String, Long>();
+        for (final Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().getAsLong());
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        counters.clear();
+    }
+
+    /**
+     * @param host The provider host
+     * @param event The event
+     * @return The counter for the host and event
+     */
+    protected LongAdder getCounter(String host, String event) {
+        final String name = String.format("%s.%s", host, event);
+        final LongAdder counter = counters.get(name);
+        if (counter != null) {
+            return counter;
+        }
+        // bound the number of tracked names in case of many distinct hosts
+        if (counters.size() >= MAX_STATS) {
+            return counters.computeIfAbsent(String.format("%s.%s", HOST_OTHER, event),
+                k -> new LongAdder());
+        }
+        return counters.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param metrics The metrics to register
+     * @return The metrics
+     */
+    protected static OAuth2HttpMetrics register(OAuth2HttpMetrics metrics) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (final JMException | RuntimeException e) {
+            ZimbraLog.extensions.warn("Unable to register oauth http metrics with JMX.");
+            ZimbraLog.extensions.debug(e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     */
+    public static void unregister() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final JMException | RuntimeException e) {
+            ZimbraLog.extensions.debug(e);
+        }
+    }
+}
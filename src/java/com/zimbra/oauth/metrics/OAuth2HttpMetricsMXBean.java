@@ -0,0 +1,37 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.metrics;
+
+import java.util.Map;
+
+/**
+ * The OAuth2HttpMetricsMXBean interface.<br>
+ * JMX view of the oauth provider request metrics.<br>
+ * Metric names have format: {host}.{event}, or {client}.{event} for
+ * bulkhead metrics
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.metrics
+ * @copyright Copyright © 2022
+ */
+public interface OAuth2HttpMetricsMXBean {
+
+    /**
+     * @return Event counts by metric name
+     */
+    public Map<String, Long> getCounters();
+
+    /**
+     * @return Current gauge values by metric name
+     */
+    public Map<String, Long> getGauges();
+
+    /**
+     * Clears all counters.
+     */
+    public void reset();
+
+}
@@ -0,0 +1,246 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.models;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * The HttpEntityBuffer class.<br>
+ * A response body read from the connection, kept in memory up to a limit
+ * and spilled to a temporary file past it. Bodies larger than the maximum
+ * size are rejected while reading, so an unexpectedly large response cannot
+ * exhaust the heap.<br>
+ * Close the buffer to delete a spilled body.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.models
+ * @copyright Copyright © 2022
+ */
+public class HttpEntityBuffer implements Closeable {
+
+    /**
+     * The body if kept in memory.
+     */
+    protected final byte[] bytes;
+
+    /**
+     * The body if spilled to disk.
+     */
+    protected final File file;
+
+    /**
+     * The body length.
+     */
+    protected final long length;
+
+    /**
+     * Creates an in memory buffer.
+     *
+     * @param bytes The body
+     */
+    public HttpEntityBuffer(byte[] bytes) {
+        this.bytes = bytes;
+        this.file = null;
+        this.length = bytes.length;
+    }
+
+    /**
+     * Creates a spilled buffer.
+     *
+     * @param file The file with the body
+     * @param length The body length
+     */
+    protected HttpEntityBuffer(File file, long length) {
+        this.bytes = null;
+        this.file = file;
+        this.length = length;
+    }
+
+    /**
+     * Reads a stream into a buffer, spilling to a temporary file once more
+     * than memoryLimit bytes are read.
+     *
+     * @param stream The stream to read, not closed
+     * @param contentLength The declared length, or a negative number if
+     *            unknown
+     * @param memoryLimit The maximum number of bytes to keep in memory
+     * @param maxSize The maximum number of bytes to read
+     * @param tmpDir The directory for spilled bodies, or null for the
+     *            default temporary directory
+     * @return The buffered body
+     * @throws IOException If there are issues reading, or the body is larger
+     *             than maxSize
+     */
+    public static HttpEntityBuffer read(InputStream stream, long contentLength, int memoryLimit,
+        long maxSize, File tmpDir) throws IOException {
+        if (contentLength > maxSize) {
+            throw new IOException(String.format(
+                "Response body of %d bytes exceeds the maximum of %d bytes.", contentLength,
+                maxSize));
+        }
+        final byte[] chunk = new byte[8192];
+        final ByteArrayOutputStream memory = new ByteArrayOutputStream(
+            (int) Math.max(0, Math.min(contentLength, memoryLimit)));
+        long total = 0;
+        int read;
+        while ((read = stream.read(chunk)) != -1) {
+            total += read;
+            if (total > memoryLimit) {
+                // past the memory limit, move what we have to disk and continue there
+                return spill(stream, memory, chunk, read, total, maxSize, tmpDir);
+            }
+            memory.write(chunk, 0, read);
+        }
+        return new HttpEntityBuffer(memory.toByteArray());
+    }
+
+    /**
+     * Wraps a stream to be read directly, failing once more than the maximum
+     * size is read.
+     *
+     * @param stream The stream to wrap
+     * @param contentLength The declared length, or a negative number if
+     *            unknown
+     * @param maxSize The maximum number of bytes to read
+     * @return The limited stream
+     * @throws IOException If the declared length is larger than maxSize
+     */
+    public static InputStream limit(InputStream stream, long contentLength, long maxSize)
+        throws IOException {
+        if (contentLength > maxSize) {
+            throw new IOException(String.format(
+                "Response body of %d bytes exceeds the maximum of %d bytes.", contentLength,
+                maxSize));
+        }
+        return new FilterInputStream(stream) {
+
+            protected long total;
+
+            @Override
+            public int read() throws IOException {
+                final int read = super.read();
+                if (read != -1) {
+                    count(1);
+                }
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                final int read = super.read(b, off, len);
+                if (read > 0) {
+                    count(read);
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                final long skipped = super.skip(n);
+                count(skipped);
+                return skipped;
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            protected void count(long read) throws IOException {
+                total += read;
+                if (total > maxSize) {
+                    throw new IOException(String.format(
+                        "Response body exceeds the maximum of %d bytes.", maxSize));
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes the in memory part and the rest of the stream to a temporary
+     * file.
+     */
+    protected static HttpEntityBuffer spill(InputStream stream, ByteArrayOutputStream memory,
+        byte[] chunk, int pending, long total, long maxSize, File tmpDir) throws IOException {
+        final File spillFile = File.createTempFile("oauth-entity-", ".tmp", tmpDir);
+        try (final OutputStream out = new FileOutputStream(spillFile)) {
+            memory.writeTo(out);
+            int read = pending;
+            do {
+                if (total > maxSize) {
+                    throw new IOException(String.format(
+                        "Response body exceeds the maximum of %d bytes.", maxSize));
+                }
+                out.write(chunk, 0, read);
+                read = stream.read(chunk);
+                total += Math.max(read, 0);
+            } while (read != -1);
+        } catch (final IOException | RuntimeException e) {
+            Files.deleteIfExists(spillFile.toPath());
+            throw e;
+        }
+        return new HttpEntityBuffer(spillFile, total);
+    }
+
+    /**
+     * @return A new stream of the body
+     * @throws IOException If a spilled body cannot be opened
+     */
+    public InputStream getInputStream() throws IOException {
+        if (file != null) {
+            return new FileInputStream(file);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    /**
+     * Returns the body as a byte array, reading a spilled body back into
+     * memory.
+     *
+     * @return The body
+     * @throws IOException If a spilled body cannot be read
+     */
+    public byte[] getBytes() throws IOException {
+        if (file != null) {
+            return Files.readAllBytes(file.toPath());
+        }
+        return bytes;
+    }
+
+    /**
+     * @return The body length
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return True if the body was spilled to disk
+     */
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    /**
+     * Deletes a spilled body.
+     */
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
@@ -5,17 +5,24 @@
 
 package com.zimbra.oauth.models;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
 import org.apache.http.HttpResponse;
 
 /**
  * The HttpResponseWrapper class.<br>
- * Wrapper for HttpResponse contains entity as byte array.
+ * Wrapper for HttpResponse contains the entity read from the connection.<br>
+ * Large entities may be spilled to disk, so prefer the entity stream and
+ * close the wrapper when done.
  *
  * @author Zimbra API Team
  * @package com.zimbra.oauth.models
  * @copyright Copyright © 2019
  */
-public class HttpResponseWrapper {
+public class HttpResponseWrapper implements Closeable {
 
     /**
      * The http response.
@@ -25,7 +32,7 @@ public class HttpResponseWrapper {
     /**
      * The http entity.
      */
-    protected byte[] entityBytes;
+    protected HttpEntityBuffer entity;
 
     /**
      * Creates an instance with response and entity.
@@ -34,8 +41,18 @@ public class HttpResponseWrapper {
      * @param entityBytes The entity bytes to set
      */
     public HttpResponseWrapper(HttpResponse response, byte[] entityBytes) {
+        this(response, entityBytes == null ? null : new HttpEntityBuffer(entityBytes));
+    }
+
+    /**
+     * Creates an instance with response and buffered entity.
+     *
+     * @param response The response to set
+     * @param entity The entity to set
+     */
+    public HttpResponseWrapper(HttpResponse response, HttpEntityBuffer entity) {
         this.response = response;
-        this.entityBytes = entityBytes;
+        this.entity = entity;
     }
 
     /**
@@ -53,17 +70,53 @@ public class HttpResponseWrapper {
     }
 
     /**
+     * Reads a spilled entity back into memory, use the entity stream for
+     * bodies that may be large.
+     *
      * @return the entity bytes
+     * @throws UncheckedIOException If a spilled entity cannot be read
      */
     public byte[] getEntityBytes() {
-        return entityBytes;
+        if (entity == null) {
+            return null;
+        }
+        try {
+            return entity.getBytes();
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     /**
      * @param entityBytes the entity to set
      */
     public void setEntityBytes(byte[] entityBytes) {
-        this.entityBytes = entityBytes;
+        this.entity = entityBytes == null ? null : new HttpEntityBuffer(entityBytes);
+    }
+
+    /**
+     * @return A new stream of the entity, null if there is no entity
+     * @throws IOException If a spilled entity cannot be opened
+     */
+    public InputStream getEntityStream() throws IOException {
+        return entity == null ? null : entity.getInputStream();
+    }
+
+    /**
+     * @return The entity length, -1 if there is no entity
+     */
+    public long getEntityLength() {
+        return entity == null ? -1 : entity.getLength();
+    }
+
+    /**
+     * Deletes a spilled entity.
+     */
+    @Override
+    public void close() throws IOException {
+        if (entity != null) {
+            entity.close();
+        }
     }
 
 }
@@ -40,6 +40,11 @@ public class OAuthInfo {
      */
     protected String accessToken;
 
+    /**
+     * Lifetime of the access token reported by the provider (seconds).
+     */
+    protected Long expiresIn;
+
     /**
      * A refresh token.
      */
@@ -179,6 +184,24 @@ public class OAuthInfo {
         this.accessToken = accessToken;
     }
 
+    /**
+     * Get the access token lifetime.
+     *
+     * @return The access token lifetime in seconds, null if unknown
+     */
+    public Long getExpiresIn() {
+        return expiresIn;
+    }
+
+    /**
+     * Set the access token lifetime.
+     *
+     * @param expiresIn The access token lifetime in seconds, null if unknown
+     */
+    public void setExpiresIn(Long expiresIn) {
+        this.expiresIn = expiresIn;
+    }
+
     /**
      * Get the refresh token.
      *
@@ -270,8 +293,8 @@ public class OAuthInfo {
     @Override
     public String toString() {
         return String.format(
-            "OAuthInfo [clientId=%s, clientSecret=%s, clientRedirectUri=%s, accessToken=%s, refreshToken=%s, zmAuthToken=%s, username=%s, tokenUrl=%s, account=%s]",
-            clientId, "***", clientRedirectUri, accessToken, refreshToken, zmAuthToken,
+            "OAuthInfo [clientId=%s, clientSecret=%s, clientRedirectUri=%s, accessToken=%s, expiresIn=%s, refreshToken=%s, zmAuthToken=%s, username=%s, tokenUrl=%s, account=%s]",
+            clientId, "***", clientRedirectUri, accessToken, expiresIn, refreshToken, zmAuthToken,
             username, tokenUrl, account);
     }
 
@@ -9,7 +9,16 @@ import com.zimbra.common.service.ServiceException;
 import com.zimbra.cs.extension.ExtensionDispatcherServlet;
 import com.zimbra.cs.extension.ExtensionException;
 import com.zimbra.cs.extension.ZimbraExtension;
+import com.zimbra.oauth.metrics.OAuth2CacheMetrics;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+import com.zimbra.oauth.schedulers.impl.OAuth2TokenRefreshScheduler;
+import com.zimbra.oauth.utilities.OAuth2AsyncHttpClient;
+import com.zimbra.oauth.utilities.OAuth2AsyncProxy;
+import com.zimbra.oauth.utilities.OAuth2ConfigAdmin;
 import com.zimbra.oauth.utilities.OAuth2Constants;
+import com.zimbra.oauth.utilities.OAuth2HttpClientPool;
+import com.zimbra.oauth.utilities.OAuth2ProxyUtilities;
+import com.zimbra.oauth.utilities.OAuth2WarmUp;
 
 /**
  * The OAuth2Extension class.<br>
@@ -24,6 +33,14 @@ public class OAuth2Extension implements ZimbraExtension {
     @Override
     public void destroy() {
         ExtensionDispatcherServlet.unregister(this);
+        OAuth2TokenRefreshScheduler.getInstance().shutdown();
+        OAuth2ConfigAdmin.unregister();
+        OAuth2HttpMetrics.unregister();
+        OAuth2CacheMetrics.unregister();
+        OAuth2HttpClientPool.shutdown();
+        OAuth2AsyncHttpClient.shutdown();
+        OAuth2AsyncProxy.shutdown();
+        OAuth2ProxyUtilities.resetProxyClient();
     }
 
     @Override
@@ -35,6 +52,8 @@ public class OAuth2Extension implements ZimbraExtension {
     public void init() throws ExtensionException, ServiceException {
         ExtensionDispatcherServlet.register(this, new ZOAuth2Servlet());
         ExtensionDispatcherServlet.register(this, new ZOAuth2ProxyServlet());
+        OAuth2ConfigAdmin.register();
+        OAuth2WarmUp.startIfEnabled();
     }
 
 }
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -18,13 +19,23 @@ import javax.ws.rs.core.Response.Status;
 
 import org.apache.commons.lang.StringUtils;
 
+import com.google.common.io.ByteStreams;
+
 import com.zimbra.common.service.ServiceException;
-import com.zimbra.common.util.ByteUtil;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.extension.ExtensionHttpHandler;
+import com.zimbra.oauth.handlers.IOAuth2ProxyHandler;
+import com.zimbra.oauth.managers.ClassManager;
+import com.zimbra.oauth.models.ErrorMessage;
 import com.zimbra.oauth.models.HttpProxyServletRequest;
+import com.zimbra.oauth.models.ResponseMeta;
 import com.zimbra.oauth.models.ResponseObject;
+import com.zimbra.oauth.utilities.OAuth2AsyncProxy;
+import com.zimbra.oauth.utilities.OAuth2Bulkhead;
+import com.zimbra.oauth.utilities.OAuth2CacheUtilities;
+import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
 import com.zimbra.oauth.utilities.OAuth2Constants;
+import com.zimbra.oauth.utilities.OAuth2ErrorConstants;
 import com.zimbra.oauth.utilities.OAuth2HttpConstants;
 import com.zimbra.oauth.utilities.OAuth2JsonUtilities;
 import com.zimbra.oauth.utilities.OAuth2ProxyUtilities;
@@ -40,6 +51,11 @@ import com.zimbra.oauth.utilities.OAuth2ResourceUtilities;
  */
 public class ZOAuth2ProxyServlet extends ExtensionHttpHandler {
 
+    /**
+     * The proxy target request parameter.
+     */
+    protected static final String TARGET_PARAM = "target";
+
     @Override
     public String getPath() {
         return OAuth2Constants.PROXY_SERVER_PATH.getValue();
@@ -85,11 +101,65 @@ public class ZOAuth2ProxyServlet extends ExtensionHttpHandler {
         throws IOException, ServletException {
         final String path = StringUtils.removeEndIgnoreCase(req.getPathInfo(), "/");
         final Map<String, String> pathParams = parseRequestPath(path);
-        final byte[] body = ByteUtil.getContent(req.getInputStream(), -1);
+        final String client = pathParams.get("client");
+        final IOAuth2ProxyHandler proxyHandler = getProxyHandler(client);
+        // buffer the body only if the handler validates it, otherwise it is streamed
+        byte[] body = null;
+        if (proxyHandler != null && proxyHandler.isProxyBodyRequired(client, req.getMethod(),
+            req.getParameter(TARGET_PARAM))) {
+            body = readBody(req);
+            if (body == null) {
+                sendErrorResponse(resp, Status.REQUEST_ENTITY_TOO_LARGE,
+                    OAuth2ErrorConstants.ERROR_REQUEST_TOO_LARGE,
+                    OAuth2ErrorConstants.ERROR_REQUEST_TOO_LARGE_MSG);
+                return;
+            }
+        }
+        // hold a permit of the client's bulkhead for the token lookup
+        final OAuth2Bulkhead bulkhead = proxyHandler == null || !OAuth2Bulkhead.isEnabled()
+            ? null
+            : OAuth2Bulkhead.getBulkhead(client);
+        if (bulkhead != null) {
+            try {
+                bulkhead.acquire();
+            } catch (final ServiceException e) {
+                sendErrorResponse(resp, Status.SERVICE_UNAVAILABLE,
+                    OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE,
+                    OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE_MSG);
+                return;
+            }
+        }
+        final AtomicBoolean released = new AtomicBoolean();
+        final Runnable release = () -> {
+            if (bulkhead != null && released.compareAndSet(false, true)) {
+                bulkhead.release();
+            }
+        };
+        try {
+            doProxy(req, resp, client, body, release);
+        } finally {
+            release.run();
+        }
+    }
+
+    /**
+     * Fetches the client's proxy headers and proxies the request.
+     *
+     * @param req The request
+     * @param resp The response
+     * @param client The client to proxy for
+     * @param body The request body if buffered, otherwise null
+     * @param releasePermit Releases the client's bulkhead permit, run once
+     *            the token lookup is done so slow transfers do not hold it
+     * @throws IOException If there are issues writing out
+     * @throws ServletException If there are issues proxying
+     */
+    protected void doProxy(HttpServletRequest req, HttpServletResponse resp, String client,
+        byte[] body, Runnable releasePermit) throws IOException, ServletException {
         // determine authorization + extra headers for client
         final ResponseObject<?> headersRes = OAuth2ResourceUtilities.headers(req.getMethod(),
-            pathParams.get("client"), req.getCookies(), getHeaders(req), req.getParameterMap(),
-            body);
+            client, req.getCookies(), getHeaders(req), req.getParameterMap(), body);
+        releasePermit.run();
 
         ZimbraLog.extensions.debug("Beginning oauth proxy.");
         // handle errors if any
@@ -104,7 +174,65 @@ public class ZOAuth2ProxyServlet extends ExtensionHttpHandler {
         }
 
         // forward to proxy utilities for resp resolution
-        OAuth2ProxyUtilities.doProxy(wrapWithHeaders(req, headersRes.getData()), resp, body);
+        final HttpProxyServletRequest proxyReq = wrapWithHeaders(req, headersRes.getData());
+        if (OAuth2AsyncProxy.isAsyncAllowed(req, body)) {
+            OAuth2AsyncProxy.doProxy(proxyReq, resp, body);
+            return;
+        }
+        OAuth2ProxyUtilities.doProxy(proxyReq, resp, body);
+    }
+
+    /**
+     * @param client The client to get a proxy handler for
+     * @return The client's proxy handler, or null if the client is invalid
+     *         (reported by the headers call)
+     */
+    protected IOAuth2ProxyHandler getProxyHandler(String client) {
+        try {
+            return ClassManager.getProxyHandler(client);
+        } catch (final ServiceException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the request body, up to the max buffered proxy body size.
+     *
+     * @param req The request
+     * @return The body, or null if it is too large
+     * @throws IOException If there are issues reading
+     */
+    protected byte[] readBody(HttpServletRequest req) throws IOException {
+        final long maxSize = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_PROXY_BUFFER_MAX_SIZE.getValue(),
+            OAuth2Constants.PROXY_BUFFER_MAX_SIZE.getValue());
+        if (req.getContentLengthLong() > maxSize) {
+            return null;
+        }
+        final byte[] body = ByteStreams
+            .toByteArray(ByteStreams.limit(req.getInputStream(), maxSize + 1));
+        return body.length > maxSize ? null : body;
+    }
+
+    /**
+     * Sends an error response for a request that is not proxied.
+     *
+     * @param resp The output response
+     * @param status The response status
+     * @param error The error code
+     * @param message The error message
+     * @throws IOException If there are issues writing out
+     */
+    protected void sendErrorResponse(HttpServletResponse resp, Status status,
+        OAuth2ErrorConstants error, OAuth2ErrorConstants message) throws IOException {
+        try {
+            sendJsonResponse(resp, new ResponseObject<ErrorMessage>(
+                new ErrorMessage(error.getValue(), message.getValue()),
+                new ResponseMeta(status.getStatusCode())));
+        } catch (final ServiceException e) {
+            ZimbraLog.extensions.errorQuietly("Failed to send JSON error response before proxy.", e);
+            resp.sendError(status.getStatusCode());
+        }
     }
 
     /**
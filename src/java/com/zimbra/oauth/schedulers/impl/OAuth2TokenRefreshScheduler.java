@@ -0,0 +1,309 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.schedulers.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.AuthToken;
+import com.zimbra.oauth.handlers.impl.OAuth2Handler;
+import com.zimbra.oauth.models.OAuthInfo;
+import com.zimbra.oauth.utilities.Configuration;
+import com.zimbra.oauth.utilities.OAuth2ConfigConstants;
+import com.zimbra.oauth.utilities.OAuth2Constants;
+
+/**
+ * The OAuth2TokenRefreshScheduler class.<br>
+ * Refreshes cached access tokens shortly before they expire so that proxy
+ * requests for recently active identifiers keep hitting the token cache.<br>
+ * Tokens are scheduled when a handler refreshes and caches them, and are
+ * rescheduled by each background refresh as long as the identifier was used
+ * within the configured idle window. Refreshes run on a small fixed pool
+ * with random jitter, and share in-flight refreshes with proxy requests.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.schedulers.impl
+ * @copyright Copyright © 2022
+ */
+public class OAuth2TokenRefreshScheduler {
+
+    /**
+     * Singleton instance.
+     */
+    protected static final OAuth2TokenRefreshScheduler instance = new OAuth2TokenRefreshScheduler(
+        Configuration.getDefaultConfiguration());
+
+    /**
+     * Configuration used for global and per client settings.
+     */
+    protected final Configuration config;
+
+    /**
+     * Executor running the refreshes, sized to the max concurrent refreshes.
+     */
+    protected final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * Scheduled refreshes by token cache key.
+     */
+    protected final Map<String, ScheduledRefresh> scheduled = new ConcurrentHashMap<String, ScheduledRefresh>();
+
+    /**
+     * Constructor.
+     *
+     * @param config The configuration to read settings from
+     */
+    protected OAuth2TokenRefreshScheduler(Configuration config) {
+        this.config = config;
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(
+            getInt(OAuth2ConfigConstants.LC_TOKEN_PREREFRESH_THREADS,
+                OAuth2Constants.TOKEN_PREREFRESH_THREADS),
+            (runnable) -> {
+                final Thread thread = new Thread(runnable,
+                    "oauth-token-prerefresh-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return The scheduler instance
+     */
+    public static OAuth2TokenRefreshScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedules a refresh ahead of the cached token's expiry.<br>
+     * Replaces any refresh already scheduled for the cache key.
+     *
+     * @param handler The handler that refreshed the token
+     * @param client The client name
+     * @param oauthInfo Contains zm auth token, zimbra account, username (identifier)
+     * @param cacheKey The token cache key
+     * @param lifetime The cached token lifetime (seconds)
+     */
+    public void schedule(OAuth2Handler handler, String client, OAuthInfo oauthInfo,
+        String cacheKey, long lifetime) {
+        if (!isEnabled(client) || oauthInfo.getZmAuthToken() == null) {
+            return;
+        }
+        final ScheduledRefresh previous = scheduled.get(cacheKey);
+        if (previous == null
+            && scheduled.size() >= getInt(OAuth2ConfigConstants.LC_TOKEN_PREREFRESH_MAX_ENTRIES,
+                OAuth2Constants.TOKEN_PREREFRESH_MAX_ENTRIES)) {
+            ZimbraLog.extensions.debug("Too many scheduled token refreshes, skipping: %s", cacheKey);
+            return;
+        }
+        final long delay = getDelay(client, lifetime);
+        final ScheduledRefresh refresh = new ScheduledRefresh(handler, copyIdentity(oauthInfo),
+            previous == null ? System.nanoTime() : previous.lastAccess);
+        scheduled.put(cacheKey, refresh);
+        if (previous != null && previous.future != null) {
+            // does not interrupt, the previous refresh may be the one rescheduling
+            previous.future.cancel(false);
+        }
+        try {
+            refresh.future = executor.schedule(() -> run(cacheKey, refresh), delay,
+                TimeUnit.SECONDS);
+            ZimbraLog.extensions.debug("Scheduled token refresh in %ss for: %s", delay, cacheKey);
+        } catch (final RuntimeException e) {
+            // rejected after shutdown
+            scheduled.remove(cacheKey, refresh);
+        }
+    }
+
+    /**
+     * Records use of a cached token so its refresh keeps being scheduled.
+     *
+     * @param cacheKey The token cache key
+     */
+    public void touch(String cacheKey) {
+        final ScheduledRefresh refresh = scheduled.get(cacheKey);
+        if (refresh != null) {
+            refresh.lastAccess = System.nanoTime();
+        }
+    }
+
+    /**
+     * Cancels a scheduled refresh.
+     *
+     * @param cacheKey The token cache key
+     */
+    public void cancel(String cacheKey) {
+        final ScheduledRefresh refresh = scheduled.remove(cacheKey);
+        if (refresh != null && refresh.future != null) {
+            refresh.future.cancel(false);
+        }
+    }
+
+    /**
+     * @return Read-only view of the cache keys with a scheduled refresh
+     */
+    public Map<String, ScheduledRefresh> getScheduled() {
+        return Collections.unmodifiableMap(scheduled);
+    }
+
+    /**
+     * Cancels all scheduled refreshes and stops the executor.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        scheduled.clear();
+    }
+
+    /**
+     * Runs a scheduled refresh if the identifier is still in use.<br>
+     * A successful refresh reschedules itself through the handler,
+     * carrying over the last use of the token.
+     *
+     * @param cacheKey The token cache key
+     * @param refresh The scheduled refresh
+     */
+    protected void run(String cacheKey, ScheduledRefresh refresh) {
+        // skip if replaced or cancelled since
+        if (scheduled.get(cacheKey) != refresh) {
+            return;
+        }
+        final long idle = TimeUnit.SECONDS.toNanos(getInt(
+            OAuth2ConfigConstants.LC_TOKEN_PREREFRESH_IDLE, OAuth2Constants.TOKEN_PREREFRESH_IDLE));
+        final AuthToken zmAuthToken = refresh.oauthInfo.getZmAuthToken();
+        if (System.nanoTime() - refresh.lastAccess > idle) {
+            ZimbraLog.extensions.debug("Token not used recently, skipping refresh: %s", cacheKey);
+        } else if (zmAuthToken.isExpired()) {
+            ZimbraLog.extensions.debug("Auth token expired, skipping refresh: %s", cacheKey);
+        } else {
+            try {
+                refresh.handler.prefetchAccessToken(copyIdentity(refresh.oauthInfo));
+            } catch (final ServiceException | RuntimeException e) {
+                ZimbraLog.extensions.warn("Unable to refresh token in background for: %s",
+                    cacheKey);
+                ZimbraLog.extensions.debug(e);
+            }
+        }
+        // no-op if the refresh rescheduled itself
+        scheduled.remove(cacheKey, refresh);
+    }
+
+    /**
+     * Copies only what is needed to refresh, so that scheduled refreshes
+     * do not hold on to tokens.
+     *
+     * @param oauthInfo Contains zm auth token, zimbra account, username (identifier)
+     * @return A new OAuthInfo with the zm auth token, account, and username
+     */
+    protected static OAuthInfo copyIdentity(OAuthInfo oauthInfo) {
+        final OAuthInfo copy = new OAuthInfo(Collections.emptyMap());
+        copy.setZmAuthToken(oauthInfo.getZmAuthToken());
+        copy.setAccount(oauthInfo.getAccount());
+        copy.setUsername(oauthInfo.getUsername());
+        return copy;
+    }
+
+    /**
+     * Determines the refresh delay: the configured lead time plus random
+     * jitter before the cached token expires.
+     *
+     * @param client The client name
+     * @param lifetime The cached token lifetime (seconds)
+     * @return The delay (seconds)
+     */
+    protected long getDelay(String client, long lifetime) {
+        final long lead = getClientInt(OAuth2ConfigConstants.LC_TOKEN_PREREFRESH_LEAD,
+            OAuth2ConfigConstants.LC_OAUTH_TOKEN_PREREFRESH_LEAD_TEMPLATE, client,
+            OAuth2Constants.TOKEN_PREREFRESH_LEAD);
+        final int jitter = getInt(OAuth2ConfigConstants.LC_TOKEN_PREREFRESH_JITTER,
+            OAuth2Constants.TOKEN_PREREFRESH_JITTER);
+        final long delay = lifetime - lead
+            - (jitter > 0 ? ThreadLocalRandom.current().nextInt(jitter + 1) : 0);
+        // short-lived tokens are refreshed halfway through their lifetime
+        return delay > 0 ? delay : lifetime / 2;
+    }
+
+    /**
+     * @param client The client name
+     * @return True if background refresh is enabled for the client
+     */
+    protected boolean isEnabled(String client) {
+        final String enabled = config.getString(
+            OAuth2ConfigConstants.LC_TOKEN_PREREFRESH_ENABLED.getValue(),
+            OAuth2Constants.TOKEN_PREREFRESH_ENABLED.getValue());
+        return Boolean.valueOf(StringUtils.defaultIfEmpty(config.getString(String.format(
+            OAuth2ConfigConstants.LC_OAUTH_TOKEN_PREREFRESH_ENABLED_TEMPLATE.getValue(), client)),
+            enabled));
+    }
+
+    /**
+     * @param key The config key
+     * @param defaultValue The default value
+     * @return The configured integer value
+     */
+    protected int getInt(OAuth2ConfigConstants key, OAuth2Constants defaultValue) {
+        return config.getInt(key.getValue(), Integer.valueOf(defaultValue.getValue()));
+    }
+
+    /**
+     * @param key The global config key
+     * @param template The per client config key template
+     * @param client The client name
+     * @param defaultValue The default value
+     * @return The configured integer value for the client, or the global value
+     */
+    protected int getClientInt(OAuth2ConfigConstants key, OAuth2ConfigConstants template,
+        String client, OAuth2Constants defaultValue) {
+        return config.getInt(String.format(template.getValue(), client),
+            getInt(key, defaultValue));
+    }
+
+    /**
+     * A refresh scheduled for a token cache key.
+     */
+    public static class ScheduledRefresh {
+
+        /**
+         * The handler to refresh with.
+         */
+        protected final OAuth2Handler handler;
+
+        /**
+         * Contains zm auth token, zimbra account, username (identifier).
+         */
+        protected final OAuthInfo oauthInfo;
+
+        /**
+         * Last use of the cached token as System.nanoTime value.
+         */
+        protected volatile long lastAccess;
+
+        /**
+         * The scheduled task.
+         */
+        protected volatile ScheduledFuture<?> future;
+
+        /**
+         * @param handler The handler to refresh with
+         * @param oauthInfo Contains zm auth token, zimbra account, username
+         * @param lastAccess Last use as System.nanoTime value
+         */
+        protected ScheduledRefresh(OAuth2Handler handler, OAuthInfo oauthInfo, long lastAccess) {
+            this.handler = handler;
+            this.oauthInfo = oauthInfo;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -5,9 +5,12 @@
 
 package com.zimbra.oauth.utilities;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -16,16 +19,8 @@ import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.Account;
-import com.zimbra.oauth.handlers.impl.DropboxOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.FacebookOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.GoogleOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.NextcloudOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.OutlookOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.SlackOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.TwitterOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.WebexOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.YahooOAuth2Handler;
-import com.zimbra.oauth.handlers.impl.ZoomOAuth2Handler;
+import com.zimbra.oauth.managers.IOAuth2HandlerProvider;
+import com.zimbra.oauth.managers.OAuth2HandlerRegistry;
 
 /**
  * The Configuration class for this project.
@@ -37,10 +32,17 @@ import com.zimbra.oauth.handlers.impl.ZoomOAuth2Handler;
 public class Configuration {
 
     /**
-     * Map storing configurations per client.
+     * Map storing configurations per client.<br>
+     * Reads do not lock, a missing configuration is created once per client.
      */
-    protected static Map<String, Configuration> configCache = Collections
-        .synchronizedMap(new HashMap<String, Configuration>());
+    protected static Map<String, Configuration> configCache = new ConcurrentHashMap<String, Configuration>();
+
+    /**
+     * The current localconfig snapshot, created on first use.<br>
+     * Configurations read through it, so handlers see reloaded values
+     * without being re-instantiated.
+     */
+    protected static final AtomicReference<OAuth2ConfigSnapshot> snapshot = new AtomicReference<OAuth2ConfigSnapshot>();
 
     /**
      * Map of default configurations used by this project.<br>
@@ -51,18 +53,15 @@ public class Configuration {
     protected static final Map<String, String> defaultLCConfigurations;
     static {
         final Map <String, String> configs = new HashMap<String, String>();
-        // known dynamic client handler classes defined by this project
+        // handler classes of the registered dynamic clients
         final String handlerPrefix = OAuth2ConfigConstants.LC_HANDLER_CLASS_PREFIX.getValue();
-        configs.put(handlerPrefix + "dropbox", DropboxOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "facebook", FacebookOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "google", GoogleOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "nextcloud", NextcloudOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "outlook", OutlookOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "slack", SlackOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "twitter", TwitterOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "webex", WebexOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "yahoo", YahooOAuth2Handler.class.getCanonicalName());
-        configs.put(handlerPrefix + "zoom", ZoomOAuth2Handler.class.getCanonicalName());
+        for (final IOAuth2HandlerProvider<?> provider : OAuth2HandlerRegistry.getInstance()
+            .getProviders()) {
+            if (!provider.isStatic()) {
+                configs.put(handlerPrefix + provider.getClient(),
+                    provider.getHandlerClass().getCanonicalName());
+            }
+        }
         defaultLCConfigurations = ImmutableMap.copyOf(configs);
     }
 
@@ -119,7 +118,7 @@ public class Configuration {
     public String getString(String key, String defaultValue) {
         // if no default value is specified and the config key is known, use it
         defaultValue = StringUtils.defaultIfEmpty(defaultValue, defaultLCConfigurations.get(key));
-        return StringUtils.defaultIfEmpty(LC.get(key), defaultValue);
+        return StringUtils.defaultIfEmpty(getSnapshot().get(key), defaultValue);
     }
 
     /**
@@ -130,7 +129,7 @@ public class Configuration {
      * @return A value for the given key or the default value
      */
     public String getString(String key, String appName, Account acct) {
-        return StringUtils.defaultIfEmpty(LC.get(key), null);
+        return StringUtils.defaultIfEmpty(getSnapshot().get(key), null);
     }
 
     /**
@@ -142,7 +141,7 @@ public class Configuration {
      * @return A value for the given key or the default value
      */
     public Integer getInt(String key, Integer defaultValue) {
-        final String stringValue = LC.get(key);
+        final String stringValue = getSnapshot().get(key);
         Integer value = defaultValue;
         if (stringValue != null) {
             try {
@@ -155,6 +154,52 @@ public class Configuration {
         return value;
     }
 
+    /**
+     * Retrieves the current localconfig snapshot, replacing it if it is
+     * older than its max age.
+     *
+     * @return The current snapshot
+     */
+    public static OAuth2ConfigSnapshot getSnapshot() {
+        final OAuth2ConfigSnapshot current = snapshot.get();
+        if (current != null && !current.isExpired()) {
+            return current;
+        }
+        final OAuth2ConfigSnapshot next = newSnapshot(current == null ? 1L : current.getVersion() + 1);
+        // if another thread replaced it first, use theirs
+        return snapshot.compareAndSet(current, next) ? next : snapshot.get();
+    }
+
+    /**
+     * Atomically replaces the localconfig snapshot, values are read again on
+     * next use.
+     *
+     * @return The new snapshot version
+     */
+    public static long reload() {
+        final OAuth2ConfigSnapshot next = snapshot
+            .updateAndGet((current) -> newSnapshot(current == null ? 1L : current.getVersion() + 1));
+        ZimbraLog.extensions.info("Reloaded oauth configuration, version: %d", next.getVersion());
+        return next.getVersion();
+    }
+
+    /**
+     * @param version The snapshot version
+     * @return A new localconfig snapshot
+     */
+    protected static OAuth2ConfigSnapshot newSnapshot(long version) {
+        final String key = OAuth2ConfigConstants.LC_CONFIG_MAX_AGE.getValue();
+        final String defaultMaxAge = OAuth2Constants.CONFIG_MAX_AGE.getValue();
+        long maxAge = Long.parseLong(defaultMaxAge);
+        try {
+            maxAge = Long.parseLong(StringUtils.defaultIfEmpty(LC.get(key), defaultMaxAge));
+        } catch (final NumberFormatException e) {
+            ZimbraLog.extensions
+                .debug("Cannot parse integer from configured LC value for key: '" + key + "'.");
+        }
+        return new OAuth2ConfigSnapshot(version, LC::get, TimeUnit.SECONDS.toNanos(maxAge));
+    }
+
     /**
      * Creates a default configuration (non-client specific).<br>
      * Does not cache the configuration object.
@@ -176,7 +221,8 @@ public class Configuration {
      */
     protected static boolean isValidClient(String name) {
         final String key = OAuth2ConfigConstants.LC_HANDLER_CLASS_PREFIX.getValue() + name;
-        return !StringUtils.isEmpty(LC.get(key)) || defaultLCConfigurations.containsKey(key);
+        return !StringUtils.isEmpty(getSnapshot().get(key))
+            || defaultLCConfigurations.containsKey(key);
     }
 
     /**
@@ -188,22 +234,29 @@ public class Configuration {
      * @throws ServiceException If there are issues
      */
     public static Configuration buildConfiguration(String name) throws ServiceException {
-        Configuration config = null;
+        return getOrCreate(name, Configuration::new);
+    }
 
+    /**
+     * Retrieves a cached configuration, or validates the client and
+     * atomically caches a new configuration.
+     *
+     * @param name Name of the client
+     * @param factory Creates the configuration for the client
+     * @return Configuration object
+     * @throws ServiceException If the client is not valid
+     */
+    protected static Configuration getOrCreate(String name,
+        Function<String, Configuration> factory) throws ServiceException {
         // try to find config in cache
-        if (name != null) {
-            config = configCache.get(name);
+        final Configuration config = name == null ? null : configCache.get(name);
+        if (config != null) {
+            return config;
         }
-
-        // if the config is empty, try to load it
-        if (config == null) {
-            // validate the client
-            if (!isValidClient(name)) {
-                throw ServiceException.UNSUPPORTED();
-            }
-            config = new Configuration(name);
+        // validate the client
+        if (name == null || !isValidClient(name)) {
+            throw ServiceException.UNSUPPORTED();
         }
-        configCache.put(name, config);
-        return config;
+        return configCache.computeIfAbsent(name, factory);
     }
 }
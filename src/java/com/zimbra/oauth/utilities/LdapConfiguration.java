@@ -7,6 +7,7 @@ package com.zimbra.oauth.utilities;
 
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -14,6 +15,8 @@ import com.google.common.collect.ImmutableMap;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Domain;
+import com.zimbra.cs.account.Entry;
 import com.zimbra.cs.account.Provisioning;
 
 /**
@@ -24,6 +27,19 @@ import com.zimbra.cs.account.Provisioning;
  */
 public class LdapConfiguration extends Configuration {
 
+    /**
+     * Consumer attributes parsed into consumer config snapshots.
+     */
+    protected static final String[] CONSUMER_ATTRS = {
+        Provisioning.A_zimbraOAuthConsumerCredentials,
+        Provisioning.A_zimbraOAuthConsumerRedirectUri,
+        Provisioning.A_zimbraOAuthConsumerAPIScope };
+
+    /**
+     * Consumer config snapshots by domain id.
+     */
+    protected static final Map<String, ConsumerConfigSnapshot> snapshots = new ConcurrentHashMap<String, ConsumerConfigSnapshot>();
+
     /**
      * @param appName
      * @throws ServiceException
@@ -57,69 +73,16 @@ public class LdapConfiguration extends Configuration {
 
         String value = null;
         ZimbraLog.extensions.debug("App name is:%s", appName);
-        // determine which credential to acquire when fetching from consumer credentials
-        Integer credentialPosition = null;
         if (key.endsWith(OAuth2ConfigConstants.OAUTH_CLIENT_ID.getValue())) {
-            credentialPosition = 0;
+            value = getConsumerConfig(acct, appName).getClientId();
         } else if (key.endsWith(OAuth2ConfigConstants.OAUTH_CLIENT_SECRET.getValue())) {
-            credentialPosition = 1;
+            value = getConsumerConfig(acct, appName).getClientSecret();
         } else if (key.endsWith(OAuth2ConfigConstants.OAUTH_VERIFICATION_TOKEN.getValue())) {
-            credentialPosition = 2;
-        }
-
-        if (credentialPosition != null) {
-            final String[] registeredOAuth2Clients = loadConfiguration(acct,
-                Provisioning.A_zimbraOAuthConsumerCredentials, appName);
-
-            if (registeredOAuth2Clients != null && registeredOAuth2Clients.length != 0) {
-                // {consumer-id}:{secret}:[{verification-token}:]{consumer-app-name}
-                for (final String consumer : registeredOAuth2Clients) {
-                    final String s[] = consumer.split(":");
-                    // skip this client if the credentials are not
-                    // properly formatted to what the client expects
-                    if (credentialPosition >= (s.length - 1)) {
-                        continue;
-                    }
-                    // ensure the client is correct and return the credential value
-                    if (s.length >= 3 && s[s.length - 1].equals(appName)) {
-                        value = s[credentialPosition];
-                        break;
-                    }
-                }
-            }
+            value = getConsumerConfig(acct, appName).getVerificationToken();
         } else if (key.endsWith(OAuth2ConfigConstants.OAUTH_CLIENT_REDIRECT_URI.getValue())) {
-            final String[] registeredOAuth2RedirectUrls = loadConfiguration(acct,
-                Provisioning.A_zimbraOAuthConsumerRedirectUri, appName);
-            if (registeredOAuth2RedirectUrls != null
-                && registeredOAuth2RedirectUrls.length != 0) {
-                // {redirectURI}:{consumer-app-name} (the redirect uri can contain ":")
-                for (final String consumer : registeredOAuth2RedirectUrls) {
-                    final int index = consumer.lastIndexOf(':');
-                    if (index != -1) {
-                        final String temp = consumer.substring(index+1);
-                        if (temp.equals(appName)) {
-                            value = consumer.substring(0, index);
-                            break;
-                        }
-                    }
-                }
-            }
+            value = getConsumerConfig(acct, appName).getRedirectUri();
         } else if (key.endsWith(OAuth2ConfigConstants.OAUTH_SCOPE.getValue())) {
-            final String[] registeredOAuth2APIScope = loadConfiguration(acct,
-                Provisioning.A_zimbraOAuthConsumerAPIScope, appName);
-
-            if (registeredOAuth2APIScope != null && registeredOAuth2APIScope.length != 0) {
-                for (final String scope : registeredOAuth2APIScope) {
-                    final int index = scope.lastIndexOf(':');
-                    if (index != -1) {
-                        final String temp = scope.substring(index+1);
-                        if (temp.equals(appName)) {
-                            value = scope.substring(0, index);
-                            break;
-                        }
-                    }
-                }
-            }
+            value = getConsumerConfig(acct, appName).getScope();
         } else {
             value = getString(key, null);
         }
@@ -131,6 +94,57 @@ public class LdapConfiguration extends Configuration {
         return value;
     }
 
+    /**
+     * Retrieves the parsed consumer config of a client for the account's
+     * domain.<br>
+     * The snapshot of the domain is validated on every use and rebuilt when
+     * any consumer attribute of the domain or global config differs from the
+     * values it was parsed from, or when the configuration was reloaded.
+     * Both entries are served from the provisioning cache, so validating
+     * does not search LDAP.
+     *
+     * @param acct The account to search by
+     * @param appName The client
+     * @return The consumer config (with null values if not configured)
+     */
+    protected static ConsumerConfig getConsumerConfig(Account acct, String appName) {
+        final long version = getSnapshot().getVersion();
+        final Provisioning prov = Provisioning.getInstance();
+        final String domainId;
+        final String[][] domainValues;
+        final String[][] globalValues;
+        try {
+            final Domain domain = prov.getDomain(acct);
+            domainId = domain == null ? "" : domain.getId();
+            domainValues = getConsumerAttrs(domain);
+            globalValues = getConsumerAttrs(prov.getConfig());
+        } catch (final ServiceException e) {
+            ZimbraLog.extensions.info("Error loading consumer configuration for : %s",
+                acct.getName());
+            ZimbraLog.extensions.debug(e);
+            return ConsumerConfig.EMPTY;
+        }
+        ConsumerConfigSnapshot snapshot = snapshots.get(domainId);
+        if (snapshot == null || !snapshot.isCurrent(version, domainValues, globalValues)) {
+            ZimbraLog.extensions.debug("Parsing consumer configuration for domain: %s", domainId);
+            snapshot = new ConsumerConfigSnapshot(version, domainValues, globalValues);
+            snapshots.put(domainId, snapshot);
+        }
+        return snapshot.get(appName);
+    }
+
+    /**
+     * @param entry The domain or global config, may be null
+     * @return The consumer attribute values, in CONSUMER_ATTRS order
+     */
+    protected static String[][] getConsumerAttrs(Entry entry) {
+        final String[][] values = new String[CONSUMER_ATTRS.length][];
+        for (int i = 0; i < CONSUMER_ATTRS.length; i++) {
+            values[i] = entry == null ? null : entry.getMultiAttr(CONSUMER_ATTRS[i]);
+        }
+        return values;
+    }
+
     /**
      * Retrieve first instance of specified configuration for the client.<br>
      * Client is not validated against LC handlers.
@@ -187,23 +201,179 @@ public class LdapConfiguration extends Configuration {
     * @throws ServiceException If there are issues
     */
    public static Configuration buildConfiguration(String name) throws ServiceException {
-       Configuration config = null;
-
-       // try to find config in cache
-       if (name != null) {
-           config = configCache.get(name);
-       }
-
-       // if the config is empty, try to load it
-       if (config == null) {
-           // validate the client
-           if (!isValidClient(name)) {
-               throw ServiceException.UNSUPPORTED();
-           }
-           config = new LdapConfiguration(name);
-       }
-       configCache.put(name, config);
-       return config;
+       return getOrCreate(name, LdapConfiguration::new);
    }
 
+    /**
+     * Parsed consumer configs of a domain, by client.
+     */
+    protected static class ConsumerConfigSnapshot {
+
+        /**
+         * The configuration version this snapshot was parsed in.
+         */
+        protected final long version;
+
+        /**
+         * The domain consumer attribute values this snapshot was parsed from.
+         */
+        protected final String[][] domainValues;
+
+        /**
+         * The global consumer attribute values this snapshot was parsed from.
+         */
+        protected final String[][] globalValues;
+
+        /**
+         * Consumer configs by client, parsed on first use.
+         */
+        protected final Map<String, ConsumerConfig> configs = new ConcurrentHashMap<String, ConsumerConfig>();
+
+        /**
+         * @param version The configuration version
+         * @param domainValues The domain consumer attribute values
+         * @param globalValues The global consumer attribute values
+         */
+        protected ConsumerConfigSnapshot(long version, String[][] domainValues,
+            String[][] globalValues) {
+            this.version = version;
+            this.domainValues = domainValues;
+            this.globalValues = globalValues;
+        }
+
+        /**
+         * @param version The current configuration version
+         * @param domainValues The current domain consumer attribute values
+         * @param globalValues The current global consumer attribute values
+         * @return True if the snapshot was parsed in the same version from the same values
+         */
+        protected boolean isCurrent(long version, String[][] domainValues,
+            String[][] globalValues) {
+            return this.version == version && Arrays.deepEquals(this.domainValues, domainValues)
+                && Arrays.deepEquals(this.globalValues, globalValues);
+        }
+
+        /**
+         * @param appName The client
+         * @return The consumer config of the client
+         */
+        protected ConsumerConfig get(String appName) {
+            return configs.computeIfAbsent(appName, (app) -> ConsumerConfig.parse(app,
+                resolve(0, app), resolve(1, app), resolve(2, app)));
+        }
+
+        /**
+         * Uses the domain values of an attribute if they mention the client,
+         * otherwise the global values.
+         *
+         * @param index The attribute index
+         * @param appName The client
+         * @return The attribute values to use for the client
+         */
+        protected String[] resolve(int index, String appName) {
+            final String[] values = domainValues[index];
+            if (values == null || values.length == 0
+                || !StringUtils.join(values).contains(appName)) {
+                return globalValues[index];
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Immutable consumer config of a client.
+     */
+    public static class ConsumerConfig {
+
+        /**
+         * Config with no values.
+         */
+        protected static final ConsumerConfig EMPTY = new ConsumerConfig(null, null, null, null,
+            null);
+
+        protected final String clientId;
+        protected final String clientSecret;
+        protected final String verificationToken;
+        protected final String redirectUri;
+        protected final String scope;
+
+        protected ConsumerConfig(String clientId, String clientSecret, String verificationToken,
+            String redirectUri, String scope) {
+            this.clientId = clientId;
+            this.clientSecret = clientSecret;
+            this.verificationToken = verificationToken;
+            this.redirectUri = redirectUri;
+            this.scope = scope;
+        }
+
+        /**
+         * Parses the consumer attribute values for a client.
+         *
+         * @param appName The client
+         * @param credentials {consumer-id}:{secret}:[{verification-token}:]{consumer-app-name} values
+         * @param redirectUris {redirectURI}:{consumer-app-name} values
+         * @param scopes {scope}:{consumer-app-name} values
+         * @return The consumer config
+         */
+        protected static ConsumerConfig parse(String appName, String[] credentials,
+            String[] redirectUris, String[] scopes) {
+            final String[] credential = new String[3];
+            if (credentials != null) {
+                for (final String consumer : credentials) {
+                    final String s[] = consumer.split(":");
+                    // skip this client if the credentials are not
+                    // properly formatted to what the client expects
+                    if (s.length < 3 || !s[s.length - 1].equals(appName)) {
+                        continue;
+                    }
+                    // each credential comes from the first entry that has it
+                    for (int i = 0; i < credential.length && i < s.length - 1; i++) {
+                        if (credential[i] == null) {
+                            credential[i] = s[i];
+                        }
+                    }
+                }
+            }
+            return new ConsumerConfig(credential[0], credential[1], credential[2],
+                findByAppName(redirectUris, appName), findByAppName(scopes, appName));
+        }
+
+        /**
+         * @param values {value}:{consumer-app-name} values (the value can contain ":")
+         * @param appName The client
+         * @return The first value for the client
+         */
+        protected static String findByAppName(String[] values, String appName) {
+            if (values != null) {
+                for (final String consumer : values) {
+                    final int index = consumer.lastIndexOf(':');
+                    if (index != -1 && consumer.substring(index + 1).equals(appName)) {
+                        return consumer.substring(0, index);
+                    }
+                }
+            }
+            return null;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getClientSecret() {
+            return clientSecret;
+        }
+
+        public String getVerificationToken() {
+            return verificationToken;
+        }
+
+        public String getRedirectUri() {
+            return redirectUri;
+        }
+
+        public String getScope() {
+            return scope;
+        }
+    }
+
 }
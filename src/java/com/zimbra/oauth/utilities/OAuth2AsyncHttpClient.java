@@ -0,0 +1,356 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.ContentTooLongException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import com.zimbra.common.net.SocketFactories;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.oauth.models.HttpResponseWrapper;
+
+/**
+ * The OAuth2AsyncHttpClient class.<br>
+ * Shared non-blocking http client with its own I/O reactor, used to execute
+ * provider requests without holding the calling thread for the round trip.
+ * Created and started on first use, with Zimbra's ssl trust and the
+ * server's http proxy, and without cookies so none are kept across users.<br>
+ * Response bodies are buffered in memory, up to the configured maximum
+ * entity size, and never spilled to disk.<br>
+ * Futures are completed on an I/O reactor thread, so dependent work that
+ * blocks should use the async stage methods with an executor.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2AsyncHttpClient {
+
+    /**
+     * The shared client, null until first use.
+     */
+    protected static CloseableHttpAsyncClient client;
+
+    /**
+     * Executes a request, completing with the response and its body, or
+     * exceptionally with a ServiceException for connection issues and an
+     * IOException for other issues.<br>
+     * Requests are rejected while the provider's circuit is open.
+     *
+     * @param request Request to execute
+     * @return The future response
+     */
+    public static CompletableFuture<HttpResponseWrapper> execute(HttpRequestBase request) {
+        final CompletableFuture<HttpResponseWrapper> future = new CompletableFuture<HttpResponseWrapper>();
+        final OAuth2CircuitBreaker breaker = OAuth2CircuitBreaker.getBreaker(request);
+        final CloseableHttpAsyncClient asyncClient;
+        try {
+            asyncClient = getClient();
+            breaker.acquire();
+        } catch (final ServiceException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        final int maxSize = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_ENTITY_MAX_SIZE.getValue(),
+            OAuth2Constants.HTTP_ENTITY_MAX_SIZE.getValue());
+        final long start = System.nanoTime();
+        final FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(HttpResponse response) {
+                breaker.onResponse(response, start);
+                final HttpEntity entity = response.getEntity();
+                try {
+                    // the consumer has buffered the body in memory, wrap it
+                    // as is to keep disk I/O off the reactor thread
+                    future.complete(new HttpResponseWrapper(response,
+                        entity == null ? null : EntityUtils.toByteArray(entity)));
+                } catch (final IOException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                breaker.onError(e, start);
+                final ServiceException mapped = OAuth2Utilities.toServiceException(request, e);
+                future.completeExceptionally(mapped != null ? mapped : e);
+            }
+
+            @Override
+            public void cancelled() {
+                breaker.onIgnored();
+                future.cancel(false);
+            }
+        };
+        asyncClient.execute(HttpAsyncMethods.create(request), new BoundedResponseConsumer(maxSize),
+            HttpClientContext.create(), callback);
+        // abort the request if the caller gives up
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                request.abort();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Buffers a response body in memory, failing once it is larger than the
+     * maximum size.
+     */
+    protected static class BoundedResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+        /**
+         * The maximum number of bytes to buffer.
+         */
+        protected final int maxSize;
+
+        /**
+         * The response being received.
+         */
+        protected HttpResponse response;
+
+        /**
+         * The body received so far.
+         */
+        protected SimpleInputBuffer buffer;
+
+        /**
+         * @param maxSize The maximum number of bytes to buffer
+         */
+        protected BoundedResponseConsumer(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType)
+            throws IOException {
+            final long contentLength = entity.getContentLength();
+            if (contentLength > maxSize) {
+                throw new ContentTooLongException(String.format(
+                    "Response body of %d bytes exceeds the maximum of %d bytes.", contentLength,
+                    maxSize));
+            }
+            buffer = new SimpleInputBuffer(contentLength < 0 ? 4096 : (int) contentLength,
+                HeapByteBufferAllocator.INSTANCE);
+            response.setEntity(new ContentBufferEntity(entity, buffer));
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl)
+            throws IOException {
+            buffer.consumeContent(decoder);
+            // nothing is read from the buffer until the response is complete
+            if (buffer.length() > maxSize) {
+                throw new ContentTooLongException(String.format(
+                    "Response body exceeds the maximum of %d bytes.", maxSize));
+            }
+        }
+
+        @Override
+        protected HttpResponse buildResult(HttpContext context) {
+            return response;
+        }
+
+        @Override
+        protected void releaseResources() {
+            response = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Stops the client and its I/O reactor.
+     */
+    public static synchronized void shutdown() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (final IOException e) {
+                ZimbraLog.extensions.debug(e);
+            }
+            client = null;
+        }
+    }
+
+    /**
+     * @return The started client
+     * @throws ServiceException If the I/O reactor cannot be created
+     */
+    protected static synchronized CloseableHttpAsyncClient getClient() throws ServiceException {
+        if (client == null) {
+            client = buildClient();
+            client.start();
+        }
+        return client;
+    }
+
+    /**
+     * @return A new client configured from localconfig
+     * @throws ServiceException If the I/O reactor cannot be created
+     */
+    protected static CloseableHttpAsyncClient buildClient() throws ServiceException {
+        final int ioThreads = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_ASYNC_IO_THREADS.getValue(),
+            OAuth2Constants.HTTP_ASYNC_IO_THREADS.getValue());
+        final int maxConnections = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_ASYNC_MAX_CONNECTIONS.getValue(),
+            OAuth2Constants.HTTP_ASYNC_MAX_CONNECTIONS.getValue());
+        final int maxPerRoute = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_MAX_PER_ROUTE.getValue(),
+            OAuth2Constants.HTTP_MAX_PER_ROUTE.getValue());
+        final int connectTimeout = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_CONNECT_TIMEOUT.getValue(),
+            OAuth2Constants.HTTP_CONNECT_TIMEOUT.getValue());
+        final int socketTimeout = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_SOCKET_TIMEOUT.getValue(),
+            OAuth2Constants.HTTP_SOCKET_TIMEOUT.getValue());
+        final int poolTimeout = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_POOL_TIMEOUT.getValue(),
+            OAuth2Constants.HTTP_POOL_TIMEOUT.getValue());
+        final int keepAlive = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_KEEP_ALIVE.getValue(),
+            OAuth2Constants.HTTP_KEEP_ALIVE.getValue());
+
+        final PoolingNHttpClientConnectionManager manager;
+        try {
+            manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(
+                IOReactorConfig.custom()
+                    .setIoThreadCount(ioThreads)
+                    .setConnectTimeout(connectTimeout)
+                    .setSoTimeout(socketTimeout)
+                    .build()), getSessionStrategies());
+        } catch (final IOReactorException e) {
+            throw ServiceException.FAILURE("Unable to create the http I/O reactor.", e);
+        }
+        manager.setMaxTotal(maxConnections);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        final HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+            .setConnectionManager(manager)
+            .setKeepAliveStrategy((response, context) -> TimeUnit.SECONDS.toMillis(keepAlive))
+            .setThreadFactory((runnable) -> {
+                final Thread thread = new Thread(runnable, "oauth-http-async");
+                thread.setDaemon(true);
+                return thread;
+            })
+            .disableCookieManagement()
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(socketTimeout)
+                .setConnectionRequestTimeout(poolTimeout)
+                .build());
+        configureProxy(builder);
+        return builder.build();
+    }
+
+    /**
+     * Session strategies for async connection managers. Https connections
+     * use an ssl context with Zimbra's trust manager, so the configured ssl
+     * trust applies as it does for the blocking clients.
+     *
+     * @return The session strategies by scheme
+     * @throws ServiceException If the ssl context cannot be created
+     */
+    protected static Registry<SchemeIOSessionStrategy> getSessionStrategies()
+        throws ServiceException {
+        final SSLContext sslContext;
+        try {
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[] { SocketFactories.defaultTrustManager() },
+                null);
+        } catch (final GeneralSecurityException e) {
+            throw ServiceException.FAILURE("Unable to create the ssl context for async requests.", e);
+        }
+        return RegistryBuilder.<SchemeIOSessionStrategy> create()
+            .register("http", NoopIOSessionStrategy.INSTANCE)
+            .register("https", new SSLIOSessionStrategy(sslContext,
+                SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+            .build();
+    }
+
+    /**
+     * Applies the server's http proxy to an async builder.<br>
+     * HttpProxyUtil only configures blocking client builders, so this routes
+     * through the zimbraHttpProxyURL host and port with the url's user and
+     * password the same way it does.
+     *
+     * @param builder The builder to configure
+     */
+    protected static void configureProxy(HttpAsyncClientBuilder builder) {
+        try {
+            final String proxyUrl = Provisioning.getInstance().getLocalServer()
+                .getAttr(Provisioning.A_zimbraHttpProxyURL, null);
+            if (StringUtils.isEmpty(proxyUrl)) {
+                return;
+            }
+            final URI uri = URI.create(proxyUrl);
+            builder.setRoutePlanner(
+                new DefaultProxyRoutePlanner(new HttpHost(uri.getHost(), uri.getPort())));
+            final String userInfo = uri.getUserInfo();
+            if (StringUtils.contains(userInfo, ':')) {
+                final BasicCredentialsProvider credentials = new BasicCredentialsProvider();
+                credentials.setCredentials(new AuthScope(uri.getHost(), uri.getPort(), null),
+                    new UsernamePasswordCredentials(StringUtils.substringBefore(userInfo, ":"),
+                        StringUtils.substringAfter(userInfo, ":")));
+                builder.setDefaultCredentialsProvider(credentials);
+            }
+            ZimbraLog.extensions.debug("Using http proxy for async requests: %s:%d",
+                uri.getHost(), uri.getPort());
+        } catch (final ServiceException | IllegalArgumentException e) {
+            ZimbraLog.extensions.warn("Unable to configure the http proxy for async requests.");
+            ZimbraLog.extensions.debug(e);
+        }
+    }
+}
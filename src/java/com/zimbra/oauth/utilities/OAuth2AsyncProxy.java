@@ -0,0 +1,563 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.protocol.HttpContext;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+
+/**
+ * The OAuth2AsyncProxy class.<br>
+ * Proxies requests without holding a servlet thread while the target
+ * responds: the request is put in async mode, the target is called with a
+ * non-blocking client, and its response body is written with non-blocking
+ * writes as it arrives.<br>
+ * Reading from the target is suspended while the client cannot take more
+ * data, so a slow client does not buffer a whole download in memory.<br>
+ * Only requests without a body to stream are proxied asynchronously,
+ * others use the blocking OAuth2ProxyUtilities.doProxy.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2AsyncProxy {
+
+    /**
+     * The shared proxy client, null until first use.
+     */
+    protected static CloseableHttpAsyncClient client;
+
+    /**
+     * Request config of the shared proxy client.
+     */
+    protected static RequestConfig requestConfig;
+
+    /**
+     * Permits for requests in progress, null until first use.
+     */
+    protected static Semaphore inFlight;
+
+    /**
+     * Max number of requests in progress.
+     */
+    protected static int maxInFlight;
+
+    /**
+     * @return True if async proxying is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(OAuth2CacheUtilities.getLCString(
+            OAuth2ConfigConstants.LC_PROXY_ASYNC_ENABLED.getValue(),
+            OAuth2Constants.PROXY_ASYNC_ENABLED.getValue()));
+    }
+
+    /**
+     * @param req The request
+     * @param body The buffered request body, or null if it is streamed
+     * @return True if the request can be proxied asynchronously
+     */
+    public static boolean isAsyncAllowed(HttpServletRequest req, byte[] body) {
+        if (!isEnabled() || !req.isAsyncSupported()) {
+            return false;
+        }
+        // streamed bodies would be read with blocking reads
+        return body != null
+            || req.getContentLengthLong() <= 0 && req.getHeader("Transfer-Encoding") == null;
+    }
+
+    /**
+     * Proxies a request to its target asynchronously.<br>
+     * Errors before the target responds are sent as json, errors after that
+     * end the response early.<br>
+     * Transfers are limited by the max async requests in progress, not by
+     * the client's bulkhead.
+     *
+     * @param req The request, with the target parameter
+     * @param resp The response to write the target's response to
+     * @param body The buffered request body, or null if there is none
+     * @return True if the request is proxied asynchronously, false if it
+     *         was answered already
+     * @throws IOException If there are issues writing an error
+     */
+    public static boolean doProxy(HttpServletRequest req, HttpServletResponse resp, byte[] body)
+        throws IOException {
+        final Semaphore permits;
+        final CloseableHttpAsyncClient asyncClient;
+        try {
+            asyncClient = getClient();
+            permits = inFlight;
+        } catch (final ServiceException e) {
+            ZimbraLog.extensions.warn("Unable to start the async proxy client.");
+            ZimbraLog.extensions.debug(e);
+            OAuth2ProxyUtilities.sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE.getValue());
+            return false;
+        }
+        if (!permits.tryAcquire()) {
+            ZimbraLog.extensions.warn("Rejecting proxy request, %d async requests in progress.",
+                maxInFlight);
+            OAuth2ProxyUtilities.sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE.getValue());
+            return false;
+        }
+        boolean started = false;
+        try {
+            started = execute(asyncClient, req, resp, body, permits::release);
+        } finally {
+            if (!started) {
+                permits.release();
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Builds the target request and starts the exchange.
+     *
+     * @return True if the exchange started, and release is run on its
+     *         completion
+     */
+    protected static boolean execute(CloseableHttpAsyncClient asyncClient,
+        HttpServletRequest req, HttpServletResponse resp, byte[] body, Runnable release)
+        throws IOException {
+        final String target = req.getParameter(OAuth2ProxyUtilities.TARGET_PARAM);
+        if (target == null) {
+            OAuth2ProxyUtilities.sendError(resp, HttpServletResponse.SC_BAD_REQUEST,
+                OAuth2ErrorConstants.ERROR_PARAM_MISSING.getValue());
+            return false;
+        }
+        final HttpRequestBase method = OAuth2ProxyUtilities.buildRequest(req, resp, target, body);
+        if (method == null) {
+            return false;
+        }
+        // credentials and redirects are set per request on the shared client
+        final HttpClientContext context;
+        try {
+            context = OAuth2ProxyUtilities.buildContext(req, method, requestConfig);
+        } catch (final ServiceException e) {
+            OAuth2ProxyUtilities.sendError(resp, HttpServletResponse.SC_BAD_REQUEST,
+                OAuth2ErrorConstants.ERROR_INVALID_AUTH_CODE.getValue());
+            return false;
+        }
+
+        final OAuth2CircuitBreaker breaker = OAuth2CircuitBreaker.getBreaker(method);
+        try {
+            breaker.acquire();
+        } catch (final ServiceException e) {
+            // the target's circuit is open
+            OAuth2ProxyUtilities.sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE.getValue());
+            return false;
+        }
+
+        final AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_PROXY_ASYNC_TIMEOUT.getValue(),
+            OAuth2Constants.PROXY_ASYNC_TIMEOUT.getValue()));
+        final ProxyExchange exchange = new ProxyExchange(asyncContext, resp, target, breaker,
+            release);
+        asyncContext.addListener(exchange);
+        try {
+            exchange.start(asyncClient.execute(HttpAsyncMethods.create(method), exchange,
+                context, exchange.callback()));
+        } catch (final RuntimeException e) {
+            // e.g. the client was shut down
+            ZimbraLog.extensions.debug(e);
+            breaker.onIgnored();
+            exchange.finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the client and its I/O reactor.
+     */
+    public static synchronized void shutdown() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (final IOException e) {
+                ZimbraLog.extensions.debug(e);
+            }
+            client = null;
+        }
+    }
+
+    /**
+     * @return The started client
+     * @throws ServiceException If the I/O reactor cannot be created
+     */
+    protected static synchronized CloseableHttpAsyncClient getClient() throws ServiceException {
+        if (client == null) {
+            client = buildClient();
+            client.start();
+        }
+        if (inFlight == null) {
+            maxInFlight = Math.max(1, OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_PROXY_ASYNC_MAX_IN_FLIGHT.getValue(),
+                OAuth2Constants.PROXY_ASYNC_MAX_IN_FLIGHT.getValue()));
+            final Semaphore permits = new Semaphore(maxInFlight);
+            inFlight = permits;
+            OAuth2HttpMetrics.getInstance().registerGauge(
+                OAuth2HttpMetrics.GAUGE_PROXY_ASYNC_IN_FLIGHT,
+                () -> maxInFlight - permits.availablePermits());
+        }
+        return client;
+    }
+
+    /**
+     * @return A new client configured from localconfig, with its own pool so
+     *         long downloads do not take the provider request connections
+     * @throws ServiceException If the I/O reactor cannot be created
+     */
+    protected static CloseableHttpAsyncClient buildClient() throws ServiceException {
+        final int ioThreads = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_PROXY_ASYNC_IO_THREADS.getValue(),
+            OAuth2Constants.PROXY_ASYNC_IO_THREADS.getValue());
+        final int maxConnections = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_PROXY_ASYNC_MAX_CONNECTIONS.getValue(),
+            OAuth2Constants.PROXY_ASYNC_MAX_CONNECTIONS.getValue());
+        final int maxPerRoute = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_PROXY_ASYNC_MAX_PER_ROUTE.getValue(),
+            OAuth2Constants.PROXY_ASYNC_MAX_PER_ROUTE.getValue());
+        final int connectTimeout = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_CONNECT_TIMEOUT.getValue(),
+            OAuth2Constants.HTTP_CONNECT_TIMEOUT.getValue());
+        final int socketTimeout = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_SOCKET_TIMEOUT.getValue(),
+            OAuth2Constants.HTTP_SOCKET_TIMEOUT.getValue());
+        final int poolTimeout = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_POOL_TIMEOUT.getValue(),
+            OAuth2Constants.HTTP_POOL_TIMEOUT.getValue());
+        final int keepAlive = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_KEEP_ALIVE.getValue(),
+            OAuth2Constants.HTTP_KEEP_ALIVE.getValue());
+
+        final PoolingNHttpClientConnectionManager manager;
+        try {
+            manager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(
+                IOReactorConfig.custom()
+                    .setIoThreadCount(ioThreads)
+                    .setConnectTimeout(connectTimeout)
+                    .setSoTimeout(socketTimeout)
+                    .build()), OAuth2AsyncHttpClient.getSessionStrategies());
+        } catch (final IOReactorException e) {
+            throw ServiceException.FAILURE("Unable to create the proxy I/O reactor.", e);
+        }
+        manager.setMaxTotal(maxConnections);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        requestConfig = RequestConfig.custom()
+            .setConnectTimeout(connectTimeout)
+            .setSocketTimeout(socketTimeout)
+            .setConnectionRequestTimeout(poolTimeout)
+            .build();
+        final HttpAsyncClientBuilder builder = HttpAsyncClientBuilder.create()
+            .setConnectionManager(manager)
+            .setKeepAliveStrategy((response, context) -> TimeUnit.SECONDS.toMillis(keepAlive))
+            .setThreadFactory((runnable) -> {
+                final Thread thread = new Thread(runnable, "oauth-proxy-async");
+                thread.setDaemon(true);
+                return thread;
+            })
+            // target cookies are passed through, never kept across users
+            .disableCookieManagement()
+            .setDefaultRequestConfig(requestConfig);
+        OAuth2AsyncHttpClient.configureProxy(builder);
+        return builder.build();
+    }
+
+    /**
+     * A request in progress.<br>
+     * Consumes the target's response on an I/O reactor thread and writes it
+     * when the client can take it, suspending the target's input meanwhile.
+     */
+    protected static class ProxyExchange extends AsyncByteConsumer<Void>
+        implements WriteListener, AsyncListener {
+
+        protected final AsyncContext asyncContext;
+        protected final HttpServletResponse resp;
+        protected final String target;
+        protected final OAuth2CircuitBreaker breaker;
+        protected final Runnable release;
+        protected final long start = System.nanoTime();
+
+        /**
+         * True once release has run.
+         */
+        protected final AtomicBoolean released = new AtomicBoolean();
+
+        /**
+         * Response body received while the client could not take it.
+         */
+        protected final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+        /**
+         * The target's response future, null until started.
+         */
+        protected Future<Void> future;
+
+        /**
+         * The response output, null until the target responds with a body.
+         */
+        protected ServletOutputStream out;
+
+        /**
+         * Controls the target's input, null until the body is received.
+         */
+        protected IOControl ioControl;
+
+        /**
+         * True once the target's response head is received.
+         */
+        protected boolean responded;
+
+        /**
+         * True once the target's response is fully received.
+         */
+        protected boolean received;
+
+        /**
+         * True once the async context is completed.
+         */
+        protected boolean finished;
+
+        public ProxyExchange(AsyncContext asyncContext, HttpServletResponse resp, String target,
+            OAuth2CircuitBreaker breaker, Runnable release) {
+            this.asyncContext = asyncContext;
+            this.resp = resp;
+            this.target = target;
+            this.breaker = breaker;
+            this.release = release;
+        }
+
+        /**
+         * @param future The target's response future
+         */
+        protected synchronized void start(Future<Void> future) {
+            this.future = future;
+            if (finished) {
+                future.cancel(true);
+            }
+        }
+
+        /**
+         * @return A callback finishing the exchange once the target's
+         *         response is received or failed
+         */
+        protected FutureCallback<Void> callback() {
+            return new FutureCallback<Void>() {
+
+                @Override
+                public void completed(Void result) {
+                    // finished once the pending body is written
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    onFailed(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    onCancelled();
+                }
+            };
+        }
+
+        @Override
+        protected synchronized void onResponseReceived(HttpResponse response) throws IOException {
+            responded = true;
+            breaker.onResponse(response, start);
+            if (finished) {
+                return;
+            }
+            OAuth2ProxyUtilities.setResponseHead(response, resp);
+            if (response.getEntity() != null) {
+                out = resp.getOutputStream();
+                out.setWriteListener(this);
+            }
+        }
+
+        @Override
+        protected synchronized void onByteReceived(ByteBuffer buf, IOControl ioControl)
+            throws IOException {
+            this.ioControl = ioControl;
+            if (finished) {
+                buf.position(buf.limit());
+                return;
+            }
+            // the buffer is reused and writes may complete later, so copy
+            final byte[] bytes = new byte[buf.remaining()];
+            buf.get(bytes);
+            if (pending.size() == 0 && out.isReady()) {
+                out.write(bytes);
+            } else {
+                pending.write(bytes);
+                ioControl.suspendInput();
+            }
+        }
+
+        @Override
+        protected synchronized Void buildResult(HttpContext context) throws Exception {
+            received = true;
+            if (out == null || pending.size() == 0 && out.isReady()) {
+                finish(0, null);
+            }
+            return null;
+        }
+
+        @Override
+        protected void releaseResources() {
+            // nothing held besides the pending body
+        }
+
+        @Override
+        public synchronized void onWritePossible() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (pending.size() > 0) {
+                if (!out.isReady()) {
+                    return;
+                }
+                final byte[] bytes = pending.toByteArray();
+                pending.reset();
+                out.write(bytes);
+                if (!received && ioControl != null) {
+                    ioControl.requestInput();
+                }
+            }
+            if (received && pending.size() == 0 && out.isReady()) {
+                finish(0, null);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            // the client went away while writing
+            ZimbraLog.extensions.debug("Client error while proxying %s: %s", target,
+                t.getMessage());
+            finish(0, null);
+        }
+
+        protected synchronized void onFailed(Exception e) {
+            if (!responded) {
+                breaker.onError(e, start);
+            }
+            ZimbraLog.extensions.info("exception while proxying " + target, e);
+            finish(e instanceof HttpException || e.getCause() instanceof HttpException
+                ? HttpServletResponse.SC_NOT_FOUND
+                : HttpServletResponse.SC_BAD_GATEWAY,
+                OAuth2ErrorConstants.ERROR_INVALID_PROXY_RESPONSE);
+        }
+
+        protected synchronized void onCancelled() {
+            if (!responded) {
+                breaker.onIgnored();
+            }
+            finish(0, null);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            ZimbraLog.extensions.info("Timed out proxying %s.", target);
+            finish(HttpServletResponse.SC_GATEWAY_TIMEOUT,
+                OAuth2ErrorConstants.ERROR_PROXY_TIMEOUT);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish(0, null);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted
+        }
+
+        /**
+         * Completes the async context, aborting the target request if it is
+         * still in progress.<br>
+         * An error is sent only if no response was started, otherwise the
+         * response ends early.
+         *
+         * @param status The error status, or 0 for none
+         * @param error The error code, or null for none
+         */
+        protected synchronized void finish(int status, OAuth2ErrorConstants error) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (future != null && !future.isDone()) {
+                future.cancel(true);
+            }
+            try {
+                if (error != null && out == null && !resp.isCommitted()) {
+                    OAuth2ProxyUtilities.sendError(resp, status, error.getValue());
+                }
+            } catch (final IOException | IllegalStateException e) {
+                ZimbraLog.extensions.debug("Unable to send proxy error: %s", e.getMessage());
+            } finally {
+                try {
+                    asyncContext.complete();
+                } catch (final IllegalStateException e) {
+                    // completed by the container
+                }
+                release();
+            }
+        }
+
+        /**
+         * Runs release once.
+         */
+        protected void release() {
+            if (released.compareAndSet(false, true)) {
+                release.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.managers.ClassManager;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+
+/**
+ * The OAuth2Bulkhead class.<br>
+ * Limits the number of requests in progress per client, so a slow provider
+ * holds at most its own permits instead of every request thread.<br>
+ * A request that finds no free permit waits briefly in a bounded queue and
+ * is rejected with TEMPORARILY_UNAVAILABLE when the queue is full or the
+ * wait times out.<br>
+ * Bulkheads are keyed by the client names resolved by ClassManager, e.g.
+ * static-basic-jira-ufbid and static-basic-jira-abcde share the
+ * static-basic-jira bulkhead.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2Bulkhead {
+
+    /**
+     * Executes a request while holding a permit.
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+
+        /**
+         * @return The result
+         * @throws ServiceException If there are issues
+         */
+        public T call() throws ServiceException;
+    }
+
+    /**
+     * Bulkheads by client name.
+     */
+    protected static final Map<String, OAuth2Bulkhead> bulkheads = new ConcurrentHashMap<String, OAuth2Bulkhead>();
+
+    /**
+     * The client name.
+     */
+    protected final String client;
+
+    /**
+     * Max number of requests in progress.
+     */
+    protected final int maxConcurrent;
+
+    /**
+     * Max number of requests waiting for a permit.
+     */
+    protected final int maxQueue;
+
+    /**
+     * Max time a request waits for a permit (milliseconds).
+     */
+    protected final long maxWait;
+
+    /**
+     * Request permits.
+     */
+    protected final Semaphore permits;
+
+    /**
+     * Number of requests waiting for a permit.
+     */
+    protected final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Metrics to count rejections with.
+     */
+    protected final OAuth2HttpMetrics metrics;
+
+    /**
+     * @param client The client name
+     * @param maxConcurrent Max number of requests in progress
+     * @param maxQueue Max number of requests waiting for a permit
+     * @param maxWait Max time a request waits for a permit (milliseconds)
+     * @param metrics Metrics to count rejections with
+     */
+    public OAuth2Bulkhead(String client, int maxConcurrent, int maxQueue, long maxWait,
+        OAuth2HttpMetrics metrics) {
+        this.client = client;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(this.maxConcurrent);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Executes a call while holding a permit of the client's bulkhead.<br>
+     * Calls are executed directly if bulkheads are disabled.
+     *
+     * @param client The client the call is for
+     * @param call The call to execute
+     * @return The call result
+     * @throws ServiceException If there are issues, or TEMPORARILY_UNAVAILABLE
+     *             if the bulkhead rejects the call
+     */
+    public static <T> T execute(String client, Call<T> call) throws ServiceException {
+        if (!isEnabled()) {
+            return call.call();
+        }
+        final OAuth2Bulkhead bulkhead = getBulkhead(client);
+        bulkhead.acquire();
+        try {
+            return call.call();
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * @return True if bulkheads are enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(OAuth2CacheUtilities.getLCString(
+            OAuth2ConfigConstants.LC_BULKHEAD_ENABLED.getValue(),
+            OAuth2Constants.BULKHEAD_ENABLED.getValue()));
+    }
+
+    /**
+     * Returns the bulkhead of a client, created from localconfig on first
+     * use.<br>
+     * The client should be validated (e.g. its handler loaded) before
+     * calling, so unknown client names do not create bulkheads.
+     *
+     * @param client The client
+     * @return The client's bulkhead
+     */
+    public static OAuth2Bulkhead getBulkhead(String client) {
+        return bulkheads.computeIfAbsent(ClassManager.getClientName(client),
+            OAuth2Bulkhead::load);
+    }
+
+    /**
+     * @param client The client name
+     * @return A bulkhead configured from localconfig, with its gauges
+     *         registered
+     */
+    protected static OAuth2Bulkhead load(String client) {
+        final OAuth2Bulkhead bulkhead = new OAuth2Bulkhead(client,
+            OAuth2HttpClientPool.getSetting(client,
+                OAuth2ConfigConstants.LC_BULKHEAD_MAX_CONCURRENT,
+                OAuth2ConfigConstants.LC_OAUTH_BULKHEAD_MAX_CONCURRENT_TEMPLATE,
+                OAuth2Constants.BULKHEAD_MAX_CONCURRENT),
+            OAuth2HttpClientPool.getSetting(client,
+                OAuth2ConfigConstants.LC_BULKHEAD_MAX_QUEUE,
+                OAuth2ConfigConstants.LC_OAUTH_BULKHEAD_MAX_QUEUE_TEMPLATE,
+                OAuth2Constants.BULKHEAD_MAX_QUEUE),
+            OAuth2CacheUtilities.getLCInt(OAuth2ConfigConstants.LC_BULKHEAD_MAX_WAIT.getValue(),
+                OAuth2Constants.BULKHEAD_MAX_WAIT.getValue()),
+            OAuth2HttpMetrics.getInstance());
+        bulkhead.metrics.registerGauge(
+            String.format("%s.%s", client, OAuth2HttpMetrics.GAUGE_BULKHEAD_IN_FLIGHT),
+            bulkhead::getInFlight);
+        bulkhead.metrics.registerGauge(
+            String.format("%s.%s", client, OAuth2HttpMetrics.GAUGE_BULKHEAD_QUEUE_DEPTH),
+            bulkhead::getQueueDepth);
+        return bulkhead;
+    }
+
+    /**
+     * Clears the bulkheads so they are reloaded from localconfig.<br>
+     * Requests in progress release their permits to the old bulkheads.
+     */
+    public static void reset() {
+        bulkheads.clear();
+    }
+
+    /**
+     * Acquires a permit, waiting up to maxWait if the queue is not full.
+     *
+     * @throws ServiceException TEMPORARILY_UNAVAILABLE if no permit is
+     *             available
+     */
+    public void acquire() throws ServiceException {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        try {
+            if (waiting.incrementAndGet() <= maxQueue && maxWait > 0) {
+                metrics.increment(client, OAuth2HttpMetrics.EVENT_BULKHEAD_QUEUED);
+                if (permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        metrics.increment(client, OAuth2HttpMetrics.EVENT_BULKHEAD_REJECTED);
+        ZimbraLog.extensions.warn("Rejecting request for client %s, %d requests in progress.",
+            client, getInFlight());
+        throw ServiceException.TEMPORARILY_UNAVAILABLE();
+    }
+
+    /**
+     * Releases a permit acquired with acquire.
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * @return The client name
+     */
+    public String getClient() {
+        return client;
+    }
+
+    /**
+     * @return The number of requests in progress
+     */
+    public long getInFlight() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return The number of requests waiting for a permit
+     */
+    public long getQueueDepth() {
+        return waiting.get();
+    }
+}
@@ -5,9 +5,20 @@
 
 package com.zimbra.oauth.utilities;
 
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.oauth.cache.IOAuth2CacheHelper;
+import com.zimbra.oauth.cache.OAuth2InstrumentedCacheHelper;
+import com.zimbra.oauth.cache.OAuth2LocalCacheHelper;
+import com.zimbra.oauth.cache.OAuth2NearCacheHelper;
 import com.zimbra.oauth.cache.OAuth2NoopCacheHelper;
 import com.zimbra.oauth.cache.ephemeral.OAuth2EphemeralCacheHelper;
+import com.zimbra.oauth.metrics.OAuth2CacheMetrics;
 
 /**
  * The OAuth2CacheUtilities class.
@@ -40,16 +51,143 @@ public class OAuth2CacheUtilities {
         return helper.get(key);
     }
 
+    public static void putAll(Map<String, String> entries) {
+        helper.putAll(entries);
+    }
+
+    public static void putAll(Map<String, String> entries, long expiry) {
+        helper.putAll(entries, expiry);
+    }
+
+    public static void removeAll(Collection<String> keys) {
+        helper.removeAll(keys);
+    }
+
+    public static Map<String, String> getAll(Collection<String> keys) {
+        return helper.getAll(keys);
+    }
+
     public static String buildAccountKey(String accountId, String key) {
         return String.format("{%s}-%s", accountId, key);
     }
 
+    /**
+     * Loads the cache helper for the configured cache type.<br>
+     * `ephemeral` (default) uses the ephemeral store, or no cache if the store
+     * is not usable for caching. Its keys and values can optionally use a
+     * compact encoding.<br>
+     * `local` uses a bounded in-process cache, only suitable for single
+     * mailbox node installs.<br>
+     * `noop` disables caching.
+     *
+     * @return The cache helper
+     */
     protected static IOAuth2CacheHelper loadCacheHelper() {
-        final IOAuth2CacheHelper cacheHelper = new OAuth2EphemeralCacheHelper();
+        final String type = getLCString(OAuth2ConfigConstants.LC_CACHE_TYPE.getValue(),
+            OAuth2Constants.CACHE_TYPE_EPHEMERAL.getValue());
+        if (OAuth2Constants.CACHE_TYPE_LOCAL.getValue().equals(type)) {
+            final int maxEntries = getLCInt(
+                OAuth2ConfigConstants.LC_CACHE_LOCAL_MAX_ENTRIES.getValue(),
+                OAuth2Constants.CACHE_LOCAL_MAX_ENTRIES.getValue());
+            ZimbraLog.extensions.info("Using local oauth cache with max entries: %d", maxEntries);
+            final OAuth2LocalCacheHelper localHelper = new OAuth2LocalCacheHelper(maxEntries);
+            OAuth2CacheMetrics.getInstance().registerLocalCache(OAuth2CacheMetrics.LAYER_CACHE,
+                localHelper);
+            return instrument(localHelper, OAuth2CacheMetrics.LAYER_CACHE);
+        }
+        if (OAuth2Constants.CACHE_TYPE_NOOP.getValue().equals(type)) {
+            return new OAuth2NoopCacheHelper();
+        }
+        final boolean compact = Boolean.valueOf(getLCString(
+            OAuth2ConfigConstants.LC_CACHE_COMPACT_ENCODING.getValue(),
+            OAuth2Constants.CACHE_COMPACT_ENCODING.getValue()));
+        final IOAuth2CacheHelper cacheHelper = new OAuth2EphemeralCacheHelper(compact);
         // if storage type is not valid, we can't use the ephemeral cache
         if (cacheHelper.isValidStorageType()) {
-            return cacheHelper;
+            return instrument(loadNearCacheHelper(cacheHelper, compact),
+                OAuth2CacheMetrics.LAYER_CACHE);
         }
+        ZimbraLog.extensions.info("Ephemeral store is not usable for oauth caching, set %s to %s"
+            + " on single mailbox node installs.", OAuth2ConfigConstants.LC_CACHE_TYPE.getValue(),
+            OAuth2Constants.CACHE_TYPE_LOCAL.getValue());
         return new OAuth2NoopCacheHelper();
     }
+
+    /**
+     * Layers an in-process near-cache over the given helper if enabled.<br>
+     * The near-cache is per mailbox node, without invalidation across nodes,
+     * and requires compact encoding, the only encoding that carries the
+     * backend expiry its reads are bounded by.
+     *
+     * @param cacheHelper The backing cache helper
+     * @param compact True if the backing helper uses compact encoding
+     * @return The near-cache helper, or the given helper if disabled
+     */
+    protected static IOAuth2CacheHelper loadNearCacheHelper(IOAuth2CacheHelper cacheHelper,
+        boolean compact) {
+        final boolean enabled = Boolean.valueOf(getLCString(
+            OAuth2ConfigConstants.LC_CACHE_NEAR_ENABLED.getValue(),
+            OAuth2Constants.CACHE_NEAR_ENABLED.getValue()));
+        final int maxEntries = getLCInt(OAuth2ConfigConstants.LC_CACHE_NEAR_MAX_ENTRIES.getValue(),
+            OAuth2Constants.CACHE_NEAR_MAX_ENTRIES.getValue());
+        final int lifetime = getLCInt(OAuth2ConfigConstants.LC_CACHE_NEAR_LIFETIME.getValue(),
+            OAuth2Constants.CACHE_NEAR_LIFETIME.getValue());
+        if (!enabled || maxEntries <= 0 || lifetime <= 0) {
+            return cacheHelper;
+        }
+        if (!compact) {
+            ZimbraLog.extensions.warn("Not using oauth near-cache, %s requires %s to be true.",
+                OAuth2ConfigConstants.LC_CACHE_NEAR_ENABLED.getValue(),
+                OAuth2ConfigConstants.LC_CACHE_COMPACT_ENCODING.getValue());
+            return cacheHelper;
+        }
+        ZimbraLog.extensions.debug("Using oauth near-cache with max entries: %d, lifetime: %d",
+            maxEntries, lifetime);
+        return new OAuth2NearCacheHelper(instrument(cacheHelper, OAuth2CacheMetrics.LAYER_BACKEND),
+            maxEntries, lifetime);
+    }
+
+    /**
+     * Counts and times the operations of the given helper if enabled.
+     *
+     * @param cacheHelper The cache helper to measure
+     * @param layer The cache layer name
+     * @return The instrumented helper, or the given helper if disabled
+     * @see OAuth2CacheMetrics
+     */
+    protected static IOAuth2CacheHelper instrument(IOAuth2CacheHelper cacheHelper, String layer) {
+        final boolean enabled = Boolean.valueOf(getLCString(
+            OAuth2ConfigConstants.LC_CACHE_METRICS_ENABLED.getValue(),
+            OAuth2Constants.CACHE_METRICS_ENABLED.getValue()));
+        if (!enabled) {
+            return cacheHelper;
+        }
+        return new OAuth2InstrumentedCacheHelper(cacheHelper, OAuth2CacheMetrics.getInstance(),
+            layer);
+    }
+
+    /**
+     * @param key The localconfig key
+     * @param defaultValue The value to use if the key is not set
+     * @return The localconfig value or the default
+     */
+    protected static String getLCString(String key, String defaultValue) {
+        return StringUtils.defaultIfEmpty(LC.get(key), defaultValue);
+    }
+
+    /**
+     * @param key The localconfig key
+     * @param defaultValue The value to use if the key is not set or invalid
+     * @return The localconfig value or the default as integer
+     */
+    protected static int getLCInt(String key, String defaultValue) {
+        final String value = getLCString(key, defaultValue);
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            ZimbraLog.extensions
+                .debug("Cannot parse integer from configured LC value for key: '" + key + "'.");
+        }
+        return Integer.parseInt(defaultValue);
+    }
 }
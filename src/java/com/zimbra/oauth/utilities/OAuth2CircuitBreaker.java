@@ -0,0 +1,488 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+
+/**
+ * The OAuth2CircuitBreaker class.<br>
+ * Stops sending requests to a provider host that is failing, so callers
+ * fail immediately instead of each waiting for a timeout.<br>
+ * The breaker is closed while the host is healthy. It opens when the
+ * failure rate (connection errors and 5xx responses) or the slow call rate
+ * of the last calls reaches its threshold, and rejects every call with
+ * TEMPORARILY_UNAVAILABLE. After the open duration it is half-open and lets
+ * a few trial calls through: it closes if they all succeed in time, and
+ * opens again otherwise.<br>
+ * Breakers are kept for up to MAX_BREAKERS hosts. Closed breakers without
+ * calls for IDLE_TIMEOUT are evicted to make room, and requests to further
+ * hosts are not tracked.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2CircuitBreaker {
+
+    /**
+     * Circuit states, with their gauge values.
+     */
+    public enum State {
+        CLOSED(0),
+        OPEN(1),
+        HALF_OPEN(2);
+
+        /**
+         * The gauge value of this state.
+         */
+        private final int value;
+
+        /**
+         * @return The gauge value
+         */
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * @param value The gauge value
+         */
+        State(int value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Max number of tracked provider hosts.
+     */
+    protected static final int MAX_BREAKERS = 256;
+
+    /**
+     * Time after which a closed breaker without calls is evicted
+     * (milliseconds).
+     */
+    protected static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Breakers by provider host.
+     */
+    protected static final Map<String, OAuth2CircuitBreaker> breakers = new ConcurrentHashMap<String, OAuth2CircuitBreaker>();
+
+    /**
+     * The provider host.
+     */
+    protected final String host;
+
+    /**
+     * True if calls are checked and recorded.
+     */
+    protected final boolean enabled;
+
+    /**
+     * Failure rate (percent) at which the circuit opens.
+     */
+    protected final int failureRateThreshold;
+
+    /**
+     * Slow call rate (percent) at which the circuit opens.
+     */
+    protected final int slowCallRateThreshold;
+
+    /**
+     * Duration from which a call is slow (milliseconds).
+     */
+    protected final long slowCallDuration;
+
+    /**
+     * Min number of calls in the window before rates are evaluated.
+     */
+    protected final int minimumCalls;
+
+    /**
+     * Time the circuit stays open before trial calls (milliseconds).
+     */
+    protected final long openDuration;
+
+    /**
+     * Number of trial calls in the half-open state.
+     */
+    protected final int halfOpenCalls;
+
+    /**
+     * Outcomes of the last calls, as a ring buffer.
+     */
+    protected final boolean[] failedCalls;
+    protected final boolean[] slowCalls;
+    protected int windowIndex;
+    protected int windowCount;
+    protected int failureCount;
+    protected int slowCount;
+
+    /**
+     * The current state.
+     */
+    protected volatile State state = State.CLOSED;
+
+    /**
+     * When the circuit opened (milliseconds, monotonic).
+     */
+    protected volatile long openedAt;
+
+    /**
+     * Trial calls in progress and succeeded in the half-open state.
+     */
+    protected int halfOpenInFlight;
+    protected int halfOpenSuccesses;
+
+    /**
+     * When the last call was checked (milliseconds, monotonic).
+     */
+    protected volatile long lastUsed;
+
+    /**
+     * The registered state gauge, null if none.
+     */
+    protected LongSupplier gauge;
+
+    /**
+     * Metrics to count transitions with.
+     */
+    protected final OAuth2HttpMetrics metrics;
+
+    /**
+     * @param host The provider host
+     * @param enabled True if calls are checked and recorded
+     * @param failureRateThreshold Failure rate (percent) to open at
+     * @param slowCallRateThreshold Slow call rate (percent) to open at
+     * @param slowCallDuration Duration from which a call is slow
+     *            (milliseconds)
+     * @param windowSize Number of calls the rates are evaluated over
+     * @param minimumCalls Min number of calls before rates are evaluated
+     * @param openDuration Time to stay open (milliseconds)
+     * @param halfOpenCalls Number of trial calls when half-open
+     * @param metrics Metrics to count transitions with
+     */
+    public OAuth2CircuitBreaker(String host, boolean enabled, int failureRateThreshold,
+        int slowCallRateThreshold, long slowCallDuration, int windowSize, int minimumCalls,
+        long openDuration, int halfOpenCalls, OAuth2HttpMetrics metrics) {
+        this.host = host;
+        this.enabled = enabled;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.failedCalls = new boolean[Math.max(1, windowSize)];
+        this.slowCalls = new boolean[failedCalls.length];
+        this.minimumCalls = Math.min(Math.max(1, minimumCalls), failedCalls.length);
+        this.openDuration = openDuration;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the breaker of the request's provider host, created from
+     * localconfig on first use.<br>
+     * If MAX_BREAKERS hosts are tracked and none is idle, returns a breaker
+     * that lets every call through.
+     *
+     * @param request The request to get a breaker for
+     * @return The provider's circuit breaker
+     */
+    public static OAuth2CircuitBreaker getBreaker(HttpRequestBase request) {
+        final String uriHost = request.getURI() == null ? null : request.getURI().getHost();
+        final String host = StringUtils.isEmpty(uriHost) ? "" : uriHost.toLowerCase();
+        final OAuth2CircuitBreaker breaker = breakers.get(host);
+        if (breaker != null) {
+            return breaker;
+        }
+        if (breakers.size() >= MAX_BREAKERS) {
+            evictIdle();
+        }
+        if (breakers.size() >= MAX_BREAKERS) {
+            ZimbraLog.extensions.debug("Not tracking circuit to %s, too many hosts.", host);
+            return new OAuth2CircuitBreaker(host, false, 0, 0, 0, 1, 1, 0, 1,
+                OAuth2HttpMetrics.getInstance());
+        }
+        return breakers.computeIfAbsent(host, OAuth2CircuitBreaker::load);
+    }
+
+    /**
+     * @param host The provider host
+     * @return A breaker configured from localconfig, with its state gauge
+     *         registered
+     */
+    protected static OAuth2CircuitBreaker load(String host) {
+        final OAuth2CircuitBreaker breaker = new OAuth2CircuitBreaker(host,
+            Boolean.parseBoolean(OAuth2CacheUtilities.getLCString(
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_ENABLED.getValue(),
+                OAuth2Constants.CIRCUIT_BREAKER_ENABLED.getValue())),
+            OAuth2HttpClientPool.getSetting(host,
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_FAILURE_RATE,
+                OAuth2ConfigConstants.LC_OAUTH_CIRCUIT_BREAKER_FAILURE_RATE_TEMPLATE,
+                OAuth2Constants.CIRCUIT_BREAKER_FAILURE_RATE),
+            OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_SLOW_CALL_RATE.getValue(),
+                OAuth2Constants.CIRCUIT_BREAKER_SLOW_CALL_RATE.getValue()),
+            OAuth2HttpClientPool.getSetting(host,
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_SLOW_CALL_DURATION,
+                OAuth2ConfigConstants.LC_OAUTH_CIRCUIT_BREAKER_SLOW_CALL_DURATION_TEMPLATE,
+                OAuth2Constants.CIRCUIT_BREAKER_SLOW_CALL_DURATION),
+            OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_WINDOW_SIZE.getValue(),
+                OAuth2Constants.CIRCUIT_BREAKER_WINDOW_SIZE.getValue()),
+            OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_MIN_CALLS.getValue(),
+                OAuth2Constants.CIRCUIT_BREAKER_MIN_CALLS.getValue()),
+            OAuth2HttpClientPool.getSetting(host,
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_OPEN_DURATION,
+                OAuth2ConfigConstants.LC_OAUTH_CIRCUIT_BREAKER_OPEN_DURATION_TEMPLATE,
+                OAuth2Constants.CIRCUIT_BREAKER_OPEN_DURATION),
+            OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_CIRCUIT_BREAKER_HALF_OPEN_CALLS.getValue(),
+                OAuth2Constants.CIRCUIT_BREAKER_HALF_OPEN_CALLS.getValue()),
+            OAuth2HttpMetrics.getInstance());
+        if (breaker.enabled) {
+            breaker.gauge = () -> breaker.getState().getValue();
+            breaker.metrics.registerGauge(breaker.getGaugeName(), breaker.gauge);
+        }
+        return breaker;
+    }
+
+    /**
+     * Clears the breakers so they are reloaded from localconfig.
+     */
+    public static void reset() {
+        breakers.values().removeIf((breaker) -> {
+            breaker.unregisterGauge();
+            return true;
+        });
+    }
+
+    /**
+     * Removes idle breakers and their state gauges.
+     */
+    protected static void evictIdle() {
+        breakers.values().removeIf((breaker) -> {
+            if (!breaker.isIdle()) {
+                return false;
+            }
+            breaker.unregisterGauge();
+            return true;
+        });
+    }
+
+    /**
+     * @return True if the circuit is closed and had no calls for
+     *         IDLE_TIMEOUT
+     */
+    protected boolean isIdle() {
+        return state == State.CLOSED && now() - lastUsed >= IDLE_TIMEOUT;
+    }
+
+    /**
+     * @return The name of the state gauge
+     */
+    protected String getGaugeName() {
+        return String.format("%s.%s", host, OAuth2HttpMetrics.GAUGE_CIRCUIT_STATE);
+    }
+
+    /**
+     * Unregisters the state gauge, if registered.
+     */
+    protected void unregisterGauge() {
+        if (gauge != null) {
+            metrics.unregisterGauge(getGaugeName(), gauge);
+        }
+    }
+
+    /**
+     * Checks that a call may be sent, moving an open circuit to half-open
+     * once the open duration has passed.
+     *
+     * @throws ServiceException TEMPORARILY_UNAVAILABLE if the circuit is
+     *             open, or half-open with all trial calls in progress
+     */
+    public void acquire() throws ServiceException {
+        if (!enabled) {
+            return;
+        }
+        lastUsed = now();
+        // reject without locking while open
+        if (state != State.OPEN || now() - openedAt >= openDuration) {
+            synchronized (this) {
+                if (tryAcquire()) {
+                    return;
+                }
+            }
+        }
+        metrics.increment(host, OAuth2HttpMetrics.EVENT_CIRCUIT_REJECTED);
+        ZimbraLog.extensions.debug("Circuit to %s is %s, rejecting request.", host, state);
+        throw ServiceException.TEMPORARILY_UNAVAILABLE();
+    }
+
+    /**
+     * @return True if a call may be sent, counting half-open trial calls
+     */
+    protected boolean tryAcquire() {
+        if (state == State.OPEN && now() - openedAt >= openDuration) {
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && halfOpenInFlight < halfOpenCalls) {
+            halfOpenInFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a call that received a response. Server errors are failures.
+     *
+     * @param response The response
+     * @param start When the call started (System.nanoTime)
+     */
+    public void onResponse(HttpResponse response, long start) {
+        final int status = response.getStatusLine() == null
+            ? HttpStatus.SC_INTERNAL_SERVER_ERROR
+            : response.getStatusLine().getStatusCode();
+        record(status >= HttpStatus.SC_INTERNAL_SERVER_ERROR, start);
+    }
+
+    /**
+     * Records a call that failed with an exception.
+     *
+     * @param e The failure
+     * @param start When the call started (System.nanoTime)
+     */
+    public void onError(Exception e, long start) {
+        record(true, start);
+    }
+
+    /**
+     * Records a call without outcome (i.e. cancelled), freeing its trial
+     * slot if half-open.
+     */
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+        }
+    }
+
+    /**
+     * Records the outcome of a call.
+     *
+     * @param failed True if the call failed
+     * @param start When the call started (System.nanoTime)
+     */
+    protected synchronized void record(boolean failed, long start) {
+        if (!enabled) {
+            return;
+        }
+        final boolean slow = TimeUnit.NANOSECONDS
+            .toMillis(System.nanoTime() - start) >= slowCallDuration;
+        switch (state) {
+            case HALF_OPEN:
+                halfOpenInFlight = Math.max(0, halfOpenInFlight - 1);
+                if (failed || slow) {
+                    transition(State.OPEN);
+                } else if (++halfOpenSuccesses >= halfOpenCalls) {
+                    transition(State.CLOSED);
+                }
+                break;
+            case CLOSED:
+                addToWindow(failed, slow);
+                if (windowCount >= minimumCalls
+                    && (failureCount * 100 >= failureRateThreshold * windowCount
+                        || slowCount * 100 >= slowCallRateThreshold * windowCount)) {
+                    ZimbraLog.extensions.warn(
+                        "Opening circuit to %s, %d of %d calls failed and %d were slow.", host,
+                        failureCount, windowCount, slowCount);
+                    transition(State.OPEN);
+                }
+                break;
+            default:
+                // calls sent before the circuit opened
+        }
+    }
+
+    /**
+     * Adds a call outcome to the window, replacing the oldest.
+     */
+    protected void addToWindow(boolean failed, boolean slow) {
+        if (windowCount == failedCalls.length) {
+            failureCount -= failedCalls[windowIndex] ? 1 : 0;
+            slowCount -= slowCalls[windowIndex] ? 1 : 0;
+        } else {
+            windowCount++;
+        }
+        failedCalls[windowIndex] = failed;
+        slowCalls[windowIndex] = slow;
+        failureCount += failed ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        windowIndex = (windowIndex + 1) % failedCalls.length;
+    }
+
+    /**
+     * Moves to a state, clearing the window and trial calls.
+     *
+     * @param next The state to move to
+     */
+    protected void transition(State next) {
+        ZimbraLog.extensions.info("Circuit to %s moved from %s to %s.", host, state, next);
+        state = next;
+        windowIndex = 0;
+        windowCount = 0;
+        failureCount = 0;
+        slowCount = 0;
+        halfOpenInFlight = 0;
+        halfOpenSuccesses = 0;
+        switch (next) {
+            case OPEN:
+                openedAt = now();
+                metrics.increment(host, OAuth2HttpMetrics.EVENT_CIRCUIT_OPENED);
+                break;
+            case HALF_OPEN:
+                metrics.increment(host, OAuth2HttpMetrics.EVENT_CIRCUIT_HALF_OPENED);
+                break;
+            default:
+                metrics.increment(host, OAuth2HttpMetrics.EVENT_CIRCUIT_CLOSED);
+        }
+    }
+
+    /**
+     * @return Monotonic time (milliseconds)
+     */
+    protected long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * @return The provider host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return The current state
+     */
+    public State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,103 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * The OAuth2ConfigAdmin class.<br>
+ * Exposes the configuration snapshot with the platform MBean server as
+ * `com.zimbra.oauth:type=Configuration`, so that admins can reload
+ * configuration (e.g. after `zmlocalconfig --reload` or rotating client
+ * secrets) without a mailbox restart, and rebuild identifier indexes.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2ConfigAdmin implements OAuth2ConfigAdminMXBean {
+
+    /**
+     * The JMX object name.
+     */
+    protected static final String OBJECT_NAME = "com.zimbra.oauth:type=Configuration";
+
+    @Override
+    public long getVersion() {
+        return Configuration.getSnapshot().getVersion();
+    }
+
+    @Override
+    public long getLoadedAt() {
+        return Configuration.getSnapshot().getCreatedAt();
+    }
+
+    @Override
+    public int getKeyCount() {
+        return Configuration.getSnapshot().size();
+    }
+
+    @Override
+    public long reload() {
+        // pick up http proxy changes on the next proxied request
+        OAuth2ProxyUtilities.resetProxyClient();
+        // pick up localconfig changes on the next provider request
+        OAuth2HttpClientPool.shutdown();
+        OAuth2RetryPolicy.reset();
+        OAuth2Bulkhead.reset();
+        OAuth2CircuitBreaker.reset();
+        return Configuration.reload();
+    }
+
+    @Override
+    public int rebuildIdentifierIndex(String client) {
+        try {
+            return OAuth2IdentifierIndex.getInstance(client).rebuild();
+        } catch (final ServiceException e) {
+            ZimbraLog.extensions.warn("Unable to rebuild %s identifier index.", client);
+            ZimbraLog.extensions.debug(e);
+        }
+        return -1;
+    }
+
+    /**
+     * Registers the admin bean with the platform MBean server.
+     */
+    public static void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new OAuth2ConfigAdmin(), name);
+            }
+        } catch (final JMException | RuntimeException e) {
+            ZimbraLog.extensions.warn("Unable to register oauth configuration with JMX.");
+            ZimbraLog.extensions.debug(e);
+        }
+    }
+
+    /**
+     * Unregisters the admin bean from the platform MBean server.
+     */
+    public static void unregister() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final JMException | RuntimeException e) {
+            ZimbraLog.extensions.debug(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+/**
+ * The OAuth2ConfigAdminMXBean interface.<br>
+ * JMX view and reload of the oauth configuration snapshot.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public interface OAuth2ConfigAdminMXBean {
+
+    /**
+     * @return The current configuration version
+     */
+    public long getVersion();
+
+    /**
+     * @return Creation time of the current snapshot (epoch milliseconds)
+     */
+    public long getLoadedAt();
+
+    /**
+     * @return The number of keys read in the current snapshot
+     */
+    public int getKeyCount();
+
+    /**
+     * Replaces the configuration snapshot, and rebuilds the proxy client,
+     * provider clients, retry policies, bulkheads and circuit breakers from
+     * localconfig on their next use.
+     *
+     * @return The new configuration version
+     */
+    public long reload();
+
+    /**
+     * Adds identifiers of existing datasources of a client to its identifier
+     * index. Visits all accounts.
+     *
+     * @param client The client name
+     * @return The number of added identifiers, or -1 if the rebuild failed
+     */
+    public int rebuildIdentifierIndex(String client);
+
+}
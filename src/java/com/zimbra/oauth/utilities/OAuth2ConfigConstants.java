@@ -25,6 +25,85 @@ public enum OAuth2ConfigConstants {
     LC_OAUTH_SCOPE_TEMPLATE("zm_oauth_%s_scope"),
     LC_OAUTH_IMPORT_CLASS_TEMPLATE("zm_oauth_%s_import_class"),
 
+    LC_TOKEN_REFRESH_WAIT_TIMEOUT("zm_oauth_token_refresh_wait_timeout"),
+    LC_TOKEN_EXPIRY_MARGIN("zm_oauth_token_expiry_margin"),
+    LC_OAUTH_TOKEN_EXPIRY_MARGIN_TEMPLATE("zm_oauth_%s_token_expiry_margin"),
+    LC_TOKEN_DENIED_CACHE_LIFETIME("zm_oauth_token_denied_cache_lifetime"),
+    LC_TOKEN_PREREFRESH_ENABLED("zm_oauth_token_prerefresh_enabled"),
+    LC_OAUTH_TOKEN_PREREFRESH_ENABLED_TEMPLATE("zm_oauth_%s_token_prerefresh_enabled"),
+    LC_TOKEN_PREREFRESH_LEAD("zm_oauth_token_prerefresh_lead"),
+    LC_OAUTH_TOKEN_PREREFRESH_LEAD_TEMPLATE("zm_oauth_%s_token_prerefresh_lead"),
+    LC_TOKEN_PREREFRESH_JITTER("zm_oauth_token_prerefresh_jitter"),
+    LC_TOKEN_PREREFRESH_IDLE("zm_oauth_token_prerefresh_idle"),
+    LC_TOKEN_PREREFRESH_THREADS("zm_oauth_token_prerefresh_threads"),
+    LC_TOKEN_PREREFRESH_MAX_ENTRIES("zm_oauth_token_prerefresh_max_entries"),
+
+    LC_CACHE_TYPE("zm_oauth_cache_type"),
+    LC_CACHE_LOCAL_MAX_ENTRIES("zm_oauth_cache_local_max_entries"),
+    LC_CACHE_COMPACT_ENCODING("zm_oauth_cache_compact_encoding"),
+    LC_CACHE_METRICS_ENABLED("zm_oauth_cache_metrics_enabled"),
+    LC_CACHE_NEAR_ENABLED("zm_oauth_cache_near_enabled"),
+    LC_CACHE_NEAR_MAX_ENTRIES("zm_oauth_cache_near_max_entries"),
+    LC_CACHE_NEAR_LIFETIME("zm_oauth_cache_near_lifetime"),
+
+    LC_IDENTIFIER_INDEX_MAX_ENTRIES("zm_oauth_identifier_index_max_entries"),
+    LC_IDENTIFIER_INDEX_MISS_LIFETIME("zm_oauth_identifier_index_miss_lifetime"),
+    LC_CONFIG_MAX_AGE("zm_oauth_config_max_age"),
+
+    LC_WARMUP_ENABLED("zm_oauth_warmup_enabled"),
+    LC_WARMUP_CLIENTS("zm_oauth_warmup_clients"),
+    LC_WARMUP_CONNECT("zm_oauth_warmup_connect"),
+
+    LC_HTTP_POOL_ENABLED("zm_oauth_http_pool_enabled"),
+    LC_HTTP_MAX_CONNECTIONS("zm_oauth_http_max_connections"),
+    LC_OAUTH_HTTP_MAX_CONNECTIONS_TEMPLATE("zm_oauth_%s_http_max_connections"),
+    LC_HTTP_MAX_PER_ROUTE("zm_oauth_http_max_per_route"),
+    LC_OAUTH_HTTP_MAX_PER_ROUTE_TEMPLATE("zm_oauth_%s_http_max_per_route"),
+    LC_HTTP_CONNECT_TIMEOUT("zm_oauth_http_connect_timeout"),
+    LC_OAUTH_HTTP_CONNECT_TIMEOUT_TEMPLATE("zm_oauth_%s_http_connect_timeout"),
+    LC_HTTP_SOCKET_TIMEOUT("zm_oauth_http_socket_timeout"),
+    LC_OAUTH_HTTP_SOCKET_TIMEOUT_TEMPLATE("zm_oauth_%s_http_socket_timeout"),
+    LC_HTTP_POOL_TIMEOUT("zm_oauth_http_pool_timeout"),
+    LC_OAUTH_HTTP_POOL_TIMEOUT_TEMPLATE("zm_oauth_%s_http_pool_timeout"),
+    LC_HTTP_KEEP_ALIVE("zm_oauth_http_keep_alive"),
+    LC_OAUTH_HTTP_KEEP_ALIVE_TEMPLATE("zm_oauth_%s_http_keep_alive"),
+    LC_HTTP_ASYNC_IO_THREADS("zm_oauth_http_async_io_threads"),
+    LC_HTTP_ASYNC_MAX_CONNECTIONS("zm_oauth_http_async_max_connections"),
+    LC_HTTP_ENTITY_MEMORY_LIMIT("zm_oauth_http_entity_memory_limit"),
+    LC_HTTP_ENTITY_MAX_SIZE("zm_oauth_http_entity_max_size"),
+    LC_HTTP_RETRY_MAX_ATTEMPTS("zm_oauth_http_retry_max_attempts"),
+    LC_OAUTH_HTTP_RETRY_MAX_ATTEMPTS_TEMPLATE("zm_oauth_%s_http_retry_max_attempts"),
+    LC_HTTP_RETRY_BASE_DELAY("zm_oauth_http_retry_base_delay"),
+    LC_OAUTH_HTTP_RETRY_BASE_DELAY_TEMPLATE("zm_oauth_%s_http_retry_base_delay"),
+    LC_HTTP_RETRY_MAX_DELAY("zm_oauth_http_retry_max_delay"),
+    LC_OAUTH_HTTP_RETRY_MAX_DELAY_TEMPLATE("zm_oauth_%s_http_retry_max_delay"),
+    LC_HTTP_RETRY_BUDGET_PERCENT("zm_oauth_http_retry_budget_percent"),
+    LC_HTTP_RETRY_BUDGET_MAX("zm_oauth_http_retry_budget_max"),
+    LC_BULKHEAD_ENABLED("zm_oauth_bulkhead_enabled"),
+    LC_BULKHEAD_MAX_CONCURRENT("zm_oauth_bulkhead_max_concurrent"),
+    LC_OAUTH_BULKHEAD_MAX_CONCURRENT_TEMPLATE("zm_oauth_%s_bulkhead_max_concurrent"),
+    LC_BULKHEAD_MAX_QUEUE("zm_oauth_bulkhead_max_queue"),
+    LC_OAUTH_BULKHEAD_MAX_QUEUE_TEMPLATE("zm_oauth_%s_bulkhead_max_queue"),
+    LC_BULKHEAD_MAX_WAIT("zm_oauth_bulkhead_max_wait"),
+    LC_CIRCUIT_BREAKER_ENABLED("zm_oauth_circuit_breaker_enabled"),
+    LC_CIRCUIT_BREAKER_FAILURE_RATE("zm_oauth_circuit_breaker_failure_rate"),
+    LC_OAUTH_CIRCUIT_BREAKER_FAILURE_RATE_TEMPLATE("zm_oauth_%s_circuit_breaker_failure_rate"),
+    LC_CIRCUIT_BREAKER_SLOW_CALL_RATE("zm_oauth_circuit_breaker_slow_call_rate"),
+    LC_CIRCUIT_BREAKER_SLOW_CALL_DURATION("zm_oauth_circuit_breaker_slow_call_duration"),
+    LC_OAUTH_CIRCUIT_BREAKER_SLOW_CALL_DURATION_TEMPLATE("zm_oauth_%s_circuit_breaker_slow_call_duration"),
+    LC_CIRCUIT_BREAKER_WINDOW_SIZE("zm_oauth_circuit_breaker_window_size"),
+    LC_CIRCUIT_BREAKER_MIN_CALLS("zm_oauth_circuit_breaker_min_calls"),
+    LC_CIRCUIT_BREAKER_OPEN_DURATION("zm_oauth_circuit_breaker_open_duration"),
+    LC_OAUTH_CIRCUIT_BREAKER_OPEN_DURATION_TEMPLATE("zm_oauth_%s_circuit_breaker_open_duration"),
+    LC_CIRCUIT_BREAKER_HALF_OPEN_CALLS("zm_oauth_circuit_breaker_half_open_calls"),
+    LC_PROXY_BUFFER_MAX_SIZE("zm_oauth_proxy_buffer_max_size"),
+    LC_PROXY_ASYNC_ENABLED("zm_oauth_proxy_async_enabled"),
+    LC_PROXY_ASYNC_IO_THREADS("zm_oauth_proxy_async_io_threads"),
+    LC_PROXY_ASYNC_MAX_CONNECTIONS("zm_oauth_proxy_async_max_connections"),
+    LC_PROXY_ASYNC_MAX_PER_ROUTE("zm_oauth_proxy_async_max_per_route"),
+    LC_PROXY_ASYNC_MAX_IN_FLIGHT("zm_oauth_proxy_async_max_in_flight"),
+    LC_PROXY_ASYNC_TIMEOUT("zm_oauth_proxy_async_timeout"),
+
     OAUTH_CLIENT_ID("client_id"),
     OAUTH_CLIENT_SECRET("client_secret"),
     OAUTH_VERIFICATION_TOKEN("verification_token"),
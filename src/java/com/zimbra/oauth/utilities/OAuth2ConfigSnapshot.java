@@ -0,0 +1,105 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The OAuth2ConfigSnapshot class.<br>
+ * One version of the localconfig values read by the project. Values are
+ * read on first use and kept (including missing values) until the snapshot
+ * is replaced on reload, or once it is older than its max age.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2ConfigSnapshot {
+
+    /**
+     * Marks keys that have no value.
+     */
+    protected static final String MISSING = new String();
+
+    /**
+     * The snapshot version.
+     */
+    protected final long version;
+
+    /**
+     * Creation time as System.currentTimeMillis value.
+     */
+    protected final long createdAt;
+
+    /**
+     * Creation time as System.nanoTime value.
+     */
+    protected final long createdNanos;
+
+    /**
+     * Max age (nanoseconds), zero for no max age.
+     */
+    protected final long maxAgeNanos;
+
+    /**
+     * Reads a value by key.
+     */
+    protected final Function<String, String> loader;
+
+    /**
+     * Values read so far by key.
+     */
+    protected final Map<String, String> values = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @param version The snapshot version
+     * @param loader Reads a value by key, returns null if missing
+     * @param maxAgeNanos Max age (nanoseconds), zero for no max age
+     */
+    public OAuth2ConfigSnapshot(long version, Function<String, String> loader, long maxAgeNanos) {
+        this.version = version;
+        this.loader = loader;
+        this.maxAgeNanos = maxAgeNanos;
+        this.createdAt = System.currentTimeMillis();
+        this.createdNanos = System.nanoTime();
+    }
+
+    /**
+     * @param key The key to get
+     * @return The value, or null if missing
+     */
+    public String get(String key) {
+        final String value = values.computeIfAbsent(key, (k) -> {
+            final String loaded = loader.apply(k);
+            return loaded == null ? MISSING : loaded;
+        });
+        return value == MISSING ? null : value;
+    }
+
+    /**
+     * @return True if the snapshot is older than its max age
+     */
+    public boolean isExpired() {
+        return maxAgeNanos > 0 && System.nanoTime() - createdNanos > maxAgeNanos;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return The number of keys read
+     */
+    public int size() {
+        return values.size();
+    }
+}
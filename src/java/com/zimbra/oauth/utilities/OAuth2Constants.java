@@ -32,9 +32,71 @@ public enum OAuth2Constants {
 
     DEFAULT_PROXY_TYPE("noop"),
     TOKEN_CACHE_LIFETIME("1800"),
+    TOKEN_REFRESH_WAIT_TIMEOUT("30"),
+    TOKEN_EXPIRY_MARGIN("60"),
+    TOKEN_DENIED_CACHE_LIFETIME("30"),
+    TOKEN_PREREFRESH_ENABLED("true"),
+    TOKEN_PREREFRESH_LEAD("60"),
+    TOKEN_PREREFRESH_JITTER("30"),
+    TOKEN_PREREFRESH_IDLE("900"),
+    TOKEN_PREREFRESH_THREADS("2"),
+    TOKEN_PREREFRESH_MAX_ENTRIES("10000"),
 
     CACHE_KEY_PREFIX("zm_oauth_social"),
-    CACHE_BACKEND_URL_PREFIX("ssdb");
+    CACHE_TYPE_EPHEMERAL("ephemeral"),
+    CACHE_TYPE_LOCAL("local"),
+    CACHE_TYPE_NOOP("noop"),
+    CACHE_LOCAL_MAX_ENTRIES("50000"),
+    CACHE_COMPACT_ENCODING("false"),
+    CACHE_METRICS_ENABLED("true"),
+    CACHE_NEAR_ENABLED("false"),
+    CACHE_NEAR_MAX_ENTRIES("10000"),
+    CACHE_NEAR_LIFETIME("15"),
+    CACHE_BACKEND_URL_PREFIX("ssdb"),
+
+    IDENTIFIER_INDEX_MAX_ENTRIES("10000"),
+    IDENTIFIER_INDEX_MISS_LIFETIME("60"),
+
+    CONFIG_MAX_AGE("300"),
+
+    WARMUP_ENABLED("false"),
+    WARMUP_CONNECT("true"),
+
+    HTTP_POOL_ENABLED("true"),
+    HTTP_MAX_CONNECTIONS("50"),
+    HTTP_MAX_PER_ROUTE("20"),
+    HTTP_CONNECT_TIMEOUT("10000"),
+    HTTP_SOCKET_TIMEOUT("30000"),
+    HTTP_POOL_TIMEOUT("5000"),
+    HTTP_KEEP_ALIVE("60"),
+    HTTP_ASYNC_IO_THREADS("2"),
+    HTTP_ASYNC_MAX_CONNECTIONS("200"),
+    HTTP_ENTITY_MEMORY_LIMIT("262144"),
+    HTTP_ENTITY_MAX_SIZE("10485760"),
+    HTTP_RETRY_MAX_ATTEMPTS("3"),
+    HTTP_RETRY_BASE_DELAY("200"),
+    HTTP_RETRY_MAX_DELAY("1000"),
+    HTTP_RETRY_BUDGET_PERCENT("10"),
+    HTTP_RETRY_BUDGET_MAX("10"),
+    BULKHEAD_ENABLED("true"),
+    BULKHEAD_MAX_CONCURRENT("20"),
+    BULKHEAD_MAX_QUEUE("10"),
+    BULKHEAD_MAX_WAIT("50"),
+    CIRCUIT_BREAKER_ENABLED("true"),
+    CIRCUIT_BREAKER_FAILURE_RATE("50"),
+    CIRCUIT_BREAKER_SLOW_CALL_RATE("80"),
+    CIRCUIT_BREAKER_SLOW_CALL_DURATION("10000"),
+    CIRCUIT_BREAKER_WINDOW_SIZE("20"),
+    CIRCUIT_BREAKER_MIN_CALLS("10"),
+    CIRCUIT_BREAKER_OPEN_DURATION("30000"),
+    CIRCUIT_BREAKER_HALF_OPEN_CALLS("3"),
+    PROXY_BUFFER_MAX_SIZE("1048576"),
+    PROXY_ASYNC_ENABLED("false"),
+    PROXY_ASYNC_IO_THREADS("2"),
+    PROXY_ASYNC_MAX_CONNECTIONS("500"),
+    PROXY_ASYNC_MAX_PER_ROUTE("100"),
+    PROXY_ASYNC_MAX_IN_FLIGHT("2000"),
+    PROXY_ASYNC_TIMEOUT("300000");
 
     /**
      * The value of this enum.
@@ -5,6 +5,7 @@
 
 package com.zimbra.oauth.utilities;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -149,7 +150,6 @@ public class OAuth2DataSource {
         final String refreshToken = credentials.getRefreshToken();
         final DataSourceMetaData meta = DataSourceMetaData.from(mailbox.getAccountId(), username,
             type, client);
-        OAuth2CacheUtilities.remove(meta.getTokenCacheKey());
         final String dsFolderName = meta.toName();
         try {
             // get datasource, create if missing
@@ -195,6 +195,11 @@ public class OAuth2DataSource {
                 osource.setRefreshToken(refreshToken);
                 mailbox.modifyDataSource(osource);
             }
+            // new refresh token stored, forget recent denials for this and
+            // unspecified identifiers
+            OAuth2CacheUtilities.removeAll(Arrays.asList(meta.getTokenCacheKey(),
+                meta.getTokenDeniedCacheKey(),
+                DataSourceMetaData.buildTokenDeniedCacheKey(mailbox.getAccountId(), client, null)));
             if (!StringUtils.isEmpty(osource.getImportClass())) {
                 // trigger import once if data import class is set
                 ZimbraLog.extensions.debug("Triggering data import.");
@@ -286,6 +291,7 @@ public class OAuth2DataSource {
      * @return True if there are no issues removing relevant datasources
      */
     public boolean removeDataSources(Account account, String identifier) {
+        final List<String> cacheKeys = new ArrayList<String>();
         try {
             final Provisioning prov = Provisioning.getInstance();
             final List<DataSource> datasources = prov.getAllDataSources(account);
@@ -294,12 +300,17 @@ public class OAuth2DataSource {
                 final DataSourceMetaData meta = DataSourceMetaData.from(source);
                 if (meta.isRelevant(identifier, null, client)) {
                     prov.deleteDataSource(account, source.getId());
-                    OAuth2CacheUtilities.remove(meta.getTokenCacheKey());
+                    cacheKeys.add(meta.getTokenCacheKey());
                 }
             }
         } catch (final ServiceException e) {
             ZimbraLog.extensions.errorQuietly("error deleting specified account's oauth datasources", e);
             return false;
+        } finally {
+            // clear cached tokens of the purged datasources at once
+            if (!cacheKeys.isEmpty()) {
+                OAuth2CacheUtilities.removeAll(cacheKeys);
+            }
         }
         return true;
     }
@@ -312,7 +323,9 @@ public class OAuth2DataSource {
         final String accountId = oauthInfo.getZmAuthToken().getAccountId();
         ZimbraLog.extensions.debug("Clearing token cache for accountId: %s identifier: %s",
             accountId, identifier);
-        OAuth2CacheUtilities.remove(DataSourceMetaData.buildTokenCacheKey(accountId, client, identifier));
+        OAuth2CacheUtilities.removeAll(Arrays.asList(
+            DataSourceMetaData.buildTokenCacheKey(accountId, client, identifier),
+            DataSourceMetaData.buildTokenDeniedCacheKey(accountId, client, identifier)));
     }
 
     /**
@@ -361,6 +374,10 @@ public class OAuth2DataSource {
             return buildTokenCacheKey(accountId, client, identifier);
         }
 
+        public String getTokenDeniedCacheKey() {
+            return buildTokenDeniedCacheKey(accountId, client, identifier);
+        }
+
         public String getRootCacheKey() {
             return buildRootCacheKey(client, identifier);
         }
@@ -409,6 +426,14 @@ public class OAuth2DataSource {
                 String.format("%s_access_token", buildRootCacheKey(client, identifier)));
         }
 
+        public static String buildTokenDeniedCacheKey(String accountId, String client,
+            String identifier) {
+            // {account_prefix}zm_oauth_social_{client}_{identifier}_token_denied
+            // identifier is empty when the request did not specify one
+            return OAuth2CacheUtilities.buildAccountKey(accountId, String.format("%s_token_denied",
+                buildRootCacheKey(client, StringUtils.defaultString(identifier))));
+        }
+
         public static String buildRootCacheKey(String client, String identifier) {
             // zm_oauth_social_{client}_{identifier}
             return String.format("zm_oauth_social_%s_%s", client, identifier);
@@ -32,8 +32,13 @@ public enum OAuth2ErrorConstants {
     ERROR_INVALID_PROXY_TARGET("invalid_proxy_target"),
     ERROR_INVALID_PROXY_CLIENT("invalid_proxy_client"),
     ERROR_INVALID_PROXY_RESPONSE("invalid_proxy_response"),
+    ERROR_PROXY_TIMEOUT("proxy_timeout"),
+    ERROR_REQUEST_TOO_LARGE("request_too_large"),
+    ERROR_REQUEST_TOO_LARGE_MSG("Request body is too large to validate."),
     ERROR_INVALID_CLIENT_TYPES("invalid_client_and_types"),
-    ERROR_INVALID_CLIENT_TYPES_MSG("Client and types combination not supported.");
+    ERROR_INVALID_CLIENT_TYPES_MSG("Client and types combination not supported."),
+    ERROR_TEMPORARILY_UNAVAILABLE("temporarily_unavailable"),
+    ERROR_TEMPORARILY_UNAVAILABLE_MSG("Too many requests in progress for this client, try again later.");
 
     /**
      * The value of this enum.
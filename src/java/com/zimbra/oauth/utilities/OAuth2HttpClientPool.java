@@ -0,0 +1,167 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import com.zimbra.common.net.SocketFactories;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.httpclient.HttpProxyUtil;
+
+/**
+ * The OAuth2HttpClientPool class.<br>
+ * Long-lived http clients per provider host, each with its own connection
+ * pool so a slow or busy provider cannot exhaust connections needed by the
+ * others. Pool size, timeouts and keep-alive are read from localconfig when
+ * a client is created, per host with a fallback to the global value.
+ * Connections are opened with Zimbra's socket factories.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2HttpClientPool {
+
+    /**
+     * Clients by provider host.
+     */
+    protected static final Map<String, PooledClient> clients = new ConcurrentHashMap<String, PooledClient>();
+
+    /**
+     * Returns the client of a provider host, created on first use.
+     *
+     * @param host The provider host
+     * @return The provider's http client
+     */
+    public static HttpClient getHttpClient(String host) {
+        return clients.computeIfAbsent(host, PooledClient::new).client;
+    }
+
+    /**
+     * @return True if per provider clients are enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.valueOf(OAuth2CacheUtilities.getLCString(
+            OAuth2ConfigConstants.LC_HTTP_POOL_ENABLED.getValue(),
+            OAuth2Constants.HTTP_POOL_ENABLED.getValue()));
+    }
+
+    /**
+     * Closes every client and its connections.
+     */
+    public static void shutdown() {
+        for (final String host : clients.keySet()) {
+            final PooledClient pooled = clients.remove(host);
+            if (pooled != null) {
+                pooled.close();
+            }
+        }
+    }
+
+    /**
+     * @param host The provider host
+     * @param key The global localconfig key
+     * @param template The per provider localconfig key template
+     * @param defaultValue The default value
+     * @return The provider value, global value, or default
+     */
+    protected static int getSetting(String host, OAuth2ConfigConstants key,
+        OAuth2ConfigConstants template, OAuth2Constants defaultValue) {
+        return OAuth2CacheUtilities.getLCInt(String.format(template.getValue(), host),
+            String.valueOf(OAuth2CacheUtilities.getLCInt(key.getValue(), defaultValue.getValue())));
+    }
+
+    /**
+     * A provider's client and connection pool.
+     */
+    protected static class PooledClient {
+
+        protected final PoolingHttpClientConnectionManager manager;
+        protected final CloseableHttpClient client;
+
+        protected PooledClient(String host) {
+            final int maxConnections = getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_MAX_CONNECTIONS,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_MAX_CONNECTIONS_TEMPLATE,
+                OAuth2Constants.HTTP_MAX_CONNECTIONS);
+            final int maxPerRoute = getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_MAX_PER_ROUTE,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_MAX_PER_ROUTE_TEMPLATE,
+                OAuth2Constants.HTTP_MAX_PER_ROUTE);
+            final int connectTimeout = getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_CONNECT_TIMEOUT,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_CONNECT_TIMEOUT_TEMPLATE,
+                OAuth2Constants.HTTP_CONNECT_TIMEOUT);
+            final int socketTimeout = getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_SOCKET_TIMEOUT,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_SOCKET_TIMEOUT_TEMPLATE,
+                OAuth2Constants.HTTP_SOCKET_TIMEOUT);
+            final int poolTimeout = getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_POOL_TIMEOUT,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_POOL_TIMEOUT_TEMPLATE,
+                OAuth2Constants.HTTP_POOL_TIMEOUT);
+            final int keepAlive = getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_KEEP_ALIVE,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_KEEP_ALIVE_TEMPLATE,
+                OAuth2Constants.HTTP_KEEP_ALIVE);
+
+            // use zimbra's socket factories so the configured ssl trust applies
+            manager = new PoolingHttpClientConnectionManager(SocketFactories.getRegistry(), null,
+                null, null, keepAlive, TimeUnit.SECONDS);
+            manager.setMaxTotal(maxConnections);
+            manager.setDefaultMaxPerRoute(maxPerRoute);
+            // validate connections that were idle for a while before reuse
+            manager.setValidateAfterInactivity(2000);
+            // use the server's keep-alive if shorter than ours
+            final long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+            final ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+                final long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                    .getKeepAliveDuration(response, context);
+                return serverKeepAlive > 0
+                    ? Math.min(serverKeepAlive, keepAliveMillis)
+                    : keepAliveMillis;
+            };
+            final HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(manager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, TimeUnit.SECONDS)
+                // retries are handled by the retry policy, and provider
+                // cookies must not be kept across users of the shared client
+                .disableAutomaticRetries()
+                .disableCookieManagement()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                    .setConnectTimeout(connectTimeout)
+                    .setSocketTimeout(socketTimeout)
+                    .setConnectionRequestTimeout(poolTimeout)
+                    .build());
+            HttpProxyUtil.configureProxy(builder);
+            client = builder.build();
+            ZimbraLog.extensions.debug(
+                "Created http client for %s (max: %d, per route: %d, keep-alive: %ds).", host,
+                maxConnections, maxPerRoute, keepAlive);
+        }
+
+        protected void close() {
+            try {
+                client.close();
+            } catch (final IOException e) {
+                ZimbraLog.extensions.debug(e);
+            }
+        }
+    }
+}
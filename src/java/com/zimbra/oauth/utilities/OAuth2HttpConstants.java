@@ -22,6 +22,7 @@ public enum OAuth2HttpConstants {
     HEADER_LOCATION("Location"),
     HEADER_DISABLE_EXTERNAL_REQUESTS("Disable-External-Requests"),
     HEADER_USER_AGENT("User-Agent"),
+    HEADER_RETRY_AFTER("Retry-After"),
     QUERY_ERROR("error"),
     QUERY_ERROR_MSG("error_msg"),
     COOKIE_AUTH_TOKEN("ZM_AUTH_TOKEN"),
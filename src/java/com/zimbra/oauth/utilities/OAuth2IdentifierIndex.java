@@ -0,0 +1,275 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.DataSource;
+import com.zimbra.cs.account.Domain;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.account.ldap.LdapProv;
+import com.zimbra.cs.ldap.IAttributes;
+import com.zimbra.cs.ldap.LdapException;
+import com.zimbra.cs.ldap.LdapUtil;
+import com.zimbra.cs.ldap.SearchLdapOptions;
+import com.zimbra.cs.ldap.SearchLdapOptions.SearchLdapVisitor;
+import com.zimbra.cs.ldap.ZLdapFilterFactory;
+import com.zimbra.cs.ldap.ZLdapFilterFactory.FilterId;
+import com.zimbra.cs.ldap.ZSearchScope;
+import com.zimbra.oauth.cache.IOAuth2CacheHelper;
+import com.zimbra.oauth.cache.OAuth2LocalCacheHelper;
+import com.zimbra.oauth.metrics.OAuth2CacheMetrics;
+import com.zimbra.oauth.utilities.OAuth2DataSource.DataSourceMetaData;
+
+/**
+ * The OAuth2IdentifierIndex class.<br>
+ * Reverse index of social identifiers to Zimbra account ids for a client,
+ * used to resolve accounts for provider events.<br>
+ * The mapping is persisted by the client's datasources in LDAP, named
+ * {identifier}-{type}-{client} under the account, which every mailbox node
+ * can read. Resolved identifiers are kept in a bounded in-memory map, and
+ * identifiers that could not be resolved are remembered for a short time
+ * so repeated events do not search LDAP again.<br>
+ * {@link #rebuild} fills the in-memory map from all datasources, an admin
+ * action that visits all accounts.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2IdentifierIndex {
+
+    /**
+     * Index instances by client.
+     */
+    protected static final Map<String, OAuth2IdentifierIndex> instances = new ConcurrentHashMap<String, OAuth2IdentifierIndex>();
+
+    /**
+     * Datasource types an identifier may be authorized for.
+     */
+    protected static final String[] TYPES = { "contact", "calendar", "caldav", "noop" };
+
+    /**
+     * Marks identifiers that could not be resolved.
+     */
+    protected static final String MISSING = "";
+
+    /**
+     * The client this index is for.
+     */
+    protected final String client;
+
+    /**
+     * Resolved account ids by identifier.
+     */
+    protected final IOAuth2CacheHelper memory;
+
+    /**
+     * Lifetime of unresolved identifiers (seconds).
+     */
+    protected final long missLifetime;
+
+    /**
+     * Constructor.
+     *
+     * @param client The client this index is for
+     * @param memory Resolved account ids by identifier
+     * @param missLifetime Lifetime of unresolved identifiers (seconds)
+     */
+    protected OAuth2IdentifierIndex(String client, IOAuth2CacheHelper memory,
+        long missLifetime) {
+        this.client = client;
+        this.memory = memory;
+        this.missLifetime = missLifetime;
+    }
+
+    /**
+     * @param client The client name
+     * @return The index for the client
+     */
+    public static OAuth2IdentifierIndex getInstance(String client) {
+        return instances.computeIfAbsent(client, (c) -> {
+            final OAuth2LocalCacheHelper memory = new OAuth2LocalCacheHelper(
+                OAuth2CacheUtilities.getLCInt(
+                    OAuth2ConfigConstants.LC_IDENTIFIER_INDEX_MAX_ENTRIES.getValue(),
+                    OAuth2Constants.IDENTIFIER_INDEX_MAX_ENTRIES.getValue()));
+            OAuth2CacheMetrics.getInstance().registerLocalCache(c + "_identifier_index", memory);
+            return new OAuth2IdentifierIndex(c, memory, OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_IDENTIFIER_INDEX_MISS_LIFETIME.getValue(),
+                OAuth2Constants.IDENTIFIER_INDEX_MISS_LIFETIME.getValue()));
+        });
+    }
+
+    /**
+     * Resolves an identifier from memory, or from the client's datasources.
+     *
+     * @param identifier The social identifier
+     * @return The Zimbra account id, or null if there is no datasource for it
+     */
+    public String get(String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        final String cached = memory.get(identifier);
+        if (cached != null) {
+            return MISSING.equals(cached) ? null : cached;
+        }
+        String accountId = null;
+        try {
+            accountId = find(identifier);
+        } catch (final ServiceException e) {
+            ZimbraLog.extensions.warn("Unable to search %s datasources for identifier: %s",
+                client, identifier);
+            ZimbraLog.extensions.debug(e);
+            return null;
+        }
+        if (accountId == null) {
+            memory.put(identifier, MISSING, missLifetime);
+        } else {
+            memory.put(identifier, accountId);
+        }
+        return accountId;
+    }
+
+    /**
+     * Indexes an identifier authorized on this node.
+     *
+     * @param identifier The social identifier
+     * @param accountId The Zimbra account id
+     */
+    public void put(String identifier, String accountId) {
+        memory.put(identifier, accountId);
+    }
+
+    /**
+     * Removes an identifier whose datasources were removed.
+     *
+     * @param identifier The social identifier
+     */
+    public void remove(String identifier) {
+        if (identifier != null) {
+            memory.remove(identifier);
+        }
+    }
+
+    /**
+     * Searches LDAP for a datasource of the identifier for this client.
+     *
+     * @param identifier The social identifier
+     * @return The id of the account holding the datasource, or null if none
+     * @throws ServiceException If there are issues searching
+     */
+    protected String find(String identifier) throws ServiceException {
+        final Provisioning prov = Provisioning.getInstance();
+        if (!(prov instanceof LdapProv)) {
+            return null;
+        }
+        final LdapProv ldapProv = (LdapProv) prov;
+        final StringBuilder filter = new StringBuilder("(&(objectClass=zimbraDataSource)(|");
+        for (final String type : TYPES) {
+            filter.append(String.format("(%s=%s)", Provisioning.A_zimbraDataSourceName,
+                LdapUtil.escapeSearchFilterArg(
+                    DataSourceMetaData.from(null, identifier, type, client).toName())));
+        }
+        filter.append("))");
+        final AtomicReference<String> sourceDn = new AtomicReference<String>();
+        ldapProv.searchLdapOnReplica(new SearchLdapOptions(ldapProv.getDIT().mailBranchBaseDN(),
+            ZLdapFilterFactory.getInstance()
+                .fromFilterString(FilterId.DATA_SOURCE_BY_NAME, filter.toString()),
+            new String[] { Provisioning.A_zimbraDataSourceName }, SearchLdapOptions.SIZE_UNLIMITED,
+            null, ZSearchScope.SEARCH_SCOPE_SUBTREE, new SearchLdapVisitor(false) {
+                @Override
+                public void visit(String dn, IAttributes ldapAttrs) {
+                    sourceDn.compareAndSet(null, dn);
+                }
+            }));
+        if (sourceDn.get() == null) {
+            return null;
+        }
+        // datasources are entries under their account
+        final String accountDn;
+        try {
+            final LdapName name = new LdapName(sourceDn.get());
+            accountDn = name.getPrefix(name.size() - 1).toString();
+        } catch (final InvalidNameException e) {
+            throw ServiceException.FAILURE("Invalid datasource dn: " + sourceDn.get(), e);
+        }
+        final AtomicReference<String> accountId = new AtomicReference<String>();
+        ldapProv.searchLdapOnReplica(new SearchLdapOptions(accountDn,
+            ZLdapFilterFactory.getInstance().anyEntry(), new String[] { Provisioning.A_zimbraId },
+            SearchLdapOptions.SIZE_UNLIMITED, null, ZSearchScope.SEARCH_SCOPE_BASE,
+            new SearchLdapVisitor(false) {
+                @Override
+                public void visit(String dn, IAttributes ldapAttrs) {
+                    try {
+                        accountId.set(ldapAttrs.getAttrString(Provisioning.A_zimbraId));
+                    } catch (final LdapException e) {
+                        ZimbraLog.extensions.debug(e);
+                    }
+                }
+            }));
+        return accountId.get();
+    }
+
+    /**
+     * Indexes the identifiers of every account's datasources for this client
+     * that are not indexed yet, up to the index size.<br>
+     * Visits all accounts, intended as an admin action for warming the index
+     * of a node. Existing entries are kept, so mappings written while this
+     * runs are not replaced.
+     *
+     * @return The number of added identifiers
+     * @throws ServiceException If there are issues reading accounts or datasources
+     */
+    public int rebuild() throws ServiceException {
+        final long start = System.currentTimeMillis();
+        final Provisioning prov = Provisioning.getInstance();
+        final AtomicInteger added = new AtomicInteger();
+        for (final Domain domain : prov.getAllDomains()) {
+            prov.getAllAccounts(domain, (entry) -> {
+                if (!(entry instanceof Account)) {
+                    return;
+                }
+                final Account account = (Account) entry;
+                for (final DataSource source : prov.getAllDataSources(account)) {
+                    final DataSourceMetaData meta = DataSourceMetaData.from(source);
+                    if (meta.isRelevant(null, null, client)
+                        && merge(meta.getIdentifier(), account.getId())) {
+                        added.incrementAndGet();
+                    }
+                }
+            });
+        }
+        ZimbraLog.extensions.info("Added %d entries to %s identifier index in %dms.",
+            added.get(), client, System.currentTimeMillis() - start);
+        return added.get();
+    }
+
+    /**
+     * Indexes an identifier if it is not indexed yet.
+     *
+     * @param identifier The social identifier
+     * @param accountId The Zimbra account id
+     * @return True if the identifier was added
+     */
+    protected boolean merge(String identifier, String accountId) {
+        final String cached = memory.get(identifier);
+        if (cached != null && !MISSING.equals(cached)) {
+            return false;
+        }
+        memory.put(identifier, accountId);
+        return true;
+    }
+}
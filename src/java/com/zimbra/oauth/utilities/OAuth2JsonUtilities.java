@@ -13,12 +13,15 @@ import java.util.Map;
 import org.apache.commons.lang.StringUtils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
 
@@ -65,6 +68,82 @@ public class OAuth2JsonUtilities {
         return mapper.readTree(jsonString);
     }
 
+    /**
+     * Reads a given stream into a json node without buffering it as a
+     * string.<br>
+     * Returns null if the stream is null or empty.
+     *
+     * @param stream The stream to read
+     * @return A json node
+     * @throws IOException If there are issues parsing the stream
+     */
+    public static JsonNode streamToJson(InputStream stream) throws IOException {
+        if (stream == null) {
+            return null;
+        }
+        try (final JsonParser parser = createParser(stream)) {
+            if (parser.nextToken() == null) {
+                return null;
+            }
+            return mapper.readTree(parser);
+        }
+    }
+
+    /**
+     * Creates a parser for event level reading of a stream.<br>
+     * Trees and values can be read from the parser at any position with
+     * <code>readValueAsTree</code> and <code>readValueAs</code>.
+     *
+     * @param stream The stream to read
+     * @return A json parser, to be closed by the caller
+     * @throws IOException If there are issues creating the parser
+     */
+    public static JsonParser createParser(InputStream stream) throws IOException {
+        return mapper.getFactory().createParser(stream);
+    }
+
+    /**
+     * Reads a json object from a stream, passing each element of an array
+     * field to the consumer as soon as it is parsed. The array is not kept,
+     * so at most one of its elements is in memory at a time.<br>
+     * Returns null if the stream is null or empty.
+     *
+     * @param stream The stream to read
+     * @param arrayField The name of the top level array field to stream
+     * @param consumer Receives each element of the array field
+     * @return The other top level fields of the object
+     * @throws IOException If there are issues parsing the stream
+     * @throws ServiceException If the consumer fails
+     */
+    public static ObjectNode streamRecords(InputStream stream, String arrayField,
+        JsonRecordConsumer consumer) throws IOException, ServiceException {
+        if (stream == null) {
+            return null;
+        }
+        try (final JsonParser parser = createParser(stream)) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a json object.");
+            }
+            final ObjectNode envelope = mapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                token = parser.nextToken();
+                if (token == JsonToken.START_ARRAY && field.equals(arrayField)) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        consumer.accept(mapper.readTree(parser));
+                    }
+                } else {
+                    envelope.set(field, mapper.readTree(parser));
+                }
+            }
+            return envelope;
+        }
+    }
+
     /**
      * Reads a given string into a json node.<br>
      * Returns null if input is empty.
@@ -144,4 +223,17 @@ public class OAuth2JsonUtilities {
             throw ServiceException.PARSE_ERROR("Error reading input.", e);
         }
     }
+
+    /**
+     * Receives the records of a streamed json array.
+     */
+    @FunctionalInterface
+    public interface JsonRecordConsumer {
+
+        /**
+         * @param record One element of the array
+         * @throws ServiceException If the record cannot be processed
+         */
+        void accept(JsonNode record) throws ServiceException;
+    }
 }
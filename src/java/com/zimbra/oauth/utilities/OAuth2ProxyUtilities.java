@@ -23,20 +23,24 @@ import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.Configurable;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 
-import com.zimbra.common.httpclient.HttpClientUtil;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ByteUtil;
 import com.zimbra.common.util.ZimbraHttpConnectionManager;
@@ -61,7 +65,7 @@ import com.zimbra.oauth.models.ResponseObject;
  */
 public class OAuth2ProxyUtilities {
 
-    private static final String TARGET_PARAM = "target";
+    protected static final String TARGET_PARAM = "target";
 
     private static final String USER_PARAM = "user";
     private static final String PASS_PARAM = "pass";
@@ -69,6 +73,11 @@ public class OAuth2ProxyUtilities {
     private static final String AUTH_BASIC = "basic";
     private static final String DEFAULT_CTYPE = "text/xml";
 
+    /**
+     * The shared proxy client, null until first use.
+     */
+    protected static volatile HttpClient proxyClient;
+
     protected static Set<String> getAllowedDomains(Account account) throws ServiceException {
         final Provisioning prov = Provisioning.getInstance();
 
@@ -138,6 +147,36 @@ public class OAuth2ProxyUtilities {
         }
     }
 
+    /**
+     * Builds the entity to proxy, from the buffered body if there is one,
+     * otherwise streaming the request body to the target.
+     *
+     * @param req The request
+     * @param body The buffered request body, or null to stream
+     * @return The entity, or null if the request has no body
+     * @throws IOException If there are issues reading the request
+     */
+    protected static HttpEntity buildEntity(HttpServletRequest req, byte[] body)
+        throws IOException {
+        if (body != null) {
+            return body.length > 0 ? buildEntity(body, req.getContentType()) : null;
+        }
+        if (req.getContentLengthLong() <= 0 && req.getHeader("Transfer-Encoding") == null) {
+            return null;
+        }
+        return buildEntity(req.getInputStream(), req.getContentLengthLong(),
+            req.getContentType());
+    }
+
+    protected static HttpEntity buildEntity(InputStream body, long length, String contentType) {
+        if (StringUtils.startsWith(contentType, MediaType.MULTIPART_FORM_DATA)) {
+            return MultipartEntityBuilder.create()
+                .addBinaryBody("file", body)
+                .build();
+        }
+        return new InputStreamEntity(body, length, ContentType.create(contentType));
+    }
+
     protected static HttpEntity buildEntity(byte[] body, String contentType) {
         if (StringUtils.startsWith(contentType, MediaType.MULTIPART_FORM_DATA)) {
             return MultipartEntityBuilder.create()
@@ -154,6 +193,15 @@ public class OAuth2ProxyUtilities {
         return value;
     }
 
+    /**
+     * Proxies a request to its target.
+     *
+     * @param req The request, with the target parameter
+     * @param resp The response to write the target's response to
+     * @param body The buffered request body, or null to stream the request
+     *            body to the target
+     * @throws IOException If there are issues reading or writing
+     */
     public static void doProxy(HttpServletRequest req, HttpServletResponse resp, byte[] body) throws IOException {
         final String target = req.getParameter(TARGET_PARAM);
         if (target == null) {
@@ -164,97 +212,37 @@ public class OAuth2ProxyUtilities {
 
         HttpRequestBase method = null;
         try {
-            final HttpClientBuilder clientBuilder = ZimbraHttpConnectionManager.getExternalHttpConnMgr()
-                .newHttpClient();
-            HttpProxyUtil.configureProxy(clientBuilder);
-            final String reqMethod = req.getMethod();
-            if (reqMethod.equalsIgnoreCase("GET")) {
-                method = new HttpGet(target);
-            } else if (reqMethod.equalsIgnoreCase("POST")) {
-                final HttpPost post = new HttpPost(target);
-                if (body.length > 0) {
-                    post.setEntity(buildEntity(body, req.getContentType()));
-                }
-                method = post;
-            } else if (reqMethod.equalsIgnoreCase("PUT")) {
-                final HttpPut put = new HttpPut(target);
-                if (body.length > 0) {
-                    put.setEntity(buildEntity(body, req.getContentType()));
-                }
-                method = put;
-            } else if (reqMethod.equalsIgnoreCase("DELETE")) {
-                method = new HttpDelete(target);
-            } else if (reqMethod.equalsIgnoreCase("PATCH")) {
-                final HttpPatch patch = new HttpPatch(target);
-                if (body.length > 0) {
-                    patch.setEntity(buildEntity(body, req.getContentType()));
-                }
-                method = patch;
-            } else {
-                ZimbraLog.extensions.info("unsupported request method: " + reqMethod);
-                sendError(resp, HttpServletResponse.SC_METHOD_NOT_ALLOWED,
-                    OAuth2ErrorConstants.ERROR_INVALID_PROXY_TARGET.getValue());
+            method = buildRequest(req, resp, target, body);
+            if (method == null) {
                 return;
             }
 
-            // handle basic auth
-            String auth, user, pass;
-            auth = req.getParameter(AUTH_PARAM);
-            user = req.getParameter(USER_PARAM);
-            pass = req.getParameter(PASS_PARAM);
-            if (auth != null && user != null && pass != null) {
-                if (!auth.equals(AUTH_BASIC)) {
-                    ZimbraLog.extensions.info("unsupported auth type: " + auth);
-                    sendError(resp, HttpServletResponse.SC_BAD_REQUEST,
-                        OAuth2ErrorConstants.ERROR_INVALID_AUTH_CODE.getValue());
-                    return;
-                }
-                final CredentialsProvider provider = new BasicCredentialsProvider();
-                provider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(user, pass));
-                clientBuilder.setDefaultCredentialsProvider(provider);
-            }
-
-            final Enumeration<String> headers = req.getHeaderNames();
-            while (headers.hasMoreElements()) {
-                final String hdr = headers.nextElement();
-                final String hdrLogValue = getHeaderLogValue(hdr, req.getHeader(hdr));
-                ZimbraLog.extensions.debug("incoming: " + hdr + ": " + hdrLogValue);
-                if (canProxyHeader(hdr)) {
-                    ZimbraLog.extensions.debug("outgoing: " + hdr + ": " + hdrLogValue);
-                    if (hdr.equalsIgnoreCase("x-host")) {
-                        method.setHeader("Host", req.getHeader(hdr));
-                    } else {
-                        method.addHeader(hdr, req.getHeader(hdr));
-                    }
-                }
+            // handle basic auth and redirects, per request on the shared client
+            final HttpClient client = getProxyClient();
+            final HttpClientContext context;
+            try {
+                context = buildContext(req, method, getRequestConfig(client));
+            } catch (final ServiceException e) {
+                sendError(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    OAuth2ErrorConstants.ERROR_INVALID_AUTH_CODE.getValue());
+                return;
             }
 
             HttpResponse httpResp = null;
             try {
-                if (!(reqMethod.equalsIgnoreCase("POST")
-                    || reqMethod.equalsIgnoreCase("PUT")
-                    || reqMethod.equalsIgnoreCase("PATCH"))) {
-                    clientBuilder.setRedirectStrategy(new DefaultRedirectStrategy());
-                }
-                final HttpClient client = clientBuilder.build();
-                httpResp = HttpClientUtil.executeMethod(client, method);
+                httpResp = OAuth2Utilities.executeMethod(client, method, context);
             } catch (final HttpException ex) {
                 ZimbraLog.extensions.info("exception while proxying " + target, ex);
                 sendError(resp, HttpServletResponse.SC_NOT_FOUND,
                     OAuth2ErrorConstants.ERROR_INVALID_PROXY_RESPONSE.getValue());
                 return;
+            } catch (final ServiceException ex) {
+                // the target's circuit is open
+                sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE.getValue());
+                return;
             }
 
-            final int status = httpResp.getStatusLine() == null
-                ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR
-                : httpResp.getStatusLine().getStatusCode();
-
-            // workaround for Alexa Thumbnails paid web service, which doesn't
-            // bother to return a content-type line
-            final Header ctHeader = httpResp.getFirstHeader("Content-Type");
-            final String contentType = ctHeader == null || ctHeader.getValue() == null ? DEFAULT_CTYPE
-                : ctHeader.getValue();
-
             // getEntity may return null if no response body (e.g. HTTP 204)
             InputStream targetResponseBody = null;
             final HttpEntity targetResponseEntity = httpResp.getEntity();
@@ -262,12 +250,7 @@ public class OAuth2ProxyUtilities {
                 targetResponseBody = targetResponseEntity.getContent();
             }
 
-            resp.setStatus(status);
-            resp.setContentType(contentType);
-            for (final Header h : httpResp.getAllHeaders())
-                if (canProxyHeader(h.getName())) {
-                    resp.addHeader(h.getName(), h.getValue());
-                }
+            setResponseHead(httpResp, resp);
             if (targetResponseBody != null) {
                 ByteUtil.copy(targetResponseBody, true, resp.getOutputStream(), true);
             }
@@ -277,4 +260,194 @@ public class OAuth2ProxyUtilities {
         }
     }
 
+    /**
+     * Returns the shared proxy client, built on first use.<br>
+     * Connections and TLS sessions are reused across proxied requests, and
+     * request specific state (e.g. credentials) is set per request with an
+     * HttpClientContext.<br>
+     * Redirects are followed by the default strategy, and disabled per
+     * request for requests with a body.
+     *
+     * @return The shared proxy client
+     */
+    protected static HttpClient getProxyClient() {
+        HttpClient client = proxyClient;
+        if (client == null) {
+            synchronized (OAuth2ProxyUtilities.class) {
+                client = proxyClient;
+                if (client == null) {
+                    final HttpClientBuilder clientBuilder = ZimbraHttpConnectionManager
+                        .getExternalHttpConnMgr().newHttpClient();
+                    HttpProxyUtil.configureProxy(clientBuilder);
+                    clientBuilder.setRedirectStrategy(new DefaultRedirectStrategy());
+                    client = clientBuilder.build();
+                    proxyClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @param client The proxy client
+     * @return The client's default request config
+     */
+    protected static RequestConfig getRequestConfig(HttpClient client) {
+        if (client instanceof Configurable && ((Configurable) client).getConfig() != null) {
+            return ((Configurable) client).getConfig();
+        }
+        return RequestConfig.DEFAULT;
+    }
+
+    /**
+     * Builds the context of a request on the shared proxy client, holding
+     * the request's credentials, cookies and redirect setting, so nothing is
+     * shared with other requests.<br>
+     * Cookies set by the target are only kept for the request (e.g. across
+     * its redirects), never sent on other users' requests.
+     *
+     * @param req The request
+     * @param method The request to the target
+     * @param config The client's default request config
+     * @return The request context
+     * @throws ServiceException If the auth type is not supported
+     */
+    protected static HttpClientContext buildContext(HttpServletRequest req,
+        HttpRequestBase method, RequestConfig config) throws ServiceException {
+        final HttpClientContext context = HttpClientContext.create();
+        context.setCookieStore(new BasicCookieStore());
+        final CredentialsProvider provider = getCredentialsProvider(req);
+        if (provider != null) {
+            context.setCredentialsProvider(provider);
+        }
+        context.setRequestConfig(RequestConfig.copy(config)
+            .setRedirectsEnabled(isRedirectAllowed(method))
+            .build());
+        return context;
+    }
+
+    /**
+     * Drops the shared proxy client so the next request builds one with the
+     * current http proxy settings.<br>
+     * The client is not closed, its connection manager is shared.
+     */
+    public static void resetProxyClient() {
+        proxyClient = null;
+    }
+
+    /**
+     * Builds the request to the target, with the proxied headers.
+     *
+     * @param req The request
+     * @param resp The response, to send an error to if the method is not
+     *            supported
+     * @param target The target url
+     * @param body The buffered request body, or null to stream
+     * @return The request, or null if an error was sent
+     * @throws IOException If there are issues reading or writing
+     */
+    protected static HttpRequestBase buildRequest(HttpServletRequest req,
+        HttpServletResponse resp, String target, byte[] body) throws IOException {
+        final HttpRequestBase method;
+        final String reqMethod = req.getMethod();
+        if (reqMethod.equalsIgnoreCase("GET")) {
+            method = new HttpGet(target);
+        } else if (reqMethod.equalsIgnoreCase("POST")) {
+            final HttpPost post = new HttpPost(target);
+            post.setEntity(buildEntity(req, body));
+            method = post;
+        } else if (reqMethod.equalsIgnoreCase("PUT")) {
+            final HttpPut put = new HttpPut(target);
+            put.setEntity(buildEntity(req, body));
+            method = put;
+        } else if (reqMethod.equalsIgnoreCase("DELETE")) {
+            method = new HttpDelete(target);
+        } else if (reqMethod.equalsIgnoreCase("PATCH")) {
+            final HttpPatch patch = new HttpPatch(target);
+            patch.setEntity(buildEntity(req, body));
+            method = patch;
+        } else {
+            ZimbraLog.extensions.info("unsupported request method: " + reqMethod);
+            sendError(resp, HttpServletResponse.SC_METHOD_NOT_ALLOWED,
+                OAuth2ErrorConstants.ERROR_INVALID_PROXY_TARGET.getValue());
+            return null;
+        }
+
+        final Enumeration<String> headers = req.getHeaderNames();
+        while (headers.hasMoreElements()) {
+            final String hdr = headers.nextElement();
+            final String hdrLogValue = getHeaderLogValue(hdr, req.getHeader(hdr));
+            ZimbraLog.extensions.debug("incoming: " + hdr + ": " + hdrLogValue);
+            if (canProxyHeader(hdr)) {
+                ZimbraLog.extensions.debug("outgoing: " + hdr + ": " + hdrLogValue);
+                if (hdr.equalsIgnoreCase("x-host")) {
+                    method.setHeader("Host", req.getHeader(hdr));
+                } else {
+                    method.addHeader(hdr, req.getHeader(hdr));
+                }
+            }
+        }
+        return method;
+    }
+
+    /**
+     * @param req The request
+     * @return A provider with the request's basic auth credentials, or null
+     *         if the request has none
+     * @throws ServiceException If the auth type is not supported
+     */
+    protected static CredentialsProvider getCredentialsProvider(HttpServletRequest req)
+        throws ServiceException {
+        final String auth = req.getParameter(AUTH_PARAM);
+        final String user = req.getParameter(USER_PARAM);
+        final String pass = req.getParameter(PASS_PARAM);
+        if (auth == null || user == null || pass == null) {
+            return null;
+        }
+        if (!auth.equals(AUTH_BASIC)) {
+            ZimbraLog.extensions.info("unsupported auth type: " + auth);
+            throw ServiceException.UNSUPPORTED();
+        }
+        final CredentialsProvider provider = new BasicCredentialsProvider();
+        provider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(user, pass));
+        return provider;
+    }
+
+    /**
+     * @param method The request to the target
+     * @return True if redirects may be followed for the request (it has no
+     *         body)
+     */
+    protected static boolean isRedirectAllowed(HttpRequestBase method) {
+        final String reqMethod = method.getMethod();
+        return !(reqMethod.equalsIgnoreCase("POST")
+            || reqMethod.equalsIgnoreCase("PUT")
+            || reqMethod.equalsIgnoreCase("PATCH"));
+    }
+
+    /**
+     * Copies the target's status and proxied headers to the response.
+     *
+     * @param httpResp The target's response
+     * @param resp The response
+     */
+    protected static void setResponseHead(HttpResponse httpResp, HttpServletResponse resp) {
+        final int status = httpResp.getStatusLine() == null
+            ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR
+            : httpResp.getStatusLine().getStatusCode();
+
+        // workaround for Alexa Thumbnails paid web service, which doesn't
+        // bother to return a content-type line
+        final Header ctHeader = httpResp.getFirstHeader("Content-Type");
+        final String contentType = ctHeader == null || ctHeader.getValue() == null ? DEFAULT_CTYPE
+            : ctHeader.getValue();
+
+        resp.setStatus(status);
+        resp.setContentType(contentType);
+        for (final Header h : httpResp.getAllHeaders())
+            if (canProxyHeader(h.getName())) {
+                resp.addHeader(h.getName(), h.getValue());
+            }
+    }
+
 }
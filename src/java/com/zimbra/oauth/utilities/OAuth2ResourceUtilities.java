@@ -167,7 +167,7 @@ public class OAuth2ResourceUtilities {
                 final OAuthInfo authInfo = new OAuthInfo(params);
                 authInfo.setAccount(account);
                 authInfo.setZmAuthToken(authToken);
-                oauth2Handler.authenticate(authInfo);
+                OAuth2Bulkhead.execute(client, () -> oauth2Handler.authenticate(authInfo));
                 // add any available params to the response params
                 responseParams.putAll(authInfo.getParams());
             } catch (final ServiceException e) {
@@ -176,6 +176,11 @@ public class OAuth2ResourceUtilities {
                 if (StringUtils.equals(ServiceException.PERM_DENIED, e.getCode())) {
                     mapError(responseParams, OAuth2ErrorConstants.ERROR_ACCESS_DENIED.getValue(),
                         null);
+                } else if (StringUtils.equals(ServiceException.TEMPORARILY_UNAVAILABLE,
+                    e.getCode())) {
+                    mapError(responseParams,
+                        OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE.getValue(),
+                        OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE_MSG.getValue());
                 } else {
                     mapError(responseParams,
                         OAuth2ErrorConstants.ERROR_AUTHENTICATION_ERROR.getValue(),
@@ -221,7 +226,7 @@ public class OAuth2ResourceUtilities {
                 new ResponseMeta(Status.UNAUTHORIZED.getStatusCode()));
         }
         // get handler to validate the request client
-        IOAuth2Handler oauth2Handler = null;
+        final IOAuth2Handler oauth2Handler;
         try {
             oauth2Handler = ClassManager.getHandler(client);
         } catch (final ServiceException e) {
@@ -239,7 +244,7 @@ public class OAuth2ResourceUtilities {
         try {
             oauthResponse.setAccount(account);
             oauthResponse.setZmAuthToken(authToken);
-            oauth2Handler.refresh(oauthResponse);
+            OAuth2Bulkhead.execute(client, () -> oauth2Handler.refresh(oauthResponse));
         } catch (final ServiceException e) {
             return buildHandlerErrorResponse(e);
         }
@@ -278,7 +283,7 @@ public class OAuth2ResourceUtilities {
                 new ResponseMeta(Status.UNAUTHORIZED.getStatusCode()));
         }
         // get handler to validate the request client
-        IOAuth2Handler oauth2Handler = null;
+        final IOAuth2Handler oauth2Handler;
         try {
             oauth2Handler = ClassManager.getHandler(client);
         } catch (final ServiceException e) {
@@ -292,7 +297,7 @@ public class OAuth2ResourceUtilities {
         try {
             oauthResponse.setAccount(account);
             oauthResponse.setZmAuthToken(authToken);
-            oauth2Handler.info(oauthResponse);
+            OAuth2Bulkhead.execute(client, () -> oauth2Handler.info(oauthResponse));
         } catch (final ServiceException e) {
             return buildHandlerErrorResponse(e);
         }
@@ -312,7 +317,8 @@ public class OAuth2ResourceUtilities {
     public static void event(String client, Map<String, String> headers,
         Map<String, Object> body) throws ServiceException {
         final IOAuth2Handler oauth2Handler = ClassManager.getHandler(client);
-        oauth2Handler.event(new GuestRequest(headers, body));
+        OAuth2Bulkhead.execute(client,
+            () -> oauth2Handler.event(new GuestRequest(headers, body)));
     }
 
     /**
@@ -325,7 +331,7 @@ public class OAuth2ResourceUtilities {
      * @param cookies Request cookies
      * @param headers Request headers required for fetching the token
      * @param queryParams Map of query params
-     * @param body Request body
+     * @param body Request body, null unless required by the proxy handler
      * @return A response object containing the json res and http status
      */
     public static ResponseObject<?> headers(String method, String client, Cookie[] cookies,
@@ -420,6 +426,12 @@ public class OAuth2ResourceUtilities {
             message = new ErrorMessage(
                 OAuth2ErrorConstants.ERROR_REFRESH_UNSUPPORTED.getValue(),
                 OAuth2ErrorConstants.ERROR_REFRESH_UNSUPPORTED_MSG.getValue());
+        // too many requests in progress, or provider rate limited : 503
+        } else if (ServiceException.TEMPORARILY_UNAVAILABLE.equals(code)) {
+            responseStatus = Status.SERVICE_UNAVAILABLE.getStatusCode();
+            message = new ErrorMessage(
+                OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE.getValue(),
+                OAuth2ErrorConstants.ERROR_TEMPORARILY_UNAVAILABLE_MSG.getValue());
         // remaining service exceptions : 401
         } else {
             message = new ErrorMessage(OAuth2ErrorConstants.ERROR_ACCESS_DENIED.getValue());
@@ -0,0 +1,355 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.metrics.OAuth2HttpMetrics;
+
+/**
+ * The OAuth2RetryPolicy class.<br>
+ * Decides if and when a provider request is retried, per provider host.<br>
+ * Requests are retried with exponential backoff and full jitter, or after
+ * the delay in a <code>Retry-After</code> header. Retries of a host are
+ * limited by a budget that grows with its requests, so retries cannot
+ * multiply the load on a provider that is already failing.<br>
+ * Blocking requests wait on the request thread, so delays are capped at a
+ * small maximum (1s by default), and requests are failed instead of
+ * retried when the provider asks to wait longer than that.<br>
+ * Idempotent requests are retried on throttling, gateway errors and
+ * connection issues. Other requests (i.e. token endpoint POSTs, which
+ * consume authorization codes and may rotate refresh tokens) are only
+ * retried when the provider did not process them: on 429 or 503 responses
+ * and when the connection could not be established.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2RetryPolicy {
+
+    /**
+     * Value returned when a request should not be retried.
+     */
+    public static final long NO_RETRY = -1;
+
+    /**
+     * Too many requests status, not defined by HttpStatus.
+     */
+    protected static final int SC_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * Policies by provider host.
+     */
+    protected static final Map<String, OAuth2RetryPolicy> policies = new ConcurrentHashMap<String, OAuth2RetryPolicy>();
+
+    /**
+     * The provider host.
+     */
+    protected final String host;
+
+    /**
+     * Max number of attempts per request, including the first.
+     */
+    protected final int maxAttempts;
+
+    /**
+     * Backoff delay of the first retry (milliseconds).
+     */
+    protected final long baseDelay;
+
+    /**
+     * Max delay before a retry (milliseconds). Responses asking for a longer
+     * wait are not retried.
+     */
+    protected final long maxDelay;
+
+    /**
+     * Retry budget tokens added per request (percent of a retry).
+     */
+    protected final int budgetPercent;
+
+    /**
+     * Max retry budget (retries).
+     */
+    protected final int budgetMax;
+
+    /**
+     * Current retry budget (percent of a retry).
+     */
+    protected long budget;
+
+    /**
+     * Metrics to count retries with.
+     */
+    protected final OAuth2HttpMetrics metrics;
+
+    /**
+     * @param host The provider host
+     * @param maxAttempts Max number of attempts per request
+     * @param baseDelay Backoff delay of the first retry (milliseconds)
+     * @param maxDelay Max delay before a retry (milliseconds)
+     * @param budgetPercent Retry budget added per request (percent of a
+     *            retry)
+     * @param budgetMax Max retry budget (retries), also the initial budget
+     * @param metrics Metrics to count retries with
+     */
+    public OAuth2RetryPolicy(String host, int maxAttempts, long baseDelay, long maxDelay,
+        int budgetPercent, int budgetMax, OAuth2HttpMetrics metrics) {
+        this.host = host;
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.budgetPercent = budgetPercent;
+        this.budgetMax = budgetMax;
+        this.budget = budgetMax * 100L;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the policy of the request's provider host, created from
+     * localconfig on first use.
+     *
+     * @param request The request to get a policy for
+     * @return The provider's retry policy
+     */
+    public static OAuth2RetryPolicy getPolicy(HttpRequestBase request) {
+        final String host = request.getURI() == null ? null : request.getURI().getHost();
+        return policies.computeIfAbsent(StringUtils.isEmpty(host) ? "" : host.toLowerCase(),
+            OAuth2RetryPolicy::load);
+    }
+
+    /**
+     * @param host The provider host
+     * @return A policy configured from localconfig
+     */
+    protected static OAuth2RetryPolicy load(String host) {
+        return new OAuth2RetryPolicy(host,
+            OAuth2HttpClientPool.getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_RETRY_MAX_ATTEMPTS,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_RETRY_MAX_ATTEMPTS_TEMPLATE,
+                OAuth2Constants.HTTP_RETRY_MAX_ATTEMPTS),
+            OAuth2HttpClientPool.getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_RETRY_BASE_DELAY,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_RETRY_BASE_DELAY_TEMPLATE,
+                OAuth2Constants.HTTP_RETRY_BASE_DELAY),
+            OAuth2HttpClientPool.getSetting(host,
+                OAuth2ConfigConstants.LC_HTTP_RETRY_MAX_DELAY,
+                OAuth2ConfigConstants.LC_OAUTH_HTTP_RETRY_MAX_DELAY_TEMPLATE,
+                OAuth2Constants.HTTP_RETRY_MAX_DELAY),
+            OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_HTTP_RETRY_BUDGET_PERCENT.getValue(),
+                OAuth2Constants.HTTP_RETRY_BUDGET_PERCENT.getValue()),
+            OAuth2CacheUtilities.getLCInt(
+                OAuth2ConfigConstants.LC_HTTP_RETRY_BUDGET_MAX.getValue(),
+                OAuth2Constants.HTTP_RETRY_BUDGET_MAX.getValue()),
+            OAuth2HttpMetrics.getInstance());
+    }
+
+    /**
+     * Clears the policies so they are reloaded from localconfig.
+     */
+    public static void reset() {
+        policies.clear();
+    }
+
+    /**
+     * @return The provider host
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Counts a request (not its retries), adding to the retry budget.
+     */
+    public void onRequest() {
+        metrics.increment(host, OAuth2HttpMetrics.EVENT_REQUEST);
+        synchronized (this) {
+            budget = Math.min(budget + budgetPercent, budgetMax * 100L);
+        }
+    }
+
+    /**
+     * Counts a request that succeeded after being retried.
+     */
+    public void onRetrySuccess() {
+        metrics.increment(host, OAuth2HttpMetrics.EVENT_RETRY_SUCCESS);
+    }
+
+    /**
+     * Returns the delay before retrying a request that received a response.
+     *
+     * @param request The request
+     * @param response The response
+     * @param attempt The attempt that received the response, starting at 1
+     * @return The delay (milliseconds), or NO_RETRY
+     */
+    public long getRetryDelay(HttpRequestBase request, HttpResponse response, int attempt) {
+        final int status = response.getStatusLine().getStatusCode();
+        final boolean retriable;
+        switch (status) {
+            case SC_TOO_MANY_REQUESTS:
+            case HttpStatus.SC_SERVICE_UNAVAILABLE:
+                // the provider did not process the request
+                retriable = true;
+                break;
+            case HttpStatus.SC_BAD_GATEWAY:
+            case HttpStatus.SC_GATEWAY_TIMEOUT:
+                retriable = isIdempotent(request);
+                break;
+            default:
+                retriable = false;
+        }
+        if (!retriable) {
+            return NO_RETRY;
+        }
+        final long retryAfter = getRetryAfter(response);
+        if (retryAfter > maxDelay) {
+            ZimbraLog.extensions.debug("Not retrying %s, %s asked to wait %d ms.", request.getURI(),
+                host, retryAfter);
+            return NO_RETRY;
+        }
+        return acquire(request, attempt, retryAfter);
+    }
+
+    /**
+     * Returns the delay before retrying a request that failed with an
+     * exception.
+     *
+     * @param request The request
+     * @param e The failure
+     * @param attempt The attempt that failed, starting at 1
+     * @return The delay (milliseconds), or NO_RETRY
+     */
+    public long getRetryDelay(HttpRequestBase request, Exception e, int attempt) {
+        final boolean retriable;
+        if (e instanceof ConnectException || e instanceof ConnectTimeoutException) {
+            // the request was not sent
+            retriable = true;
+        } else if (e instanceof NoHttpResponseException || e instanceof InterruptedIOException
+            || e instanceof SocketException) {
+            // the request may have been processed (read timeout, reset)
+            retriable = isIdempotent(request);
+        } else {
+            retriable = false;
+        }
+        return retriable ? acquire(request, attempt, NO_RETRY) : NO_RETRY;
+    }
+
+    /**
+     * Checks the attempt limit, request entity, and budget, and returns the
+     * delay before the next attempt.
+     *
+     * @param request The request
+     * @param attempt The attempt that failed
+     * @param retryAfter The delay requested by the provider, or NO_RETRY
+     * @return The delay (milliseconds), or NO_RETRY
+     */
+    protected long acquire(HttpRequestBase request, int attempt, long retryAfter) {
+        if (request.isAborted() || !isRepeatable(request)) {
+            return NO_RETRY;
+        }
+        if (attempt >= maxAttempts) {
+            metrics.increment(host, OAuth2HttpMetrics.EVENT_RETRY_EXHAUSTED);
+            return NO_RETRY;
+        }
+        synchronized (this) {
+            if (budget < 100) {
+                metrics.increment(host, OAuth2HttpMetrics.EVENT_RETRY_BUDGET_EXHAUSTED);
+                return NO_RETRY;
+            }
+            budget -= 100;
+        }
+        final long delay = retryAfter >= 0 ? retryAfter : getBackoff(attempt);
+        metrics.increment(host, OAuth2HttpMetrics.EVENT_RETRY);
+        metrics.add(host, OAuth2HttpMetrics.EVENT_RETRY_DELAY_MS, delay);
+        ZimbraLog.extensions.debug("Retrying request to %s (attempt %d) in %d ms.", host,
+            attempt + 1, delay);
+        return delay;
+    }
+
+    /**
+     * @param attempt The attempt that failed, starting at 1
+     * @return A random delay up to the exponential backoff of the attempt
+     */
+    protected long getBackoff(int attempt) {
+        final long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Parses the Retry-After header as seconds or an http date.
+     *
+     * @param response The response
+     * @return The delay (milliseconds), or NO_RETRY if absent or invalid
+     */
+    protected static long getRetryAfter(HttpResponse response) {
+        final Header header = response
+            .getFirstHeader(OAuth2HttpConstants.HEADER_RETRY_AFTER.getValue());
+        if (header == null || StringUtils.isBlank(header.getValue())) {
+            return NO_RETRY;
+        }
+        final String value = header.getValue().trim();
+        if (StringUtils.isNumeric(value)) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+            } catch (final NumberFormatException e) {
+                return NO_RETRY;
+            }
+        }
+        final Date date = DateUtils.parseDate(value);
+        return date == null ? NO_RETRY : Math.max(0, date.getTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * @param request The request
+     * @return True if the request method is idempotent
+     */
+    protected static boolean isIdempotent(HttpRequestBase request) {
+        switch (request.getMethod()) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+            case "PUT":
+            case "DELETE":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param request The request
+     * @return True if the request can be sent again
+     */
+    protected static boolean isRepeatable(HttpRequestBase request) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
+    }
+}
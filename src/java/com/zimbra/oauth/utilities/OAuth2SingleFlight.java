@@ -0,0 +1,125 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * The OAuth2SingleFlight class.<br>
+ * Coalesces concurrent loads for the same key so that only one caller
+ * performs the load while the others wait on its result.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2SingleFlight<T> {
+
+    /**
+     * Loads a value, may throw a ServiceException.
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+
+        /**
+         * @return The loaded value
+         * @throws ServiceException If there are issues loading
+         */
+        public T load() throws ServiceException;
+    }
+
+    /**
+     * Map of in-flight loads by key.
+     */
+    protected final Map<String, CompletableFuture<T>> inflight = new ConcurrentHashMap<String, CompletableFuture<T>>();
+
+    /**
+     * Max time a waiting caller blocks on an in-flight load (milliseconds).
+     */
+    protected final long waitTimeout;
+
+    /**
+     * Constructor.
+     *
+     * @param waitTimeout Max time to wait on an in-flight load (milliseconds)
+     */
+    public OAuth2SingleFlight(long waitTimeout) {
+        this.waitTimeout = waitTimeout;
+    }
+
+    /**
+     * Executes the loader if there is no in-flight load for the key,
+     * otherwise waits on the in-flight load's result.<br>
+     * Errors thrown by the loader are rethrown to every waiting caller.
+     *
+     * @param key The key to coalesce loads by
+     * @param loader The loader to execute
+     * @return The loaded value
+     * @throws ServiceException If there are issues loading, or waiting times out
+     */
+    public T execute(String key, Loader<T> loader) throws ServiceException {
+        final CompletableFuture<T> pending = new CompletableFuture<T>();
+        final CompletableFuture<T> existing = inflight.putIfAbsent(key, pending);
+        if (existing != null) {
+            ZimbraLog.extensions.debug("Waiting on in-flight load for key: %s", key);
+            return await(key, existing);
+        }
+        try {
+            final T result = loader.load();
+            pending.complete(result);
+            return result;
+        } catch (final ServiceException | RuntimeException | Error e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, pending);
+        }
+    }
+
+    /**
+     * @param key The key to check
+     * @return True if there is an in-flight load for the key
+     */
+    public boolean isInFlight(String key) {
+        return inflight.containsKey(key);
+    }
+
+    /**
+     * Waits on an in-flight load.
+     *
+     * @param key The key being loaded
+     * @param future The in-flight load
+     * @return The loaded value
+     * @throws ServiceException If the load failed, or waiting times out
+     */
+    protected T await(String key, CompletableFuture<T> future) throws ServiceException {
+        try {
+            return future.get(waitTimeout, TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ServiceException) {
+                throw (ServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ServiceException.FAILURE("The in-flight load failed.", cause);
+        } catch (final TimeoutException e) {
+            ZimbraLog.extensions.warn("Timed out waiting on in-flight load for key: %s", key);
+            throw ServiceException.TEMPORARILY_UNAVAILABLE();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw ServiceException.FAILURE("Interrupted while waiting on in-flight load.", e);
+        }
+    }
+}
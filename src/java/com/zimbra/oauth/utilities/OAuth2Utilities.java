@@ -5,12 +5,18 @@
 
 package com.zimbra.oauth.utilities;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Base64;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
@@ -25,6 +31,7 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -34,14 +41,18 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.io.ByteStreams;
 import com.zimbra.common.httpclient.HttpClientUtil;
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraHttpConnectionManager;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.httpclient.HttpProxyUtil;
 import com.zimbra.cs.mailbox.Contact.Attachment;
+import com.zimbra.oauth.models.HttpEntityBuffer;
 import com.zimbra.oauth.models.HttpResponseWrapper;
 import com.zimbra.oauth.models.ResponseObject;
+import com.zimbra.oauth.utilities.OAuth2JsonUtilities.JsonRecordConsumer;
 
 /**
  * The OAuth2Utilities class.
@@ -127,18 +138,54 @@ public class OAuth2Utilities {
 
     /**
      * Decodes given http entity.<br>
+     * Bodies larger than the configured memory limit are spilled to a
+     * temporary file, bodies larger than the configured maximum size are
+     * rejected.<br>
      * Returns null if the entity is null.
      *
      * @param entity An http entity
-     * @return The the current contents of this output stream, as a byte array.
-     * @throws IOException If there are issues decoding
+     * @return The buffered entity, to be closed by the caller
+     * @throws IOException If there are issues decoding, or the entity is too
+     *             large
      */
-    protected static byte[] decodeEntity(HttpEntity entity) throws IOException {
-        byte[] entityBytes = null;
-        if (entity != null) {
-            entityBytes = EntityUtils.toByteArray(entity);
+    protected static HttpEntityBuffer decodeEntity(HttpEntity entity) throws IOException {
+        if (entity == null) {
+            return null;
+        }
+        final int memoryLimit = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_ENTITY_MEMORY_LIMIT.getValue(),
+            OAuth2Constants.HTTP_ENTITY_MEMORY_LIMIT.getValue());
+        final int maxSize = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_ENTITY_MAX_SIZE.getValue(),
+            OAuth2Constants.HTTP_ENTITY_MAX_SIZE.getValue());
+        final String tmpDir = LC.zimbra_tmp_directory.value();
+        try (final InputStream stream = entity.getContent()) {
+            if (stream == null) {
+                return null;
+            }
+            return HttpEntityBuffer.read(stream, entity.getContentLength(), memoryLimit, maxSize,
+                StringUtils.isEmpty(tmpDir) ? null : new File(tmpDir));
+        }
+    }
+
+    /**
+     * Returns the stream of given http entity for reading directly, limited
+     * to the configured maximum size.
+     *
+     * @param entity An http entity
+     * @return The limited entity stream, null if there is none
+     * @throws IOException If there are issues reading, or the entity is too
+     *             large
+     */
+    protected static InputStream getEntityStream(HttpEntity entity) throws IOException {
+        final InputStream stream = entity.getContent();
+        if (stream == null) {
+            return null;
         }
-        return entityBytes;
+        final int maxSize = OAuth2CacheUtilities.getLCInt(
+            OAuth2ConfigConstants.LC_HTTP_ENTITY_MAX_SIZE.getValue(),
+            OAuth2Constants.HTTP_ENTITY_MAX_SIZE.getValue());
+        return HttpEntityBuffer.limit(stream, entity.getContentLength(), maxSize);
     }
 
     /**
@@ -152,22 +199,90 @@ public class OAuth2Utilities {
      */
     public static Attachment createAttachmentFromResponse(HttpResponseWrapper responseWrapper, String key,
         String filename) throws IOException {
-        // check for the content type header
-        final HttpResponse response = responseWrapper.getResponse();
-        final Header ctypeHeader = response.getFirstHeader("Content-Type");
-        if (ctypeHeader != null) {
-            // grab content type header as string
-            final String ctype = StringUtils.lowerCase(ctypeHeader.getValue());
-            final byte[] entityBytes = responseWrapper.getEntityBytes();
-            ZimbraLog.extensions.debug("The Content-Type: %s", ctype);
-            if (entityBytes != null && StringUtils.startsWith(ctype, "image/")) {
-                ZimbraLog.extensions.debug("Creating image attachment: %s as key: %s", filename, key);
-                return new Attachment(entityBytes, ctype, key, filename);
+        final String ctype = getImageContentType(responseWrapper.getResponse());
+        if (ctype != null) {
+            try (final InputStream stream = responseWrapper.getEntityStream()) {
+                if (stream != null) {
+                    return createAttachment(stream, ctype, key, filename);
+                }
             }
         }
         return null;
     }
 
+    /**
+     * Executes an Http Request for an image and creates an Attachment
+     * object from the response given a field key and filename.<br>
+     * The body is only read if the response is an image, and is read
+     * directly from the connection.<br>
+     * Returns null if the response is not an image.
+     *
+     * @param client The client to execute with
+     * @param request Request to execute
+     * @param key The field key
+     * @param filename The name for the file
+     * @return An image Attachment object
+     * @throws ServiceException If there are issues with the connection
+     * @throws IOException If there are non connection related issues, or the
+     *             image is too large
+     */
+    public static Attachment executeRequestForAttachment(HttpClient client,
+        HttpRequestBase request, String key, String filename)
+        throws ServiceException, IOException {
+        return executeRequest(client, request, (response) -> {
+            final String ctype = getImageContentType(response);
+            if (ctype == null || response.getEntity() == null) {
+                return null;
+            }
+            try (final HttpEntityBuffer entity = decodeEntity(response.getEntity());
+                final InputStream stream = entity == null ? null : entity.getInputStream()) {
+                return stream == null ? null : createAttachment(stream, ctype, key, filename);
+            }
+        });
+    }
+
+    /**
+     * @see #executeRequestForAttachment(HttpClient, HttpRequestBase, String,
+     *      String)
+     */
+    public static Attachment executeRequestForAttachment(HttpRequestBase request, String key,
+        String filename) throws ServiceException, IOException {
+        return executeRequestForAttachment(getHttpClient(request), request, key, filename);
+    }
+
+    /**
+     * @param response The http response
+     * @return The lower case content type if the response is an image,
+     *         otherwise null
+     */
+    protected static String getImageContentType(HttpResponse response) {
+        // check for the content type header
+        final Header ctypeHeader = response.getFirstHeader("Content-Type");
+        if (ctypeHeader == null) {
+            return null;
+        }
+        // grab content type header as string
+        final String ctype = StringUtils.lowerCase(ctypeHeader.getValue());
+        ZimbraLog.extensions.debug("The Content-Type: %s", ctype);
+        return StringUtils.startsWith(ctype, "image/") ? ctype : null;
+    }
+
+    /**
+     * Creates an image Attachment object from a stream.
+     *
+     * @param stream The image stream
+     * @param ctype The image content type
+     * @param key The field key
+     * @param filename The name for the file
+     * @return An image Attachment object
+     * @throws IOException If there are issues reading the stream
+     */
+    protected static Attachment createAttachment(InputStream stream, String ctype, String key,
+        String filename) throws IOException {
+        ZimbraLog.extensions.debug("Creating image attachment: %s as key: %s", filename, key);
+        return new Attachment(ByteStreams.toByteArray(stream), ctype, key, filename);
+    }
+
     /**
      * Executes an Http Request and returns the response body.
      *
@@ -178,7 +293,7 @@ public class OAuth2Utilities {
      */
     public static String executeRequest(HttpRequestBase request)
         throws ServiceException, IOException {
-        final HttpClient client = OAuth2Utilities.getHttpClient();
+        final HttpClient client = OAuth2Utilities.getHttpClient(request);
         return executeRequest(client, request);
     }
 
@@ -192,7 +307,7 @@ public class OAuth2Utilities {
      */
     public static HttpResponseWrapper executeRequestRaw(HttpRequestBase request)
         throws ServiceException, IOException {
-        final HttpClient client = OAuth2Utilities.getHttpClient();
+        final HttpClient client = OAuth2Utilities.getHttpClient(request);
         return executeRequestRaw(client, request);
     }
 
@@ -208,12 +323,13 @@ public class OAuth2Utilities {
      */
     public static String executeRequest(HttpClient client, HttpRequestBase request)
         throws ServiceException, IOException {
-        final HttpResponseWrapper response = executeRequestRaw(client, request);
-        final byte [] entity = response.getEntityBytes();
-        if (entity == null) {
-            return null;
+        try (final HttpResponseWrapper response = executeRequestRaw(client, request)) {
+            final byte [] entity = response.getEntityBytes();
+            if (entity == null) {
+                return null;
+            }
+            return new String(entity);
         }
-        return new String(entity);
     }
 
     /**
@@ -228,34 +344,219 @@ public class OAuth2Utilities {
      */
     public static HttpResponseWrapper executeRequestRaw(HttpClient client, HttpRequestBase request)
         throws ServiceException, IOException {
+        // read response body and add to wrapper before closing request connection
+        return executeRequest(client, request,
+            (response) -> new HttpResponseWrapper(response, decodeEntity(response.getEntity())));
+    }
+
+    /**
+     * Executes an Http Request with a given client and reads the response
+     * with the given reader before the connection is released.<br>
+     * Throttled and failed attempts are retried as allowed by the provider's
+     * retry policy, and attempts are rejected while the provider's circuit
+     * is open.
+     *
+     * @param client The client to execute with
+     * @param request Request to execute
+     * @param reader Reads the response
+     * @return The reader's result
+     * @throws ServiceException If there are issues with the connection
+     * @throws IOException If there are non connection related issues
+     * @see OAuth2RetryPolicy
+     * @see OAuth2CircuitBreaker
+     */
+    protected static <T> T executeRequest(HttpClient client, HttpRequestBase request,
+        ResponseReader<T> reader) throws ServiceException, IOException {
+        final OAuth2RetryPolicy retryPolicy = OAuth2RetryPolicy.getPolicy(request);
+        retryPolicy.onRequest();
+        for (int attempt = 1;; attempt++) {
+            long delay;
+            try {
+                HttpResponse response = null;
+                try {
+                    response = executeMethod(client, request);
+                    delay = retryPolicy.getRetryDelay(request, response, attempt);
+                } catch (final IOException | HttpException e) {
+                    delay = retryPolicy.getRetryDelay(request, e, attempt);
+                    if (delay == OAuth2RetryPolicy.NO_RETRY) {
+                        throw e;
+                    }
+                }
+                if (delay == OAuth2RetryPolicy.NO_RETRY) {
+                    if (attempt > 1) {
+                        retryPolicy.onRetrySuccess();
+                    }
+                    // failures while reading are not retried, the reader
+                    // may have consumed part of the response
+                    return reader.read(response);
+                }
+                if (response != null) {
+                    // discard the throttled response so the connection can be reused
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
+            } catch (final UnknownHostException | SocketTimeoutException
+                | ConnectionPoolTimeoutException | HttpException e) {
+                throw toServiceException(request, e);
+            } finally {
+                if (request != null) {
+                    request.releaseConnection();
+                }
+            }
+            sleepBeforeRetry(delay);
+        }
+    }
+
+    /**
+     * Executes one attempt of a request through the provider's circuit
+     * breaker, recording its outcome.
+     *
+     * @param client The client to execute with
+     * @param request Request to execute
+     * @return The response
+     * @throws ServiceException TEMPORARILY_UNAVAILABLE if the circuit is open
+     * @throws IOException If there are issues with the connection
+     * @throws HttpException If there are protocol issues
+     */
+    protected static HttpResponse executeMethod(HttpClient client, HttpRequestBase request)
+        throws ServiceException, IOException, HttpException {
+        return executeMethod(client, request, null);
+    }
+
+    /**
+     * Executes one attempt of a request with a request specific context
+     * through the provider's circuit breaker, recording its outcome.
+     *
+     * @param client The client to execute with
+     * @param request Request to execute
+     * @param context The request context, or null for none
+     * @return The response
+     * @throws ServiceException TEMPORARILY_UNAVAILABLE if the circuit is open
+     * @throws IOException If there are issues with the connection
+     * @throws HttpException If there are protocol issues
+     */
+    protected static HttpResponse executeMethod(HttpClient client, HttpRequestBase request,
+        HttpContext context) throws ServiceException, IOException, HttpException {
+        final OAuth2CircuitBreaker breaker = OAuth2CircuitBreaker.getBreaker(request);
+        breaker.acquire();
+        final long start = System.nanoTime();
+        final HttpResponse response;
+        try {
+            response = context == null
+                ? HttpClientUtil.executeMethod(client, request)
+                : HttpClientUtil.executeMethod(client, request, context);
+        } catch (final IOException | HttpException | RuntimeException e) {
+            breaker.onError(e, start);
+            throw e;
+        }
+        breaker.onResponse(response, start);
+        return response;
+    }
+
+    /**
+     * Waits before a retry, on the request thread. Delays are capped by the
+     * retry policy's max delay.
+     *
+     * @param delay The delay (milliseconds)
+     * @throws ServiceException If interrupted while waiting
+     */
+    protected static void sleepBeforeRetry(long delay) throws ServiceException {
         try {
-            final HttpResponse response = HttpClientUtil.executeMethod(client, request);
-            // read response body and add to wrapper before closing request connection
-            return new HttpResponseWrapper(response, decodeEntity(response.getEntity()));
-        } catch (final UnknownHostException e) {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ZimbraLog.extensions.debug("Interrupted while waiting to retry a request.");
+            throw ServiceException.TEMPORARILY_UNAVAILABLE();
+        }
+    }
+
+    /**
+     * Maps a request execution exception to a ServiceException.
+     *
+     * @param request The request that failed
+     * @param e The exception
+     * @return The matching ServiceException, or null if the exception is not
+     *         a connection issue
+     */
+    protected static ServiceException toServiceException(HttpRequestBase request, Exception e) {
+        if (e instanceof UnknownHostException) {
             ZimbraLog.extensions.errorQuietly(
                 "The configured destination address is unknown: " + request.getURI(), e);
-            throw ServiceException
+            return ServiceException
                 .RESOURCE_UNREACHABLE("The configured destination address is unknown.", e);
-        } catch (final SocketTimeoutException e) {
+        } else if (e instanceof SocketTimeoutException) {
             ZimbraLog.extensions
                 .error("The destination server took too long to respond to our request.");
-            throw ServiceException.RESOURCE_UNREACHABLE(
+            return ServiceException.RESOURCE_UNREACHABLE(
                 "The destination server took too long to respond to our request.", e);
-        } catch (final ConnectionPoolTimeoutException e) {
+        } else if (e instanceof ConnectionPoolTimeoutException || e instanceof TimeoutException) {
             ZimbraLog.extensions
                 .error("Too many active HTTP client connections, not enough resources available.");
-            throw ServiceException.TEMPORARILY_UNAVAILABLE();
-        } catch (final HttpException e) {
+            return ServiceException.TEMPORARILY_UNAVAILABLE();
+        } else if (e instanceof HttpException) {
             ZimbraLog.extensions
                 .errorQuietly("There was an issue executing the request.", e);
-            throw ServiceException
+            return ServiceException
                 .RESOURCE_UNREACHABLE("There was an issue executing the request.", null);
-        } finally {
-            if (request != null) {
-                request.releaseConnection();
-            }
         }
+        return null;
+    }
+
+    /**
+     * Executes an Http Request without blocking the calling thread.
+     *
+     * @param request Request to execute
+     * @return The future raw response and body in a wrapper, completed
+     *         exceptionally with a ServiceException if there are issues with
+     *         the connection, or an IOException for non connection related
+     *         issues
+     * @see OAuth2AsyncHttpClient
+     */
+    public static CompletableFuture<HttpResponseWrapper> executeRequestRawAsync(
+        HttpRequestBase request) {
+        return OAuth2AsyncHttpClient.execute(request);
+    }
+
+    /**
+     * Executes an Http Request without blocking the calling thread.
+     *
+     * @param request Request to execute
+     * @return The future response body as a string, null if there is no body
+     * @see #executeRequestRawAsync(HttpRequestBase)
+     */
+    public static CompletableFuture<String> executeRequestAsync(HttpRequestBase request) {
+        return executeRequestRawAsync(request).thenApply((response) -> {
+            try (final HttpResponseWrapper wrapper = response) {
+                final byte[] entity = wrapper.getEntityBytes();
+                return entity == null ? null : new String(entity);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Executes an Http Request without blocking the calling thread and
+     * parses for json.
+     *
+     * @param request Request to execute
+     * @return The future json response
+     * @see #executeRequestRawAsync(HttpRequestBase)
+     */
+    public static CompletableFuture<JsonNode> executeRequestForJsonAsync(
+        HttpRequestBase request) {
+        return executeRequestAsync(request).thenCompose((responseBody) -> {
+            final CompletableFuture<JsonNode> json = new CompletableFuture<JsonNode>();
+            try {
+                json.complete(stringToJson(responseBody));
+            } catch (final JsonParseException e) {
+                ZimbraLog.extensions.warn("The destination server responded with unexpected data.");
+                json.completeExceptionally(ServiceException
+                    .PROXY_ERROR("The destination server responded with unexpected data.", null));
+            } catch (final IOException e) {
+                json.completeExceptionally(e);
+            }
+            return json;
+        });
     }
 
     /**
@@ -270,6 +571,21 @@ public class OAuth2Utilities {
         return builder.build();
     }
 
+    /**
+     * Get the long-lived HttpClient of the request's provider host.<br>
+     * Falls back to a new instance if per provider clients are disabled.
+     *
+     * @param request The request to get a client for
+     * @return HttpClient A HttpClient instance
+     */
+    public static HttpClient getHttpClient(HttpRequestBase request) {
+        final String host = request.getURI() == null ? null : request.getURI().getHost();
+        if (StringUtils.isEmpty(host) || !OAuth2HttpClientPool.isEnabled()) {
+            return getHttpClient();
+        }
+        return OAuth2HttpClientPool.getHttpClient(host.toLowerCase());
+    }
+
     /**
      * Executes an Http Request and parses for json.
      *
@@ -280,21 +596,46 @@ public class OAuth2Utilities {
      */
     public static JsonNode executeRequestForJson(HttpRequestBase request)
         throws ServiceException, IOException {
-        JsonNode json = null;
-        final String responseBody = OAuth2Utilities.executeRequest(request);
-
-        // try to parse json
-        // throw if the upstream response
-        // is not what we previously expected
+        // parse from the response stream, the body is not buffered
         try {
-            json = stringToJson(responseBody);
+            return executeRequest(getHttpClient(request), request,
+                (response) -> response.getEntity() == null
+                    ? null
+                    : OAuth2JsonUtilities.streamToJson(getEntityStream(response.getEntity())));
         } catch (final JsonParseException e) {
             ZimbraLog.extensions.warn("The destination server responded with unexpected data.");
             throw ServiceException
                 .PROXY_ERROR("The destination server responded with unexpected data.", null);
         }
+    }
 
-        return json;
+    /**
+     * Executes an Http Request and streams the elements of a top level json
+     * array field to the consumer as they are parsed.
+     *
+     * @param request Request to execute
+     * @param arrayField The name of the top level array field to stream
+     * @param consumer Receives each element of the array field
+     * @return The other top level fields of the response, null if empty
+     * @throws ServiceException If there are issues with the connection or
+     *             the consumer fails
+     * @throws IOException If there are non connection related issues
+     * @see OAuth2JsonUtilities#streamRecords(java.io.InputStream, String,
+     *      OAuth2JsonUtilities.JsonRecordConsumer)
+     */
+    public static JsonNode executeRequestForRecords(HttpRequestBase request, String arrayField,
+        JsonRecordConsumer consumer) throws ServiceException, IOException {
+        try {
+            return executeRequest(getHttpClient(request), request,
+                (response) -> response.getEntity() == null
+                    ? null
+                    : OAuth2JsonUtilities.streamRecords(getEntityStream(response.getEntity()),
+                        arrayField, consumer));
+        } catch (final JsonParseException e) {
+            ZimbraLog.extensions.warn("The destination server responded with unexpected data.");
+            throw ServiceException
+                .PROXY_ERROR("The destination server responded with unexpected data.", null);
+        }
     }
 
     /**
@@ -306,4 +647,12 @@ public class OAuth2Utilities {
         return OAuth2JsonUtilities.stringToJson(jsonString);
     }
 
+    /**
+     * Reads a response before its connection is released.
+     */
+    @FunctionalInterface
+    protected interface ResponseReader<T> {
+
+        T read(HttpResponse response) throws ServiceException, IOException;
+    }
 }
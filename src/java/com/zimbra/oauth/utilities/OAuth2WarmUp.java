@@ -0,0 +1,270 @@
+// SPDX-FileCopyrightText: 2022 Synacor, Inc.
+// SPDX-FileCopyrightText: 2022 Zextras <https://www.zextras.com>
+//
+// SPDX-License-Identifier: GPL-2.0-only
+
+package com.zimbra.oauth.utilities;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.methods.HttpHead;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.oauth.handlers.IOAuth2Handler;
+import com.zimbra.oauth.handlers.impl.OAuth2Handler;
+import com.zimbra.oauth.managers.ClassManager;
+import com.zimbra.oauth.managers.OAuth2HandlerRegistry;
+import com.zimbra.oauth.models.HttpResponseWrapper;
+
+/**
+ * The OAuth2WarmUp class.<br>
+ * Optional startup stage that moves the first request costs (class loading,
+ * handler construction, config reads, provider handshakes) out of the
+ * request path. Runs on a daemon thread so extension registration is not
+ * delayed, each step is timed and logged.
+ *
+ * @author Zimbra API Team
+ * @package com.zimbra.oauth.utilities
+ * @copyright Copyright © 2022
+ */
+public class OAuth2WarmUp implements Runnable {
+
+    /**
+     * Sample token response used to exercise json parsing.
+     */
+    protected static final String SAMPLE_TOKEN_RESPONSE = "{\"access_token\":\"warmup\","
+        + "\"refresh_token\":\"warmup\",\"token_type\":\"Bearer\",\"expires_in\":3600,"
+        + "\"scope\":\"warmup\"}";
+
+    /**
+     * Clients to warm up.
+     */
+    protected final List<String> clients;
+
+    /**
+     * Whether to open connections to the token endpoints.
+     */
+    protected final boolean connect;
+
+    /**
+     * Handlers created by the handlers step.
+     */
+    protected final List<OAuth2Handler> handlers = new ArrayList<OAuth2Handler>();
+
+    /**
+     * Step durations (milliseconds) in run order.
+     */
+    protected final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
+    /**
+     * @param clients Clients to warm up
+     * @param connect Whether to open connections to the token endpoints
+     */
+    public OAuth2WarmUp(List<String> clients, boolean connect) {
+        this.clients = clients;
+        this.connect = connect;
+    }
+
+    /**
+     * Starts the warm-up on a daemon thread if enabled in localconfig.<br>
+     * Warms up the clients listed in localconfig, or every known client.
+     */
+    public static void startIfEnabled() {
+        final Configuration config = Configuration.getDefaultConfiguration();
+        if (!Boolean.valueOf(config.getString(
+            OAuth2ConfigConstants.LC_WARMUP_ENABLED.getValue(),
+            OAuth2Constants.WARMUP_ENABLED.getValue()))) {
+            return;
+        }
+        final String clientList = config
+            .getString(OAuth2ConfigConstants.LC_WARMUP_CLIENTS.getValue());
+        final List<String> clients = StringUtils.isBlank(clientList)
+            ? OAuth2HandlerRegistry.getInstance().getClients()
+            : Arrays.stream(clientList.split(",")).map(String::trim)
+                .filter(StringUtils::isNotEmpty).collect(Collectors.toList());
+        final boolean connect = Boolean.valueOf(config.getString(
+            OAuth2ConfigConstants.LC_WARMUP_CONNECT.getValue(),
+            OAuth2Constants.WARMUP_CONNECT.getValue()));
+        final Thread thread = new Thread(new OAuth2WarmUp(clients, connect), "oauth-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        final long start = System.nanoTime();
+        step("config", this::primeConfig);
+        step("handlers", this::loadHandlers);
+        step("json", this::parseJson);
+        step("state", this::buildStates);
+        if (connect) {
+            step("connections", this::openConnections);
+        }
+        ZimbraLog.extensions.info("OAuth2 warm-up of %d clients finished in %d ms %s.",
+            clients.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), timings);
+    }
+
+    /**
+     * @return Step durations (milliseconds) in run order
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
+    }
+
+    /**
+     * Runs and times a step. Failures are logged and do not stop the
+     * warm-up.
+     *
+     * @param name The step name
+     * @param step The step to run
+     */
+    protected void step(String name, Step step) {
+        final long start = System.nanoTime();
+        int failures = 0;
+        try {
+            failures = step.run();
+        } catch (final Exception e) {
+            failures = -1;
+            ZimbraLog.extensions.warn("OAuth2 warm-up step %s failed.", name);
+            ZimbraLog.extensions.debug(e);
+        }
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        timings.put(name, elapsed);
+        ZimbraLog.extensions.info("OAuth2 warm-up step %s took %d ms (%s).", name, elapsed,
+            failures < 0 ? "failed" : failures + " failures");
+    }
+
+    /**
+     * Loads the config snapshot and the handler class of each client.
+     *
+     * @return The number of unknown clients
+     */
+    protected int primeConfig() {
+        Configuration.getSnapshot();
+        int failures = 0;
+        for (final String client : clients) {
+            if (!Configuration.isValidClient(client)) {
+                ZimbraLog.extensions.warn("OAuth2 warm-up skipping unknown client: %s", client);
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Creates and caches the handler of each client.
+     *
+     * @return The number of handlers that could not be created
+     */
+    protected int loadHandlers() {
+        int failures = 0;
+        for (final String client : clients) {
+            try {
+                final IOAuth2Handler handler = ClassManager.getHandler(client);
+                if (handler instanceof OAuth2Handler) {
+                    handlers.add((OAuth2Handler) handler);
+                }
+            } catch (final ServiceException e) {
+                ZimbraLog.extensions.warn("OAuth2 warm-up unable to load handler: %s", client);
+                ZimbraLog.extensions.debug(e);
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Parses and serializes a sample token response.
+     *
+     * @return Zero
+     * @throws IOException If the sample cannot be parsed
+     * @throws ServiceException If the sample cannot be serialized
+     */
+    protected int parseJson() throws IOException, ServiceException {
+        final JsonNode json = OAuth2Utilities.stringToJson(SAMPLE_TOKEN_RESPONSE);
+        OAuth2JsonUtilities.objectToJson(OAuth2JsonUtilities.stringToMap(json.toString()));
+        return 0;
+    }
+
+    /**
+     * Builds and splits a sample state string with each loaded handler.
+     *
+     * @return The number of handlers that failed
+     */
+    protected int buildStates() {
+        int failures = 0;
+        for (final OAuth2Handler handler : handlers) {
+            try {
+                handler.warmUpStateString();
+            } catch (final ServiceException | RuntimeException e) {
+                ZimbraLog.extensions.debug(e);
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Sends a HEAD request to each distinct token endpoint host so its
+     * connection (and handshake) is established in the provider's pool. The
+     * response status is not relevant.
+     *
+     * @return The number of hosts that could not be reached
+     */
+    protected int openConnections() {
+        final Set<String> hosts = new LinkedHashSet<String>();
+        for (final OAuth2Handler handler : handlers) {
+            final String uri = handler.getAuthenticateUri();
+            if (StringUtils.isEmpty(uri)) {
+                continue;
+            }
+            try {
+                final URI tokenUri = URI.create(uri);
+                if (tokenUri.getHost() != null) {
+                    hosts.add(tokenUri.getScheme() + "://" + tokenUri.getAuthority() + "/");
+                }
+            } catch (final IllegalArgumentException e) {
+                ZimbraLog.extensions.debug("OAuth2 warm-up skipping invalid token uri: %s", uri);
+            }
+        }
+        int failures = 0;
+        for (final String host : hosts) {
+            try (final HttpResponseWrapper response = OAuth2Utilities
+                .executeRequestRaw(new HttpHead(host))) {
+                ZimbraLog.extensions.debug("OAuth2 warm-up connected to %s (%d).", host,
+                    response.getResponse().getStatusLine().getStatusCode());
+            } catch (final ServiceException | IOException e) {
+                ZimbraLog.extensions.warn("OAuth2 warm-up unable to connect to: %s", host);
+                ZimbraLog.extensions.debug(e);
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * A warm-up step.
+     */
+    @FunctionalInterface
+    protected interface Step {
+
+        /**
+         * @return The number of failed items
+         * @throws Exception If the step fails
+         */
+        int run() throws Exception;
+    }
+}